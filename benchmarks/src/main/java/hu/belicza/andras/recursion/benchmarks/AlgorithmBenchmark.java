@@ -0,0 +1,89 @@
+package hu.belicza.andras.recursion.benchmarks;
+
+import hu.belicza.andras.recursion.model.Algorithm;
+import hu.belicza.andras.recursion.model.RandomBaseAlgorithm;
+import hu.belicza.andras.recursion.model.RasterAlgorithm;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Base of the algorithm benchmarks.<br>
+ * Measures the throughput of painting an algorithm into an offscreen image with a fixed random seed.
+ * Subclasses define the algorithm and its parameters, and call {@link #setUp(Algorithm, String)} in their setup.
+ * 
+ * @author Belicza Andras
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public abstract class AlgorithmBenchmark {
+	
+	/** Fixed random seed of the benchmarks, every invocation paints the same image. */
+	public static final String RANDOM_SEED = "42";
+	
+	/** The benchmarked algorithm.                                          */
+	private Algorithm     algorithm;
+	/** Offscreen image to paint into.                                      */
+	private BufferedImage image;
+	/** Graphics context of the image, <code>null</code> for raster algorithms. */
+	private Graphics      graphics;
+	
+	/**
+	 * Sets up the benchmark.
+	 * @param algorithm  algorithm to be benchmarked, its properties are already set (except the random seed)
+	 * @param canvasSize size of the canvas in the form of <code>widthxheight</code>
+	 */
+	protected void setUp( final Algorithm algorithm, final String canvasSize ) {
+		final int xIndex = canvasSize.indexOf( 'x' );
+		
+		this.algorithm = algorithm;
+		algorithm.getProperties().setProperty( RandomBaseAlgorithm.PROPERTY_RANDOM_SEED, RANDOM_SEED );
+		image = new BufferedImage( Integer.parseInt( canvasSize.substring( 0, xIndex ) ), Integer.parseInt( canvasSize.substring( xIndex + 1 ) ), BufferedImage.TYPE_INT_RGB );
+		
+		if ( !( algorithm instanceof RasterAlgorithm ) ) {
+			graphics = image.createGraphics();
+			graphics.setColor( Color.WHITE );
+		}
+	}
+	
+	/**
+	 * Paints the algorithm into the offscreen image.
+	 * @return the painted image
+	 */
+	@Benchmark
+	public BufferedImage paint() {
+		if ( graphics == null )
+			( (RasterAlgorithm) algorithm ).paint( image );
+		else
+			algorithm.paint( graphics, image.getWidth(), image.getHeight() );
+		
+		return image;
+	}
+	
+	/**
+	 * Releases the resources of the benchmark.
+	 */
+	@TearDown
+	public void tearDown() {
+		if ( graphics != null )
+			graphics.dispose();
+	}
+	
+}
@@ -0,0 +1,89 @@
+package hu.belicza.andras.recursion.benchmarks;
+
+import hu.belicza.andras.recursion.examples.Lightning;
+import hu.belicza.andras.recursion.examples.Terrain;
+import hu.belicza.andras.recursion.model.AnimatedAlgorithm;
+import hu.belicza.andras.recursion.model.AnimationFrame;
+import hu.belicza.andras.recursion.model.RandomBaseAlgorithm;
+import hu.belicza.andras.recursion.view.Animator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of rendering animation frames with an {@link Animator}, frame after frame as fast as possible.<br>
+ * The frames are reused, so the allocation rate reported by the GC profiler is the allocation of the frame renderers.
+ * 
+ * @author Belicza Andras
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class AnimationBenchmark {
+	
+	@Param( { "640x480", "1920x1080" } )
+	public String canvasSize;
+	
+	@Param( { "Lightning", "Terrain" } )
+	public String algorithmName;
+	
+	/** The animator rendering the frames.  */
+	private Animator animator;
+	/** Index of the next frame.            */
+	private long     index;
+	
+	/**
+	 * Sets up the benchmark.
+	 */
+	@Setup
+	public void setUp() {
+		final int xIndex = canvasSize.indexOf( 'x' );
+		
+		final AnimatedAlgorithm algorithm;
+		if ( algorithmName.equals( "Terrain" ) ) {
+			algorithm = new Terrain();
+			// Low dispersion like an animated effect, painted in the rendering thread
+			algorithm.getProperties().setProperty( "dispersion", "5" );
+			algorithm.getProperties().setProperty( "parallel", "false" );
+		}
+		else
+			algorithm = new Lightning();
+		algorithm.getProperties().setProperty( RandomBaseAlgorithm.PROPERTY_RANDOM_SEED, AlgorithmBenchmark.RANDOM_SEED );
+		
+		animator = new Animator( algorithm, Integer.parseInt( canvasSize.substring( 0, xIndex ) ), Integer.parseInt( canvasSize.substring( xIndex + 1 ) ),
+				null, Animator.DEFAULT_FRAME_RATE );
+	}
+	
+	/**
+	 * Renders the next frame.
+	 * @return the rendered frame
+	 */
+	@Benchmark
+	public AnimationFrame renderFrame() {
+		return animator.renderFrame( index++ );
+	}
+	
+	/**
+	 * Releases the resources of the benchmark.
+	 */
+	@TearDown
+	public void tearDown() {
+		animator.dispose();
+	}
+	
+}
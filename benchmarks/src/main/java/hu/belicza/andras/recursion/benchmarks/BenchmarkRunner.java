@@ -0,0 +1,35 @@
+package hu.belicza.andras.recursion.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the algorithm benchmarks with the GC profiler, so the allocation rate is reported next to the throughput.<br>
+ * Accepts the usual JMH command line options (for example <code>-p canvasSize=640x480</code> to restrict a parameter).
+ * 
+ * @author Belicza Andras
+ */
+public class BenchmarkRunner {
+	
+	/**
+	 * Entry point of the program.
+	 * @param arguments JMH command line options
+	 * @throws CommandLineOptionException if the command line options are invalid
+	 * @throws RunnerException if the benchmarks fail to run
+	 */
+	public static void main( final String[] arguments ) throws CommandLineOptionException, RunnerException {
+		final Options options = new OptionsBuilder()
+			.parent( new CommandLineOptions( arguments ) )
+			.include( BenchmarkRunner.class.getPackage().getName() + "\\..*Benchmark" )
+			.addProfiler( GCProfiler.class )
+			.build();
+		
+		new Runner( options ).run();
+	}
+	
+}
@@ -0,0 +1,35 @@
+package hu.belicza.andras.recursion.benchmarks;
+
+import hu.belicza.andras.recursion.examples.Labyrinth;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * Benchmark of the {@link Labyrinth} algorithm.
+ * 
+ * @author Belicza Andras
+ */
+public class LabyrinthBenchmark extends AlgorithmBenchmark {
+	
+	@Param( { "640x480", "1920x1080", "3840x2160" } )
+	public String canvasSize;
+	
+	@Param( { "4", "20" } )
+	public String pathWidth;
+	
+	@Param( { "false", "true" } )
+	public String parallel;
+	
+	/**
+	 * Sets up the benchmark.
+	 */
+	@Setup
+	public void setUp() {
+		final Labyrinth labyrinth = new Labyrinth();
+		labyrinth.getProperties().setProperty( "pathWidth", pathWidth );
+		labyrinth.getProperties().setProperty( "parallel" , parallel  );
+		setUp( labyrinth, canvasSize );
+	}
+	
+}
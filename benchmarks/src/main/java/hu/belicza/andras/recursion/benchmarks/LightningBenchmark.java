@@ -0,0 +1,31 @@
+package hu.belicza.andras.recursion.benchmarks;
+
+import hu.belicza.andras.recursion.examples.Lightning;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * Benchmark of the {@link Lightning} algorithm.
+ * 
+ * @author Belicza Andras
+ */
+public class LightningBenchmark extends AlgorithmBenchmark {
+	
+	@Param( { "640x480", "1920x1080", "3840x2160" } )
+	public String canvasSize;
+	
+	@Param( { "5", "20", "80" } )
+	public String granularity;
+	
+	/**
+	 * Sets up the benchmark.
+	 */
+	@Setup
+	public void setUp() {
+		final Lightning lightning = new Lightning();
+		lightning.getProperties().setProperty( "granularity", granularity );
+		setUp( lightning, canvasSize );
+	}
+	
+}
@@ -0,0 +1,122 @@
+package hu.belicza.andras.recursion.benchmarks;
+
+import hu.belicza.andras.recursion.model.RecursionEngine;
+import hu.belicza.andras.recursion.model.RecursionStep;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the {@link RecursionEngine} against the same recursion on the call stack of the JVM.<br>
+ * The recursion divides a range of the given size down to single elements, either in halves (<code>balanced</code>, depth is log2 of the size)
+ * or by cutting off the first element (<code>deep</code>, depth is the size). The deep sizes stay below what the default thread stack can take,
+ * so both variants complete; deeper trees only complete on the engine.
+ * 
+ * @author Belicza Andras
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class RecursionBenchmark {
+	
+	@Param( { "balanced", "deep" } )
+	public String shape;
+	
+	@Param( { "1000", "4000" } )
+	public int size;
+	
+	/** The engine executing the recursion, reused between invocations. */
+	private final RecursionEngine engine = new RecursionEngine();
+	
+	/** Tells if the ranges are divided by cutting off their first element. */
+	private boolean deep;
+	/** Sum of the visited elements, the result of an invocation.            */
+	private long    sum;
+	
+	/** Step dividing the range [x1..x2) of a frame. */
+	private final RecursionStep step = new RecursionStep() {
+		@Override
+		public void execute( final int x1, final int y1, final int x2, final int y2, final RecursionEngine engine ) {
+			if ( x2 - x1 <= 1 ) {
+				sum += x1;
+				return;
+			}
+			
+			// Scheduled in reverse order, the first half is processed first
+			final int middle = split( x1, x2 );
+			engine.recurse( middle, 0, x2, 0 );
+			engine.recurse( x1, 0, middle, 0 );
+		}
+	};
+	
+	/**
+	 * Sets up the benchmark.
+	 */
+	@Setup
+	public void setUp() {
+		deep = shape.equals( "deep" );
+	}
+	
+	/**
+	 * Executes the recursion with the engine.
+	 * @return the sum of the visited elements
+	 */
+	@Benchmark
+	public long engine() {
+		sum = 0;
+		engine.run( step, 0, 0, size, 0 );
+		return sum;
+	}
+	
+	/**
+	 * Executes the recursion on the call stack of the JVM.
+	 * @return the sum of the visited elements
+	 */
+	@Benchmark
+	public long callStack() {
+		sum = 0;
+		recurse( 0, size );
+		return sum;
+	}
+	
+	/**
+	 * Recursive counterpart of the step of the engine.
+	 * @param x1 first element of the range
+	 * @param x2 end of the range (exclusive)
+	 */
+	private void recurse( final int x1, final int x2 ) {
+		if ( x2 - x1 <= 1 ) {
+			sum += x1;
+			return;
+		}
+		
+		final int middle = split( x1, x2 );
+		recurse( x1, middle );
+		recurse( middle, x2 );
+	}
+	
+	/**
+	 * Returns the point where a range is divided according to the shape of the tree.
+	 * @param x1 first element of the range
+	 * @param x2 end of the range (exclusive)
+	 * @return the point where the range is divided
+	 */
+	private int split( final int x1, final int x2 ) {
+		return deep ? x1 + 1 : x1 + x2 >>> 1;
+	}
+	
+}
@@ -0,0 +1,44 @@
+package hu.belicza.andras.recursion.benchmarks;
+
+import hu.belicza.andras.recursion.examples.Terrain;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * Benchmark of the {@link Terrain} algorithm.
+ * 
+ * @author Belicza Andras
+ */
+public class TerrainBenchmark extends AlgorithmBenchmark {
+	
+	@Param( { "640x480", "1920x1080", "3840x2160" } )
+	public String canvasSize;
+	
+	@Param( { "50", "250", "1000" } )
+	public String sectorSize;
+	
+	@Param( { "false", "true" } )
+	public String parallel;
+	
+	@Param( { "false", "true" } )
+	public String rowKernel;
+	
+	/** With retained heights every invocation after the first one only recolors them (the seed and the heights do not change). */
+	@Param( { "false", "true" } )
+	public String retainHeights;
+	
+	/**
+	 * Sets up the benchmark.
+	 */
+	@Setup
+	public void setUp() {
+		final Terrain terrain = new Terrain();
+		terrain.getProperties().setProperty( "sectorSize", sectorSize );
+		terrain.getProperties().setProperty( "parallel"  , parallel   );
+		terrain.getProperties().setProperty( "rowKernel" , rowKernel  );
+		terrain.getProperties().setProperty( "retainHeights", retainHeights );
+		setUp( terrain, canvasSize );
+	}
+	
+}
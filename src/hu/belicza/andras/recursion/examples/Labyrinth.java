@@ -1,42 +1,126 @@
 package hu.belicza.andras.recursion.examples;
 
 import java.awt.Color;
-import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RecursiveAction;
 
+import hu.belicza.andras.recursion.model.Cancellation;
+import hu.belicza.andras.recursion.model.DrawTarget;
+import hu.belicza.andras.recursion.model.Maze;
+import hu.belicza.andras.recursion.model.ParameterDescriptor;
+import hu.belicza.andras.recursion.model.ParameterValues;
 import hu.belicza.andras.recursion.model.RandomBaseAlgorithm;
+import hu.belicza.andras.recursion.model.RandomHash;
+import hu.belicza.andras.recursion.model.RecursionEngine;
+import hu.belicza.andras.recursion.model.RecursionStep;
+import hu.belicza.andras.recursion.model.RenderMetrics;
+import hu.belicza.andras.recursion.model.RenderContext;
+import hu.belicza.andras.recursion.model.VectorAlgorithm;
 
 /**
- * A simple recursive algorithm to generate labyrinths.
+ * A simple recursive algorithm to generate labyrinths.<br>
+ * The labyrinth is generated as a {@link Maze} of path width sized cells (see {@link #generateMaze(int, int)}),
+ * whose walls are drawn in a separate pass.<br>
+ * In viewport mode a rectangular viewport of a huge labyrinth ({@link #WORLD_SIZE} x {@link #WORLD_SIZE} cells) is painted instead.
+ * The huge labyrinth is divided with random numbers derived from the seed of each region (see {@link RandomHash}),
+ * and only the regions intersecting the viewport are divided, so the cost depends on the size of the viewport only
+ * (see {@link #generateRegion(int, int, int, int)} and {@link RegionCache}).
  * 
  * @author András Belicza
  */
-public class Labyrinth extends RandomBaseAlgorithm {
+public class Labyrinth extends RandomBaseAlgorithm< Labyrinth.Parameters > implements VectorAlgorithm {
 	
-	private static final String PROPERTY_PATH_WIDTH = "pathWidth";
+	private static final ParameterDescriptor< Integer > PATH_WIDTH = ParameterDescriptor.ofInteger( "pathWidth", 20, 1, null, "width of the paths" );
+	private static final ParameterDescriptor< Boolean > PARALLEL   = ParameterDescriptor.ofBoolean( "parallel" , false, "tells if the labyrinth has to be generated on all cores" );
 	
-	private int pathWidth;
+	/** Number of columns and rows of the huge labyrinth of the viewport mode. */
+	public static final int WORLD_SIZE = 1 << 30;
+	
+	private static final ParameterDescriptor< Boolean > VIEWPORT        = ParameterDescriptor.ofBoolean( "viewport"      , false, "tells if a viewport of a huge labyrinth is painted instead of a labyrinth fitting the image" );
+	private static final ParameterDescriptor< Integer > VIEWPORT_COLUMN = ParameterDescriptor.ofInteger( "viewportColumn", 0, 0, WORLD_SIZE - 1, "first column of the viewport of the huge labyrinth" );
+	private static final ParameterDescriptor< Integer > VIEWPORT_ROW    = ParameterDescriptor.ofInteger( "viewportRow"   , 0, 0, WORLD_SIZE - 1, "first row of the viewport of the huge labyrinth" );
+	
+	/** Number of cells above which a region is divided in parallel tasks. */
+	private static final int PARALLEL_CELLS_THRESHOLD = 1 << 14;
+	
+	/**
+	 * Immutable parameter snapshot of a render.
+	 */
+	public static class Parameters {
+		
+		private final int     pathWidth;
+		private final boolean parallel;
+		private final boolean viewport;
+		private final int     viewportColumn;
+		private final int     viewportRow;
+		
+		/**
+		 * Creates a new <code>Parameters</code>.
+		 * @param pathWidth      width of the paths
+		 * @param parallel       tells if the labyrinth has to be generated on all cores
+		 * @param viewport       tells if a viewport of a huge labyrinth is painted instead of a labyrinth fitting the image
+		 * @param viewportColumn first column of the viewport of the huge labyrinth
+		 * @param viewportRow    first row of the viewport of the huge labyrinth
+		 */
+		public Parameters( final int pathWidth, final boolean parallel, final boolean viewport, final int viewportColumn, final int viewportRow ) {
+			this.pathWidth      = pathWidth;
+			this.parallel       = parallel;
+			this.viewport       = viewport;
+			this.viewportColumn = viewportColumn;
+			this.viewportRow    = viewportRow;
+		}
+		
+	}
 	
 	public Labyrinth() {
 		super( "Labyrinth", "András Belicza", "1.0", "A simple recursive algorithm to generate labyrinths." );
 		
-		defaultProperties.setProperty( PROPERTY_PATH_WIDTH, "20" );
+		addParameter( PATH_WIDTH );
+		addParameter( PARALLEL   );
+		addParameter( VIEWPORT        );
+		addParameter( VIEWPORT_COLUMN );
+		addParameter( VIEWPORT_ROW    );
 	}
 	
 	@Override
-	protected void validateProperties() throws IllegalArgumentException {
-		super.validateProperties();
-		
-		try {
-			pathWidth = Integer.parseInt  ( properties.getProperty( PROPERTY_PATH_WIDTH ) );
-		}
-		catch ( final Exception e ) {
-			throw new IllegalArgumentException( e.getMessage(), e );
-		}
+	protected Parameters createParameters( final ParameterValues values ) {
+		return new Parameters( values.get( PATH_WIDTH ), values.get( PARALLEL ), values.get( VIEWPORT ), values.get( VIEWPORT_COLUMN ), values.get( VIEWPORT_ROW ) );
+	}
+	
+	@Override
+	public void paint( final DrawTarget target, final int width, final int height ) throws IllegalArgumentException {
+		paint( target, width, height, null );
+	}
+	
+	@Override
+	public void paint( final DrawTarget target, final int width, final int height, final Properties renderProperties ) throws IllegalArgumentException {
+		render( createContext( null, target, renderProperties ), width, height );
 	}
 	
+	/**
+	 * Paints the labyrinth with a frame: generates its maze, then draws the walls of the maze.<br>
+	 * Only the walls of the cells which can touch the clip of the target are drawn. When generated in parallel, only these cells are generated
+	 * and stored: the random generators of the regions are split from their parents' whether they are divided or not, so the visible walls
+	 * are identical to the walls of a full render, and the cost depends on the size of the clip rather than the size of the labyrinth
+	 * (the serial generation draws from a single generator, it is not pruned).
+	 * @param context context of the render
+	 * @param width   width of the desired image
+	 * @param height  height of the desired image
+	 */
 	@Override
-	public void paint( final Graphics graphics, final int width, final int height ) throws IllegalArgumentException {
-		super.paint( graphics, width, height );
+	protected void paint( final RenderContext< Parameters > context, final int width, final int height ) {
+		if ( context.getParameters().viewport ) {
+			paintViewport( context, width, height );
+			return;
+		}
+		
+		final int pathWidth = context.getParameters().pathWidth;
 		
 		// Aligning size to max number of paths.
 		final int width_  = width  - width  % pathWidth + 1;
@@ -46,38 +130,760 @@ public class Labyrinth extends RandomBaseAlgorithm {
 		final int x1 = ( width  - width_  ) / 2;
 		final int y1 = ( height - height_ ) / 2;
 		
-		paint( x1, y1, x1 + width_ - 1, y1 + height_ - 1 );
+		if ( width_ > 1 && height_ > 1 ) {
+			final int       columns      = width / pathWidth, rows = height / pathWidth;
+			final Rectangle visibleCells = getVisibleCells( context.getTarget().getClipBounds(), x1, y1, pathWidth, 0, 0, columns, rows );
+			if ( context.getParameters().parallel && visibleCells != null ) {
+				if ( !visibleCells.isEmpty() )
+					paintWalls( generateVisibleCells( context, columns, rows, visibleCells ), context.getTarget(),
+							x1 + visibleCells.x * pathWidth, y1 + visibleCells.y * pathWidth, pathWidth );
+			}
+			else
+				paintWalls( generateMaze( context, columns, rows ), context.getTarget(), x1, y1, pathWidth );
+		}
 		
 		// A frame for the labyrinth
-		graphics.setColor( Color.GREEN );
-		graphics.drawRect( x1, y1, width_ - 1, height_ - 1 ); //0, 0, width - 1, height - 1 );
+		final DrawTarget target = context.getTarget();
+		final int x2 = x1 + width_  - 1;
+		final int y2 = y1 + height_ - 1;
+		target.setColor( Color.GREEN );
+		target.drawLine( x1, y1, x2, y1 );
+		target.drawLine( x2, y1, x2, y2 );
+		target.drawLine( x2, y2, x1, y2 );
+		target.drawLine( x1, y2, x1, y1 );
+	}
+	
+	/**
+	 * Paints a viewport of the huge labyrinth: the walls of the cells covering the image, starting with the first column and row of the viewport.<br>
+	 * The region of the viewport is generated with a margin of a cell, so the walls on the border of the viewport are painted too.
+	 * Only the part of the region which can touch the clip of the target is generated. The <code>parallel</code> property is not used.
+	 * @param context context of the render
+	 * @param width   width of the desired image
+	 * @param height  height of the desired image
+	 */
+	private static void paintViewport( final RenderContext< Parameters > context, final int width, final int height ) {
+		final Parameters parameters = context.getParameters();
+		final int        pathWidth  = parameters.pathWidth;
+		
+		int column  = Math.max( 0, parameters.viewportColumn - 1 );
+		int row     = Math.max( 0, parameters.viewportRow    - 1 );
+		int column2 = (int) Math.min( WORLD_SIZE, (long) parameters.viewportColumn + ( width  + pathWidth - 1 ) / pathWidth + 1 );
+		int row2    = (int) Math.min( WORLD_SIZE, (long) parameters.viewportRow    + ( height + pathWidth - 1 ) / pathWidth + 1 );
+		
+		final Rectangle visibleCells = getVisibleCells( context.getTarget().getClipBounds(), 0, 0, pathWidth, parameters.viewportColumn, parameters.viewportRow,
+				column2, row2 );
+		if ( visibleCells != null ) {
+			column  = Math.max( column , visibleCells.x );
+			row     = Math.max( row    , visibleCells.y );
+			column2 = Math.min( column2, visibleCells.x + visibleCells.width  );
+			row2    = Math.min( row2   , visibleCells.y + visibleCells.height );
+			if ( column >= column2 || row >= row2 )
+				return;
+		}
+		
+		final Maze region = generateRegion( context.getMetrics(), context.getRandom().nextLong(), column, row, column2 - column, row2 - row );
+		paintWalls( region, context.getTarget(), ( column - parameters.viewportColumn ) * pathWidth, ( row - parameters.viewportRow ) * pathWidth, pathWidth );
 	}
 	
-	public void paint( final int x1, final int y1, final int x2, final int y2 ) {
-		final int dx = x2 - x1;
-		final int dy = y2 - y1;
+	/**
+	 * Generates a region of the huge labyrinth of the viewport mode as a maze of cells.<br>
+	 * The region only depends on the seed and its coordinates, so regions can be generated in any order and cached
+	 * (see {@link RegionCache}); the cost depends on the size of the region, not on the size of the huge labyrinth.
+	 * The walls of the maze are the walls between the cells of the region: adjacent regions overlapping in a column (row)
+	 * together hold the walls of the union of the regions.
+	 * 
+	 * @param column  first column of the region
+	 * @param row     first row of the region
+	 * @param columns number of columns of the region
+	 * @param rows    number of rows of the region
+	 * @return the maze of the region
+	 * @throws IllegalArgumentException thrown if illegal property value is specified or the region is not inside the huge labyrinth
+	 */
+	public Maze generateRegion( final int column, final int row, final int columns, final int rows ) throws IllegalArgumentException {
+		return generateRegion( column, row, columns, rows, null );
+	}
+	
+	/**
+	 * Generates a region of the huge labyrinth of the viewport mode as a maze of cells, with the properties of a render.
+	 * 
+	 * @param column           first column of the region
+	 * @param row              first row of the region
+	 * @param columns          number of columns of the region
+	 * @param rows             number of rows of the region
+	 * @param renderProperties properties of the render, <code>null</code> means the properties of the algorithm
+	 * @return the maze of the region
+	 * @throws IllegalArgumentException thrown if illegal property value is specified or the region is not inside the huge labyrinth
+	 * @see #generateRegion(int, int, int, int)
+	 */
+	public Maze generateRegion( final int column, final int row, final int columns, final int rows, final Properties renderProperties ) throws IllegalArgumentException {
+		final RenderContext< Parameters > context = createContext( null, null, renderProperties );
+		
+		boolean completed = false;
+		try {
+			final Maze region = generateRegion( context.getMetrics(), context.getRandom().nextLong(), column, row, columns, rows );
+			completed = true;
+			return region;
+		}
+		finally {
+			context.finish( completed );
+		}
+	}
+	
+	/**
+	 * Generates a region of the huge labyrinth: divides the regions of the huge labyrinth intersecting the region only.
+	 * 
+	 * @param metrics metrics of the render, <code>null</code> if the render is not measured
+	 * @param seed    seed of the huge labyrinth
+	 * @param column  first column of the region
+	 * @param row     first row of the region
+	 * @param columns number of columns of the region
+	 * @param rows    number of rows of the region
+	 * @return the maze of the region
+	 * @throws IllegalArgumentException thrown if the region is not inside the huge labyrinth
+	 */
+	private static Maze generateRegion( final RenderMetrics metrics, final long seed, final int column, final int row, final int columns, final int rows )
+			throws IllegalArgumentException {
+		if ( column < 0 || row < 0 || columns <= 0 || rows <= 0 || column > WORLD_SIZE - columns || row > WORLD_SIZE - rows )
+			throw new IllegalArgumentException( "Invalid region: " + columns + "x" + rows + " at " + column + "," + row
+					+ " (must be inside the " + WORLD_SIZE + "x" + WORLD_SIZE + " labyrinth)" );
+		
+		final Maze region = new Maze( columns, rows );
+		new RecursionEngine( null, metrics, 1 ).run( new RegionDivisionStep( region, column, row ), 0, 0, WORLD_SIZE, WORLD_SIZE, seed );
+		return region;
+	}
+	
+	/**
+	 * Generates a labyrinth as a maze of cells without painting it.<br>
+	 * The path width is not used; the maze is identical to the maze painted by {@link #paint(DrawTarget, int, int)} with the same seed
+	 * into an area of <code>columns * pathWidth</code> x <code>rows * pathWidth</code>.
+	 * 
+	 * @param columns number of columns of the maze
+	 * @param rows    number of rows of the maze
+	 * @return the generated maze
+	 * @throws IllegalArgumentException thrown if illegal property value or maze size is specified
+	 */
+	public Maze generateMaze( final int columns, final int rows ) throws IllegalArgumentException {
+		return generateMaze( columns, rows, null );
+	}
+	
+	/**
+	 * Generates a labyrinth as a maze of cells without painting it, with the properties of a render.
+	 * 
+	 * @param columns          number of columns of the maze
+	 * @param rows             number of rows of the maze
+	 * @param renderProperties properties of the render, <code>null</code> means the properties of the algorithm
+	 * @return the generated maze
+	 * @throws IllegalArgumentException thrown if illegal property value or maze size is specified
+	 * @see #generateMaze(int, int)
+	 */
+	public Maze generateMaze( final int columns, final int rows, final Properties renderProperties ) throws IllegalArgumentException {
+		final RenderContext< Parameters > context = createContext( null, null, renderProperties );
+		
+		boolean completed = false;
+		try {
+			final Maze maze = generateMaze( context, columns, rows );
+			completed = true;
+			return maze;
+		}
+		finally {
+			context.finish( completed );
+		}
+	}
+	
+	/**
+	 * Generates the maze of a labyrinth, serially or on all cores depending on the parameters.
+	 * 
+	 * @param context context of the render
+	 * @param columns number of columns of the maze
+	 * @param rows    number of rows of the maze
+	 * @return the generated maze
+	 * @throws IllegalArgumentException thrown if illegal maze size is specified
+	 */
+	private static Maze generateMaze( final RenderContext< Parameters > context, final int columns, final int rows ) throws IllegalArgumentException {
+		final Maze maze = new Maze( columns, rows );
+		
+		if ( context.getParameters().parallel )
+			generateParallel( context, maze );
+		else
+			generate( context, maze );
+		
+		return maze;
+	}
+	
+	/**
+	 * Generates the walls of a maze serially.
+	 * 
+	 * @param context context of the render
+	 * @param maze    maze to add the walls to
+	 */
+	public static void generate( final RenderContext< Parameters > context, final Maze maze ) {
+		final Random random = context.getRandom();
+		
+		// Step of the serial recursion: divides a region into 2 by a wall with a gateway on it.
+		new RecursionEngine( null, context.getMetrics(), 1 ).run( new RecursionStep() {
+			@Override
+			public void execute( final int x1, final int y1, final int x2, final int y2, final RecursionEngine engine ) {
+				final int dx = x2 - x1;
+				final int dy = y2 - y1;
+				
+				if ( dx >= 2 && dy >= 2 )
+					if ( dx > dy ) {
+						final int dividerX = x1 + random.nextInt( dx - 1 ) + 1;
+						final int gatewayY = y1 + random.nextInt( dy     );
+						
+						maze.addVerticalWall( dividerX, y1          , gatewayY );
+						maze.addVerticalWall( dividerX, gatewayY + 1, y2       );
+						
+						// Scheduled in reverse order, the first half is processed first
+						engine.recurse( dividerX, y1, x2      , y2 );
+						engine.recurse( x1      , y1, dividerX, y2 );
+					}
+					else {
+						final int dividerY = y1 + random.nextInt( dy - 1 ) + 1;
+						final int gatewayX = x1 + random.nextInt( dx     );
+						
+						maze.addHorizontalWall( dividerY, x1          , gatewayX );
+						maze.addHorizontalWall( dividerY, gatewayX + 1, x2       );
+						
+						engine.recurse( x1, dividerY, x2, y2       );
+						engine.recurse( x1, y1      , x2, dividerY );
+					}
+			}
+		}, 0, 0, maze.getColumns(), maze.getRows() );
+	}
+	
+	/**
+	 * Generates the walls of a maze on the fork/join pool.<br>
+	 * Regions are divided in separate tasks, each of them having its own random generator split from its parent's.
+	 * Since the split generators depend only on the seed and the division tree, the same seed results in the same labyrinth
+	 * regardless of the number of threads.
+	 * 
+	 * @param context context of the render
+	 * @param maze    maze to add the walls to
+	 */
+	public static void generateParallel( final RenderContext< Parameters > context, final Maze maze ) {
+		generateParallel( context, maze, null );
+	}
+	
+	/**
+	 * Generates the walls of the visible cells of a maze on the fork/join pool.<br>
+	 * Regions not intersecting the visible cells are not divided; the walls of the visible cells are identical to the walls of
+	 * the whole maze generated with the same seed, since the random generators of the regions are split the same way.
+	 * 
+	 * @param context      context of the render
+	 * @param maze         maze to add the walls to
+	 * @param visibleCells the cells whose walls are needed, <code>null</code> for all cells
+	 */
+	public static void generateParallel( final RenderContext< Parameters > context, final Maze maze, final Rectangle visibleCells ) {
+		final Cancellation cancellation = new Cancellation();
+		cancellation.invoke( new DivisionTask( maze, 0, 0, 0, 0, maze.getColumns(), maze.getRows(), new SplittableRandom( context.getRandom().nextLong() ), visibleCells,
+				cancellation, context.getMetrics(), 1 ) );
+	}
+	
+	/**
+	 * Generates the walls of the visible cells of a labyrinth on the fork/join pool, into a maze holding the visible cells only.<br>
+	 * The walls are identical to the walls of the same cells of the whole maze generated with the same seed (see {@link #generateParallel(RenderContext, Maze, Rectangle)}),
+	 * but the whole maze is not allocated, so the memory use depends on the number of the visible cells, not on the size of the labyrinth.
+	 * 
+	 * @param context      context of the render
+	 * @param columns      number of columns of the whole maze
+	 * @param rows         number of rows of the whole maze
+	 * @param visibleCells the visible cells, must not be empty
+	 * @return the maze of the visible cells, its first cell is the top left visible cell
+	 */
+	private static Maze generateVisibleCells( final RenderContext< Parameters > context, final int columns, final int rows, final Rectangle visibleCells ) {
+		final Maze         maze         = new Maze( visibleCells.width, visibleCells.height );
+		final Cancellation cancellation = new Cancellation();
+		cancellation.invoke( new DivisionTask( maze, visibleCells.x, visibleCells.y, 0, 0, columns, rows, new SplittableRandom( context.getRandom().nextLong() ),
+				visibleCells, cancellation, context.getMetrics(), 1 ) );
+		return maze;
+	}
+	
+	/**
+	 * Returns the cells of a maze whose walls can touch a clip: the cells covering the clip, with a margin of a cell
+	 * (the walls on the left and top sides of a cell are the walls of its neighbors).
+	 * 
+	 * @param clip      the clip, <code>null</code> if everything is visible
+	 * @param x         x coordinate of the top left corner of the cell at <code>column</code>
+	 * @param y         y coordinate of the top left corner of the cell at <code>row</code>
+	 * @param pathWidth width of the paths (size of the cells)
+	 * @param column    column of the cell at x
+	 * @param row       row of the cell at y
+	 * @param columns   number of columns of the maze, the visible cells are not beyond it
+	 * @param rows      number of rows of the maze, the visible cells are not beyond it
+	 * @return the visible cells (might be empty); <code>null</code> if everything is visible
+	 */
+	private static Rectangle getVisibleCells( final Rectangle clip, final int x, final int y, final int pathWidth, final int column, final int row,
+			final int columns, final int rows ) {
+		if ( clip == null )
+			return null;
+		
+		final long firstColumn = Math.max( 0      , column + Math.floorDiv( (long) clip.x - x, pathWidth ) - 1 );
+		final long firstRow    = Math.max( 0      , row    + Math.floorDiv( (long) clip.y - y, pathWidth ) - 1 );
+		final long lastColumn  = Math.min( columns, column + Math.floorDiv( (long) clip.x + clip.width  - 1 - x, pathWidth ) + 1 );
+		final long lastRow     = Math.min( rows   , row    + Math.floorDiv( (long) clip.y + clip.height - 1 - y, pathWidth ) + 1 );
 		
-		if ( dx >= 2*pathWidth && dy >= 2*pathWidth )
+		return new Rectangle( (int) firstColumn, (int) firstRow, (int) Math.max( 0, lastColumn - firstColumn ), (int) Math.max( 0, lastRow - firstRow ) );
+	}
+	
+	/**
+	 * Draws the walls of a maze, merging the walls of neighbor cells into lines.<br>
+	 * Only the walls of the cells which can touch the clip of the target are drawn.
+	 * 
+	 * @param maze      maze whose walls to be drawn
+	 * @param target    target to draw to
+	 * @param x         x coordinate of the top left corner of the maze
+	 * @param y         y coordinate of the top left corner of the maze
+	 * @param pathWidth width of the paths (size of the cells)
+	 * @throws CancellationException if the current thread is interrupted
+	 */
+	public static void paintWalls( final Maze maze, final DrawTarget target, final int x, final int y, final int pathWidth ) throws CancellationException {
+		final Rectangle visibleCells = getVisibleCells( target.getClipBounds(), x, y, pathWidth, 0, 0, maze.getColumns(), maze.getRows() );
+		final int       column1      = visibleCells == null ? 0                 : visibleCells.x;
+		final int       row1         = visibleCells == null ? 0                 : visibleCells.y;
+		final int       columns      = visibleCells == null ? maze.getColumns() : visibleCells.x + visibleCells.width;
+		final int       rows         = visibleCells == null ? maze.getRows()    : visibleCells.y + visibleCells.height;
+		
+		for ( int column = column1; column < columns - 1; column++ ) {
+			if ( Thread.currentThread().isInterrupted() )
+				throw new CancellationException( "The drawing was cancelled." );
+			final int lineX = x + ( column + 1 ) * pathWidth;
+			for ( int row = row1; row < rows; row++ )
+				if ( maze.hasEastWall( column, row ) ) {
+					final int firstRow = row;
+					while ( row + 1 < rows && maze.hasEastWall( column, row + 1 ) )
+						row++;
+					target.drawLine( lineX, y + firstRow * pathWidth, lineX, y + ( row + 1 ) * pathWidth );
+				}
+		}
+		
+		for ( int row = row1; row < rows - 1; row++ ) {
+			if ( Thread.currentThread().isInterrupted() )
+				throw new CancellationException( "The drawing was cancelled." );
+			final int lineY = y + ( row + 1 ) * pathWidth;
+			for ( int column = column1; column < columns; column++ )
+				if ( maze.hasSouthWall( column, row ) ) {
+					final int firstColumn = column;
+					while ( column + 1 < columns && maze.hasSouthWall( column + 1, row ) )
+						column++;
+					target.drawLine( x + firstColumn * pathWidth, lineY, x + ( column + 1 ) * pathWidth, lineY );
+				}
+		}
+	}
+	
+	/**
+	 * Task to divide a region of the maze.<br>
+	 * Regions bigger than {@link #PARALLEL_CELLS_THRESHOLD} are forked as new tasks, smaller ones are divided serially
+	 * into a private maze of the region which is then added to the shared maze. Words of the shared maze may hold
+	 * cells of multiple regions, so it is only modified while holding its lock.<br>
+	 * The shared maze may hold an area of the divided maze only, the walls outside of it are dropped.
+	 */
+	@SuppressWarnings("serial")
+	private static class DivisionTask extends RecursiveAction {
+		
+		/** The shared maze, holding an area of the divided maze. */
+		private final Maze             maze;
+		/** Column of the divided maze at the first column of the shared maze. */
+		private final int              column;
+		/** Row of the divided maze at the first row of the shared maze.       */
+		private final int              row;
+		private final int              x1;
+		private final int              y1;
+		private final int              x2;
+		private final int              y2;
+		private final SplittableRandom random;
+		/** The cells whose walls are needed, <code>null</code> for all cells. */
+		private final Rectangle        visibleCells;
+		private final Cancellation     cancellation;
+		private final RenderMetrics    metrics;
+		private final int              depth;
+		
+		/**
+		 * Creates a new <code>DivisionTask</code>.
+		 * 
+		 * @param maze         maze to add the walls to, holding an area of the divided maze
+		 * @param column       column of the divided maze at the first column of the maze
+		 * @param row          row of the divided maze at the first row of the maze
+		 * @param x1           first column of the region
+		 * @param y1           first row of the region
+		 * @param x2           column after the last column of the region
+		 * @param y2           row after the last row of the region
+		 * @param random       random generator of the region
+		 * @param visibleCells the cells whose walls are needed, <code>null</code> for all cells
+		 * @param cancellation cancellation of the division
+		 * @param metrics      metrics of the render, <code>null</code> if the render is not measured
+		 * @param depth        recursion depth of the region
+		 */
+		public DivisionTask( final Maze maze, final int column, final int row, final int x1, final int y1, final int x2, final int y2, final SplittableRandom random,
+				final Rectangle visibleCells, final Cancellation cancellation, final RenderMetrics metrics, final int depth ) {
+			this.maze         = maze;
+			this.column       = column;
+			this.row          = row;
+			this.x1           = x1;
+			this.y1           = y1;
+			this.x2           = x2;
+			this.y2           = y2;
+			this.random       = random;
+			this.visibleCells = visibleCells;
+			this.cancellation = cancellation;
+			this.metrics      = metrics;
+			this.depth        = depth;
+		}
+		
+		@Override
+		protected void compute() {
+			final int dx = x2 - x1;
+			final int dy = y2 - y1;
+			
+			cancellation.check();
+			
+			// The walls of a region are the walls between its cells
+			if ( visibleCells != null && ( x2 <= visibleCells.x || x1 >= visibleCells.x + visibleCells.width
+					|| y2 <= visibleCells.y || y1 >= visibleCells.y + visibleCells.height ) )
+				return;
+			
+			if ( (long) dx * dy <= PARALLEL_CELLS_THRESHOLD ) {
+				final Maze regionMaze = new Maze( dx, dy );
+				new RecursionEngine( cancellation, metrics, depth ).run( new DivisionStep( random, regionMaze ), 0, 0, dx, dy );
+				synchronized ( maze ) {
+					if ( x1 >= column && y1 >= row && x2 <= column + maze.getColumns() && y2 <= row + maze.getRows() )
+						maze.addWalls( regionMaze, x1 - column, y1 - row );
+					else
+						addInnerWalls( regionMaze );
+				}
+				return;
+			}
+			
+			if ( metrics != null ) {
+				metrics.addCalls( 1 );
+				metrics.updateMaxDepth( depth );
+			}
+			
+			// Like in DivisionStep, a region narrower than 2 cells is not divided
+			if ( dx < 2 || dy < 2 )
+				return;
+			
+			final DivisionTask firstTask;
+			final DivisionTask secondTask;
+			if ( dx > dy ) {
+				final int dividerX = x1 + random.nextInt( dx - 1 ) + 1;
+				final int gatewayY = y1 + random.nextInt( dy     );
+				
+				addVerticalWall( dividerX, y1          , gatewayY );
+				addVerticalWall( dividerX, gatewayY + 1, y2       );
+				
+				firstTask  = new DivisionTask( maze, column, row, x1      , y1, dividerX, y2, random.split(), visibleCells, cancellation, metrics, depth + 1 );
+				secondTask = new DivisionTask( maze, column, row, dividerX, y1, x2      , y2, random        , visibleCells, cancellation, metrics, depth + 1 );
+			}
+			else {
+				final int dividerY = y1 + random.nextInt( dy - 1 ) + 1;
+				final int gatewayX = x1 + random.nextInt( dx     );
+				
+				addHorizontalWall( dividerY, x1          , gatewayX );
+				addHorizontalWall( dividerY, gatewayX + 1, x2       );
+				
+				firstTask  = new DivisionTask( maze, column, row, x1, y1      , x2, dividerY, random.split(), visibleCells, cancellation, metrics, depth + 1 );
+				secondTask = new DivisionTask( maze, column, row, x1, dividerY, x2, y2      , random        , visibleCells, cancellation, metrics, depth + 1 );
+			}
+			
+			firstTask.fork();
+			secondTask.compute();
+			firstTask.join();
+		}
+		
+		/**
+		 * Adds the part of a vertical wall of the divided maze inside the shared maze to the shared maze.
+		 * @param x  x coordinate of the wall
+		 * @param y1 first row of the wall
+		 * @param y2 row after the last row of the wall
+		 */
+		private void addVerticalWall( final int x, final int y1, final int y2 ) {
+			final int clippedY1 = Math.max( y1, row );
+			final int clippedY2 = Math.min( y2, row + maze.getRows() );
+			if ( x > column && x < column + maze.getColumns() && clippedY1 < clippedY2 )
+				synchronized ( maze ) {
+					maze.addVerticalWall( x - column, clippedY1 - row, clippedY2 - row );
+				}
+		}
+		
+		/**
+		 * Adds the part of a horizontal wall of the divided maze inside the shared maze to the shared maze.
+		 * @param y  y coordinate of the wall
+		 * @param x1 first column of the wall
+		 * @param x2 column after the last column of the wall
+		 */
+		private void addHorizontalWall( final int y, final int x1, final int x2 ) {
+			final int clippedX1 = Math.max( x1, column );
+			final int clippedX2 = Math.min( x2, column + maze.getColumns() );
+			if ( y > row && y < row + maze.getRows() && clippedX1 < clippedX2 )
+				synchronized ( maze ) {
+					maze.addHorizontalWall( y - row, clippedX1 - column, clippedX2 - column );
+				}
+		}
+		
+		/**
+		 * Adds the walls between the cells of the region inside the shared maze to the shared maze, cell by cell.
+		 * Must be called while holding the lock of the shared maze.
+		 * @param regionMaze the divided maze of the region
+		 */
+		private void addInnerWalls( final Maze regionMaze ) {
+			final int firstColumn = Math.max( x1, column ), lastColumn = Math.min( x2, column + maze.getColumns() );
+			final int firstRow    = Math.max( y1, row    ), lastRow    = Math.min( y2, row    + maze.getRows   () );
+			for ( int y = firstRow; y < lastRow; y++ )
+				for ( int x = firstColumn; x < lastColumn; x++ ) {
+					if ( x + 1 < lastColumn && regionMaze.hasEastWall( x - x1, y - y1 ) )
+						maze.setEastWall( x - column, y - row, true );
+					if ( y + 1 < lastRow && regionMaze.hasSouthWall( x - x1, y - y1 ) )
+						maze.setSouthWall( x - column, y - row, true );
+				}
+		}
+		
+	}
+	
+	/**
+	 * Step of the serial recursion inside a {@link DivisionTask}: divides a region into 2 by a wall with a gateway on it,
+	 * and adds the wall to the maze.
+	 */
+	private static class DivisionStep implements RecursionStep {
+		
+		private final SplittableRandom random;
+		private final Maze             maze;
+		
+		/**
+		 * Creates a new <code>DivisionStep</code>.
+		 * @param random random generator of the region
+		 * @param maze   maze to add the walls to
+		 */
+		public DivisionStep( final SplittableRandom random, final Maze maze ) {
+			this.random = random;
+			this.maze   = maze;
+		}
+		
+		@Override
+		public void execute( final int x1, final int y1, final int x2, final int y2, final RecursionEngine engine ) {
+			final int dx = x2 - x1;
+			final int dy = y2 - y1;
+			
+			if ( dx >= 2 && dy >= 2 )
+				if ( dx > dy ) {
+					final int dividerX = x1 + random.nextInt( dx - 1 ) + 1;
+					final int gatewayY = y1 + random.nextInt( dy     );
+					
+					maze.addVerticalWall( dividerX, y1          , gatewayY );
+					maze.addVerticalWall( dividerX, gatewayY + 1, y2       );
+					
+					// Scheduled in reverse order, the first half is processed first
+					engine.recurse( dividerX, y1, x2      , y2 );
+					engine.recurse( x1      , y1, dividerX, y2 );
+				}
+				else {
+					final int dividerY = y1 + random.nextInt( dy - 1 ) + 1;
+					final int gatewayX = x1 + random.nextInt( dx     );
+					
+					maze.addHorizontalWall( dividerY, x1          , gatewayX );
+					maze.addHorizontalWall( dividerY, gatewayX + 1, x2       );
+					
+					engine.recurse( x1, dividerY, x2, y2       );
+					engine.recurse( x1, y1      , x2, dividerY );
+				}
+		}
+		
+	}
+	
+	/**
+	 * Step of the recursion dividing the huge labyrinth for a region: divides a region of the huge labyrinth into 2 by a wall with a gateway on it
+	 * (with random numbers derived from the seed of the region), adds the part of the wall inside the region to the maze of the region,
+	 * and recurses into the halves intersecting the region only.
+	 */
+	private static class RegionDivisionStep implements RecursionStep {
+		
+		/** Maze of the region.                         */
+		private final Maze region;
+		private final int  column;
+		private final int  row;
+		/** Column after the last column of the region. */
+		private final int  column2;
+		/** Row after the last row of the region.       */
+		private final int  row2;
+		
+		/**
+		 * Creates a new <code>RegionDivisionStep</code>.
+		 * @param region maze of the region to add the walls to
+		 * @param column first column of the region
+		 * @param row    first row of the region
+		 */
+		public RegionDivisionStep( final Maze region, final int column, final int row ) {
+			this.region = region;
+			this.column = column;
+			this.row    = row;
+			column2     = column + region.getColumns();
+			row2        = row    + region.getRows   ();
+		}
+		
+		@Override
+		public void execute( final int x1, final int y1, final int x2, final int y2, final RecursionEngine engine ) {
+			final int dx = x2 - x1;
+			final int dy = y2 - y1;
+			
+			if ( dx < 2 || dy < 2 )
+				return;
+			
+			// The divided region intersects the region of the maze, so only the new halves have to be checked
+			final long seed = engine.getSeed();
 			if ( dx > dy ) {
-				final int dividerX = x1 + random.nextInt( dx / pathWidth - 1 ) * pathWidth + pathWidth;
-				final int gatewayY = y1 + random.nextInt( dy / pathWidth     ) * pathWidth;
+				final int dividerX = x1 + RandomHash.nextInt( RandomHash.hash( seed, 0 ), dx - 1 ) + 1;
+				final int gatewayY = y1 + RandomHash.nextInt( RandomHash.hash( seed, 1 ), dy     );
 				
-				graphics.drawLine( dividerX, y1                  , dividerX, gatewayY );
-				graphics.drawLine( dividerX, gatewayY + pathWidth, dividerX, y2       );
+				if ( dividerX > column && dividerX < column2 ) {
+					addVerticalWall( dividerX, y1          , gatewayY );
+					addVerticalWall( dividerX, gatewayY + 1, y2       );
+				}
 				
-				paint( x1      , y1, dividerX, y2 );
-				paint( dividerX, y1, x2      , y2 );
+				// Scheduled in reverse order, the first half is processed first
+				if ( dividerX < column2 )
+					engine.recurse( dividerX, y1, x2      , y2, RandomHash.hash( seed, 3 ) );
+				if ( dividerX > column )
+					engine.recurse( x1      , y1, dividerX, y2, RandomHash.hash( seed, 2 ) );
 			}
 			else {
-				final int dividerY = y1 + random.nextInt( dy / pathWidth - 1 ) * pathWidth + pathWidth;
-				final int gatewayX = x1 + random.nextInt( dx / pathWidth     ) * pathWidth;
+				final int dividerY = y1 + RandomHash.nextInt( RandomHash.hash( seed, 0 ), dy - 1 ) + 1;
+				final int gatewayX = x1 + RandomHash.nextInt( RandomHash.hash( seed, 1 ), dx     );
 				
-				graphics.drawLine( x1                  , dividerY, gatewayX, dividerY );
-				graphics.drawLine( gatewayX + pathWidth, dividerY, x2      , dividerY );
+				if ( dividerY > row && dividerY < row2 ) {
+					addHorizontalWall( dividerY, x1          , gatewayX );
+					addHorizontalWall( dividerY, gatewayX + 1, x2       );
+				}
 				
-				paint( x1, y1      , x2, dividerY );
-				paint( x1, dividerY, x2, y2       );
+				if ( dividerY < row2 )
+					engine.recurse( x1, dividerY, x2, y2      , RandomHash.hash( seed, 3 ) );
+				if ( dividerY > row )
+					engine.recurse( x1, y1      , x2, dividerY, RandomHash.hash( seed, 2 ) );
 			}
+		}
+		
+		/**
+		 * Adds the part of a vertical wall of the huge labyrinth inside the region to the maze of the region.
+		 * @param x  x coordinate of the wall, inside the region
+		 * @param y1 first row of the wall
+		 * @param y2 row after the last row of the wall
+		 */
+		private void addVerticalWall( final int x, final int y1, final int y2 ) {
+			final int clippedY1 = Math.max( y1, row  );
+			final int clippedY2 = Math.min( y2, row2 );
+			if ( clippedY1 < clippedY2 )
+				region.addVerticalWall( x - column, clippedY1 - row, clippedY2 - row );
+		}
+		
+		/**
+		 * Adds the part of a horizontal wall of the huge labyrinth inside the region to the maze of the region.
+		 * @param y  y coordinate of the wall, inside the region
+		 * @param x1 first column of the wall
+		 * @param x2 column after the last column of the wall
+		 */
+		private void addHorizontalWall( final int y, final int x1, final int x2 ) {
+			final int clippedX1 = Math.max( x1, column  );
+			final int clippedX2 = Math.min( x2, column2 );
+			if ( clippedX1 < clippedX2 )
+				region.addHorizontalWall( y - row, clippedX1 - column, clippedX2 - column );
+		}
+		
+	}
+	
+	/**
+	 * A bounded cache of the regions of a huge labyrinth, for scrolling viewports.<br>
+	 * The huge labyrinth is split into square tiles; the maze of a tile also holds the first column and row of the next tiles,
+	 * so the tiles together hold all walls (see {@link Labyrinth#generateRegion(int, int, int, int)}).
+	 * The seed of the huge labyrinth is drawn once, when the cache is created, so the tiles are consistent even with
+	 * a new random seed for every paint. The least recently used tiles are evicted. Thread-safe.
+	 */
+	public static class RegionCache {
+		
+		/** Seed of the huge labyrinth.                  */
+		private final long seed;
+		/** Width of the paths.                           */
+		private final int  pathWidth;
+		/** Number of columns and rows of the tiles (without the overlapping column and row). */
+		private final int  tileSize;
+		
+		/** The cached tiles in least recently used order, keyed by the tile column in the high and the tile row in the low 32 bits. */
+		private final LinkedHashMap< Long, Maze > tiles;
+		
+		/**
+		 * Creates a new <code>RegionCache</code>.
+		 * @param labyrinth        the labyrinth whose huge labyrinth to be cached
+		 * @param renderProperties properties of the renders, <code>null</code> means the properties of the labyrinth
+		 * @param tileSize         number of columns and rows of the tiles
+		 * @param maxTiles         max number of cached tiles
+		 * @throws IllegalArgumentException thrown if illegal property value is specified, or the tile size or the max number of tiles is not positive
+		 */
+		public RegionCache( final Labyrinth labyrinth, final Properties renderProperties, final int tileSize, final int maxTiles ) throws IllegalArgumentException {
+			if ( tileSize <= 0 || maxTiles <= 0 )
+				throw new IllegalArgumentException( "Invalid tile size or max tiles: " + tileSize + ", " + maxTiles + " (must be positive)" );
+			
+			final RenderContext< Parameters > context = labyrinth.createContext( null, null, renderProperties );
+			context.finish( true );
+			
+			seed          = context.getRandom().nextLong();
+			pathWidth     = context.getParameters().pathWidth;
+			this.tileSize = tileSize;
+			tiles         = new LinkedHashMap< Long, Maze >( 16, 0.75f, true ) {
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected boolean removeEldestEntry( final Map.Entry< Long, Maze > eldest ) {
+					return size() > maxTiles;
+				}
+			};
+		}
+		
+		/**
+		 * Returns the maze of a tile: the region of <code>tileSize + 1</code> columns and rows at
+		 * (<code>tileColumn * tileSize</code>, <code>tileRow * tileSize</code>), clipped to the huge labyrinth.
+		 * The tile is generated if it is not cached.
+		 * @param tileColumn column of the tile
+		 * @param tileRow    row of the tile
+		 * @return the maze of the tile
+		 * @throws IllegalArgumentException if the tile is not inside the huge labyrinth
+		 */
+		public synchronized Maze getTile( final int tileColumn, final int tileRow ) throws IllegalArgumentException {
+			final Long key  = (long) tileColumn << 32 | tileRow & 0xffffffffL;
+			Maze       tile = tiles.get( key );
+			if ( tile == null ) {
+				final long column = (long) tileColumn * tileSize;
+				final long row    = (long) tileRow    * tileSize;
+				if ( tileColumn < 0 || tileRow < 0 || column >= WORLD_SIZE || row >= WORLD_SIZE )
+					throw new IllegalArgumentException( "Invalid tile: " + tileColumn + "," + tileRow );
+				tile = generateRegion( null, seed, (int) column, (int) row, (int) Math.min( tileSize + 1, WORLD_SIZE - column ), (int) Math.min( tileSize + 1, WORLD_SIZE - row ) );
+				tiles.put( key, tile );
+			}
+			return tile;
+		}
+		
+		/**
+		 * Paints a viewport of the huge labyrinth from the tiles: the walls of the cells covering an area, starting with a column and a row.<br>
+		 * The result is the same as painting the labyrinth in viewport mode with the seed of the cache.
+		 * @param target target to draw to
+		 * @param column first column of the viewport
+		 * @param row    first row of the viewport
+		 * @param width  width of the area
+		 * @param height height of the area
+		 * @throws IllegalArgumentException if the first column or row is not inside the huge labyrinth
+		 */
+		public void paintViewport( final DrawTarget target, final int column, final int row, final int width, final int height ) throws IllegalArgumentException {
+			if ( column < 0 || row < 0 || column >= WORLD_SIZE || row >= WORLD_SIZE )
+				throw new IllegalArgumentException( "Invalid viewport: " + column + "," + row + " (must be inside the " + WORLD_SIZE + "x" + WORLD_SIZE + " labyrinth)" );
+			
+			// Tiles of the cells covering the area with a margin of a cell, like in viewport mode
+			final long firstColumn = Math.max( 0, column - 1 );
+			final long firstRow    = Math.max( 0, row    - 1 );
+			final long lastColumn  = Math.min( WORLD_SIZE - 1, (long) column + ( width  + pathWidth - 1 ) / pathWidth );
+			final long lastRow     = Math.min( WORLD_SIZE - 1, (long) row    + ( height + pathWidth - 1 ) / pathWidth );
+			
+			for ( int tileRow = (int) ( firstRow / tileSize ); tileRow <= lastRow / tileSize; tileRow++ )
+				for ( int tileColumn = (int) ( firstColumn / tileSize ); tileColumn <= lastColumn / tileSize; tileColumn++ )
+					paintWalls( getTile( tileColumn, tileRow ), target, (int) ( ( (long) tileColumn * tileSize - column ) * pathWidth ),
+							(int) ( ( (long) tileRow * tileSize - row ) * pathWidth ), pathWidth );
+		}
+		
 	}
 	
 }
@@ -1,21 +1,63 @@
 package hu.belicza.andras.recursion.examples;
 
+import hu.belicza.andras.recursion.model.AnimatedAlgorithm;
+import hu.belicza.andras.recursion.model.DrawTarget;
+import hu.belicza.andras.recursion.model.AnimationFrame;
+import hu.belicza.andras.recursion.model.FrameRenderer;
+import hu.belicza.andras.recursion.model.ParameterDescriptor;
+import hu.belicza.andras.recursion.model.ParameterValues;
 import hu.belicza.andras.recursion.model.RandomBaseAlgorithm;
+import hu.belicza.andras.recursion.model.RandomHash;
+import hu.belicza.andras.recursion.model.RecursionEngine;
+import hu.belicza.andras.recursion.model.RecursionStep;
+import hu.belicza.andras.recursion.model.RenderContext;
+import hu.belicza.andras.recursion.model.VectorAlgorithm;
 
-import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
 
 /**
- * A simple recursive algorithm to generate lightnings.
+ * A simple recursive algorithm to generate lightnings.<br>
+ * Each segment derives its random numbers from its own seed (derived from the seed of its parent segment), so the bolt
+ * does not depend on the order the segments are divided in: it can also be refined progressively, level by level
+ * (see {@link Refinement}), converging to the same bolt.<br>
+ * As an animated algorithm, each frame is a new bolt (see {@link #createFrameRenderer(int, int, Properties)}).
  * 
  * @author Belicza Andras
  */
-public class Lightning extends RandomBaseAlgorithm {
+public class Lightning extends RandomBaseAlgorithm< Lightning.Parameters > implements VectorAlgorithm, AnimatedAlgorithm {
 	
-	private static final String PROPERTY_GRANULARITY = "granularity";
-	private static final String PROPERTY_DISPERSION  = "dispersion";
+	private static final ParameterDescriptor< Integer > GRANULARITY = ParameterDescriptor.ofInteger( "granularity", 20  , 1   , null, "max length (dx + dy) of the drawn segments" );
+	private static final ParameterDescriptor< Float   > DISPERSION  = ParameterDescriptor.ofFloat  ( "dispersion" , 0.3f, 0.0f, null, "max relative deviation of the internal points" );
+	private static final ParameterDescriptor< Integer > TIME_BUDGET = ParameterDescriptor.ofInteger( "timeBudget" , 0   , 0   , null, "max time of refining the bolt level by level in milliseconds, 0 means a full render" );
 	
-	private int   granularity;
-	private float dispersion;
+	/** Number of segments to be divided between checking the deadline of a refinement, must be a power of 2. */
+	private static final int DEADLINE_CHECK_PERIOD = 1 << 10;
+	
+	/**
+	 * Immutable parameter snapshot of a render.
+	 */
+	public static class Parameters {
+		
+		private final int   granularity;
+		private final float dispersion;
+		private final int   timeBudget;
+		
+		/**
+		 * Creates a new <code>Parameters</code>.
+		 * @param granularity max length (dx + dy) of the drawn segments
+		 * @param dispersion  max relative deviation of the internal points
+		 * @param timeBudget  max time of refining the bolt level by level in milliseconds, 0 means a full render
+		 */
+		public Parameters( final int granularity, final float dispersion, final int timeBudget ) {
+			this.granularity = granularity;
+			this.dispersion  = dispersion;
+			this.timeBudget  = timeBudget;
+		}
+		
+	}
 	
 	public Lightning() {
 		super( "Lightning", "András Belicza", "1.0",
@@ -23,42 +65,403 @@ public class Lightning extends RandomBaseAlgorithm {
 			 + "You can see this algorithm in action in the Qpac project:\n"
 			 + "http://code.google.com/p/qpac" );
 		
-		defaultProperties.setProperty( PROPERTY_GRANULARITY, "20"   );
-		defaultProperties.setProperty( PROPERTY_DISPERSION , "0.3f" );
+		addParameter( GRANULARITY );
+		addParameter( DISPERSION  );
+		addParameter( TIME_BUDGET );
+	}
+	
+	@Override
+	protected Parameters createParameters( final ParameterValues values ) {
+		return new Parameters( values.get( GRANULARITY ), values.get( DISPERSION ), values.get( TIME_BUDGET ) );
+	}
+	
+	@Override
+	public void paint( final DrawTarget target, final int width, final int height ) throws IllegalArgumentException {
+		paint( target, width, height, null );
+	}
+	
+	@Override
+	public void paint( final DrawTarget target, final int width, final int height, final Properties renderProperties ) throws IllegalArgumentException {
+		render( createContext( null, target, renderProperties ), width, height );
 	}
 	
 	@Override
-	protected void validateProperties() throws IllegalArgumentException {
-		super.validateProperties();
+	protected void paint( final RenderContext< Parameters > context, final int width, final int height ) {
+		if ( context.getParameters().timeBudget == 0 ) {
+			paint( context, 0, 0, width - 1, height - 1 );
+			return;
+		}
+		
+		final Refinement refinement = new Refinement( context.getParameters(), context.getRandom().nextLong(), 0, 0, width - 1, height - 1 );
+		refinement.refine( context.getParameters().timeBudget * 1000000L );
+		refinement.draw( context.getTarget() );
 		
-		try {
-			granularity = Integer.parseInt  ( properties.getProperty( PROPERTY_GRANULARITY ) );
-			dispersion  = Float  .parseFloat( properties.getProperty( PROPERTY_DISPERSION  ) );
+		if ( context.getMetrics() != null ) {
+			context.getMetrics().addCalls( refinement.divisionCount );
+			context.getMetrics().updateMaxDepth( refinement.level );
 		}
-		catch ( final Exception e ) {
-			throw new IllegalArgumentException( e.getMessage(), e );
+	}
+	
+	/**
+	 * Starts a progressive refinement of a lightning between the corners of an area.<br>
+	 * The refinement is not measured by the metrics.
+	 * @param width  width of the area
+	 * @param height height of the area
+	 * @return the refinement, at level 0
+	 * @throws IllegalArgumentException thrown if illegal property value is specified
+	 */
+	public Refinement startRefinement( final int width, final int height ) throws IllegalArgumentException {
+		return startRefinement( width, height, null );
+	}
+	
+	/**
+	 * Starts a progressive refinement of a lightning between the corners of an area, with the properties of a render.<br>
+	 * The refinement is not measured by the metrics.
+	 * @param width            width of the area
+	 * @param height           height of the area
+	 * @param renderProperties properties of the render, <code>null</code> means the properties of the algorithm
+	 * @return the refinement, at level 0
+	 * @throws IllegalArgumentException thrown if illegal property value is specified
+	 */
+	public Refinement startRefinement( final int width, final int height, final Properties renderProperties ) throws IllegalArgumentException {
+		final RenderContext< Parameters > context = createContext( null, null, renderProperties );
+		return new Refinement( context.getParameters(), context.getRandom().nextLong(), 0, 0, width - 1, height - 1 );
+	}
+	
+	/**
+	 * Paints a lightning between 2 points.<br>
+	 * The subtrees of the recursion which cannot touch the clip of the target are skipped (see {@link DivisionStep#setClip(Rectangle)});
+	 * the seeds of the segments are derived from the seeds of their parents, so the visible part is identical to the same part of a full render.
+	 * @param context context of the render
+	 * @param x1      x coordinate of the first point
+	 * @param y1      y coordinate of the first point
+	 * @param x2      x coordinate of the second point
+	 * @param y2      y coordinate of the second point
+	 */
+	public void paint( final RenderContext< Parameters > context, final int x1, final int y1, final int x2, final int y2 ) {
+		final DivisionStep step = new DivisionStep( context.getParameters(), context.getTarget() );
+		step.setClip( context.getTarget().getClipBounds() );
+		new RecursionEngine( null, context.getMetrics(), 1 ).run( step, x1, y1, x2, y2, context.getRandom().nextLong() );
+	}
+	
+	/**
+	 * Step of the recursion: divides a line segment into 2 by a random internal point.<br>
+	 * The segment is drawn if it is short enough (or cannot be divided any further).
+	 */
+	private static class DivisionStep implements RecursionStep {
+		
+		private final Parameters parameters;
+		/** Target to draw to, can be changed between executions. */
+		private DrawTarget       target;
+		/** Clip of the target, <code>null</code> if no subtrees are skipped. */
+		private Rectangle        clip;
+		
+		/**
+		 * Creates a new <code>DivisionStep</code>.
+		 * @param parameters parameters of the render
+		 * @param target     target to draw to
+		 */
+		public DivisionStep( final Parameters parameters, final DrawTarget target ) {
+			this.parameters = parameters;
+			this.target     = target;
 		}
+		
+		/**
+		 * Sets the clip of the target: the subtrees whose segments cannot touch it are skipped.<br>
+		 * If the dispersion is not greater than 1, the internal points are between the end points of their segments,
+		 * so the bolt of a segment stays in the bounding box of the segment. Else no subtrees are skipped.
+		 * @param clip clip of the target, <code>null</code> if everything is visible
+		 */
+		public void setClip( final Rectangle clip ) {
+			this.clip = parameters.dispersion <= 1.0f ? clip : null;
+		}
+		
+		@Override
+		public void execute( final int x1, final int y1, final int x2, final int y2, final RecursionEngine engine ) {
+			if ( clip != null && ( Math.max( x1, x2 ) < clip.x || Math.min( x1, x2 ) >= clip.x + clip.width
+					|| Math.max( y1, y2 ) < clip.y || Math.min( y1, y2 ) >= clip.y + clip.height ) )
+				return;
+			
+			final long seed      = engine.getSeed();
+			final int  internalX = getInternalX( parameters, seed, x1, x2 );
+			final int  internalY = getInternalY( parameters, seed, y1, y2 );
+			
+			if ( isLast( parameters, x1, y1, x2, y2 ) ) {
+				target.drawLine( x1, y1, internalX, internalY );
+				target.drawLine( internalX, internalY, x2, y2 );
+			}
+			else {
+				// Scheduled in reverse order, the first half is processed first
+				engine.recurse( internalX, internalY, x2, y2, RandomHash.hash( seed, 3 ) );
+				engine.recurse( x1, y1, internalX, internalY, RandomHash.hash( seed, 2 ) );
+			}
+		}
+		
 	}
 	
+	/**
+	 * Creates a renderer of an animation whose frames are new bolts between the corners of the frames.<br>
+	 * The bolts are always rendered entirely (the <code>timeBudget</code> property is ignored).
+	 * @param width            width of the frames
+	 * @param height           height of the frames
+	 * @param renderProperties properties of the animation, <code>null</code> means the properties of the algorithm
+	 * @return a renderer of the frames
+	 * @throws IllegalArgumentException thrown if illegal property value is specified
+	 */
 	@Override
-	public void paint( final Graphics graphics, final int width, final int height ) throws IllegalArgumentException {
-		super.paint( graphics, width, height );
+	public FrameRenderer createFrameRenderer( final int width, final int height, final Properties renderProperties ) throws IllegalArgumentException {
+		final RenderContext< Parameters > context = createContext( null, null, renderProperties );
+		final long                        seed    = context.getRandom().nextLong();
 		
-		paint( 0, 0, width - 1, height - 1 );
+		return new FrameRenderer() {
+			/** Engine of the recursion, reused from frame to frame.             */
+			private final RecursionEngine engine = new RecursionEngine();
+			private final DivisionStep    step   = new DivisionStep( context.getParameters(), null );
+			/** Random generator deriving the seeds of the bolts like a render.  */
+			private final Random          random = context.getRandom();
+			
+			@Override
+			public void renderFrame( final AnimationFrame frame, final long index ) {
+				random.setSeed( RandomHash.hash( seed, index ) );
+				step.target = frame.getTarget();
+				engine.run( step, 0, 0, width - 1, height - 1, random.nextLong() );
+			}
+		};
+	}
+	
+	/**
+	 * Returns the x coordinate of the random internal point dividing a segment.
+	 * @param parameters parameters of the render
+	 * @param seed       seed of the segment
+	 * @param x1         x coordinate of the first point of the segment
+	 * @param x2         x coordinate of the second point of the segment
+	 * @return the x coordinate of the internal point
+	 */
+	private static int getInternalX( final Parameters parameters, final long seed, final int x1, final int x2 ) {
+		return x1 + RandomHash.nextInt( RandomHash.hash( seed, 0 ), (int) ( ( x2 - x1 ) * parameters.dispersion ) + 1 );
+	}
+	
+	/**
+	 * Returns the y coordinate of the random internal point dividing a segment.
+	 * @param parameters parameters of the render
+	 * @param seed       seed of the segment
+	 * @param y1         y coordinate of the first point of the segment
+	 * @param y2         y coordinate of the second point of the segment
+	 * @return the y coordinate of the internal point
+	 */
+	private static int getInternalY( final Parameters parameters, final long seed, final int y1, final int y2 ) {
+		return y1 + RandomHash.nextInt( RandomHash.hash( seed, 1 ), (int) ( ( y2 - y1 ) * parameters.dispersion ) + 1 );
+	}
+	
+	/**
+	 * Tells if a segment is divided the last time: it is short enough, or it cannot be divided any further
+	 * (if both ranges of the internal point are 1, the internal point is the first point, dividing would result in the same segment again).
+	 * @param parameters parameters of the render
+	 * @param x1         x coordinate of the first point of the segment
+	 * @param y1         y coordinate of the first point of the segment
+	 * @param x2         x coordinate of the second point of the segment
+	 * @param y2         y coordinate of the second point of the segment
+	 * @return true if the 2 halves of the segment are to be drawn; false if they are to be divided further
+	 */
+	private static boolean isLast( final Parameters parameters, final int x1, final int y1, final int x2, final int y2 ) {
+		return x2 - x1 + y2 - y1 < parameters.granularity
+				|| (int) ( ( x2 - x1 ) * parameters.dispersion ) == 0 && (int) ( ( y2 - y1 ) * parameters.dispersion ) == 0;
 	}
 	
-	public void paint( final int x1, final int y1, final int x2, final int y2 ) {
-		final int internalX = x1 + random.nextInt( (int) ( ( x2 - x1 ) * dispersion ) + 1 );
-		final int internalY = y1 + random.nextInt( (int) ( ( y2 - y1 ) * dispersion ) + 1 );
+	/**
+	 * Progressive refinement of a lightning: the segments of the bolt are divided breadth-first, one level at a time.<br>
+	 * Level 0 is the straight segment between the end points; after the last level the bolt is identical to the bolt of a full render
+	 * with the same seed. Refining can be stopped after any level, the bolt of the last completed level can always be drawn.<br>
+	 * Segments divided the last time are moved to the final lines, so a level only costs the segments still to be divided.<br>
+	 * Not thread-safe.
+	 */
+	public static class Refinement {
 		
-		if ( x2 - x1 + y2 - y1 < granularity ) {
-			graphics.drawLine( x1, y1, internalX, internalY );
-			graphics.drawLine( internalX, internalY, x2, y2 );
+		private final Parameters parameters;
+		
+		/** Segments to be divided: x1, y1, x2, y2 of the first segment, then of the second segment etc.   */
+		private int[]  segments;
+		/** Seeds of the segments to be divided.                                                       */
+		private long[] seeds;
+		/** Number of segments to be divided.                                                          */
+		private int    segmentCount;
+		/** Final lines (not divided any further), 4 coordinates per line like the segments.           */
+		private int[]  lines = new int[ 64 ];
+		/** Number of final lines.                                                                     */
+		private int    lineCount;
+		/** Number of completed levels.                                                                */
+		private int    level;
+		/** Number of divisions of the completed levels.                                               */
+		private long   divisionCount;
+		
+		/** Segments of the next level.          */
+		private int[]  nextSegments = new int[ 0 ];
+		/** Seeds of the segments of the next level. */
+		private long[] nextSeeds    = new long[ 0 ];
+		
+		/**
+		 * Creates a new <code>Refinement</code>.
+		 * @param parameters parameters of the render
+		 * @param seed       seed of the bolt
+		 * @param x1         x coordinate of the first point
+		 * @param y1         y coordinate of the first point
+		 * @param x2         x coordinate of the second point
+		 * @param y2         y coordinate of the second point
+		 */
+		public Refinement( final Parameters parameters, final long seed, final int x1, final int y1, final int x2, final int y2 ) {
+			this.parameters = parameters;
+			segments     = new int[] { x1, y1, x2, y2 };
+			seeds        = new long[] { seed };
+			segmentCount = 1;
 		}
-		else {
-			paint( x1, y1, internalX, internalY );
-			paint( internalX, internalY, x2, y2 );
+		
+		/**
+		 * Refines the bolt with the next level.
+		 * @return true if a level was refined; false if the bolt is already complete
+		 */
+		public boolean refineLevel() {
+			return refineLevel( 0, false );
 		}
+		
+		/**
+		 * Refines the bolt level by level for a time budget.
+		 * @param budgetNanos time budget in nanoseconds
+		 * @return the number of completed levels
+		 * @see #refineUntil(long)
+		 */
+		public int refine( final long budgetNanos ) {
+			return refineUntil( System.nanoTime() + budgetNanos );
+		}
+		
+		/**
+		 * Refines the bolt level by level until it is complete or a deadline passes.<br>
+		 * A level not completed by the deadline is discarded.
+		 * @param deadlineNanos deadline (see {@link System#nanoTime()})
+		 * @return the number of completed levels
+		 */
+		public int refineUntil( final long deadlineNanos ) {
+			while ( System.nanoTime() - deadlineNanos < 0 && refineLevel( deadlineNanos, true ) )
+				;
+			return level;
+		}
+		
+		/**
+		 * Refines the bolt with the next level.
+		 * @param deadlineNanos deadline of the level (see {@link System#nanoTime()})
+		 * @param checkDeadline tells if the deadline is to be checked
+		 * @return true if a level was refined; false if the bolt is already complete or the deadline passed
+		 */
+		private boolean refineLevel( final long deadlineNanos, final boolean checkDeadline ) {
+			if ( segmentCount == 0 )
+				return false;
+			
+			// Each segment is divided into 2
+			if ( nextSeeds.length < 2 * segmentCount ) {
+				nextSegments = new int [ 8 * segmentCount ];
+				nextSeeds    = new long[ 2 * segmentCount ];
+			}
+			
+			final int firstLineCount   = lineCount;
+			int       nextSegmentCount = 0;
+			for ( int i = 0; i < segmentCount; i++ ) {
+				if ( checkDeadline && ( i & DEADLINE_CHECK_PERIOD - 1 ) == DEADLINE_CHECK_PERIOD - 1 && System.nanoTime() - deadlineNanos >= 0 ) {
+					lineCount = firstLineCount;
+					return false;
+				}
+				
+				final int  x1        = segments[ 4*i     ];
+				final int  y1        = segments[ 4*i + 1 ];
+				final int  x2        = segments[ 4*i + 2 ];
+				final int  y2        = segments[ 4*i + 3 ];
+				final long seed      = seeds[ i ];
+				final int  internalX = getInternalX( parameters, seed, x1, x2 );
+				final int  internalY = getInternalY( parameters, seed, y1, y2 );
+				
+				if ( isLast( parameters, x1, y1, x2, y2 ) ) {
+					addLine( x1, y1, internalX, internalY );
+					addLine( internalX, internalY, x2, y2 );
+				}
+				else {
+					int base = 4 * nextSegmentCount;
+					nextSegments[ base++ ] = x1;
+					nextSegments[ base++ ] = y1;
+					nextSegments[ base++ ] = internalX;
+					nextSegments[ base++ ] = internalY;
+					nextSegments[ base++ ] = internalX;
+					nextSegments[ base++ ] = internalY;
+					nextSegments[ base++ ] = x2;
+					nextSegments[ base   ] = y2;
+					nextSeeds[ nextSegmentCount++ ] = RandomHash.hash( seed, 2 );
+					nextSeeds[ nextSegmentCount++ ] = RandomHash.hash( seed, 3 );
+				}
+			}
+			
+			divisionCount += segmentCount;
+			
+			final int[]  segments = this.segments;
+			final long[] seeds    = this.seeds;
+			this.segments = nextSegments;
+			this.seeds    = nextSeeds;
+			nextSegments  = segments;
+			nextSeeds     = seeds;
+			segmentCount  = nextSegmentCount;
+			level++;
+			
+			return true;
+		}
+		
+		/**
+		 * Adds a final line.
+		 * @param x1 x coordinate of the first point of the line
+		 * @param y1 y coordinate of the first point of the line
+		 * @param x2 x coordinate of the second point of the line
+		 * @param y2 y coordinate of the second point of the line
+		 */
+		private void addLine( final int x1, final int y1, final int x2, final int y2 ) {
+			if ( 4 * lineCount == lines.length )
+				lines = Arrays.copyOf( lines, lines.length * 2 );
+			int base = 4 * lineCount++;
+			lines[ base++ ] = x1;
+			lines[ base++ ] = y1;
+			lines[ base++ ] = x2;
+			lines[ base   ] = y2;
+		}
+		
+		/**
+		 * Draws the bolt of the last completed level: the final lines and the segments still to be divided.
+		 * @param target target to draw to
+		 */
+		public void draw( final DrawTarget target ) {
+			for ( int i = 4 * lineCount - 4; i >= 0; i -= 4 )
+				target.drawLine( lines[ i ], lines[ i + 1 ], lines[ i + 2 ], lines[ i + 3 ] );
+			for ( int i = 4 * segmentCount - 4; i >= 0; i -= 4 )
+				target.drawLine( segments[ i ], segments[ i + 1 ], segments[ i + 2 ], segments[ i + 3 ] );
+		}
+		
+		/**
+		 * Returns the number of completed levels.
+		 * @return the number of completed levels
+		 */
+		public int getLevel() {
+			return level;
+		}
+		
+		/**
+		 * Returns the number of lines drawn by {@link #draw(DrawTarget)}.
+		 * @return the number of lines drawn by {@link #draw(DrawTarget)}
+		 */
+		public int getLineCount() {
+			return lineCount + segmentCount;
+		}
+		
+		/**
+		 * Tells if the bolt is complete (identical to the bolt of a full render).
+		 * @return true if the bolt is complete; false otherwise
+		 */
+		public boolean isComplete() {
+			return segmentCount == 0;
+		}
+		
 	}
 	
 }
@@ -1,31 +1,306 @@
 package hu.belicza.andras.recursion.examples;
 
+import hu.belicza.andras.recursion.model.AnimatedAlgorithm;
+import hu.belicza.andras.recursion.model.Cancellation;
+import hu.belicza.andras.recursion.model.AnimationFrame;
+import hu.belicza.andras.recursion.model.FrameRenderer;
+import hu.belicza.andras.recursion.model.HeightField;
+import hu.belicza.andras.recursion.model.ParameterDescriptor;
+import hu.belicza.andras.recursion.model.ParameterValues;
 import hu.belicza.andras.recursion.model.RandomBaseAlgorithm;
+import hu.belicza.andras.recursion.model.RandomHash;
+import hu.belicza.andras.recursion.model.RasterAlgorithm;
+import hu.belicza.andras.recursion.model.RenderContext;
+import hu.belicza.andras.recursion.model.RenderMetrics;
+import hu.belicza.andras.recursion.model.TileSink;
+import hu.belicza.andras.recursion.model.TiledAlgorithm;
 
 import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RecursiveAction;
 
 /**
- * A recursive algorithm to generate terrain and draw its relief map.
+ * A recursive algorithm to generate terrain and draw its relief map.<br>
+ * The generated terrain is also available as a {@link HeightField} (see {@link #generateHeightField(int, int, boolean)}),
+ * which can be colored in a separate pass (see {@link #colorHeightField(HeightField)}).<br>
+ * The colors of the relief map are specified by the <code>palette</code> property (see {@link Palette}). If the <code>retainHeights</code> property
+ * is true and the random seed is fixed, the heights of the last painted map are retained, so if a render only changes the palette (or other properties
+ * not affecting the heights), the retained heights are recolored in a single pass instead of generating the terrain again.<br>
+ * The terrain is a world of sectors: the base corner heights of the sectors and the random dispersion of the points are hashed
+ * from the seed of the terrain and their coordinates (see {@link RandomHash}), so any region of the world can be generated on its own
+ * (see {@link #generateRegion(int, int, int, int)}), in any order or in parallel, with bit-identical results.<br>
+ * As an animated algorithm, each frame is a new terrain (see {@link #createFrameRenderer(int, int, Properties)}).
  * 
  * @author Belicza Andras
  */
-public class Terrain extends RandomBaseAlgorithm {
+public class Terrain extends RandomBaseAlgorithm< Terrain.Parameters > implements RasterAlgorithm, TiledAlgorithm, AnimatedAlgorithm {
 	
-	private static final String PROPERTY_MIN_HEIGHT  = "minHeight";
-	private static final String PROPERTY_MAX_HEIGHT  = "maxHeight";
-	private static final String PROPERTY_SECTOR_SIZE = "sectorSize";
-	private static final String PROPERTY_DISPERSION  = "dispersion";
+	private static final ParameterDescriptor< Float   > MIN_HEIGHT  = ParameterDescriptor.ofFloat  ( "minHeight" , -800.0f, null, null, "min height of the terrain" );
+	private static final ParameterDescriptor< Float   > MAX_HEIGHT  = ParameterDescriptor.ofFloat  ( "maxHeight" , 2000.0f, null, null, "max height of the terrain" );
+	private static final ParameterDescriptor< Integer > SECTOR_SIZE = ParameterDescriptor.ofInteger( "sectorSize", 250    , 1   , null, "size of the sectors" );
+	private static final ParameterDescriptor< Float   > DISPERSION  = ParameterDescriptor.ofFloat  ( "dispersion", 30.0f  , 0.0f, null, "max random deviation of the heights of the points" );
+	private static final ParameterDescriptor< Boolean > PARALLEL    = ParameterDescriptor.ofBoolean( "parallel"  , true   , "tells if the sectors have to be generated on all cores" );
+	private static final ParameterDescriptor< Boolean > ROW_KERNEL  = ParameterDescriptor.ofBoolean( "rowKernel" , true   , "tells if the heights are generated row by row with loops the JIT compiler can vectorize" );
+	private static final ParameterDescriptor< Palette > PALETTE     = new ParameterDescriptor< Palette >( "palette", Palette.class,
+			Palette.parse( "-800:271770,0:0092dd,0:00923f,600:7ec380,900:b8da8d,1300:fffcd4,1600:bb815c,2000:5a3a25" ), null, null,
+			"colors of the relief map at heights, comma separated height:rrggbb stops in increasing order of heights" ) {
+		@Override
+		protected Palette parseValue( final String value ) {
+			return Palette.parse( value );
+		}
+	};
+	private static final ParameterDescriptor< Boolean > RETAIN_HEIGHTS = ParameterDescriptor.ofBoolean( "retainHeights", false,
+			"tells if the heights of the last painted map are kept (if the random seed is fixed), so a render changing only the palette recolors them instead of generating the terrain again" );
 	
-	/** Values of heights where the relief map changes colors at.      */
-	private static final float[] HEIGHT_STONES   = new float[] { -800.0f                 , 0.0f                    , 0.0f                   , 600.0f                    , 900.0f                    , 1300.0f                  , 1600.0f                   , 2000.0f                , Float.MAX_VALUE              };
-	/** Values of colors at the height stones to be used for landscape */
-	private static final Color[] STONE_COLORS    = new Color[] { new Color( 39, 23, 112 ), new Color( 0, 146, 221 ), new Color( 0, 146, 63 ), new Color( 126, 195, 128 ), new Color( 184, 218, 141 ), new Color( 255, 252, 212 ), new Color( 187, 129, 92 ), new Color( 90, 58, 37 ), Color.BLACK                  };
+	/** Number of quantized heights in the height-to-color lookup table. */
+	private static final int     HEIGHT_COLOR_TABLE_SIZE = 4096;
+	/** Marks the cells of the height-to-color lookup table whose colors have to be calculated exactly. */
+	private static final int     EXACT_COLOR_MARKER      = 0;
+	/** Number of points below which a range of sectors is painted serially instead of being split into tasks. */
+	private static final int     SERIAL_PAINT_THRESHOLD  = 1 << 16;
+	/** Counter of the seed of the base corner heights, derived from the seed of the terrain. */
+	private static final int     CORNER_STREAM           = 0;
+	/** Counter of the seed of the random dispersion of the points, derived from the seed of the terrain. */
+	private static final int     DISPERSION_STREAM       = 1;
 	
-	private float minHeight;
-	private float maxHeight;
-	private int   sectorSize;
-	private float dispersion;
+	/**
+	 * Immutable parameter snapshot of a render, including the height-to-color lookup table of the height limits.
+	 */
+	public static class Parameters {
+		
+		private final float   minHeight;
+		private final float   maxHeight;
+		private final int     sectorSize;
+		private final float   dispersion;
+		private final boolean parallel;
+		private final boolean rowKernel;
+		private final Palette palette;
+		private final boolean retainHeights;
+		
+		/** Weights of the interpolation between the sides of a sector at the x coordinates of the sector, for the row kernel. */
+		private final float[] ratioWeights;
+		/** Lookup table of the RGB values (of the palette) of the quantized heights between {@link #minHeight} and {@link #maxHeight}. */
+		private final int[]   heightColorTable;
+		/** Multiplier to convert a height offset (from the min height) to a {@link #heightColorTable} index.     */
+		private final float   heightColorTableScale;
+		
+		/**
+		 * Creates a new <code>Parameters</code>.
+		 * 
+		 * @param minHeight        min height of the terrain
+		 * @param maxHeight        max height of the terrain
+		 * @param sectorSize       size of the sectors
+		 * @param dispersion       max random deviation of the heights of the points
+		 * @param parallel         tells if the sectors have to be generated on all cores
+		 * @param rowKernel        tells if the heights are generated row by row with loops the JIT compiler can vectorize
+		 * @param palette          colors of the relief map
+		 * @param retainHeights    tells if the heights of the painted map have to be kept for recoloring
+		 * @param heightColorTable height-to-color lookup table of the height limits and the palette, <code>null</code> to build a new one
+		 */
+		public Parameters( final float minHeight, final float maxHeight, final int sectorSize, final float dispersion, final boolean parallel, final boolean rowKernel,
+				final Palette palette, final boolean retainHeights, final int[] heightColorTable ) {
+			this.minHeight        = minHeight;
+			this.maxHeight        = maxHeight;
+			this.sectorSize       = sectorSize;
+			this.dispersion       = dispersion;
+			this.parallel         = parallel;
+			this.rowKernel        = rowKernel;
+			this.palette          = palette;
+			this.retainHeights    = retainHeights;
+			this.ratioWeights     = rowKernel ? buildRatioWeights( sectorSize ) : null;
+			this.heightColorTable = heightColorTable == null ? buildHeightColorTable( minHeight, maxHeight, palette ) : heightColorTable;
+			
+			final float heightRange = maxHeight - minHeight;
+			heightColorTableScale = heightRange > 0.0f ? HEIGHT_COLOR_TABLE_SIZE / heightRange : 0.0f;
+		}
+		
+		/**
+		 * Tells if the heights generated with these parameters are the same as the heights generated with other parameters
+		 * (with the same seed): the properties affecting the heights are equal.
+		 * @param parameters parameters to compare to
+		 * @return true if the heights generated with these parameters are the same as the heights generated with the other parameters
+		 */
+		public boolean generatesSameHeights( final Parameters parameters ) {
+			return minHeight == parameters.minHeight && maxHeight == parameters.maxHeight && sectorSize == parameters.sectorSize && dispersion == parameters.dispersion;
+		}
+		
+	}
+	
+	/**
+	 * Colors of the relief map: colors at increasing heights (stops), the colors between the stops are linear interpolations of their colors.<br>
+	 * Heights below the first stop have the color of the first stop, heights above the last stop have the color of the last stop.
+	 * Two stops of the same height make an abrupt change of colors (like the coastline of the default palette).<br>
+	 * The text form of a palette is its stops separated by commas, a stop is a height and a color separated by a colon,
+	 * the color is 6 hexadecimal digits of its red, green and blue components (optionally prefixed by <code>#</code>), for example:
+	 * <code>-800:271770,0:0092dd,0:00923f,2000:5a3a25</code>.
+	 */
+	public static class Palette implements Comparable< Palette > {
+		
+		/** Heights of the stops, followed by a stop at {@link Float#MAX_VALUE}.                     */
+		private final float[] heightStones;
+		/** Colors of the stops, followed by black at {@link Float#MAX_VALUE}.                       */
+		private final Color[] stoneColors;
+		/** Text form of the palette.                                                                */
+		private final String  text;
+		
+		/**
+		 * Creates a new <code>Palette</code>.
+		 * @param heightStones heights of the stops, followed by a stop at {@link Float#MAX_VALUE}
+		 * @param stoneColors  colors of the stops, followed by black at {@link Float#MAX_VALUE}
+		 * @param text         text form of the palette
+		 */
+		private Palette( final float[] heightStones, final Color[] stoneColors, final String text ) {
+			this.heightStones = heightStones;
+			this.stoneColors  = stoneColors;
+			this.text         = text;
+		}
+		
+		/**
+		 * Parses the text form of a palette.
+		 * @param text text form of the palette
+		 * @return the parsed palette
+		 * @throws IllegalArgumentException if the text is not a valid palette
+		 */
+		public static Palette parse( final String text ) throws IllegalArgumentException {
+			final String[] stops = text.split( "," );
+			
+			final float[]       heightStones = new float[ stops.length + 1 ];
+			final Color[]       stoneColors  = new Color[ stops.length + 1 ];
+			final StringBuilder builder      = new StringBuilder();
+			for ( int i = 0; i < stops.length; i++ ) {
+				final String stop       = stops[ i ].trim();
+				final int    colonIndex = stop.indexOf( ':' );
+				String       color      = colonIndex < 0 ? "" : stop.substring( colonIndex + 1 ).trim();
+				if ( color.startsWith( "#" ) )
+					color = color.substring( 1 );
+				try {
+					if ( color.length() != 6 )
+						throw new NumberFormatException( color );
+					heightStones[ i ] = Float.parseFloat( stop.substring( 0, colonIndex ) );
+					stoneColors [ i ] = new Color( Integer.parseInt( color, 16 ) );
+				}
+				catch ( final NumberFormatException nfe ) {
+					throw new IllegalArgumentException( "Invalid palette stop: " + stop + " (height:rrggbb expected)", nfe );
+				}
+				if ( Float.isNaN( heightStones[ i ] ) || Float.isInfinite( heightStones[ i ] ) || i > 0 && heightStones[ i ] < heightStones[ i - 1 ] )
+					throw new IllegalArgumentException( "Invalid palette stop: " + stop + " (finite heights in increasing order expected)" );
+				
+				if ( i > 0 )
+					builder.append( ',' );
+				final int intHeight = (int) heightStones[ i ];
+				builder.append( intHeight == heightStones[ i ] ? Integer.toString( intHeight ) : Float.toString( heightStones[ i ] ) ).append( ':' ).append( color.toLowerCase() );
+			}
+			heightStones[ stops.length ] = Float.MAX_VALUE;
+			stoneColors [ stops.length ] = Color.BLACK;
+			
+			return new Palette( heightStones, stoneColors, builder.toString() );
+		}
+		
+		/**
+		 * Calculates and returns the RGB components of the color of the specified height on the landscape.<br>
+		 * The returned int value contains the rgb values in the right order. Blue is at the least significant bits.
+		 * All of the rgb components are 8 bit precision. <code>NaN</code> (a missing height) has the color of the first stop.
+		 * @param height height whose color needed to be calculated
+		 * @return the RGB values of the specified height on the landscape
+		 */
+		public int getRGB( final float height ) {
+			if ( !( height > heightStones[ 0 ] ) )
+				return stoneColors[ 0 ].getRGB();
+			if ( height > heightStones[ heightStones.length - 2 ] )
+				return stoneColors[ heightStones.length - 2 ].getRGB();
+			
+			// We locate the height between 2 heights whose interpolatable colors will determine the searched RGB
+			int i;
+			for ( i = 1; height > heightStones[ i ]; i++ )
+				;
+			
+			return interpolateColors( stoneColors[ i - 1 ], stoneColors[ i ], ( height - heightStones[ i - 1 ] ) / ( heightStones[ i ] - heightStones[ i - 1 ] ) );
+		}
+		
+		@Override
+		public int compareTo( final Palette palette ) {
+			return text.compareTo( palette.text );
+		}
+		
+		@Override
+		public boolean equals( final Object object ) {
+			return object instanceof Palette && text.equals( ( (Palette) object ).text );
+		}
+		
+		@Override
+		public int hashCode() {
+			return text.hashCode();
+		}
+		
+		/**
+		 * Returns the text form of the palette.
+		 */
+		@Override
+		public String toString() {
+			return text;
+		}
+		
+	}
+	
+	/**
+	 * Heights of a painted map retained for recoloring.
+	 */
+	private static class RetainedHeights {
+		
+		/** Parameters the heights were generated with. */
+		private final Parameters parameters;
+		/** Seed of the terrain.                        */
+		private final long       seed;
+		/** Number of sectors horizontally.             */
+		private final int        sectorsX;
+		/** Number of sectors vertically.               */
+		private final int        sectorsY;
+		/** The heights of the map, row by row.         */
+		private final float[]    heights;
+		
+		/**
+		 * Creates a new <code>RetainedHeights</code>.
+		 * @param parameters parameters the heights were generated with
+		 * @param seed       seed of the terrain
+		 * @param sectorsX   number of sectors horizontally
+		 * @param sectorsY   number of sectors vertically
+		 * @param heights    the heights of the map, row by row
+		 */
+		public RetainedHeights( final Parameters parameters, final long seed, final int sectorsX, final int sectorsY, final float[] heights ) {
+			this.parameters = parameters;
+			this.seed       = seed;
+			this.sectorsX   = sectorsX;
+			this.sectorsY   = sectorsY;
+			this.heights    = heights;
+		}
+		
+		/**
+		 * Tells if these are the heights of a map.
+		 * @param parameters parameters of the map
+		 * @param seed       seed of the terrain of the map
+		 * @param sectorsX   number of sectors of the map horizontally
+		 * @param sectorsY   number of sectors of the map vertically
+		 * @return true if these are the heights of the map
+		 */
+		public boolean matches( final Parameters parameters, final long seed, final int sectorsX, final int sectorsY ) {
+			return this.seed == seed && this.sectorsX == sectorsX && this.sectorsY == sectorsY && this.parameters.generatesSameHeights( parameters );
+		}
+		
+	}
+	
+	/** Parameters created last, their height-to-color lookup table is reused while the height limits and the palette do not change. */
+	private volatile Parameters      lastParameters;
+	/** Heights of the last painted map, <code>null</code> if not retained. */
+	private volatile RetainedHeights retainedHeights;
 	
 	public Terrain() {
 		super( "Terrain and relief map", "András Belicza", "1.0",
@@ -33,30 +308,65 @@ public class Terrain extends RandomBaseAlgorithm {
 			 + "You can see this algorithm in action in the LandFight project:\n"
 			 + "http://code.google.com/p/landfight" );
 		
-		properties.setProperty( PROPERTY_MIN_HEIGHT , "-800.0" );
-		properties.setProperty( PROPERTY_MAX_HEIGHT , "2000.0" );
-		properties.setProperty( PROPERTY_SECTOR_SIZE, "250"    );
-		properties.setProperty( PROPERTY_DISPERSION , "30.0"   );
+		addParameter( MIN_HEIGHT  );
+		addParameter( MAX_HEIGHT  );
+		addParameter( SECTOR_SIZE );
+		addParameter( DISPERSION  );
+		addParameter( PARALLEL    );
+		addParameter( ROW_KERNEL  );
+		addParameter( PALETTE     );
+		addParameter( RETAIN_HEIGHTS );
 	}
 	
 	@Override
-	protected void validateProperties() throws IllegalArgumentException {
-		super.validateProperties();
+	protected Parameters createParameters( final ParameterValues values ) throws IllegalArgumentException {
+		final float minHeight = values.get( MIN_HEIGHT );
+		final float maxHeight = values.get( MAX_HEIGHT );
+		if ( minHeight > maxHeight )
+			throw new IllegalArgumentException( "The min height must not be greater than the max height!" );
 		
-		try {
-			minHeight  = Float  .parseFloat( properties.getProperty( PROPERTY_MIN_HEIGHT  ) );
-			maxHeight  = Float  .parseFloat( properties.getProperty( PROPERTY_MAX_HEIGHT  ) );
-			sectorSize = Integer.parseInt  ( properties.getProperty( PROPERTY_SECTOR_SIZE ) );
-			dispersion = Float  .parseFloat( properties.getProperty( PROPERTY_DISPERSION  ) );
-		}
-		catch ( final Exception e ) {
-			throw new IllegalArgumentException( e.getMessage(), e );
+		final Palette    palette        = values.get( PALETTE );
+		final Parameters lastParameters = this.lastParameters;
+		final boolean    sameColors     = lastParameters != null && lastParameters.minHeight == minHeight && lastParameters.maxHeight == maxHeight
+				&& lastParameters.palette.equals( palette );
+		
+		final Parameters parameters = new Parameters( minHeight, maxHeight, values.get( SECTOR_SIZE ), values.get( DISPERSION ), values.get( PARALLEL ), values.get( ROW_KERNEL ),
+				palette, values.get( RETAIN_HEIGHTS ) && isRandomSeedFixed( values ), sameColors ? lastParameters.heightColorTable : null );
+		this.lastParameters = parameters;
+		return parameters;
+	}
+	
+	/**
+	 * Builds the height-to-color lookup table for height limits and a palette.<br>
+	 * The table quantizes the [minHeight..maxHeight] range into {@link #HEIGHT_COLOR_TABLE_SIZE} cells,
+	 * so the color of a point costs an index calculation instead of a search and a color interpolation.
+	 * Cells containing a height stone (where the colors might change abruptly) hold {@link #EXACT_COLOR_MARKER},
+	 * the colors of these cells are calculated exactly.
+	 * 
+	 * @param minHeight min height of the terrain
+	 * @param maxHeight max height of the terrain
+	 * @param palette   colors of the relief map
+	 * @return the height-to-color lookup table
+	 */
+	private static int[] buildHeightColorTable( final float minHeight, final float maxHeight, final Palette palette ) {
+		final int[] table = new int[ HEIGHT_COLOR_TABLE_SIZE ];
+		
+		final float heightRange = maxHeight - minHeight;
+		final float cellHeight  = heightRange / table.length;
+		for ( int i = 0; i < table.length; i++ ) {
+			final float cellMinHeight = minHeight + cellHeight * i;
+			table[ i ] = palette.getRGB( cellMinHeight + cellHeight / 2 );
+			for ( final float heightStone : palette.heightStones )
+				if ( heightStone >= cellMinHeight && heightStone <= cellMinHeight + cellHeight )
+					table[ i ] = EXACT_COLOR_MARKER;
 		}
+		
+		return table;
 	}
 	
 	@Override
-	public void paint( final Graphics graphics, final int width, final int height ) throws IllegalArgumentException {
-		super.paint( graphics, width, height );
+	protected void paint( final RenderContext< Parameters > context, final int width, final int height ) {
+		final int sectorSize = context.getParameters().sectorSize;
 		
 		// Aligning size to max number of sectors.
 		final int width_  = width  - width  % sectorSize;
@@ -66,43 +376,736 @@ public class Terrain extends RandomBaseAlgorithm {
 		final int x1 = ( width  - width_  ) / 2;
 		final int y1 = ( height - height_ ) / 2;
 		
-		paint( x1, y1, x1 + width_ - 1, y1 + height_ - 1 );
+		paint( context, x1, y1, x1 + width_ - 1, y1 + height_ - 1 );
+	}
+	
+	/**
+	 * Paints the relief map directly into the data buffer of an image.<br>
+	 * This is the fast path of the algorithm: if the image is backed by an <code>int</code> raster
+	 * (like {@link BufferedImage#TYPE_INT_RGB} and {@link BufferedImage#TYPE_INT_ARGB}), the colors of the points
+	 * are written straight into its data buffer; else the image is painted through its graphics context.
+	 * 
+	 * @param image image to paint into
+	 * @throws IllegalArgumentException thrown if illegal property value is specified
+	 */
+	@Override
+	public void paint( final BufferedImage image ) throws IllegalArgumentException {
+		paint( image, null );
+	}
+	
+	@Override
+	public void paint( final BufferedImage image, final Properties renderProperties ) throws IllegalArgumentException {
+		final RenderContext< Parameters > context = createContext( null, null, renderProperties );
+		
+		boolean completed = false;
+		try {
+			paint( context, image );
+			completed = true;
+		}
+		finally {
+			context.finish( completed );
+		}
+	}
+	
+	/**
+	 * Paints the relief map into an image in a render context.
+	 * @param context context of the render
+	 * @param image   image to paint into
+	 */
+	private void paint( final RenderContext< Parameters > context, final BufferedImage image ) {
+		final int width      = image.getWidth ();
+		final int height     = image.getHeight();
+		final int sectorSize = context.getParameters().sectorSize;
+		
+		// Aligning size to max number of sectors.
+		final int sectorsX = ( width  - width  % sectorSize - 1 ) / sectorSize + 1;
+		final int sectorsY = ( height - height % sectorSize - 1 ) / sectorSize + 1;
+		
+		final WritableRaster raster = image.getRaster();
+		// Fall back to the graphics context if the data buffer is not a packed int buffer or the image is smaller than a sector
+		if ( !( raster.getDataBuffer() instanceof DataBufferInt ) || !( raster.getSampleModel() instanceof SinglePixelPackedSampleModel )
+				|| sectorsX * sectorSize > width || sectorsY * sectorSize > height ) {
+			final Graphics imageGraphics = image.createGraphics();
+			try {
+				paint( new RenderContext< Parameters >( imageGraphics, null, context.getRandom(), context.getParameters(), context.getMetrics() ), width, height );
+			}
+			finally {
+				imageGraphics.dispose();
+			}
+			return;
+		}
+		
+		// Centered paint
+		final int x1 = ( width  - sectorsX * sectorSize ) / 2;
+		final int y1 = ( height - sectorsY * sectorSize ) / 2;
+		
+		final SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+		final DataBufferInt                dataBuffer  = (DataBufferInt) raster.getDataBuffer();
+		final int scanlineStride = sampleModel.getScanlineStride();
+		final int offset         = dataBuffer.getOffset()
+				+ sampleModel.getOffset( x1 - raster.getSampleModelTranslateX(), y1 - raster.getSampleModelTranslateY() );
+		
+		paintSectors( context, dataBuffer.getData(), offset, scanlineStride, sectorsX, sectorsY );
+	}
+	
+	/**
+	 * Paints the relief map into an area with the graphics context of a render.<br>
+	 * If the clip of the graphics context does not cover the area, only the sectors intersecting the clip are generated and painted
+	 * (the sectors are generated independently, so they are identical to the sectors of the whole map).
+	 * 
+	 * @param context context of the render
+	 * @param x1      x coordinate of the top left corner of the area
+	 * @param y1      y coordinate of the top left corner of the area
+	 * @param x2      x coordinate of the bottom right corner of the area
+	 * @param y2      y coordinate of the bottom right corner of the area
+	 */
+	public void paint( final RenderContext< Parameters > context, final int x1, final int y1, final int x2, final int y2 ) {
+		final int sectorSize = context.getParameters().sectorSize;
+		final int sectorsX = ( x2 - x1 ) / sectorSize + 1;
+		final int sectorsY = ( y2 - y1 ) / sectorSize + 1;
+		
+		// Sectors intersecting the clip
+		final Rectangle clip = context.getGraphics().getClipBounds();
+		final int firstSectorX = clip == null ? 0        : (int) Math.max( 0       , Math.floorDiv( (long) clip.x - x1, sectorSize ) );
+		final int firstSectorY = clip == null ? 0        : (int) Math.max( 0       , Math.floorDiv( (long) clip.y - y1, sectorSize ) );
+		final int lastSectorX  = clip == null ? sectorsX : (int) Math.min( sectorsX, Math.floorDiv( (long) clip.x + clip.width  - 1 - x1, sectorSize ) + 1 );
+		final int lastSectorY  = clip == null ? sectorsY : (int) Math.min( sectorsY, Math.floorDiv( (long) clip.y + clip.height - 1 - y1, sectorSize ) + 1 );
+		if ( firstSectorX >= lastSectorX || firstSectorY >= lastSectorY )
+			return;
+		
+		// We paint the sectors into the data buffer of an image, and draw that image in one step
+		final BufferedImage image  = new BufferedImage( ( lastSectorX - firstSectorX ) * sectorSize, ( lastSectorY - firstSectorY ) * sectorSize, BufferedImage.TYPE_INT_RGB );
+		final int[]         pixels = ( (DataBufferInt) image.getRaster().getDataBuffer() ).getData();
+		
+		if ( lastSectorX - firstSectorX == sectorsX && lastSectorY - firstSectorY == sectorsY )
+			paintSectors( context, pixels, 0, image.getWidth(), sectorsX, sectorsY );
+		else
+			paintSectors( context.getParameters(), context.getMetrics(), pixels, 0, image.getWidth(), lastSectorX - firstSectorX, lastSectorY - firstSectorY,
+					firstSectorX, firstSectorY, context.getRandom().nextLong() );
+		
+		final long startNanos = System.nanoTime();
+		context.getGraphics().drawImage( image, x1 + firstSectorX * sectorSize, y1 + firstSectorY * sectorSize, null );
+		if ( context.getMetrics() != null ) {
+			context.getMetrics().addRasterizationNanos( System.nanoTime() - startNanos );
+			context.getMetrics().addDrawCalls( 1 );
+		}
+	}
+	
+	/**
+	 * Generates the terrain and paints the relief map of the sectors into a pixel array.<br>
+	 * The first sector is the sector at the origin of the world.<br>
+	 * If the <code>retainHeights</code> property is true and the random seed is fixed, the heights are retained; if the retained heights are the heights of the map
+	 * (only properties not affecting the heights changed since they were generated), they are recolored instead of generating the terrain.
+	 * 
+	 * @param context        context of the render
+	 * @param pixels         pixel array to paint into, RGB values of the points
+	 * @param offset         index of the top left point of the first sector in the pixel array
+	 * @param scanlineStride distance between the indices of vertically adjacent points in the pixel array
+	 * @param sectorsX       number of sectors horizontally
+	 * @param sectorsY       number of sectors vertically
+	 */
+	private void paintSectors( final RenderContext< Parameters > context, final int[] pixels, final int offset, final int scanlineStride, final int sectorsX, final int sectorsY ) {
+		final Parameters    parameters = context.getParameters();
+		final RenderMetrics metrics    = context.getMetrics();
+		final long          seed       = context.getRandom().nextLong();
+		
+		if ( !parameters.retainHeights ) {
+			retainedHeights = null;
+			paintSectors( parameters, metrics, pixels, offset, scanlineStride, sectorsX, sectorsY, 0, 0, seed );
+			return;
+		}
+		
+		final int width  = sectorsX * parameters.sectorSize;
+		final int height = sectorsY * parameters.sectorSize;
+		
+		final RetainedHeights retainedHeights = this.retainedHeights;
+		if ( retainedHeights != null && retainedHeights.matches( parameters, seed, sectorsX, sectorsY ) ) {
+			final long startNanos = System.nanoTime();
+			colorHeights( parameters, retainedHeights.heights, 0, width, pixels, offset, scanlineStride, width, height );
+			if ( metrics != null ) {
+				metrics.addCalls( 1 );
+				metrics.updateMaxDepth( 1 );
+				metrics.addRasterizationNanos( System.nanoTime() - startNanos );
+				metrics.addDrawCalls( 1 );
+			}
+			return;
+		}
+		
+		// The previous heights are released before the new ones are allocated
+		this.retainedHeights = null;
+		final HeightField heights = new HeightField( width, height );
+		runSectorsTask( new SectorsTask( parameters, metrics, 1, pixels, heights, offset, scanlineStride, sectorsX, 0, 0, seed,
+				0, sectorsX * sectorsY, parameters.parallel ? new Cancellation() : null ) );
+		this.retainedHeights = new RetainedHeights( parameters, seed, sectorsX, sectorsY, heights.getArray() );
+	}
+	
+	/**
+	 * Paints the relief map tile by tile, and passes the tiles to a sink.<br>
+	 * The map is aligned and centered the same way as by {@link #paint(BufferedImage)}, so the result is identical
+	 * to painting the whole map at once with the same seed. Only a single tile is kept in memory,
+	 * so the heap use does not depend on the size of the map.
+	 * 
+	 * @param width    width of the map
+	 * @param height   height of the map
+	 * @param tileSize desired size of the tiles, rounded down to a multiple of the sector size (at least 1 sector)
+	 * @param sink     sink to pass the tiles to
+	 * @throws IllegalArgumentException thrown if illegal property value is specified
+	 * @throws IOException if the sink fails to store a tile
+	 */
+	@Override
+	public void paintTiles( final int width, final int height, final int tileSize, final TileSink sink ) throws IllegalArgumentException, IOException {
+		paintTiles( width, height, tileSize, sink, null );
+	}
+	
+	@Override
+	public void paintTiles( final int width, final int height, final int tileSize, final TileSink sink, final Properties renderProperties )
+			throws IllegalArgumentException, IOException {
+		final RenderContext< Parameters > context = createContext( null, null, renderProperties );
+		
+		boolean completed = false;
+		try {
+			paintTiles( context, width, height, tileSize, sink );
+			completed = true;
+		}
+		finally {
+			context.finish( completed );
+		}
+	}
+	
+	/**
+	 * Paints the relief map tile by tile in a render context, and passes the tiles to a sink.
+	 * 
+	 * @param context  context of the render
+	 * @param width    width of the map
+	 * @param height   height of the map
+	 * @param tileSize desired size of the tiles, rounded down to a multiple of the sector size (at least 1 sector)
+	 * @param sink     sink to pass the tiles to
+	 * @throws IOException if the sink fails to store a tile
+	 */
+	private void paintTiles( final RenderContext< Parameters > context, final int width, final int height, final int tileSize, final TileSink sink ) throws IOException {
+		final Parameters parameters = context.getParameters();
+		final int        sectorSize = parameters.sectorSize;
+		
+		// Aligning size to max number of sectors.
+		final int sectorsX = width  / sectorSize;
+		final int sectorsY = height / sectorSize;
+		if ( sectorsX == 0 || sectorsY == 0 )
+			return;
+		
+		// Centered paint
+		final int x1 = ( width  - sectorsX * sectorSize ) / 2;
+		final int y1 = ( height - sectorsY * sectorSize ) / 2;
+		
+		final int   tileSectors = Math.max( 1, tileSize / sectorSize );
+		final int[] pixels      = new int[ Math.min( tileSectors, sectorsX ) * Math.min( tileSectors, sectorsY ) * sectorSize * sectorSize ];
+		
+		final long seed = context.getRandom().nextLong();
+		
+		for ( int tileSectorY = 0; tileSectorY < sectorsY; tileSectorY += tileSectors ) {
+			final int tileSectorsY = Math.min( tileSectors, sectorsY - tileSectorY );
+			for ( int tileSectorX = 0; tileSectorX < sectorsX; tileSectorX += tileSectors ) {
+				final int tileSectorsX = Math.min( tileSectors, sectorsX - tileSectorX );
+				
+				paintSectors( parameters, context.getMetrics(), pixels, 0, tileSectorsX * sectorSize, tileSectorsX, tileSectorsY, tileSectorX, tileSectorY, seed );
+				sink.tilePainted( x1 + tileSectorX * sectorSize, y1 + tileSectorY * sectorSize, tileSectorsX * sectorSize, tileSectorsY * sectorSize,
+						pixels, 0, tileSectorsX * sectorSize );
+			}
+		}
 	}
 	
-	public void paint( final int x1, final int y1, final int x2, final int y2 ) {
-		final int dx = x2 - x1;
-		final int dy = y2 - y1;
+	/**
+	 * Generates the terrain as a height field without painting it.<br>
+	 * The size is aligned to the max number of sectors; the heights are identical to the heights painted
+	 * by {@link #paint(BufferedImage)} with the same seed (into the centered area of the image).
+	 * 
+	 * @param width  max width of the height field
+	 * @param height max height of the height field
+	 * @param direct tells if the height field has to be backed by an off-heap direct buffer instead of an array
+	 * @return the generated height field
+	 * @throws IllegalArgumentException thrown if illegal property value is specified or the size is smaller than a sector
+	 */
+	public HeightField generateHeightField( final int width, final int height, final boolean direct ) throws IllegalArgumentException {
+		final RenderContext< Parameters > context    = createContext( null, null, null );
+		final Parameters                  parameters = context.getParameters();
+		final int                         sectorSize = parameters.sectorSize;
+		
+		// Aligning size to max number of sectors.
+		final int sectorsX = width  / sectorSize;
+		final int sectorsY = height / sectorSize;
+		if ( sectorsX == 0 || sectorsY == 0 ) {
+			context.finish( false );
+			throw new IllegalArgumentException( "The height field must not be smaller than a sector!" );
+		}
 		
-		// First we generate common base corner heights on the sectors 
-		// +1 indices for the next sectors first lines which are not visible, just helper base heights
-		final float[][] baseHeights = new float[ dy / sectorSize + 2 ][ dx / sectorSize + 2 ];
-		for ( int i = 0; i < baseHeights.length; i++ )
-			for ( int j = 0; j < baseHeights[ i ].length; j++ )
-				baseHeights[ i ][ j ] = minHeight + random.nextFloat() * ( maxHeight - minHeight );
+		final HeightField heightField = direct ? HeightField.allocateDirect( sectorsX * sectorSize, sectorsY * sectorSize )
+				                               : new HeightField( sectorsX * sectorSize, sectorsY * sectorSize );
 		
-		// Now we generate and paint the sectors 
-		for ( int sectorY = dy / sectorSize; sectorY >= 0; sectorY-- )
-			for ( int sectorX = dx / sectorSize; sectorX >= 0; sectorX-- )
-				paintSector( x1 + sectorX * sectorSize, y1 + sectorY * sectorSize, 
-							baseHeights[ sectorY ][ sectorX ], baseHeights[ sectorY ][ sectorX + 1 ],
-							baseHeights[ sectorY + 1 ][ sectorX + 1 ], baseHeights[ sectorY + 1 ][ sectorX ] ); 
+		boolean completed = false;
+		try {
+			runSectorsTask( new SectorsTask( parameters, context.getMetrics(), 1, null, heightField, 0, 0, sectorsX,
+					0, 0, context.getRandom().nextLong(), 0, sectorsX * sectorsY, parameters.parallel ? new Cancellation() : null ) );
+			completed = true;
+		}
+		finally {
+			context.finish( completed );
+		}
+		
+		return heightField;
+	}
+	
+	/**
+	 * Generates a region of the world of the terrain as a height field.<br>
+	 * The heights only depend on the seed and their coordinates: a region is bit-identical to the same area of any region containing it
+	 * (and of the height field generated by {@link #generateHeightField(int, int, boolean)}, whose top left point is the origin of the world),
+	 * so the world can be generated chunk by chunk, in any order, in parallel or on different machines, and the chunks can be cached.
+	 * Chunks of the same world need the same fixed random seed. The region is generated in the current thread.
+	 * 
+	 * @param x      x coordinate of the top left point of the region in the world (may be negative)
+	 * @param y      y coordinate of the top left point of the region in the world (may be negative)
+	 * @param width  width of the region
+	 * @param height height of the region
+	 * @return the height field of the region
+	 * @throws IllegalArgumentException thrown if illegal property value is specified or the size of the region is invalid
+	 */
+	public HeightField generateRegion( final int x, final int y, final int width, final int height ) throws IllegalArgumentException {
+		return generateRegion( x, y, width, height, null );
 	}
 	
-	private void paintSector( final int x1, final int y1, final float height1, final float height2, final float height3, final float height4 ) {
-		final int x2 = x1 + sectorSize;
-		final int y2 = y1 + sectorSize;
+	/**
+	 * Generates a region of the world of the terrain as a height field, with the properties of a render.
+	 * 
+	 * @param x                x coordinate of the top left point of the region in the world (may be negative)
+	 * @param y                y coordinate of the top left point of the region in the world (may be negative)
+	 * @param width            width of the region
+	 * @param height           height of the region
+	 * @param renderProperties properties of the render, <code>null</code> means the properties of the algorithm
+	 * @return the height field of the region
+	 * @throws IllegalArgumentException thrown if illegal property value is specified or the size of the region is invalid
+	 * @see #generateRegion(int, int, int, int)
+	 */
+	public HeightField generateRegion( final int x, final int y, final int width, final int height, final Properties renderProperties ) throws IllegalArgumentException {
+		final HeightField heightField = new HeightField( width, height );
 		
+		final RenderContext< Parameters > context    = createContext( null, null, renderProperties );
+		final Parameters                  parameters = context.getParameters();
+		final int                         sectorSize = parameters.sectorSize;
+		final long                        seed       = context.getRandom().nextLong();
+		final float[]                     heights    = heightField.getArray();
+		
+		boolean completed = false;
+		try {
+			// The region is generated by the parts of the sectors intersecting it
+			final int firstSectorX = Math.floorDiv( x, sectorSize ), lastSectorX = Math.floorDiv( x + width  - 1, sectorSize );
+			final int firstSectorY = Math.floorDiv( y, sectorSize ), lastSectorY = Math.floorDiv( y + height - 1, sectorSize );
+			for ( int sectorY = firstSectorY; sectorY <= lastSectorY; sectorY++ ) {
+				if ( Thread.currentThread().isInterrupted() )
+					throw new CancellationException( "The generation was cancelled." );
+				
+				final int y1 = Math.max( y, sectorY * sectorSize ) - sectorY * sectorSize;
+				final int y2 = Math.min( y + height, ( sectorY + 1 ) * sectorSize ) - sectorY * sectorSize;
+				for ( int sectorX = firstSectorX; sectorX <= lastSectorX; sectorX++ ) {
+					final int x1 = Math.max( x, sectorX * sectorSize ) - sectorX * sectorSize;
+					final int x2 = Math.min( x + width, ( sectorX + 1 ) * sectorSize ) - sectorX * sectorSize;
+					generateSector( parameters, seed, sectorX, sectorY, x1, y1, x2, y2, heights,
+							( sectorY * sectorSize + y1 - y ) * width + sectorX * sectorSize + x1 - x, width );
+				}
+			}
+			if ( context.getMetrics() != null ) {
+				context.getMetrics().addCalls( 1 );
+				context.getMetrics().updateMaxDepth( 1 );
+			}
+			completed = true;
+		}
+		finally {
+			context.finish( completed );
+		}
+		
+		return heightField;
+	}
+	
+	/**
+	 * Colors a height field: creates the relief map of its heights.<br>
+	 * The heights may be outside of the height limits (for example heights of an imported height field), see {@link Palette#getRGB(float)}.
+	 * 
+	 * @param heightField height field to be colored
+	 * @return an image of the size of the height field holding the relief map
+	 * @throws IllegalArgumentException thrown if illegal property value is specified
+	 */
+	public BufferedImage colorHeightField( final HeightField heightField ) throws IllegalArgumentException {
+		final Parameters parameters = getParameters();
+		
+		final int width  = heightField.getWidth ();
+		final int height = heightField.getHeight();
+		
+		final BufferedImage image  = new BufferedImage( width, height, BufferedImage.TYPE_INT_RGB );
+		final int[]         pixels = ( (DataBufferInt) image.getRaster().getDataBuffer() ).getData();
+		
+		final float[] heightsArray = heightField.getArray();
+		if ( heightsArray != null )
+			colorHeights( parameters, heightsArray, 0, width, pixels, 0, width, width, height );
+		else {
+			// Off-heap heights are colored row by row
+			final float[] row = new float[ width ];
+			for ( int y = 0; y < height; y++ ) {
+				heightField.get( 0, y, row, 0, width );
+				colorHeights( parameters, row, 0, width, pixels, y * width, width, width, 1 );
+			}
+		}
+		
+		return image;
+	}
+	
+	/**
+	 * Creates a renderer of an animation whose frames are new terrains, painted like {@link #paint(BufferedImage)} paints them.<br>
+	 * The heights of a sector are allocated once and reused by the frames. If the <code>parallel</code>
+	 * property is true, the sectors are painted on all cores, which allocates the tasks (and their scratch buffers) in each frame.
+	 * @param width            width of the frames
+	 * @param height           height of the frames
+	 * @param renderProperties properties of the animation, <code>null</code> means the properties of the algorithm
+	 * @return a renderer of the frames
+	 * @throws IllegalArgumentException thrown if illegal property value is specified or the frames are smaller than a sector
+	 */
+	@Override
+	public FrameRenderer createFrameRenderer( final int width, final int height, final Properties renderProperties ) throws IllegalArgumentException {
+		final RenderContext< Parameters > context    = createContext( null, null, renderProperties );
+		final Parameters                  parameters = context.getParameters();
+		final int                         sectorSize = parameters.sectorSize;
+		
+		// Aligning size to max number of sectors.
+		final int sectorsX = width  / sectorSize;
+		final int sectorsY = height / sectorSize;
+		if ( sectorsX == 0 || sectorsY == 0 )
+			throw new IllegalArgumentException( "The frames must not be smaller than a sector!" );
+		
+		// Centered paint
+		final int  offset = ( height - sectorsY * sectorSize ) / 2 * width + ( width - sectorsX * sectorSize ) / 2;
+		final long seed   = context.getRandom().nextLong();
+		
+		return new FrameRenderer() {
+			private final float[] sectorHeights = new float[ sectorSize * sectorSize ];
+			/** Random generator deriving the seeds of the terrains like a render. */
+			private final Random  random        = context.getRandom();
+			
+			@Override
+			public void renderFrame( final AnimationFrame frame, final long index ) {
+				random.setSeed( RandomHash.hash( seed, index ) );
+				final long terrainSeed = random.nextLong();
+				
+				final int[] pixels = frame.getPixels();
+				if ( parameters.parallel ) {
+					paintSectors( parameters, null, pixels, offset, width, sectorsX, sectorsY, 0, 0, terrainSeed );
+					return;
+				}
+				
+				for ( int sectorY = 0; sectorY < sectorsY; sectorY++ ) {
+					if ( Thread.currentThread().isInterrupted() )
+						throw new CancellationException( "The painting was cancelled." );
+					
+					for ( int sectorX = 0; sectorX < sectorsX; sectorX++ ) {
+						generateSector( parameters, terrainSeed, sectorX, sectorY, 0, 0, sectorSize, sectorSize, sectorHeights, 0, sectorSize );
+						colorHeights( parameters, sectorHeights, 0, sectorSize, pixels, offset + sectorY * sectorSize * width + sectorX * sectorSize, width, sectorSize, sectorSize );
+					}
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Returns the base height of a corner of the sectors, hashed from the seed of the terrain and the coordinates of the corner.
+	 * @param parameters parameters of the render
+	 * @param seed       seed of the terrain
+	 * @param cornerX    x coordinate of the corner (the x coordinate of the sector whose top left corner it is)
+	 * @param cornerY    y coordinate of the corner (the y coordinate of the sector whose top left corner it is)
+	 * @return the base height of the corner
+	 */
+	private static float getBaseHeight( final Parameters parameters, final long seed, final int cornerX, final int cornerY ) {
+		return parameters.minHeight + RandomHash.nextFloat( RandomHash.hash( RandomHash.hash( seed, CORNER_STREAM ), cornerX, cornerY ) ) * ( parameters.maxHeight - parameters.minHeight );
+	}
+	
+	/**
+	 * Generates the terrain and paints the relief map of a block of sectors into a pixel array.
+	 * 
+	 * @param parameters     parameters of the render
+	 * @param metrics        metrics of the render, <code>null</code> if the render is not measured
+	 * @param pixels         pixel array to paint into, RGB values of the points
+	 * @param offset         index of the top left point of the first sector in the pixel array
+	 * @param scanlineStride distance between the indices of vertically adjacent points in the pixel array
+	 * @param sectorsX       number of sectors of the block horizontally
+	 * @param sectorsY       number of sectors of the block vertically
+	 * @param firstSectorX   x of the first sector of the block in the world
+	 * @param firstSectorY   y of the first sector of the block in the world
+	 * @param seed           seed of the terrain
+	 */
+	private static void paintSectors( final Parameters parameters, final RenderMetrics metrics, final int[] pixels, final int offset, final int scanlineStride,
+			final int sectorsX, final int sectorsY, final int firstSectorX, final int firstSectorY, final long seed ) {
+		runSectorsTask( new SectorsTask( parameters, metrics, 1, pixels, null, offset, scanlineStride, sectorsX, firstSectorX, firstSectorY, seed,
+				0, sectorsX * sectorsY, parameters.parallel ? new Cancellation() : null ) );
+	}
+	
+	/**
+	 * Runs a sectors task: on all cores if the <code>parallel</code> property is true, else in the current thread.
+	 * @param sectorsTask sectors task to be run
+	 */
+	private static void runSectorsTask( final SectorsTask sectorsTask ) {
+		if ( sectorsTask.parameters.parallel )
+			sectorsTask.cancellation.invoke( sectorsTask );
+		else {
+			if ( sectorsTask.metrics != null ) {
+				sectorsTask.metrics.addCalls( 1 );
+				sectorsTask.metrics.updateMaxDepth( 1 );
+			}
+			sectorsTask.paintSectors();
+		}
+	}
+	
+	/**
+	 * Task to generate a range of sectors, and paint them into a pixel array and/or store their heights in a height buffer.
+	 * Sectors are indexed row by row.<br>
+	 * Splits the range into 2 halves recursively until it is small enough to be painted serially.
+	 */
+	@SuppressWarnings("serial")
+	private static class SectorsTask extends RecursiveAction {
+		
+		private final Parameters parameters;
+		private final RenderMetrics metrics;
+		private final int       depth;
+		private final int[]     pixels;
+		private final HeightField heights;
+		private final int       offset;
+		private final int       scanlineStride;
+		private final int       sectorsX;
+		private final int       firstSectorX;
+		private final int       firstSectorY;
+		private final long      seed;
+		private final int       firstSector;
+		private final int       lastSector;
+		private final Cancellation cancellation;
+		
+		/**
+		 * Creates a new <code>SectorsTask</code>.
+		 * 
+		 * @param parameters     parameters of the render
+		 * @param metrics        metrics of the render, <code>null</code> if the render is not measured
+		 * @param depth          recursion depth of the task
+		 * @param pixels         pixel array to paint into, RGB values of the points, <code>null</code> if the sectors are not painted
+		 * @param heights        height field to store the heights into (the size of the block), <code>null</code> if the heights are not stored
+		 * @param offset         index of the top left point of the first sector in the pixel array
+		 * @param scanlineStride distance between the indices of vertically adjacent points in the pixel array
+		 * @param sectorsX       number of sectors of the block horizontally
+		 * @param firstSectorX   x of the first sector of the block in the world
+		 * @param firstSectorY   y of the first sector of the block in the world
+		 * @param seed           seed of the terrain
+		 * @param firstSector    index of the first sector to paint (inclusive), relative to the block
+		 * @param lastSector     index of the last sector to paint (exclusive)
+		 * @param cancellation   cancellation of the painting, <code>null</code> means the interruption of the current thread
+		 */
+		public SectorsTask( final Parameters parameters, final RenderMetrics metrics, final int depth, final int[] pixels, final HeightField heights, final int offset, final int scanlineStride, final int sectorsX,
+				final int firstSectorX, final int firstSectorY, final long seed, final int firstSector, final int lastSector, final Cancellation cancellation ) {
+			this.parameters     = parameters;
+			this.metrics        = metrics;
+			this.depth          = depth;
+			this.pixels         = pixels;
+			this.heights        = heights;
+			this.offset         = offset;
+			this.scanlineStride = scanlineStride;
+			this.sectorsX       = sectorsX;
+			this.firstSectorX   = firstSectorX;
+			this.firstSectorY   = firstSectorY;
+			this.seed           = seed;
+			this.firstSector    = firstSector;
+			this.lastSector     = lastSector;
+			this.cancellation   = cancellation;
+		}
+		
+		@Override
+		protected void compute() {
+			if ( metrics != null ) {
+				metrics.addCalls( 1 );
+				metrics.updateMaxDepth( depth );
+			}
+			
+			if ( ( lastSector - firstSector ) * parameters.sectorSize * parameters.sectorSize <= SERIAL_PAINT_THRESHOLD || lastSector - firstSector < 2 )
+				paintSectors();
+			else {
+				final int middleSector = ( firstSector + lastSector ) >>> 1;
+				invokeAll( new SectorsTask( parameters, metrics, depth + 1, pixels, heights, offset, scanlineStride, sectorsX, firstSectorX, firstSectorY, seed, firstSector , middleSector, cancellation ),
+						   new SectorsTask( parameters, metrics, depth + 1, pixels, heights, offset, scanlineStride, sectorsX, firstSectorX, firstSectorY, seed, middleSector, lastSector  , cancellation ) );
+			}
+		}
+		
+		/**
+		 * Paints the sectors of the task in the current thread.
+		 * @throws CancellationException if the painting is cancelled
+		 */
+		public void paintSectors() throws CancellationException {
+			final int sectorSize = parameters.sectorSize;
+			
+			// Heights of a sector, colored and/or stored in a separate pass
+			final float[] sectorHeights = new float[ sectorSize * sectorSize ];
+			
+			for ( int sector = firstSector; sector < lastSector; sector++ ) {
+				if ( cancellation == null ? Thread.currentThread().isInterrupted() : cancellation.isCancelled() )
+					throw new CancellationException( "The painting was cancelled." );
+				
+				final int sectorY = sector / sectorsX;
+				final int sectorX = sector % sectorsX;
+				final long generationStartNanos = metrics == null ? 0 : System.nanoTime();
+				generateSector( parameters, seed, firstSectorX + sectorX, firstSectorY + sectorY, 0, 0, sectorSize, sectorSize, sectorHeights, 0, sectorSize );
+				
+				final long rasterizationStartNanos = metrics == null ? 0 : System.nanoTime();
+				if ( metrics != null )
+					metrics.addGenerationNanos( rasterizationStartNanos - generationStartNanos );
+				
+				if ( heights != null )
+					for ( int y = 0; y < sectorSize; y++ )
+						heights.set( sectorX * sectorSize, sectorY * sectorSize + y, sectorHeights, y * sectorSize, sectorSize );
+				if ( pixels != null ) {
+					colorHeights( parameters, sectorHeights, 0, sectorSize, pixels, offset + sectorY * sectorSize * scanlineStride + sectorX * sectorSize, scanlineStride, sectorSize, sectorSize );
+					if ( metrics != null ) {
+						metrics.addRasterizationNanos( System.nanoTime() - rasterizationStartNanos );
+						metrics.addDrawCalls( 1 );
+					}
+				}
+			}
+		}
+		
+	}
+	
+	/**
+	 * Generates the heights of a rectangle of a sector.<br>
+	 * The base heights of the corners and the dispersion of the points are hashed from the seed and their world coordinates,
+	 * so any part of a sector can be generated on its own.
+	 * 
+	 * @param parameters    parameters of the render
+	 * @param seed          seed of the terrain
+	 * @param sectorX       x coordinate of the sector in the world
+	 * @param sectorY       y coordinate of the sector in the world
+	 * @param x1            x coordinate of the left side of the rectangle inside the sector (inclusive)
+	 * @param y1            y coordinate of the top side of the rectangle inside the sector (inclusive)
+	 * @param x2            x coordinate of the right side of the rectangle inside the sector (exclusive)
+	 * @param y2            y coordinate of the bottom side of the rectangle inside the sector (exclusive)
+	 * @param heights       array to store the heights of the rectangle into
+	 * @param heightsOffset index of the top left height of the rectangle in the heights array
+	 * @param heightsStride distance between the indices of vertically adjacent heights in the heights array
+	 */
+	private static void generateSector( final Parameters parameters, final long seed, final int sectorX, final int sectorY,
+			final int x1, final int y1, final int x2, final int y2, final float[] heights, final int heightsOffset, final int heightsStride ) {
+		final float minHeight  = parameters.minHeight;
+		final float maxHeight  = parameters.maxHeight;
+		final int   sectorSize = parameters.sectorSize;
+		final float dispersion = parameters.dispersion;
+		
+		final float height1 = getBaseHeight( parameters, seed, sectorX    , sectorY     ); // Top left corner
+		final float height2 = getBaseHeight( parameters, seed, sectorX + 1, sectorY     ); // Top right corner
+		final float height3 = getBaseHeight( parameters, seed, sectorX + 1, sectorY + 1 ); // Bottom right corner
+		final float height4 = getBaseHeight( parameters, seed, sectorX    , sectorY + 1 ); // Bottom left corner
+		
+		final long dispersionSeed = RandomHash.hash( seed, DISPERSION_STREAM );
+		final long worldX         = (long) sectorX * sectorSize;
+		final long worldY         = (long) sectorY * sectorSize;
 		for ( int y = y1; y < y2; y++ ) {
-			final float baseLineStartHeight = interpolate( height1, height4, (float) ( y - y1 ) / sectorSize );
-			final float baseLineEndHeight   = interpolate( height2, height3, (float) ( y - y1 ) / sectorSize );
-			for ( int x = x1; x < x2; x++ ) {
+			final float baseLineStartHeight = interpolate( height1, height4, (float) y / sectorSize );
+			final float baseLineEndHeight   = interpolate( height2, height3, (float) y / sectorSize );
+			final long  rowHash             = RandomHash.hash( dispersionSeed, worldY + y );
+			if ( parameters.rowKernel ) {
+				// hash( rowHash, worldX + x ) is the mix of the state of x, the states of the row are GOLDEN_GAMMA apart
+				generateRow( parameters, baseLineStartHeight, baseLineEndHeight, rowHash + ( worldX + x1 + 1 ) * RandomHash.GOLDEN_GAMMA, x1, x2,
+						heights, heightsOffset + ( y - y1 ) * heightsStride );
+				continue;
+			}
+			for ( int x = x1, i = heightsOffset + ( y - y1 ) * heightsStride; x < x2; x++ ) {
 				// Finally generate the height of a point
-				float height = interpolate( baseLineStartHeight, baseLineEndHeight, (float) ( x - x1 ) / sectorSize );
-				height += ( 0.5f - random.nextFloat() ) * dispersion; // Add random dispersion to it
+				float height = interpolate( baseLineStartHeight, baseLineEndHeight, (float) x / sectorSize );
+				height += ( 0.5f - RandomHash.nextFloat( RandomHash.hash( rowHash, worldX + x ) ) ) * dispersion; // Add random dispersion to it
 				// Leave it between limits
-				height = height < minHeight ? minHeight : ( height > maxHeight ? maxHeight : height );
-				graphics.setColor( new Color( getRGBOfHeight( height ) ) );
-				graphics.drawLine( x, y, x, y );
+				heights[ i++ ] = height < minHeight ? minHeight : ( height > maxHeight ? maxHeight : height );
+			}
+		}
+	}
+	
+	/**
+	 * Generates the heights of a row of a sector, the row kernel of {@link #generateSector(Parameters, long, int, int, int, int, int, int, float[], int, int)}.<br>
+	 * The row is generated in 2 passes over flat arrays without calls and branches (except the clamping), which the JIT compiler can vectorize:
+	 * the first pass stores the random values of the dispersion, the second one interpolates with the precalculated ratio weights
+	 * and adds the dispersion. The result is bit-identical to the scalar generation.
+	 * 
+	 * @param parameters  parameters of the render
+	 * @param startHeight height of the left side of the sector in the row
+	 * @param endHeight   height of the right side of the sector in the row
+	 * @param state       state of the random dispersion of the first point of the row
+	 * @param x1          x coordinate of the first point of the row inside the sector (inclusive)
+	 * @param x2          x coordinate of the last point of the row inside the sector (exclusive)
+	 * @param heights     array to store the heights of the row into
+	 * @param offset      index of the first height of the row in the heights array
+	 */
+	private static void generateRow( final Parameters parameters, final float startHeight, final float endHeight, final long state, final int x1, final int x2,
+			final float[] heights, final int offset ) {
+		final float   minHeight    = parameters.minHeight;
+		final float   maxHeight    = parameters.maxHeight;
+		final float   dispersion   = parameters.dispersion;
+		final float[] ratioWeights = parameters.ratioWeights;
+		final float   heightRange  = endHeight - startHeight;
+		final int     length       = x2 - x1;
+		
+		// Random values of the dispersion (the int conversion is exact, the value has 24 bits, it is the same as RandomHash.nextFloat())
+		for ( int i = 0; i < length; i++ )
+			heights[ offset + i ] = (int) ( RandomHash.mix( state + i * RandomHash.GOLDEN_GAMMA ) >>> 40 ) * 0x1.0p-24f;
+		
+		for ( int i = 0; i < length; i++ ) {
+			final float height = startHeight + heightRange * ratioWeights[ x1 + i ] + ( 0.5f - heights[ offset + i ] ) * dispersion;
+			heights[ offset + i ] = height < minHeight ? minHeight : ( height > maxHeight ? maxHeight : height );
+		}
+	}
+	
+	/**
+	 * Builds the weights of the interpolation at the points of a row of a sector.<br>
+	 * The weights are the factors of the difference of the boundary values calculated by {@link #interpolate(float, float, float)},
+	 * so <code>value1 + ( value2 - value1 ) * weights[ x ]</code> equals to <code>interpolate( value1, value2, (float) x / sectorSize )</code>.
+	 * 
+	 * @param sectorSize size of the sectors
+	 * @return the weights of the interpolation
+	 */
+	private static float[] buildRatioWeights( final int sectorSize ) {
+		final float[] ratioWeights = new float[ sectorSize ];
+		
+		for ( int x = 0; x < sectorSize; x++ )
+			ratioWeights[ x ] = interpolate( 0.0f, 1.0f, (float) x / sectorSize );
+		
+		return ratioWeights;
+	}
+	
+	/**
+	 * Paints the colors of heights into a pixel array.<br>
+	 * Heights between the height limits are colored with the height-to-color lookup table; other heights (which do not occur
+	 * in generated terrains, but may occur in imported height fields) and <code>NaN</code>s are colored by the palette (see {@link Palette#getRGB(float)}).
+	 * 
+	 * @param parameters     parameters of the render
+	 * @param heights        heights to be colored
+	 * @param heightsOffset  index of the top left height in the heights array
+	 * @param heightsStride  distance between the indices of vertically adjacent heights in the heights array
+	 * @param pixels         pixel array to paint into, RGB values of the points
+	 * @param offset         index of the top left point in the pixel array
+	 * @param scanlineStride distance between the indices of vertically adjacent points in the pixel array
+	 * @param width          width of the area to be colored
+	 * @param height         height of the area to be colored
+	 */
+	private static void colorHeights( final Parameters parameters, final float[] heights, final int heightsOffset, final int heightsStride, final int[] pixels, final int offset, final int scanlineStride,
+			final int width, final int height ) {
+		final float minHeight             = parameters.minHeight;
+		final float maxHeight             = parameters.maxHeight;
+		final int[] heightColorTable      = parameters.heightColorTable;
+		final float heightColorTableScale = parameters.heightColorTableScale;
+		
+		for ( int y = 0; y < height; y++ ) {
+			for ( int x = 0, i = heightsOffset + y * heightsStride, j = offset + y * scanlineStride; x < width; x++, i++, j++ ) {
+				final float pointHeight = heights[ i ];
+				if ( !( pointHeight >= minHeight && pointHeight <= maxHeight ) ) {
+					pixels[ j ] = parameters.palette.getRGB( pointHeight );
+					continue;
+				}
+				final int   cellIndex   = (int) ( ( pointHeight - minHeight ) * heightColorTableScale );
+				final int   rgb         = heightColorTable[ cellIndex < heightColorTable.length ? cellIndex : heightColorTable.length - 1 ];
+				pixels[ j ] = rgb == EXACT_COLOR_MARKER ? parameters.palette.getRGB( pointHeight ) : rgb;
 			}
 		}
 	}
@@ -126,27 +1129,11 @@ public class Terrain extends RandomBaseAlgorithm {
 	 * @param ratio  where between value1 and value2 we need the interpolation
 	 * @return the interpolation of value1 and value2 at a position between them specified by ratio
 	 */
-	private float interpolate( final float value1, final float value2, final float ratio ) {
+	private static float interpolate( final float value1, final float value2, final float ratio ) {
 		final float ratio2 = ratio * ratio;
 		return value1 + ( value2 - value1 ) * ( 2.0f * ratio2*ratio2 - 6.0f * ratio2 * ratio + 5.0f * ratio2 );
 	}
 	
-	/**
-	 * Calculates and returns the RGB components of the color of the specified height on the landscape.<br>
-	 * The returned int value contains the rgb values in the right order. Blue is at the least significant bits.
-	 * All of the rgb components are 8 bit precision.
-	 * @param height height whose color needed to be calculated
-	 * @return the RGB values of the specified height on the landscape
-	 */
-	private int getRGBOfHeight( final float height ) {
-		// We locate the height between 2 heights whose interpolatable colors will determine the searched RGB
-		int i;
-		for ( i = 1; height > HEIGHT_STONES[ i ]; i++ )
-			;
-		
-		return interpolateColors( STONE_COLORS[ i - 1 ], STONE_COLORS[ i ], ( height - HEIGHT_STONES[ i - 1 ] ) / ( HEIGHT_STONES[ i ] - HEIGHT_STONES[ i - 1 ] ) );
-	}
-	
 	/**
 	 * Linear-interpolates colors. Calculates a 3rd color at a specified position between 2 boundary colors.<br>
 	 * The position is specified by a ratio, whose value means:
@@ -158,7 +1145,7 @@ public class Terrain extends RandomBaseAlgorithm {
 	 * @param ratio  where between value1 and value2 we need the interpolation
 	 * @return the RGB value of the linear interpolation of value1 and value2 at a position between them specified by ratio
 	 */
-	private int interpolateColors( final Color value1, final Color value2, final double ratio ) {
+	private static int interpolateColors( final Color value1, final Color value2, final double ratio ) {
 		final int a = value1.getAlpha() + (int) ( ( value2.getAlpha() - value1.getAlpha() ) * ratio );
 		final int r = value1.getRed  () + (int) ( ( value2.getRed  () - value1.getRed  () ) * ratio );
 		final int g = value1.getGreen() + (int) ( ( value2.getGreen() - value1.getGreen() ) * ratio );
@@ -1,6 +1,7 @@
 package hu.belicza.andras.recursion.model;
 
 import java.awt.Graphics;
+import java.util.List;
 import java.util.Properties;
 
 /**
@@ -48,6 +49,14 @@ public interface Algorithm {
 	 */
 	public void restoreDefaultProperties();
 	
+	/**
+	 * Returns the descriptors of the parameters of the algorithm.<br>
+	 * Each parameter is controlled by the property of the same name.
+	 * 
+	 * @return the descriptors of the parameters of the algorithm
+	 */
+	public List< ParameterDescriptor< ? > > getParameterDescriptors();
+	
 	/**
 	 * Paints the result of the algorithm or returns an error if the supplied properties are not valid.
 	 * 
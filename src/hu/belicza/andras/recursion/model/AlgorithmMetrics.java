@@ -0,0 +1,275 @@
+package hu.belicza.andras.recursion.model;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Aggregated metrics of the renders of an algorithm, published as a JMX MBean named
+ * <code>hu.belicza.andras.recursion:type=AlgorithmMetrics,name="<i>algorithm class name</i>"</code>.<br>
+ * Metrics are disabled by default, they can be enabled with the <code>recursion.metrics</code> system property
+ * or with {@link #setEnabled(boolean)}.
+ * 
+ * @author Belicza Andras
+ */
+public class AlgorithmMetrics implements AlgorithmMetricsMBean {
+	
+	/** Name of the system property to enable the metrics.  */
+	public static final String  ENABLED_PROPERTY    = "recursion.metrics";
+	/** Domain of the object names of the MBeans.           */
+	public static final String  OBJECT_NAME_DOMAIN  = "hu.belicza.andras.recursion";
+	
+	/** Number of buckets of the latency histograms.        */
+	private static final int    HISTOGRAM_BUCKETS   = 32;
+	
+	/** Tells if the renders are to be measured.            */
+	private static volatile boolean enabled = Boolean.getBoolean( ENABLED_PROPERTY );
+	
+	/** Metrics of the algorithms mapped from the class names of the algorithms. */
+	private static final ConcurrentMap< String, AlgorithmMetrics > metricsMap = new ConcurrentHashMap< String, AlgorithmMetrics >();
+	
+	/** Name of the algorithm.                              */
+	private final String algorithmName;
+	
+	private final LongAdder       renderCount        = new LongAdder();
+	private final LongAdder       abortedRenderCount = new LongAdder();
+	private final LongAdder       callCount          = new LongAdder();
+	private final AtomicInteger   maxDepth           = new AtomicInteger();
+	private final LongAdder       drawCallCount      = new LongAdder();
+	private final LongAdder       validationNanos    = new LongAdder();
+	private final LongAdder       generationNanos    = new LongAdder();
+	private final LongAdder       rasterizationNanos = new LongAdder();
+	private final LongAdder       allocatedBytes     = new LongAdder();
+	private final LongAdder       latencyNanos       = new LongAdder();
+	private final AtomicLong      maxLatencyNanos    = new AtomicLong();
+	private final AtomicLongArray latencyHistogram   = new AtomicLongArray( HISTOGRAM_BUCKETS );
+	
+	/** Tells if the allocated bytes are supported (a render reported them). */
+	private volatile boolean      allocationSupported;
+	/** Metrics of the last finished render, <code>null</code> if there is none. */
+	private volatile RenderMetrics lastRender;
+	
+	/**
+	 * Creates a new <code>AlgorithmMetrics</code>.
+	 * @param algorithmName name of the algorithm
+	 */
+	private AlgorithmMetrics( final String algorithmName ) {
+		this.algorithmName = algorithmName;
+	}
+	
+	/**
+	 * Tells if the renders are to be measured.
+	 * @return true if the renders are to be measured; false otherwise
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+	
+	/**
+	 * Enables or disables measuring the renders. Renders in progress are not affected.
+	 * @param enabled tells if the renders are to be measured
+	 */
+	public static void setEnabled( final boolean enabled ) {
+		AlgorithmMetrics.enabled = enabled;
+	}
+	
+	/**
+	 * Returns the metrics of an algorithm, creates and registers its MBean on first use.<br>
+	 * Instances of the same algorithm class share their metrics.
+	 * @param algorithm algorithm whose metrics to be returned
+	 * @return the metrics of the algorithm
+	 */
+	public static AlgorithmMetrics of( final Algorithm algorithm ) {
+		final String className = algorithm.getClass().getName();
+		
+		AlgorithmMetrics metrics = metricsMap.get( className );
+		if ( metrics == null ) {
+			final AlgorithmMetrics newMetrics = new AlgorithmMetrics( algorithm.getName() );
+			metrics = metricsMap.putIfAbsent( className, newMetrics );
+			if ( metrics == null ) {
+				metrics = newMetrics;
+				try {
+					ManagementFactory.getPlatformMBeanServer().registerMBean( metrics,
+							new ObjectName( OBJECT_NAME_DOMAIN + ":type=AlgorithmMetrics,name=" + ObjectName.quote( className ) ) );
+				}
+				catch ( final JMException je ) {
+					// The metrics are still available through this method
+				}
+			}
+		}
+		
+		return metrics;
+	}
+	
+	/**
+	 * Records a finished render.
+	 * @param render    metrics of the render
+	 * @param completed tells if the render completed; false if it was cancelled or it failed
+	 */
+	void record( final RenderMetrics render, final boolean completed ) {
+		lastRender = render;
+		
+		if ( !completed ) {
+			abortedRenderCount.increment();
+			return;
+		}
+		
+		renderCount       .increment();
+		callCount         .add( render.getCalls() );
+		drawCallCount     .add( render.getDrawCalls() );
+		validationNanos   .add( render.getValidationNanos() );
+		generationNanos   .add( render.getGenerationNanos() );
+		rasterizationNanos.add( render.getRasterizationNanos() );
+		if ( render.getAllocatedBytes() >= 0 ) {
+			allocatedBytes.add( render.getAllocatedBytes() );
+			allocationSupported = true;
+		}
+		
+		int max;
+		while ( render.getMaxDepth() > ( max = maxDepth.get() ) && !maxDepth.compareAndSet( max, render.getMaxDepth() ) )
+			;
+		
+		final long latency = render.getLatencyNanos();
+		latencyNanos.add( latency );
+		long maxLatency;
+		while ( latency > ( maxLatency = maxLatencyNanos.get() ) && !maxLatencyNanos.compareAndSet( maxLatency, latency ) )
+			;
+		latencyHistogram.incrementAndGet( Math.min( HISTOGRAM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros( latency / 1000 ) ) );
+	}
+	
+	/**
+	 * Returns the metrics of the last finished (completed, cancelled or failed) render.
+	 * @return the metrics of the last finished render, <code>null</code> if there is none
+	 */
+	public RenderMetrics getLastRender() {
+		return lastRender;
+	}
+	
+	@Override
+	public String getAlgorithmName() {
+		return algorithmName;
+	}
+	
+	@Override
+	public long getRenderCount() {
+		return renderCount.sum();
+	}
+	
+	@Override
+	public long getAbortedRenderCount() {
+		return abortedRenderCount.sum();
+	}
+	
+	@Override
+	public long getCallCount() {
+		return callCount.sum();
+	}
+	
+	@Override
+	public int getMaxDepth() {
+		return maxDepth.get();
+	}
+	
+	@Override
+	public long getDrawCallCount() {
+		return drawCallCount.sum();
+	}
+	
+	@Override
+	public double getValidationMillis() {
+		return validationNanos.sum() / 1e6;
+	}
+	
+	@Override
+	public double getGenerationMillis() {
+		return generationNanos.sum() / 1e6;
+	}
+	
+	@Override
+	public double getRasterizationMillis() {
+		return rasterizationNanos.sum() / 1e6;
+	}
+	
+	@Override
+	public long getAllocatedBytes() {
+		return allocationSupported ? allocatedBytes.sum() : -1;
+	}
+	
+	@Override
+	public double getMeanLatencyMillis() {
+		final long renderCount = this.renderCount.sum();
+		return renderCount == 0 ? 0 : latencyNanos.sum() / 1e6 / renderCount;
+	}
+	
+	@Override
+	public double getMedianLatencyMillis() {
+		return getLatencyPercentileMillis( 50 );
+	}
+	
+	@Override
+	public double getP99LatencyMillis() {
+		return getLatencyPercentileMillis( 99 );
+	}
+	
+	@Override
+	public double getMaxLatencyMillis() {
+		return maxLatencyNanos.get() / 1e6;
+	}
+	
+	@Override
+	public long[] getLatencyHistogram() {
+		final long[] histogram = new long[ HISTOGRAM_BUCKETS ];
+		for ( int i = 0; i < histogram.length; i++ )
+			histogram[ i ] = latencyHistogram.get( i );
+		return histogram;
+	}
+	
+	/**
+	 * Returns a percentile of the latency of the completed renders, the upper bound of the histogram bucket holding it.
+	 * @param percentile percentile to be returned
+	 * @return the percentile of the latency in milliseconds, 0 if there are no completed renders
+	 */
+	public double getLatencyPercentileMillis( final double percentile ) {
+		final long[] histogram = getLatencyHistogram();
+		
+		long total = 0;
+		for ( final long count : histogram )
+			total += count;
+		if ( total == 0 )
+			return 0;
+		
+		final long rank = (long) Math.ceil( percentile / 100.0 * total );
+		long       sum  = 0;
+		for ( int i = 0; i < histogram.length - 1; i++ )
+			if ( ( sum += histogram[ i ] ) >= rank )
+				return Math.min( ( 1L << i ) / 1e3, getMaxLatencyMillis() );
+		
+		return getMaxLatencyMillis();
+	}
+	
+	@Override
+	public void reset() {
+		renderCount       .reset();
+		abortedRenderCount.reset();
+		callCount         .reset();
+		maxDepth          .set( 0 );
+		drawCallCount     .reset();
+		validationNanos   .reset();
+		generationNanos   .reset();
+		rasterizationNanos.reset();
+		allocatedBytes    .reset();
+		latencyNanos      .reset();
+		maxLatencyNanos   .set( 0 );
+		for ( int i = 0; i < HISTOGRAM_BUCKETS; i++ )
+			latencyHistogram.set( i, 0 );
+		lastRender = null;
+	}
+	
+}
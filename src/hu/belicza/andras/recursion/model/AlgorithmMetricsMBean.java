@@ -0,0 +1,107 @@
+package hu.belicza.andras.recursion.model;
+
+/**
+ * Management interface of the {@link AlgorithmMetrics}, published through JMX.
+ * 
+ * @author Belicza Andras
+ */
+public interface AlgorithmMetricsMBean {
+	
+	/**
+	 * Returns the name of the algorithm.
+	 * @return the name of the algorithm
+	 */
+	public String getAlgorithmName();
+	
+	/**
+	 * Returns the number of completed renders.
+	 * @return the number of completed renders
+	 */
+	public long getRenderCount();
+	
+	/**
+	 * Returns the number of cancelled or failed renders.
+	 * @return the number of cancelled or failed renders
+	 */
+	public long getAbortedRenderCount();
+	
+	/**
+	 * Returns the number of recursive calls of the completed renders.
+	 * @return the number of recursive calls of the completed renders
+	 */
+	public long getCallCount();
+	
+	/**
+	 * Returns the max recursion depth reached by a completed render.
+	 * @return the max recursion depth reached by a completed render
+	 */
+	public int getMaxDepth();
+	
+	/**
+	 * Returns the number of draw calls of the completed renders.
+	 * @return the number of draw calls of the completed renders
+	 */
+	public long getDrawCallCount();
+	
+	/**
+	 * Returns the time spent on the validation of the parameters by the completed renders.
+	 * @return the time spent on the validation of the parameters in milliseconds
+	 */
+	public double getValidationMillis();
+	
+	/**
+	 * Returns the time spent on generation by the completed renders.
+	 * @return the time spent on generation in milliseconds
+	 */
+	public double getGenerationMillis();
+	
+	/**
+	 * Returns the time spent on rasterization by the completed renders.
+	 * @return the time spent on rasterization in milliseconds
+	 */
+	public double getRasterizationMillis();
+	
+	/**
+	 * Returns the bytes allocated by the completed renders (by the threads which started them).
+	 * @return the bytes allocated by the completed renders, -1 if not supported
+	 */
+	public long getAllocatedBytes();
+	
+	/**
+	 * Returns the mean latency of the completed renders.
+	 * @return the mean latency of the completed renders in milliseconds
+	 */
+	public double getMeanLatencyMillis();
+	
+	/**
+	 * Returns the median latency of the completed renders (the upper bound of its histogram bucket).
+	 * @return the median latency of the completed renders in milliseconds
+	 */
+	public double getMedianLatencyMillis();
+	
+	/**
+	 * Returns the 99th percentile latency of the completed renders (the upper bound of its histogram bucket).
+	 * @return the 99th percentile latency of the completed renders in milliseconds
+	 */
+	public double getP99LatencyMillis();
+	
+	/**
+	 * Returns the max latency of the completed renders.
+	 * @return the max latency of the completed renders in milliseconds
+	 */
+	public double getMaxLatencyMillis();
+	
+	/**
+	 * Returns the latency histogram of the completed renders.<br>
+	 * Element <code>i</code> is the number of renders whose latency is less than <code>2^i</code> microseconds
+	 * (and at least <code>2^(i-1)</code>); the last element counts all longer renders.
+	 * @return the latency histogram of the completed renders
+	 */
+	public long[] getLatencyHistogram();
+	
+	/**
+	 * Resets the metrics.
+	 */
+	public void reset();
+	
+}
@@ -0,0 +1,28 @@
+package hu.belicza.andras.recursion.model;
+
+import java.util.Properties;
+
+/**
+ * An {@link Algorithm} which can render a stream of animation frames.<br>
+ * Frame <i>i</i> of an animation is identical to the result of a render with the random seed
+ * <code>RandomHash.hash( baseSeed, i )</code>, where the base seed is drawn from the random generator of the
+ * properties the frame renderer is created with.
+ * 
+ * @author Belicza Andras
+ */
+public interface AnimatedAlgorithm extends Algorithm {
+	
+	/**
+	 * Creates a renderer of the frames of an animation or returns an error if the properties are not valid.<br>
+	 * The properties are validated once, the frames are rendered with the same parameters.
+	 * Frames are not measured by the metrics of the algorithm.
+	 * 
+	 * @param width            width of the frames
+	 * @param height           height of the frames
+	 * @param renderProperties properties of the animation, <code>null</code> means the properties of the algorithm
+	 * @return a renderer of the frames
+	 * @throws IllegalArgumentException thrown if illegal property value is specified or the frame size is not supported
+	 */
+	public FrameRenderer createFrameRenderer( final int width, final int height, final Properties renderProperties ) throws IllegalArgumentException;
+	
+}
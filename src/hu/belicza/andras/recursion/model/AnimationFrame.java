@@ -0,0 +1,105 @@
+package hu.belicza.andras.recursion.model;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * A reusable frame of an animation: an image with its pixel array, graphics context and draw target.<br>
+ * Everything is created once with the frame, so rendering into a frame does not allocate anything for the frame itself.
+ * A frame has to be disposed when it is not needed anymore.
+ * 
+ * @author Belicza Andras
+ */
+public class AnimationFrame {
+	
+	/** Image of the frame, {@link BufferedImage#TYPE_INT_RGB}. */
+	private final BufferedImage image;
+	/** Pixels of the image, RGB values row by row.          */
+	private final int[]         pixels;
+	/** Graphics context of the image.                       */
+	private final Graphics2D    graphics;
+	/** Target drawing with the graphics context.            */
+	private final DrawTarget    target;
+	
+	/**
+	 * Creates a new <code>AnimationFrame</code>.
+	 * @param width  width of the frame
+	 * @param height height of the frame
+	 * @throws IllegalArgumentException if the width or the height is not positive
+	 */
+	public AnimationFrame( final int width, final int height ) throws IllegalArgumentException {
+		if ( width <= 0 || height <= 0 )
+			throw new IllegalArgumentException( "Invalid frame size: " + width + "x" + height + " (must be positive)" );
+		
+		image    = new BufferedImage( width, height, BufferedImage.TYPE_INT_RGB );
+		pixels   = ( (DataBufferInt) image.getRaster().getDataBuffer() ).getData();
+		graphics = image.createGraphics();
+		target   = new GraphicsDrawTarget( graphics );
+	}
+	
+	/**
+	 * Returns the width of the frame.
+	 * @return the width of the frame
+	 */
+	public int getWidth() {
+		return image.getWidth();
+	}
+	
+	/**
+	 * Returns the height of the frame.
+	 * @return the height of the frame
+	 */
+	public int getHeight() {
+		return image.getHeight();
+	}
+	
+	/**
+	 * Returns the image of the frame.
+	 * @return the image of the frame
+	 */
+	public BufferedImage getImage() {
+		return image;
+	}
+	
+	/**
+	 * Returns the pixels of the image.
+	 * @return the pixels of the image, RGB values row by row (the scanline stride is the width)
+	 */
+	public int[] getPixels() {
+		return pixels;
+	}
+	
+	/**
+	 * Returns the graphics context of the image.
+	 * @return the graphics context of the image
+	 */
+	public Graphics2D getGraphics() {
+		return graphics;
+	}
+	
+	/**
+	 * Returns the target drawing with the graphics context of the image.
+	 * @return the target drawing with the graphics context of the image
+	 */
+	public DrawTarget getTarget() {
+		return target;
+	}
+	
+	/**
+	 * Fills the frame with a color.
+	 * @param rgb RGB value of the color
+	 */
+	public void clear( final int rgb ) {
+		Arrays.fill( pixels, rgb );
+	}
+	
+	/**
+	 * Releases the graphics context of the frame.
+	 */
+	public void dispose() {
+		graphics.dispose();
+	}
+	
+}
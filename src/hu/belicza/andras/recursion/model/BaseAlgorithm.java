@@ -1,24 +1,83 @@
 package hu.belicza.andras.recursion.model;
 
 import java.awt.Graphics;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
+import java.util.Random;
 
 /**
  * Abstract base for {@link Algorithm} subclasses.<br>
- * Handles the properties of the algorithm.
+ * Handles the properties of the algorithm.<br>
+ * Renders do not store any state in the algorithm: each render works on its own {@link RenderContext}
+ * holding the parameters converted from the properties at the start of the render, so an instance can serve concurrent renders.<br>
+ * The parameters are declared with typed {@link ParameterDescriptor}s. The properties of the algorithm are validated and compiled
+ * into {@link ParameterValues} and a parameter snapshot once after they change, renders reuse the compiled snapshot
+ * (a render compares the properties of the parameters to the ones the snapshot was compiled from, so the properties can be modified in any way).<br>
+ * If the metrics are enabled (see {@link AlgorithmMetrics}), the contexts of the renders carry {@link RenderMetrics}.
+ * 
+ * @param <P> type of the parameter snapshot of the algorithm
  * 
  * @author Belicza Andras
  */
-public abstract class BaseAlgorithm implements Algorithm {
+public abstract class BaseAlgorithm< P > implements Algorithm {
 	
 	private final String name;
 	private final String author;
 	private final String version;
 	private final String description;
 	
+	/** Descriptors of the parameters of the algorithm.  */
+	private final List< ParameterDescriptor< ? > > parameterDescriptors = new ArrayList< ParameterDescriptor< ? > >();
+	
 	protected final Properties defaultProperties = new Properties();
 	protected final Properties properties        = new Properties( defaultProperties );
-	protected Graphics         graphics;
+	
+	/** The parameters compiled from the properties, <code>null</code> if not yet compiled. */
+	private volatile CompiledParameters< P > compiledParameters;
+	
+	/**
+	 * Parameters compiled from the properties of the algorithm.
+	 * @param <P> type of the parameter snapshot
+	 */
+	private static class CompiledParameters< P > {
+		
+		/** Values of the properties of the parameters the parameters were compiled from, indexed like the descriptors. */
+		private final String[]        propertyValues;
+		/** The compiled values of the parameters.                                   */
+		private final ParameterValues values;
+		/** The parameter snapshot created from the values.                          */
+		private final P               parameters;
+		
+		/**
+		 * Creates a new <code>CompiledParameters</code>.
+		 * @param propertyValues values of the properties of the parameters the parameters were compiled from, indexed like the descriptors
+		 * @param values         the compiled values of the parameters
+		 * @param parameters     the parameter snapshot created from the values
+		 */
+		public CompiledParameters( final String[] propertyValues, final ParameterValues values, final P parameters ) {
+			this.propertyValues = propertyValues;
+			this.values         = values;
+			this.parameters     = parameters;
+		}
+		
+		/**
+		 * Tells if the parameters were compiled from the current values of properties.
+		 * @param descriptors descriptors of the parameters
+		 * @param properties  properties to be checked
+		 * @return true if the values of the properties of the parameters are the ones the parameters were compiled from
+		 */
+		public boolean isCompiledFrom( final List< ParameterDescriptor< ? > > descriptors, final Properties properties ) {
+			for ( int i = 0; i < propertyValues.length; i++ ) {
+				final String value = properties.getProperty( descriptors.get( i ).getName() );
+				if ( value == null ? propertyValues[ i ] != null : !value.equals( propertyValues[ i ] ) )
+					return false;
+			}
+			return true;
+		}
+		
+	}
 	
 	public BaseAlgorithm( final String name, final String author, final String version, final String description ) {
 		this.name        = name;
@@ -57,19 +116,147 @@ public abstract class BaseAlgorithm implements Algorithm {
 		properties.clear();
 	}
 	
+	@Override
+	public List< ParameterDescriptor< ? > > getParameterDescriptors() {
+		return Collections.unmodifiableList( parameterDescriptors );
+	}
+	
 	/**
-	 * Validates and converts properties.
+	 * Declares a parameter of the algorithm, and sets its default value in the default properties.<br>
+	 * Parameters are to be declared in the constructors.
+	 * 
+	 * @param descriptor descriptor of the parameter
+	 * @return the descriptor of the parameter
+	 */
+	protected < T extends Comparable< ? super T > > ParameterDescriptor< T > addParameter( final ParameterDescriptor< T > descriptor ) {
+		parameterDescriptors.add( descriptor );
+		defaultProperties.setProperty( descriptor.getName(), descriptor.format( descriptor.getDefaultValue() ) );
+		return descriptor;
+	}
+	
+	/**
+	 * Validates and compiles the properties of the algorithm, or returns the compiled parameters if the properties have not changed since.
+	 * @return the compiled parameters of the properties of the algorithm
 	 * @throws IllegalArgumentException thrown if illegal property value is specified
 	 */
-	protected abstract void validateProperties() throws IllegalArgumentException;
+	private CompiledParameters< P > getCompiledParameters() throws IllegalArgumentException {
+		CompiledParameters< P > compiledParameters = this.compiledParameters;
+		if ( compiledParameters == null || !compiledParameters.isCompiledFrom( parameterDescriptors, properties ) ) {
+			final String[]        propertyValues = ParameterValues.getPropertyValues( parameterDescriptors, properties );
+			final ParameterValues values         = ParameterValues.compile( parameterDescriptors, propertyValues );
+			this.compiledParameters = compiledParameters = new CompiledParameters< P >( propertyValues, values, createParameters( values ) );
+		}
+		
+		return compiledParameters;
+	}
+	
+	/**
+	 * Validates the properties of the algorithm, and returns the parameter snapshot of them.<br>
+	 * The snapshot is compiled only once after the properties change.
+	 * 
+	 * @return the parameter snapshot of the properties of the algorithm
+	 * @throws IllegalArgumentException thrown if illegal property value is specified
+	 */
+	public P getParameters() throws IllegalArgumentException {
+		return getCompiledParameters().parameters;
+	}
+	
+	/**
+	 * Creates an immutable parameter snapshot from validated parameter values.
+	 * @param values validated values of the parameters
+	 * @return the parameter snapshot
+	 * @throws IllegalArgumentException thrown if the values are not valid together
+	 */
+	protected abstract P createParameters( final ParameterValues values ) throws IllegalArgumentException;
+	
+	/**
+	 * Creates the random generator of a render.
+	 * @param values values of the parameters of the render
+	 * @return the random generator of the render; this implementation returns <code>null</code>
+	 */
+	protected Random createRandom( final ParameterValues values ) {
+		return null;
+	}
+	
+	/**
+	 * Creates the context of a render.
+	 * 
+	 * @param graphics         graphics context to paint with, <code>null</code> if the render paints to a draw target or an image
+	 * @param target           target to draw to, <code>null</code> if the render does not draw primitives
+	 * @param renderProperties properties of the render, <code>null</code> means the properties of the algorithm
+	 *                         (render properties are compiled for each render, the properties of the algorithm only after they change)
+	 * @return the context of the render
+	 * @throws IllegalArgumentException thrown if illegal property value is specified
+	 */
+	protected RenderContext< P > createContext( final Graphics graphics, final DrawTarget target, final Properties renderProperties ) throws IllegalArgumentException {
+		final RenderMetrics metrics = AlgorithmMetrics.isEnabled() ? new RenderMetrics( AlgorithmMetrics.of( this ) ) : null;
+		
+		final ParameterValues values;
+		final P               parameters;
+		if ( renderProperties == null ) {
+			final CompiledParameters< P > compiledParameters = getCompiledParameters();
+			values     = compiledParameters.values;
+			parameters = compiledParameters.parameters;
+		}
+		else {
+			values     = ParameterValues.compile( parameterDescriptors, renderProperties );
+			parameters = createParameters( values );
+		}
+		
+		if ( metrics == null )
+			return new RenderContext< P >( graphics, target, createRandom( values ), parameters );
+		
+		metrics.setValidationNanos( System.nanoTime() - metrics.getStartNanos() );
+		return new RenderContext< P >( graphics, target == null ? null : new MeteredDrawTarget( target, metrics ), createRandom( values ), parameters, metrics );
+	}
+	
+	/**
+	 * Renders the result of the algorithm in a render context, and finishes the render.
+	 * 
+	 * @param context context of the render
+	 * @param width   width of the desired image
+	 * @param height  height of the desired image
+	 */
+	protected void render( final RenderContext< P > context, final int width, final int height ) {
+		boolean completed = false;
+		try {
+			paint( context, width, height );
+			completed = true;
+		}
+		finally {
+			context.finish( completed );
+		}
+	}
 	
 	@Override
 	public void paint( final Graphics graphics, final int width, final int height ) throws IllegalArgumentException {
-		validateProperties();
-		
-		this.graphics = graphics;
+		paint( graphics, width, height, null );
 	}
 	
+	/**
+	 * Paints the result of the algorithm with the specified properties or returns an error if the properties are not valid.<br>
+	 * The render properties are typically created with the properties of the algorithm as defaults, overriding some of them
+	 * (for example the random seed) for this render only.
+	 * 
+	 * @param graphics         graphics context to be used for painting
+	 * @param width            width of the desired image
+	 * @param height           height of the desired image
+	 * @param renderProperties properties of the render, <code>null</code> means the properties of the algorithm
+	 * @throws IllegalArgumentException thrown if illegal property value is specified
+	 */
+	public void paint( final Graphics graphics, final int width, final int height, final Properties renderProperties ) throws IllegalArgumentException {
+		render( createContext( graphics, new GraphicsDrawTarget( graphics ), renderProperties ), width, height );
+	}
+	
+	/**
+	 * Paints the result of the algorithm in a render context.
+	 * 
+	 * @param context context of the render
+	 * @param width   width of the desired image
+	 * @param height  height of the desired image
+	 */
+	protected abstract void paint( final RenderContext< P > context, final int width, final int height );
+	
 	@Override
 	public String toString() {
 		return name + ( version == null ? "" : " ver. " + version ) + ( author == null ? "" : " by " + author ); 
@@ -0,0 +1,153 @@
+package hu.belicza.andras.recursion.model;
+
+import java.awt.Color;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reader of the binary segment files written by {@link BinaryVectorSink}: replays the drawings of a file onto a {@link DrawTarget}.<br>
+ * The file is read through a fixed size buffer as it is replayed, so the memory use does not depend on the size of the file.
+ * A polyline is replayed as its segments, a pixel as a pixel.<br>
+ * Readers are not thread-safe.
+ * 
+ * @author Belicza Andras
+ */
+public class BinaryVectorReader implements Closeable {
+	
+	/** Channel to read the file from.     */
+	private final ReadableByteChannel channel;
+	/** Input buffer of the file.          */
+	private final ByteBuffer          buffer = ByteBuffer.allocateDirect( VectorSink.BUFFER_SIZE );
+	/** Width of the drawing.              */
+	private final int                 width;
+	/** Height of the drawing.             */
+	private final int                 height;
+	
+	/**
+	 * Creates a new <code>BinaryVectorReader</code>, and reads the header of the file.
+	 * @param channel channel to read the file from, closed by {@link #close()}
+	 * @throws IOException if the header cannot be read or it is not the header of a supported segment file
+	 */
+	public BinaryVectorReader( final ReadableByteChannel channel ) throws IOException {
+		this.channel = channel;
+		buffer.flip();
+		
+		for ( final byte b : BinaryVectorSink.MAGIC )
+			if ( readByte() != b )
+				throw new IOException( "Not a binary segment file!" );
+		final int version = readByte();
+		if ( version != BinaryVectorSink.VERSION )
+			throw new IOException( "Unsupported version of the binary segment file: " + version );
+		
+		width  = readVarint();
+		height = readVarint();
+	}
+	
+	/**
+	 * Returns the width of the drawing.
+	 * @return the width of the drawing
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * Returns the height of the drawing.
+	 * @return the height of the drawing
+	 */
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * Replays the drawings of the file onto a draw target, up to the end of the file.
+	 * @param target target to replay the drawings onto
+	 * @throws IOException if the file cannot be read or it is corrupt
+	 */
+	public void replay( final DrawTarget target ) throws IOException {
+		while ( true ) {
+			final int tag = readByte();
+			switch ( tag ) {
+			case BinaryVectorSink.TAG_END :
+				return;
+			case BinaryVectorSink.TAG_COLOR :
+				target.setColor( new Color( readByte() << 24 | readByte() << 16 | readByte() << 8 | readByte(), true ) );
+				break;
+			case BinaryVectorSink.TAG_POLYLINE : {
+				final int count = readVarint();
+				if ( count < 2 )
+					throw new IOException( "Invalid number of points of a polyline: " + count );
+				int x = readSigned();
+				int y = readSigned();
+				for ( int i = 1; i < count; i++ ) {
+					final int x2 = x + readSigned();
+					final int y2 = y + readSigned();
+					target.drawLine( x, y, x2, y2 );
+					x = x2;
+					y = y2;
+				}
+				break;
+			}
+			case BinaryVectorSink.TAG_PIXEL :
+				target.drawPixel( readSigned(), readSigned() );
+				break;
+			default :
+				throw new IOException( "Invalid record tag: " + tag );
+			}
+		}
+	}
+	
+	/**
+	 * Closes the channel of the file.
+	 * @throws IOException if the channel cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+	
+	/**
+	 * Reads a byte.
+	 * @return the byte read, as an unsigned value
+	 * @throws IOException if the file cannot be read or it ends
+	 */
+	private int readByte() throws IOException {
+		if ( !buffer.hasRemaining() ) {
+			buffer.clear();
+			final int bytesRead = channel.read( buffer );
+			buffer.flip();
+			if ( bytesRead <= 0 )
+				throw new IOException( "Unexpected end of file!" );
+		}
+		return buffer.get() & 0xff;
+	}
+	
+	/**
+	 * Reads a zigzag-encoded varint.
+	 * @return the signed value read
+	 * @throws IOException if the file cannot be read or it is corrupt
+	 */
+	private int readSigned() throws IOException {
+		final int value = readVarint();
+		return value >>> 1 ^ -( value & 1 );
+	}
+	
+	/**
+	 * Reads an unsigned varint.
+	 * @return the value read
+	 * @throws IOException if the file cannot be read or it is corrupt
+	 */
+	private int readVarint() throws IOException {
+		int value = 0;
+		for ( int shift = 0; shift < 35; shift += 7 ) {
+			final int b = readByte();
+			value |= ( b & 0x7f ) << shift;
+			if ( ( b & 0x80 ) == 0 )
+				return value;
+		}
+		throw new IOException( "Invalid varint!" );
+	}
+	
+}
@@ -0,0 +1,109 @@
+package hu.belicza.andras.recursion.model;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A {@link VectorSink} writing a compact binary segment file.<br>
+ * The file starts with the {@link #MAGIC} bytes, a version byte, and the width and height of the drawing as varints.
+ * Then records follow, each starting with a tag byte:
+ * <ul>
+ * 	<li>{@link #TAG_COLOR}: the ARGB value of the color of the subsequent records as a 4-byte big-endian int
+ * 	<li>{@link #TAG_POLYLINE}: the number of points as a varint, the first point, then the differences of the subsequent points from their previous points
+ * 	<li>{@link #TAG_PIXEL}: the point of the pixel
+ * 	<li>{@link #TAG_END}: the end of the file
+ * </ul>
+ * Coordinates (and their differences) are zigzag-encoded varints: 7 bits per byte, lowest bits first, the highest bit tells if more bytes follow;
+ * zigzag maps signed values to unsigned ones (0, -1, 1, -2... to 0, 1, 2, 3...). A short segment continuing a polyline takes 2 bytes.
+ * 
+ * @author Belicza Andras
+ */
+public class BinaryVectorSink extends VectorSink {
+	
+	/** Magic bytes of the file.               */
+	public static final byte[] MAGIC        = { 'R', 'S', 'E', 'G' };
+	/** Version of the format.                 */
+	public static final int    VERSION      = 1;
+	
+	/** Tag of the end of the file.            */
+	public static final int    TAG_END      = 0;
+	/** Tag of a color change.                 */
+	public static final int    TAG_COLOR    = 1;
+	/** Tag of a polyline.                     */
+	public static final int    TAG_POLYLINE = 2;
+	/** Tag of a pixel.                        */
+	public static final int    TAG_PIXEL    = 3;
+	
+	/**
+	 * Creates a new <code>BinaryVectorSink</code>.
+	 * @param channel channel to write the file to, closed by {@link #close()}
+	 * @param width   width of the drawing
+	 * @param height  height of the drawing
+	 */
+	public BinaryVectorSink( final WritableByteChannel channel, final int width, final int height ) {
+		super( channel, width, height );
+	}
+	
+	@Override
+	protected void writeHeader() throws IOException {
+		for ( final byte b : MAGIC )
+			writeByte( b );
+		writeByte( VERSION );
+		writeVarint( width  );
+		writeVarint( height );
+	}
+	
+	@Override
+	protected void writeColor( final Color color ) throws IOException {
+		writeByte( TAG_COLOR );
+		reserve( 4 ).putInt( color.getRGB() );
+	}
+	
+	@Override
+	protected void writePolyline( final int[] xPoints, final int[] yPoints, final int count ) throws IOException {
+		writeByte( TAG_POLYLINE );
+		writeVarint( count );
+		writeSigned( xPoints[ 0 ] );
+		writeSigned( yPoints[ 0 ] );
+		for ( int i = 1; i < count; i++ ) {
+			writeSigned( xPoints[ i ] - xPoints[ i - 1 ] );
+			writeSigned( yPoints[ i ] - yPoints[ i - 1 ] );
+		}
+	}
+	
+	@Override
+	protected void writePixel( final int x, final int y ) throws IOException {
+		writeByte( TAG_PIXEL );
+		writeSigned( x );
+		writeSigned( y );
+	}
+	
+	@Override
+	protected void writeFooter() throws IOException {
+		writeByte( TAG_END );
+	}
+	
+	/**
+	 * Writes a signed value as a zigzag-encoded varint.
+	 * @param value value to be written
+	 * @throws IOException if the output cannot be written
+	 */
+	private void writeSigned( final int value ) throws IOException {
+		writeVarint( value << 1 ^ value >> 31 );
+	}
+	
+	/**
+	 * Writes an unsigned value as a varint.
+	 * @param value value to be written, treated as unsigned
+	 * @throws IOException if the output cannot be written
+	 */
+	private void writeVarint( int value ) throws IOException {
+		while ( ( value & ~0x7f ) != 0 ) {
+			writeByte( value & 0x7f | 0x80 );
+			value >>>= 7;
+		}
+		writeByte( value );
+	}
+	
+}
@@ -0,0 +1,79 @@
+package hu.belicza.andras.recursion.model;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Cancellation signal of work executed by pool threads on behalf of an owner thread.<br>
+ * The work is cancelled if it is explicitly cancelled or if the owner thread (the thread creating the signal) is interrupted.
+ * The interruption of a thread waiting for a fork/join task may not be observable by the pool threads, so fork/join tasks
+ * should be invoked by {@link #invoke(ForkJoinTask)} which turns the interruption of the waiting owner into an explicit cancellation.
+ * 
+ * @author Belicza Andras
+ */
+public class Cancellation {
+	
+	/** Thread whose interruption cancels the work. */
+	private final Thread owner = Thread.currentThread();
+	
+	/** Tells if the work has been explicitly cancelled. */
+	private volatile boolean cancelled;
+	
+	/**
+	 * Cancels the work.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+	
+	/**
+	 * Tells if the work has been cancelled.
+	 * @return true if the work has been cancelled; false otherwise
+	 */
+	public boolean isCancelled() {
+		return cancelled || owner.isInterrupted();
+	}
+	
+	/**
+	 * Checks the cancellation.
+	 * @throws CancellationException if the work has been cancelled
+	 */
+	public void check() throws CancellationException {
+		if ( isCancelled() )
+			throw new CancellationException( "The work was cancelled." );
+	}
+	
+	/**
+	 * Invokes a task on the common fork/join pool, and waits for its completion.<br>
+	 * If the invoking thread gets interrupted while waiting, the work is cancelled, and after the task has completed
+	 * a {@link CancellationException} is thrown (with the interrupted status of the thread preserved).
+	 * 
+	 * @param task task to be invoked, should check this cancellation
+	 * @return the result of the task
+	 * @throws CancellationException if the work has been cancelled
+	 */
+	public < T > T invoke( final ForkJoinTask< T > task ) throws CancellationException {
+		ForkJoinPool.commonPool().execute( task );
+		
+		try {
+			return task.get();
+		}
+		catch ( final InterruptedException ie ) {
+			cancel();
+			task.quietlyJoin();
+			Thread.currentThread().interrupt();
+			throw new CancellationException( "The work was cancelled." );
+		}
+		catch ( final ExecutionException ee ) {
+			final Throwable cause = ee.getCause();
+			if ( cause instanceof RuntimeException )
+				throw (RuntimeException) cause;
+			if ( cause instanceof Error )
+				throw (Error) cause;
+			throw new RuntimeException( cause );
+		}
+	}
+	
+}
@@ -0,0 +1,278 @@
+package hu.belicza.andras.recursion.model;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A recorded, replayable list of drawing commands.<br>
+ * Commands are stored in a primitive <code>int</code> array. Each command starts with a header: the lowest 8 bits
+ * hold the operation code, the rest hold a count (number of points, span length or color index).
+ * Points are packed into a single <code>int</code> (16 bits per coordinate) if their coordinates fit,
+ * else the command is marked as wide and a point takes 2 <code>int</code>s.<br>
+ * Connected line segments are recorded into polylines, so a segment continuing the previous one costs 4 bytes.
+ * Adjacent pixels of a row are recorded into spans.<br>
+ * The list can be replayed onto any graphics context with batched calls (like {@link Graphics#drawPolyline(int[], int[], int)}).<br>
+ * A display list may also pass the commands on to another target while recording (for example to display a result while it is being recorded).
+ * 
+ * @author Belicza Andras
+ */
+public class DisplayList implements DrawTarget {
+	
+	/** Operation code of a color change, the count is the index of the color.  */
+	private static final int OP_COLOR    = 1;
+	/** Operation code of a polyline, the count is the number of points.        */
+	private static final int OP_POLYLINE = 2;
+	/** Operation code of a horizontal span, the count is the length of the span. */
+	private static final int OP_SPAN     = 3;
+	/** Flag of the operation codes whose points take 2 ints.                   */
+	private static final int WIDE_FLAG   = 0x80;
+	/** Mask of the operation code in the header.                               */
+	private static final int OP_MASK     = 0x7f;
+	/** Max count that fits into a header.                                      */
+	private static final int MAX_COUNT   = ( 1 << 23 ) - 1;
+	
+	/** The recorded commands.                                                  */
+	private int[] commands = new int[ 256 ];
+	/** Number of used ints in the commands array.                              */
+	private int   size;
+	/** Index of the header of the last command, -1 if there is no command.     */
+	private int   lastHeaderIndex = -1;
+	
+	/** Distinct colors referenced by the color changes.                        */
+	private final List< Color > colors = new ArrayList< Color >();
+	
+	/** Target the commands are passed on to, <code>null</code> if none.     */
+	private final DrawTarget echoTarget;
+	
+	/** Scratch x coordinates of the polyline being replayed.                  */
+	private int[] xPoints = new int[ 64 ];
+	/** Scratch y coordinates of the polyline being replayed.                  */
+	private int[] yPoints = new int[ 64 ];
+	
+	/**
+	 * Creates a new, empty <code>DisplayList</code>.
+	 */
+	public DisplayList() {
+		this( null );
+	}
+	
+	/**
+	 * Creates a new, empty <code>DisplayList</code> which passes the recorded commands on to a target.
+	 * @param echoTarget target the recorded commands are passed on to, <code>null</code> if none
+	 */
+	public DisplayList( final DrawTarget echoTarget ) {
+		this.echoTarget = echoTarget;
+	}
+	
+	@Override
+	public void setColor( final Color color ) {
+		if ( echoTarget != null )
+			echoTarget.setColor( color );
+		
+		int index = colors.indexOf( color );
+		if ( index < 0 ) {
+			index = colors.size();
+			colors.add( color );
+		}
+		
+		addHeader( OP_COLOR, index );
+	}
+	
+	@Override
+	public void drawLine( final int x1, final int y1, final int x2, final int y2 ) {
+		if ( echoTarget != null )
+			echoTarget.drawLine( x1, y1, x2, y2 );
+		
+		final boolean wide = !fits( x1, y1 ) || !fits( x2, y2 );
+		
+		// Continue the last polyline if this segment starts where it ended
+		if ( lastHeaderIndex >= 0 ) {
+			final int header = commands[ lastHeaderIndex ];
+			final int count  = header >>> 8;
+			if ( ( header & OP_MASK ) == OP_POLYLINE && count < MAX_COUNT ) {
+				final boolean lastWide = ( header & WIDE_FLAG ) != 0;
+				if ( lastWide == wide && ( wide ? commands[ size - 2 ] == x1 && commands[ size - 1 ] == y1 : commands[ size - 1 ] == pack( x1, y1 ) ) ) {
+					addPoint( x2, y2, wide );
+					commands[ lastHeaderIndex ] = header + ( 1 << 8 );
+					return;
+				}
+			}
+		}
+		
+		addHeader( OP_POLYLINE | ( wide ? WIDE_FLAG : 0 ), 2 );
+		addPoint( x1, y1, wide );
+		addPoint( x2, y2, wide );
+	}
+	
+	@Override
+	public void drawPixel( final int x, final int y ) {
+		if ( echoTarget != null )
+			echoTarget.drawPixel( x, y );
+		
+		final boolean wide = !fits( x, y );
+		
+		// Extend the last span if this pixel is the next one in its row
+		if ( lastHeaderIndex >= 0 ) {
+			final int header = commands[ lastHeaderIndex ];
+			final int count  = header >>> 8;
+			if ( ( header & OP_MASK ) == OP_SPAN && count < MAX_COUNT ) {
+				final boolean lastWide = ( header & WIDE_FLAG ) != 0;
+				if ( lastWide == wide && ( wide ? commands[ size - 2 ] + count == x && commands[ size - 1 ] == y : commands[ size - 1 ] == pack( x - count, y ) ) ) {
+					commands[ lastHeaderIndex ] = header + ( 1 << 8 );
+					return;
+				}
+			}
+		}
+		
+		addHeader( OP_SPAN | ( wide ? WIDE_FLAG : 0 ), 1 );
+		addPoint( x, y, wide );
+	}
+	
+	/**
+	 * Returns <code>null</code>, the whole result is recorded (the list may be replayed with any clip).
+	 */
+	@Override
+	public Rectangle getClipBounds() {
+		return null;
+	}
+	
+	/**
+	 * Replays the recorded commands onto a graphics context.
+	 * @param graphics graphics context to replay onto
+	 */
+	public void replay( final Graphics graphics ) {
+		final int[] commands = this.commands;
+		
+		for ( int i = 0; i < size; ) {
+			final int     header = commands[ i++ ];
+			final int     count  = header >>> 8;
+			final boolean wide   = ( header & WIDE_FLAG ) != 0;
+			
+			switch ( header & OP_MASK ) {
+			case OP_COLOR :
+				graphics.setColor( colors.get( count ) );
+				break;
+			case OP_POLYLINE :
+				if ( count > xPoints.length ) {
+					xPoints = new int[ Math.max( count, xPoints.length * 2 ) ];
+					yPoints = new int[ xPoints.length ];
+				}
+				for ( int j = 0; j < count; j++ )
+					if ( wide ) {
+						xPoints[ j ] = commands[ i++ ];
+						yPoints[ j ] = commands[ i++ ];
+					}
+					else {
+						xPoints[ j ] = unpackX( commands[ i   ] );
+						yPoints[ j ] = unpackY( commands[ i++ ] );
+					}
+				if ( count == 2 )
+					graphics.drawLine( xPoints[ 0 ], yPoints[ 0 ], xPoints[ 1 ], yPoints[ 1 ] );
+				else
+					graphics.drawPolyline( xPoints, yPoints, count );
+				break;
+			case OP_SPAN :
+				final int x, y;
+				if ( wide ) {
+					x = commands[ i++ ];
+					y = commands[ i++ ];
+				}
+				else {
+					x = unpackX( commands[ i   ] );
+					y = unpackY( commands[ i++ ] );
+				}
+				graphics.drawLine( x, y, x + count - 1, y );
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of bytes used by the recorded commands.
+	 * @return the number of bytes used by the recorded commands
+	 */
+	public long getRecordedBytes() {
+		return size * 4L;
+	}
+	
+	/**
+	 * Adds a command header.
+	 * @param opCode operation code (optionally with the wide flag)
+	 * @param count  count of the command
+	 */
+	private void addHeader( final int opCode, final int count ) {
+		ensureCapacity( size + 1 );
+		lastHeaderIndex = size;
+		commands[ size++ ] = opCode | count << 8;
+	}
+	
+	/**
+	 * Adds a point.
+	 * @param x    x coordinate of the point
+	 * @param y    y coordinate of the point
+	 * @param wide tells if the point has to be stored in 2 ints
+	 */
+	private void addPoint( final int x, final int y, final boolean wide ) {
+		if ( wide ) {
+			ensureCapacity( size + 2 );
+			commands[ size++ ] = x;
+			commands[ size++ ] = y;
+		}
+		else {
+			ensureCapacity( size + 1 );
+			commands[ size++ ] = pack( x, y );
+		}
+	}
+	
+	/**
+	 * Ensures that the commands array can hold the specified number of ints.
+	 * @param capacity required capacity
+	 */
+	private void ensureCapacity( final int capacity ) {
+		if ( capacity > commands.length )
+			commands = Arrays.copyOf( commands, Math.max( capacity, commands.length * 2 ) );
+	}
+	
+	/**
+	 * Tells if the coordinates of a point fit into a packed int.
+	 * @param x x coordinate of the point
+	 * @param y y coordinate of the point
+	 * @return true if the coordinates of the point fit into a packed int; false otherwise
+	 */
+	private static boolean fits( final int x, final int y ) {
+		return x == (short) x && y == (short) y;
+	}
+	
+	/**
+	 * Packs the coordinates of a point into an int.
+	 * @param x x coordinate of the point
+	 * @param y y coordinate of the point
+	 * @return the packed point
+	 */
+	private static int pack( final int x, final int y ) {
+		return x << 16 | y & 0xffff;
+	}
+	
+	/**
+	 * Returns the x coordinate of a packed point.
+	 * @param point packed point
+	 * @return the x coordinate of the packed point
+	 */
+	private static int unpackX( final int point ) {
+		return point >> 16;
+	}
+	
+	/**
+	 * Returns the y coordinate of a packed point.
+	 * @param point packed point
+	 * @return the y coordinate of the packed point
+	 */
+	private static int unpackY( final int point ) {
+		return (short) point;
+	}
+	
+}
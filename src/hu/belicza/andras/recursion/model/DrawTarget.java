@@ -0,0 +1,46 @@
+package hu.belicza.andras.recursion.model;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+
+/**
+ * A target of simple drawing primitives: color changes, line segments and pixels.<br>
+ * Algorithms whose output consists of these primitives only can draw to any implementation:
+ * to a graphics context, to a recorded {@link DisplayList}, to a vector file (see {@link VectorSink}) etc.
+ * 
+ * @author Belicza Andras
+ */
+public interface DrawTarget {
+	
+	/**
+	 * Sets the color of the subsequent drawings.
+	 * @param color color of the subsequent drawings
+	 */
+	public void setColor( final Color color );
+	
+	/**
+	 * Draws a line segment between 2 points (both inclusive).
+	 * 
+	 * @param x1 x coordinate of the first point
+	 * @param y1 y coordinate of the first point
+	 * @param x2 x coordinate of the second point
+	 * @param y2 y coordinate of the second point
+	 */
+	public void drawLine( final int x1, final int y1, final int x2, final int y2 );
+	
+	/**
+	 * Draws a pixel.
+	 * 
+	 * @param x x coordinate of the pixel
+	 * @param y y coordinate of the pixel
+	 */
+	public void drawPixel( final int x, final int y );
+	
+	/**
+	 * Returns the bounds of the clip of the target: drawings outside of it are not visible.<br>
+	 * Algorithms may skip the parts of their results which cannot touch the clip.
+	 * @return the bounds of the clip of the target; <code>null</code> if everything is visible
+	 */
+	public Rectangle getClipBounds();
+	
+}
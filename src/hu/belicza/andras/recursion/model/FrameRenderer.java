@@ -0,0 +1,26 @@
+package hu.belicza.andras.recursion.model;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Renders the frames of an animation of an algorithm (see {@link AnimatedAlgorithm}).<br>
+ * A frame renderer owns the scratch buffers of the rendering and reuses them from frame to frame,
+ * so rendering a frame does not allocate in the steady state. Frame renderers are not thread-safe.
+ * 
+ * @author Belicza Andras
+ */
+public interface FrameRenderer {
+	
+	/**
+	 * Renders a frame of the animation.<br>
+	 * The frame is cleared before, and the color of its graphics context is the foreground color.
+	 * The result only depends on the index of the frame (and the properties the renderer was created with),
+	 * so frames can be skipped.
+	 * 
+	 * @param frame frame to render into, its size is the size the renderer was created for
+	 * @param index index of the frame
+	 * @throws CancellationException if the rendering is cancelled (the rendering thread gets interrupted)
+	 */
+	public void renderFrame( final AnimationFrame frame, final long index ) throws CancellationException;
+	
+}
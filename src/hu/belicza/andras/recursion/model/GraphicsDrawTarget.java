@@ -0,0 +1,45 @@
+package hu.belicza.andras.recursion.model;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+
+/**
+ * A {@link DrawTarget} which draws directly with a graphics context.
+ * 
+ * @author Belicza Andras
+ */
+public class GraphicsDrawTarget implements DrawTarget {
+	
+	/** Graphics context to draw with. */
+	private final Graphics graphics;
+	
+	/**
+	 * Creates a new <code>GraphicsDrawTarget</code>.
+	 * @param graphics graphics context to draw with
+	 */
+	public GraphicsDrawTarget( final Graphics graphics ) {
+		this.graphics = graphics;
+	}
+	
+	@Override
+	public void setColor( final Color color ) {
+		graphics.setColor( color );
+	}
+	
+	@Override
+	public void drawLine( final int x1, final int y1, final int x2, final int y2 ) {
+		graphics.drawLine( x1, y1, x2, y2 );
+	}
+	
+	@Override
+	public void drawPixel( final int x, final int y ) {
+		graphics.drawLine( x, y, x, y );
+	}
+	
+	@Override
+	public Rectangle getClipBounds() {
+		return graphics.getClipBounds();
+	}
+	
+}
@@ -0,0 +1,316 @@
+package hu.belicza.andras.recursion.model;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A height field: a grid of heights stored row by row.<br>
+ * The heights are backed either by a <code>float</code> array on the heap, or by off-heap little-endian byte buffers
+ * (direct or memory-mapped) for large fields. Off-heap heights are split into chunks of whole rows of at most {@value #MAX_CHUNK_BYTES} bytes
+ * (a buffer is indexed by <code>int</code>s), so off-heap fields may be larger than 2 GB.<br>
+ * Bounds of the size: array-backed fields may have at most {@link Integer#MAX_VALUE} heights (the max size of an array),
+ * the rows of off-heap fields at most {@value #MAX_OFF_HEAP_WIDTH} heights (a row must fit into a buffer), their number of rows is only limited
+ * by the address space (and the direct memory limit of the JVM for direct fields). Larger sizes are rejected with an {@link IllegalArgumentException}.<br>
+ * The raw format of the export and import is the heights row by row as little-endian IEEE 754 floats without header,
+ * so its size is <code>width * height * 4</code> bytes. Off-heap fields are exported and imported without conversion.
+ * 
+ * @author Belicza Andras
+ */
+public class HeightField {
+	
+	/** Number of bytes per height.                                          */
+	public static final int BYTES_PER_HEIGHT   = 4;
+	/** Max number of bytes of an off-heap chunk (unless a single row is larger). */
+	public static final int MAX_CHUNK_BYTES    = 1 << 30;
+	/** Max width of off-heap height fields: a row must fit into a buffer.   */
+	public static final int MAX_OFF_HEAP_WIDTH = Integer.MAX_VALUE / BYTES_PER_HEIGHT;
+	/** Number of heights converted at once when exporting or importing an array-backed field. */
+	private static final int CONVERSION_CHUNK_SIZE = 1 << 14;
+	
+	/** Width of the height field.                                          */
+	private final int          width;
+	/** Height of the height field.                                         */
+	private final int          height;
+	/** Number of rows per chunk.                                           */
+	private final int          chunkRows;
+	/** The heights, in chunks of whole rows (a single chunk if the heights are backed by an array). */
+	private final FloatBuffer[] heights;
+	/** The little-endian bytes of the chunks, <code>null</code> if the heights are backed by an array. */
+	private final ByteBuffer[]  bytes;
+	
+	/**
+	 * Creates a new <code>HeightField</code> backed by a <code>float</code> array.
+	 * @param width  width of the height field
+	 * @param height height of the height field
+	 * @throws IllegalArgumentException if the size is negative or the field has more than {@link Integer#MAX_VALUE} heights
+	 */
+	public HeightField( final int width, final int height ) throws IllegalArgumentException {
+		this( width, height, false );
+	}
+	
+	/**
+	 * Creates a new <code>HeightField</code>.
+	 * @param width   width of the height field
+	 * @param height  height of the height field
+	 * @param offHeap tells if the heights are off-heap (their chunks are set by the caller) instead of backed by an array
+	 * @throws IllegalArgumentException if the size is invalid for the backing of the height field
+	 */
+	private HeightField( final int width, final int height, final boolean offHeap ) throws IllegalArgumentException {
+		if ( width < 0 || height < 0 || ( offHeap ? width > MAX_OFF_HEAP_WIDTH : (long) width * height > Integer.MAX_VALUE ) )
+			throw new IllegalArgumentException( "Invalid height field size: " + width + "x" + height );
+		this.width  = width;
+		this.height = height;
+		
+		if ( offHeap ) {
+			chunkRows = width == 0 ? Math.max( height, 1 ) : Math.max( MAX_CHUNK_BYTES / ( width * BYTES_PER_HEIGHT ), 1 );
+			final int chunks = (int) ( ( (long) height + chunkRows - 1 ) / chunkRows );
+			heights = new FloatBuffer[ chunks ];
+			bytes   = new ByteBuffer [ chunks ];
+		}
+		else {
+			chunkRows = Math.max( height, 1 );
+			heights   = new FloatBuffer[] { FloatBuffer.wrap( new float[ width * height ] ) };
+			bytes     = null;
+		}
+	}
+	
+	/**
+	 * Creates a new height field backed by off-heap direct buffers.
+	 * @param width  width of the height field
+	 * @param height height of the height field
+	 * @return the new height field
+	 * @throws IllegalArgumentException if the size is negative or the rows are wider than {@value #MAX_OFF_HEAP_WIDTH}
+	 */
+	public static HeightField allocateDirect( final int width, final int height ) throws IllegalArgumentException {
+		final HeightField heightField = new HeightField( width, height, true );
+		for ( int chunk = 0; chunk < heightField.bytes.length; chunk++ )
+			heightField.setChunk( chunk, ByteBuffer.allocateDirect( heightField.getChunkBytes( chunk ) ) );
+		return heightField;
+	}
+	
+	/**
+	 * Imports a height field from a raw file.
+	 * @param file   file to import from
+	 * @param width  width of the height field
+	 * @param height height of the height field
+	 * @param direct tells if the imported height field has to be backed by off-heap direct buffers instead of an array
+	 * @return the imported height field
+	 * @throws IOException if the file cannot be read or its size does not match the size of the height field
+	 * @throws IllegalArgumentException if the size is invalid for the backing of the height field
+	 */
+	public static HeightField readFrom( final File file, final int width, final int height, final boolean direct ) throws IOException, IllegalArgumentException {
+		final HeightField heightField = direct ? allocateDirect( width, height ) : new HeightField( width, height );
+		
+		final FileInputStream input = new FileInputStream( file );
+		try {
+			final FileChannel channel = input.getChannel();
+			if ( channel.size() != (long) width * height * BYTES_PER_HEIGHT )
+				throw new IOException( "The size of the file does not match the size of the height field!" );
+			
+			if ( heightField.bytes != null )
+				for ( final ByteBuffer chunk : heightField.bytes )
+					readFully( channel, chunk.duplicate() );
+			else {
+				final ByteBuffer  chunk   = ByteBuffer.allocateDirect( CONVERSION_CHUNK_SIZE * BYTES_PER_HEIGHT ).order( ByteOrder.LITTLE_ENDIAN );
+				final FloatBuffer heights = heightField.heights[ 0 ].duplicate();
+				while ( heights.hasRemaining() ) {
+					chunk.clear();
+					chunk.limit( Math.min( CONVERSION_CHUNK_SIZE, heights.remaining() ) * BYTES_PER_HEIGHT );
+					readFully( channel, chunk );
+					chunk.flip();
+					heights.put( chunk.asFloatBuffer() );
+				}
+			}
+		}
+		finally {
+			input.close();
+		}
+		
+		return heightField;
+	}
+	
+	/**
+	 * Maps a raw file into memory as a height field, chunk by chunk. Modifications of the heights are written to the file.
+	 * @param file   file to be mapped
+	 * @param width  width of the height field
+	 * @param height height of the height field
+	 * @return the mapped height field
+	 * @throws IOException if the file cannot be mapped or its size does not match the size of the height field
+	 * @throws IllegalArgumentException if the size is negative or the rows are wider than {@value #MAX_OFF_HEAP_WIDTH}
+	 */
+	public static HeightField map( final File file, final int width, final int height ) throws IOException, IllegalArgumentException {
+		final HeightField heightField = new HeightField( width, height, true );
+		
+		final RandomAccessFile randomAccessFile = new RandomAccessFile( file, "rw" );
+		try {
+			if ( randomAccessFile.length() != (long) width * height * BYTES_PER_HEIGHT )
+				throw new IOException( "The size of the file does not match the size of the height field!" );
+			
+			// The mappings remain valid after closing the file
+			final FileChannel channel = randomAccessFile.getChannel();
+			for ( int chunk = 0; chunk < heightField.bytes.length; chunk++ )
+				heightField.setChunk( chunk, channel.map( FileChannel.MapMode.READ_WRITE, (long) chunk * heightField.chunkRows * width * BYTES_PER_HEIGHT,
+						heightField.getChunkBytes( chunk ) ) );
+			return heightField;
+		}
+		finally {
+			randomAccessFile.close();
+		}
+	}
+	
+	/**
+	 * Exports the height field into a raw file.
+	 * @param file file to export to
+	 * @throws IOException if the file cannot be written
+	 */
+	public void writeTo( final File file ) throws IOException {
+		final FileOutputStream output = new FileOutputStream( file );
+		try {
+			final FileChannel channel = output.getChannel();
+			
+			if ( bytes != null )
+				for ( final ByteBuffer chunk : bytes )
+					writeFully( channel, chunk.duplicate() );
+			else {
+				final ByteBuffer  chunk   = ByteBuffer.allocateDirect( CONVERSION_CHUNK_SIZE * BYTES_PER_HEIGHT ).order( ByteOrder.LITTLE_ENDIAN );
+				final FloatBuffer heights = this.heights[ 0 ].duplicate();
+				while ( heights.hasRemaining() ) {
+					final int count = Math.min( CONVERSION_CHUNK_SIZE, heights.remaining() );
+					chunk.clear();
+					chunk.asFloatBuffer().put( heights.array(), heights.arrayOffset() + heights.position(), count );
+					heights.position( heights.position() + count );
+					chunk.limit( count * BYTES_PER_HEIGHT );
+					writeFully( channel, chunk );
+				}
+			}
+		}
+		finally {
+			output.close();
+		}
+	}
+	
+	/**
+	 * Returns the width of the height field.
+	 * @return the width of the height field
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * Returns the height of the height field.
+	 * @return the height of the height field
+	 */
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * Returns the height at a point.
+	 * @param x x coordinate of the point
+	 * @param y y coordinate of the point
+	 * @return the height at the point
+	 */
+	public float get( final int x, final int y ) {
+		return heights[ y / chunkRows ].get( y % chunkRows * width + x );
+	}
+	
+	/**
+	 * Sets the height at a point.
+	 * @param x     x coordinate of the point
+	 * @param y     y coordinate of the point
+	 * @param value the height to be set
+	 */
+	public void set( final int x, final int y, final float value ) {
+		heights[ y / chunkRows ].put( y % chunkRows * width + x, value );
+	}
+	
+	/**
+	 * Copies the heights of consecutive points of a row into an array.<br>
+	 * Thread-safe as long as the heights are not modified concurrently.
+	 * @param x           x coordinate of the first point
+	 * @param y           y coordinate of the row
+	 * @param destination array to copy the heights into
+	 * @param offset      index of the first height in the array
+	 * @param length      number of heights to copy
+	 */
+	public void get( final int x, final int y, final float[] destination, final int offset, final int length ) {
+		final FloatBuffer heights = this.heights[ y / chunkRows ].duplicate();
+		heights.position( y % chunkRows * width + x );
+		heights.get( destination, offset, length );
+	}
+	
+	/**
+	 * Sets the heights of consecutive points of a row from an array.<br>
+	 * Different points can be set concurrently.
+	 * @param x      x coordinate of the first point
+	 * @param y      y coordinate of the row
+	 * @param source array of the heights to be set
+	 * @param offset index of the first height in the array
+	 * @param length number of heights to set
+	 */
+	public void set( final int x, final int y, final float[] source, final int offset, final int length ) {
+		final FloatBuffer heights = this.heights[ y / chunkRows ].duplicate();
+		heights.position( y % chunkRows * width + x );
+		heights.put( source, offset, length );
+	}
+	
+	/**
+	 * Returns the array of the heights (row by row) if the heights are backed by an array.
+	 * @return the array of the heights, or <code>null</code> if the heights are off-heap
+	 */
+	public float[] getArray() {
+		return bytes == null ? heights[ 0 ].array() : null;
+	}
+	
+	/**
+	 * Returns the number of bytes of an off-heap chunk.
+	 * @param chunk index of the chunk
+	 * @return the number of bytes of the chunk
+	 */
+	private int getChunkBytes( final int chunk ) {
+		return Math.min( chunkRows, height - chunk * chunkRows ) * width * BYTES_PER_HEIGHT;
+	}
+	
+	/**
+	 * Sets the bytes of an off-heap chunk.
+	 * @param chunk index of the chunk
+	 * @param bytes the bytes of the chunk
+	 */
+	private void setChunk( final int chunk, final ByteBuffer bytes ) {
+		bytes.order( ByteOrder.LITTLE_ENDIAN );
+		this.bytes  [ chunk ] = bytes;
+		this.heights[ chunk ] = bytes.asFloatBuffer();
+	}
+	
+	/**
+	 * Reads bytes from a channel until the buffer is full.
+	 * @param channel channel to read from
+	 * @param buffer  buffer to read into
+	 * @throws IOException if the channel cannot be read or ends early
+	 */
+	private static void readFully( final FileChannel channel, final ByteBuffer buffer ) throws IOException {
+		while ( buffer.hasRemaining() )
+			if ( channel.read( buffer ) < 0 )
+				throw new IOException( "Unexpected end of file!" );
+	}
+	
+	/**
+	 * Writes all remaining bytes of a buffer to a channel.
+	 * @param channel channel to write to
+	 * @param buffer  buffer to be written
+	 * @throws IOException if the channel cannot be written
+	 */
+	private static void writeFully( final FileChannel channel, final ByteBuffer buffer ) throws IOException {
+		while ( buffer.hasRemaining() )
+			channel.write( buffer );
+	}
+	
+}
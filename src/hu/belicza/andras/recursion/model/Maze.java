@@ -0,0 +1,349 @@
+package hu.belicza.andras.recursion.model;
+
+import java.util.Arrays;
+
+/**
+ * A maze on a grid of cells, the walls stored as bits: 2 bits per cell (its east and south walls) packed in a <code>long</code> array.<br>
+ * The border of the grid is always closed, it is not stored. Cells are identified by their index: <code>row * columns + column</code>.<br>
+ * A maze of 40 million cells takes 10 MB. Paths are found by a {@link MazeSolver}.
+ * 
+ * @author Belicza Andras
+ */
+public class Maze {
+	
+	/** Direction to the east (right).  */
+	public static final int EAST  = 0;
+	/** Direction to the south (down).  */
+	public static final int SOUTH = 1;
+	/** Direction to the west (left).   */
+	public static final int WEST  = 2;
+	/** Direction to the north (up).    */
+	public static final int NORTH = 3;
+	
+	/** Max number of cells of a maze (the path finders pack a cell index in 30 bits). */
+	public static final int MAX_CELLS = 1 << 30;
+	
+	/** Mask of the south wall bits in a word (the odd bits). */
+	private static final long SOUTH_WALLS_MASK = 0xaaaaaaaaaaaaaaaaL;
+	
+	/** Number of columns of the maze.                           */
+	private final int    columns;
+	/** Number of rows of the maze.                              */
+	private final int    rows;
+	/** The walls: bit <code>2*cell</code> is the east wall, bit <code>2*cell+1</code> is the south wall of a cell. */
+	private final long[] words;
+	
+	/**
+	 * Creates a new <code>Maze</code> without inner walls.
+	 * @param columns number of columns of the maze
+	 * @param rows    number of rows of the maze
+	 * @throws IllegalArgumentException if the size is not positive or the maze has more than {@link #MAX_CELLS} cells
+	 */
+	public Maze( final int columns, final int rows ) throws IllegalArgumentException {
+		this( columns, rows, new long[ getWordCount( columns, rows ) ] );
+	}
+	
+	/**
+	 * Creates a new <code>Maze</code> backed by the words of walls (as returned by {@link #getWords()}).
+	 * @param columns number of columns of the maze
+	 * @param rows    number of rows of the maze
+	 * @param words   the walls: bit <code>2*cell</code> is the east wall, bit <code>2*cell+1</code> is the south wall of a cell
+	 * @throws IllegalArgumentException if the size is not positive, the maze has more than {@link #MAX_CELLS} cells
+	 * or the number of words does not match the size
+	 */
+	public Maze( final int columns, final int rows, final long[] words ) throws IllegalArgumentException {
+		if ( words.length != getWordCount( columns, rows ) )
+			throw new IllegalArgumentException( "Invalid number of words: " + words.length + " (expected: " + getWordCount( columns, rows ) + ")" );
+		
+		this.columns = columns;
+		this.rows    = rows;
+		this.words   = words;
+	}
+	
+	/**
+	 * Returns the number of words needed to store the walls of a maze.
+	 * @param columns number of columns of the maze
+	 * @param rows    number of rows of the maze
+	 * @return the number of words needed to store the walls of the maze
+	 * @throws IllegalArgumentException if the size is not positive or the maze has more than {@link #MAX_CELLS} cells
+	 */
+	private static int getWordCount( final int columns, final int rows ) throws IllegalArgumentException {
+		if ( columns <= 0 || rows <= 0 || (long) columns * rows > MAX_CELLS )
+			throw new IllegalArgumentException( "Invalid maze size: " + columns + "x" + rows + " (max " + MAX_CELLS + " cells)" );
+		return (int) ( ( (long) columns * rows * 2 + 63 ) >>> 6 );
+	}
+	
+	/**
+	 * Returns the number of columns of the maze.
+	 * @return the number of columns of the maze
+	 */
+	public int getColumns() {
+		return columns;
+	}
+	
+	/**
+	 * Returns the number of rows of the maze.
+	 * @return the number of rows of the maze
+	 */
+	public int getRows() {
+		return rows;
+	}
+	
+	/**
+	 * Returns the number of cells of the maze.
+	 * @return the number of cells of the maze
+	 */
+	public int getCellCount() {
+		return columns * rows;
+	}
+	
+	/**
+	 * Returns the index of a cell.
+	 * @param column column of the cell
+	 * @param row    row of the cell
+	 * @return the index of the cell
+	 */
+	public int getCell( final int column, final int row ) {
+		return row * columns + column;
+	}
+	
+	/**
+	 * Returns the words of walls backing the maze (not a copy), to be exported.
+	 * @return the walls: bit <code>2*cell</code> is the east wall, bit <code>2*cell+1</code> is the south wall of a cell
+	 */
+	public long[] getWords() {
+		return words;
+	}
+	
+	/**
+	 * Tells if a cell has a wall on its east side.
+	 * @param column column of the cell
+	 * @param row    row of the cell
+	 * @return true if the cell has a wall on its east side (the east border counts as a wall); false otherwise
+	 */
+	public boolean hasEastWall( final int column, final int row ) {
+		return column == columns - 1 || getBit( (long) getCell( column, row ) << 1 );
+	}
+	
+	/**
+	 * Tells if a cell has a wall on its south side.
+	 * @param column column of the cell
+	 * @param row    row of the cell
+	 * @return true if the cell has a wall on its south side (the south border counts as a wall); false otherwise
+	 */
+	public boolean hasSouthWall( final int column, final int row ) {
+		return row == rows - 1 || getBit( ( (long) getCell( column, row ) << 1 ) + 1 );
+	}
+	
+	/**
+	 * Sets or removes the wall on the east side of a cell.
+	 * @param column column of the cell, must not be the last column
+	 * @param row    row of the cell
+	 * @param wall   tells if there is a wall
+	 */
+	public void setEastWall( final int column, final int row, final boolean wall ) {
+		setBit( (long) getCell( column, row ) << 1, wall );
+	}
+	
+	/**
+	 * Sets or removes the wall on the south side of a cell.
+	 * @param column column of the cell
+	 * @param row    row of the cell, must not be the last row
+	 * @param wall   tells if there is a wall
+	 */
+	public void setSouthWall( final int column, final int row, final boolean wall ) {
+		setBit( ( (long) getCell( column, row ) << 1 ) + 1, wall );
+	}
+	
+	/**
+	 * Adds a vertical wall: sets the east walls of the cells of a column in a range of rows.
+	 * @param x  x coordinate of the wall, the grid line on the west side of column <code>x</code> (between 1 and columns-1)
+	 * @param y1 first row of the wall
+	 * @param y2 row after the last row of the wall
+	 */
+	public void addVerticalWall( final int x, final int y1, final int y2 ) {
+		for ( long bit = (long) getCell( x - 1, y1 ) << 1, step = (long) columns << 1, y = y1; y < y2; y++, bit += step )
+			words[ (int) ( bit >>> 6 ) ] |= 1L << bit;
+	}
+	
+	/**
+	 * Adds a horizontal wall: sets the south walls of the cells of a row in a range of columns.
+	 * @param y  y coordinate of the wall, the grid line on the north side of row <code>y</code> (between 1 and rows-1)
+	 * @param x1 first column of the wall
+	 * @param x2 column after the last column of the wall
+	 */
+	public void addHorizontalWall( final int y, final int x1, final int x2 ) {
+		if ( x1 >= x2 )
+			return;
+		
+		// The south walls of consecutive cells are every other bit, set them word by word
+		final long firstBit  = (long) getCell( x1, y - 1 ) << 1;
+		final long lastBit   = ( (long) getCell( x2, y - 1 ) << 1 ) - 1;
+		final int  firstWord = (int) ( firstBit >>> 6 );
+		final int  lastWord  = (int) ( lastBit  >>> 6 );
+		for ( int i = firstWord; i <= lastWord; i++ ) {
+			long mask = SOUTH_WALLS_MASK;
+			if ( i == firstWord )
+				mask &= -1L << firstBit;
+			if ( i == lastWord )
+				mask &= -1L >>> ( 63 - ( lastBit & 63 ) );
+			words[ i ] |= mask;
+		}
+	}
+	
+	/**
+	 * Adds the walls of another (smaller) maze to this maze: ORs its walls to the walls of an area of this maze.
+	 * @param maze   maze whose walls to be added
+	 * @param column first column of the area
+	 * @param row    first row of the area
+	 */
+	public void addWalls( final Maze maze, final int column, final int row ) {
+		final long rowBits = (long) maze.columns << 1;
+		for ( int y = 0; y < maze.rows; y++ ) {
+			final long sourceBit = rowBits * y;
+			final long targetBit = (long) getCell( column, row + y ) << 1;
+			for ( long offset = 0; offset < rowBits; offset += 64 ) {
+				final int count = (int) Math.min( 64, rowBits - offset );
+				orBits( targetBit + offset, readBits( maze.words, sourceBit + offset, count ), count );
+			}
+		}
+	}
+	
+	/**
+	 * Tells if a cell is open towards a direction: the neighbor cell in that direction exists and there is no wall between them.
+	 * @param cell      index of the cell
+	 * @param direction direction to check, one of {@link #EAST}, {@link #SOUTH}, {@link #WEST} and {@link #NORTH}
+	 * @return true if the cell is open towards the direction; false otherwise
+	 */
+	public boolean isOpen( final int cell, final int direction ) {
+		if ( direction < EAST || direction > NORTH )
+			throw new IllegalArgumentException( "Invalid direction: " + direction );
+		return ( getOpenDirections( cell, cell % columns ) & 1 << direction ) != 0;
+	}
+	
+	/**
+	 * Returns the directions a cell is open towards.
+	 * @param cell   index of the cell
+	 * @param column column of the cell
+	 * @return the directions the cell is open towards, as a mask of <code>1 &lt;&lt; direction</code> bits
+	 */
+	int getOpenDirections( final int cell, final int column ) {
+		// Shifting by the cell index doubled is the same as shifting by the bit offset of the cell in its word (mod 64)
+		final long walls = words[ cell >>> 5 ] >>> ( cell << 1 );
+		int open = 0;
+		if ( column < columns - 1 && ( walls & 1 ) == 0 )
+			open |= 1 << EAST;
+		if ( cell < getCellCount() - columns && ( walls & 2 ) == 0 )
+			open |= 1 << SOUTH;
+		if ( column > 0 && ( words[ cell - 1 >>> 5 ] >>> ( cell - 1 << 1 ) & 1 ) == 0 )
+			open |= 1 << WEST;
+		if ( cell >= columns && ( words[ cell - columns >>> 5 ] >>> ( cell - columns << 1 ) & 2 ) == 0 )
+			open |= 1 << NORTH;
+		return open;
+	}
+	
+	/**
+	 * Returns the index of the neighbor of a cell.
+	 * @param cell      index of the cell
+	 * @param direction direction of the neighbor, one of {@link #EAST}, {@link #SOUTH}, {@link #WEST} and {@link #NORTH}
+	 * @return the index of the neighbor of the cell (not checked if it exists)
+	 */
+	public int getNeighbor( final int cell, final int direction ) {
+		switch ( direction ) {
+		case EAST  : return cell + 1;
+		case SOUTH : return cell + columns;
+		case WEST  : return cell - 1;
+		case NORTH : return cell - columns;
+		default    : throw new IllegalArgumentException( "Invalid direction: " + direction );
+		}
+	}
+	
+	/**
+	 * Finds a shortest path between 2 cells with breadth-first search.<br>
+	 * Allocates the scratch space of the search; use a {@link MazeSolver} to find multiple paths.
+	 * @param fromCell index of the start cell
+	 * @param toCell   index of the target cell
+	 * @return the indices of the cells of the path from the start cell to the target cell (both included),
+	 * <code>null</code> if the target cell is not reachable
+	 * @throws IllegalArgumentException if a cell index is invalid
+	 */
+	public int[] findPath( final int fromCell, final int toCell ) throws IllegalArgumentException {
+		return new MazeSolver( this ).findPath( fromCell, toCell );
+	}
+	
+	/**
+	 * Finds a shortest path between 2 cells with A* search.<br>
+	 * Allocates the scratch space of the search; use a {@link MazeSolver} to find multiple paths.
+	 * @param fromCell index of the start cell
+	 * @param toCell   index of the target cell
+	 * @return the indices of the cells of the path from the start cell to the target cell (both included),
+	 * <code>null</code> if the target cell is not reachable
+	 * @throws IllegalArgumentException if a cell index is invalid
+	 * @see MazeSolver#findPathAStar(int, int)
+	 */
+	public int[] findPathAStar( final int fromCell, final int toCell ) throws IllegalArgumentException {
+		return new MazeSolver( this ).findPathAStar( fromCell, toCell );
+	}
+	
+	/**
+	 * Checks if a cell index is valid.
+	 * @param cell cell index to be checked
+	 * @throws IllegalArgumentException if the cell index is invalid
+	 */
+	void checkCell( final int cell ) throws IllegalArgumentException {
+		if ( cell < 0 || cell >= getCellCount() )
+			throw new IllegalArgumentException( "Invalid cell: " + cell + " (valid range: 0.." + ( getCellCount() - 1 ) + ")" );
+	}
+	
+	/**
+	 * Returns a bit of the walls.
+	 * @param bit index of the bit
+	 * @return true if the bit is set; false otherwise
+	 */
+	private boolean getBit( final long bit ) {
+		return ( words[ (int) ( bit >>> 6 ) ] & 1L << bit ) != 0;
+	}
+	
+	/**
+	 * Sets or clears a bit of the walls.
+	 * @param bit   index of the bit
+	 * @param value tells if the bit is to be set
+	 */
+	private void setBit( final long bit, final boolean value ) {
+		if ( value )
+			words[ (int) ( bit >>> 6 ) ] |= 1L << bit;
+		else
+			words[ (int) ( bit >>> 6 ) ] &= ~( 1L << bit );
+	}
+	
+	/**
+	 * Reads consecutive bits of a bit array.
+	 * @param words the bit array
+	 * @param bit   index of the first bit
+	 * @param count number of bits to be read, between 1 and 64
+	 * @return the bits in the low bits of the result
+	 */
+	private static long readBits( final long[] words, final long bit, final int count ) {
+		final int word  = (int) ( bit >>> 6 );
+		final int shift = (int) bit & 63;
+		long value = words[ word ] >>> shift;
+		if ( shift + count > 64 )
+			value |= words[ word + 1 ] << -shift;
+		return count == 64 ? value : value & ( 1L << count ) - 1;
+	}
+	
+	/**
+	 * ORs consecutive bits to the walls.
+	 * @param bit   index of the first bit
+	 * @param value the bits in the low bits
+	 * @param count number of bits, between 1 and 64
+	 */
+	private void orBits( final long bit, final long value, final int count ) {
+		final int word  = (int) ( bit >>> 6 );
+		final int shift = (int) bit & 63;
+		words[ word ] |= value << shift;
+		if ( shift + count > 64 )
+			words[ word + 1 ] |= value >>> -shift;
+	}
+	
+}
@@ -0,0 +1,262 @@
+package hu.belicza.andras.recursion.model;
+
+import java.util.Arrays;
+
+/**
+ * Finds shortest paths in a {@link Maze}, without boxing.<br>
+ * The state of the cells (visited flag and direction of the parent) takes 4 bits per cell; it is allocated once
+ * and reused by the searches, so a search only costs the cells it visits. Not thread-safe: concurrent searches
+ * need their own solvers.
+ * 
+ * @author Belicza Andras
+ */
+public class MazeSolver {
+	
+	/** Flag of the cells visited (by breadth-first search) or closed (by A* search) in the state of the cells. */
+	private static final long VISITED = 4;
+	/** Initial capacity of the queue and the heap.                        */
+	private static final int  INITIAL_CAPACITY = 1024;
+	
+	/** The maze to find paths in.                                        */
+	private final Maze   maze;
+	/** State of the cells, 4 bits per cell: the {@link #VISITED} flag and the direction of the parent in the low 2 bits. */
+	private final long[] states;
+	/** Cells whose state is set by the last search, to be cleared by the next search. */
+	private final int[]  touchedCells;
+	/** Number of touched cells, greater than the length of {@link #touchedCells} if they did not fit (the states are cleared entirely). */
+	private int          touchedCount;
+	
+	/** Ring buffer of the cells to be visited by breadth-first search.   */
+	private int[]        queue = new int [ INITIAL_CAPACITY ];
+	/** Binary min-heap of the open entries of A* search.                 */
+	private long[]       heap  = new long[ INITIAL_CAPACITY ];
+	
+	/**
+	 * Creates a new <code>MazeSolver</code>.
+	 * @param maze the maze to find paths in
+	 */
+	public MazeSolver( final Maze maze ) {
+		this.maze    = maze;
+		states       = new long[ ( maze.getCellCount() + 15 ) >>> 4 ];
+		// Clearing more cells one by one would be slower than clearing all states
+		touchedCells = new int[ Math.max( 64, states.length >>> 3 ) ];
+	}
+	
+	/**
+	 * Returns the maze to find paths in.
+	 * @return the maze to find paths in
+	 */
+	public Maze getMaze() {
+		return maze;
+	}
+	
+	/**
+	 * Finds a shortest path between 2 cells with breadth-first search.
+	 * @param fromCell index of the start cell
+	 * @param toCell   index of the target cell
+	 * @return the indices of the cells of the path from the start cell to the target cell (both included),
+	 * <code>null</code> if the target cell is not reachable
+	 * @throws IllegalArgumentException if a cell index is invalid
+	 */
+	public int[] findPath( final int fromCell, final int toCell ) throws IllegalArgumentException {
+		maze.checkCell( fromCell );
+		maze.checkCell( toCell   );
+		clearStates();
+		
+		final int   columns = maze.getColumns();
+		final int[] offsets = getNeighborOffsets();
+		
+		int[] queue = this.queue;
+		int   head  = 0, size = 1;
+		queue[ 0 ] = fromCell;
+		visit( fromCell, 0 );
+		
+		while ( size > 0 ) {
+			final int cell = queue[ head ];
+			head = ( head + 1 ) & ( queue.length - 1 );
+			size--;
+			
+			if ( cell == toCell )
+				return buildPath( fromCell, toCell );
+			
+			final int openDirections = maze.getOpenDirections( cell, cell % columns );
+			for ( int direction = Maze.EAST; direction <= Maze.NORTH; direction++ ) {
+				if ( ( openDirections & 1 << direction ) == 0 )
+					continue;
+				final int neighbor = cell + offsets[ direction ];
+				if ( isVisited( neighbor ) )
+					continue;
+				visit( neighbor, direction ^ 2 );
+				
+				if ( size == queue.length ) {
+					// Grow the ring buffer, unwrapping its content
+					final int[] newQueue = new int[ queue.length << 1 ];
+					System.arraycopy( queue, head, newQueue, 0, queue.length - head );
+					System.arraycopy( queue, 0, newQueue, queue.length - head, head );
+					head       = 0;
+					this.queue = queue = newQueue;
+				}
+				queue[ ( head + size++ ) & ( queue.length - 1 ) ] = neighbor;
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Finds a shortest path between 2 cells with A* search, guided by the Manhattan distance from the target cell.<br>
+	 * Visits fewer cells than {@link #findPath(int, int)} if the path is not much longer than the distance of the cells.
+	 * @param fromCell index of the start cell
+	 * @param toCell   index of the target cell
+	 * @return the indices of the cells of the path from the start cell to the target cell (both included),
+	 * <code>null</code> if the target cell is not reachable
+	 * @throws IllegalArgumentException if a cell index is invalid
+	 */
+	public int[] findPathAStar( final int fromCell, final int toCell ) throws IllegalArgumentException {
+		maze.checkCell( fromCell );
+		maze.checkCell( toCell   );
+		clearStates();
+		
+		final int   columns  = maze.getColumns();
+		final int[] offsets  = getNeighborOffsets();
+		final int   toColumn = toCell % columns;
+		final int   toRow    = toCell / columns;
+		
+		// Entries of the heap: estimated path length in the high 32 bits, the direction of the parent in bits 30-31
+		// and the cell in the low 30 bits (see Maze.MAX_CELLS); stale entries of closed cells are skipped when polled
+		long[] heap = this.heap;
+		int    size = 1;
+		heap[ 0 ] = (long) ( Math.abs( fromCell % columns - toColumn ) + Math.abs( fromCell / columns - toRow ) ) << 32 | fromCell;
+		
+		while ( size > 0 ) {
+			final long entry = heap[ 0 ];
+			final long last  = heap[ --size ];
+			// Sift down the last entry from the root
+			int i = 0;
+			for ( int child; ( child = 2*i + 1 ) < size; i = child ) {
+				if ( child + 1 < size && heap[ child + 1 ] < heap[ child ] )
+					child++;
+				if ( last <= heap[ child ] )
+					break;
+				heap[ i ] = heap[ child ];
+			}
+			heap[ i ] = last;
+			
+			final int cell = (int) entry & ( Maze.MAX_CELLS - 1 );
+			if ( isVisited( cell ) )
+				continue;
+			visit( cell, (int) entry >>> 30 );
+			
+			if ( cell == toCell )
+				return buildPath( fromCell, toCell );
+			
+			final int column         = cell % columns;
+			final int row            = cell / columns;
+			final int length         = (int) ( entry >>> 32 ) - Math.abs( column - toColumn ) - Math.abs( row - toRow ) + 1;
+			final int openDirections = maze.getOpenDirections( cell, column );
+			for ( int direction = Maze.EAST; direction <= Maze.NORTH; direction++ ) {
+				if ( ( openDirections & 1 << direction ) == 0 )
+					continue;
+				final int neighbor = cell + offsets[ direction ];
+				if ( isVisited( neighbor ) )
+					continue;
+				
+				// The neighbor is 1 step closer to or farther from the target in the direction
+				final int estimatedLength;
+				switch ( direction ) {
+				case Maze.EAST  : estimatedLength = length + Math.abs( column + 1 - toColumn ) + Math.abs( row - toRow ); break;
+				case Maze.SOUTH : estimatedLength = length + Math.abs( column - toColumn ) + Math.abs( row + 1 - toRow ); break;
+				case Maze.WEST  : estimatedLength = length + Math.abs( column - 1 - toColumn ) + Math.abs( row - toRow ); break;
+				default         : estimatedLength = length + Math.abs( column - toColumn ) + Math.abs( row - 1 - toRow ); break;
+				}
+				
+				if ( size == heap.length )
+					this.heap = heap = Arrays.copyOf( heap, size << 1 );
+				// Sift up the new entry
+				final long newEntry = (long) estimatedLength << 32 | (long) ( direction ^ 2 ) << 30 | neighbor;
+				int j = size++;
+				for ( int parent; j > 0 && heap[ parent = ( j - 1 ) >>> 1 ] > newEntry; j = parent )
+					heap[ j ] = heap[ parent ];
+				heap[ j ] = newEntry;
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Returns the offsets of the indices of the neighbors of the cells.
+	 * @return the offsets of the indices of the neighbors of the cells, indexed by the directions
+	 */
+	private int[] getNeighborOffsets() {
+		final int[] offsets = new int[ 4 ];
+		offsets[ Maze.EAST  ] = 1;
+		offsets[ Maze.SOUTH ] = maze.getColumns();
+		offsets[ Maze.WEST  ] = -1;
+		offsets[ Maze.NORTH ] = -maze.getColumns();
+		return offsets;
+	}
+	
+	/**
+	 * Clears the states of the cells touched by the last search.
+	 */
+	private void clearStates() {
+		if ( touchedCount > touchedCells.length )
+			Arrays.fill( states, 0 );
+		else
+			for ( int i = 0; i < touchedCount; i++ )
+				states[ touchedCells[ i ] >>> 4 ] = 0;
+		touchedCount = 0;
+	}
+	
+	/**
+	 * Tells if a cell is visited (closed by A* search).
+	 * @param cell index of the cell
+	 * @return true if the cell is visited; false otherwise
+	 */
+	private boolean isVisited( final int cell ) {
+		return ( states[ cell >>> 4 ] >>> ( cell << 2 ) & VISITED ) != 0;
+	}
+	
+	/**
+	 * Marks a cell visited (closed by A* search), and stores the direction of its parent.
+	 * @param cell      index of the cell
+	 * @param direction direction of the parent of the cell
+	 */
+	private void visit( final int cell, final int direction ) {
+		states[ cell >>> 4 ] |= ( VISITED | direction ) << ( cell << 2 );
+		if ( touchedCount < touchedCells.length )
+			touchedCells[ touchedCount ] = cell;
+		touchedCount++;
+	}
+	
+	/**
+	 * Returns the direction of the parent of a visited cell.
+	 * @param cell index of the cell
+	 * @return the direction of the parent of the cell
+	 */
+	private int getParentDirection( final int cell ) {
+		return (int) ( states[ cell >>> 4 ] >>> ( cell << 2 ) ) & 3;
+	}
+	
+	/**
+	 * Builds a path by following the parents from the target cell back to the start cell.
+	 * @param fromCell index of the start cell
+	 * @param toCell   index of the target cell
+	 * @return the indices of the cells of the path from the start cell to the target cell
+	 */
+	private int[] buildPath( final int fromCell, final int toCell ) {
+		int length = 1;
+		for ( int cell = toCell; cell != fromCell; length++ )
+			cell = maze.getNeighbor( cell, getParentDirection( cell ) );
+		
+		final int[] path = new int[ length ];
+		for ( int cell = toCell; ; ) {
+			path[ --length ] = cell;
+			if ( cell == fromCell )
+				return path;
+			cell = maze.getNeighbor( cell, getParentDirection( cell ) );
+		}
+	}
+	
+}
@@ -0,0 +1,54 @@
+package hu.belicza.andras.recursion.model;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+
+/**
+ * A {@link DrawTarget} which counts the draw calls passed to another target, and measures their time as rasterization.
+ * 
+ * @author Belicza Andras
+ */
+public class MeteredDrawTarget implements DrawTarget {
+	
+	/** Target to pass the draw calls to.  */
+	private final DrawTarget    target;
+	/** Metrics of the render to update.   */
+	private final RenderMetrics metrics;
+	
+	/**
+	 * Creates a new <code>MeteredDrawTarget</code>.
+	 * @param target  target to pass the draw calls to
+	 * @param metrics metrics of the render to update
+	 */
+	public MeteredDrawTarget( final DrawTarget target, final RenderMetrics metrics ) {
+		this.target  = target;
+		this.metrics = metrics;
+	}
+	
+	@Override
+	public void setColor( final Color color ) {
+		target.setColor( color );
+	}
+	
+	@Override
+	public void drawLine( final int x1, final int y1, final int x2, final int y2 ) {
+		final long startNanos = System.nanoTime();
+		target.drawLine( x1, y1, x2, y2 );
+		metrics.addRasterizationNanos( System.nanoTime() - startNanos );
+		metrics.addDrawCalls( 1 );
+	}
+	
+	@Override
+	public void drawPixel( final int x, final int y ) {
+		final long startNanos = System.nanoTime();
+		target.drawPixel( x, y );
+		metrics.addRasterizationNanos( System.nanoTime() - startNanos );
+		metrics.addDrawCalls( 1 );
+	}
+	
+	@Override
+	public Rectangle getClipBounds() {
+		return target.getClipBounds();
+	}
+	
+}
@@ -0,0 +1,219 @@
+package hu.belicza.andras.recursion.model;
+
+import java.util.Properties;
+
+/**
+ * Typed descriptor of a parameter of an algorithm: its name, type, default value and valid range.<br>
+ * The value of a parameter is stored as a string property, the descriptor converts and validates it.
+ * 
+ * @param <T> type of the value of the parameter
+ * 
+ * @author Belicza Andras
+ */
+public abstract class ParameterDescriptor< T extends Comparable< ? super T > > {
+	
+	/** Name of the parameter (the name of its property).               */
+	private final String     name;
+	/** Type of the value of the parameter.                             */
+	private final Class< T > type;
+	/** Default value of the parameter.                                 */
+	private final T          defaultValue;
+	/** Min valid value of the parameter, <code>null</code> if unbounded. */
+	private final T          min;
+	/** Max valid value of the parameter, <code>null</code> if unbounded. */
+	private final T          max;
+	/** Short description of the parameter.                             */
+	private final String     description;
+	
+	/**
+	 * Creates a new <code>ParameterDescriptor</code>.
+	 * 
+	 * @param name         name of the parameter (the name of its property)
+	 * @param type         type of the value of the parameter
+	 * @param defaultValue default value of the parameter
+	 * @param min          min valid value of the parameter, <code>null</code> if unbounded
+	 * @param max          max valid value of the parameter, <code>null</code> if unbounded
+	 * @param description  short description of the parameter
+	 */
+	public ParameterDescriptor( final String name, final Class< T > type, final T defaultValue, final T min, final T max, final String description ) {
+		this.name         = name;
+		this.type         = type;
+		this.defaultValue = defaultValue;
+		this.min          = min;
+		this.max          = max;
+		this.description  = description;
+	}
+	
+	/**
+	 * Creates a descriptor of an integer parameter.
+	 * 
+	 * @param name         name of the parameter
+	 * @param defaultValue default value of the parameter
+	 * @param min          min valid value of the parameter, <code>null</code> if unbounded
+	 * @param max          max valid value of the parameter, <code>null</code> if unbounded
+	 * @param description  short description of the parameter
+	 * @return the descriptor of the integer parameter
+	 */
+	public static ParameterDescriptor< Integer > ofInteger( final String name, final int defaultValue, final Integer min, final Integer max, final String description ) {
+		return new ParameterDescriptor< Integer >( name, Integer.class, defaultValue, min, max, description ) {
+			@Override
+			protected Integer parseValue( final String value ) {
+				return Integer.valueOf( value );
+			}
+		};
+	}
+	
+	/**
+	 * Creates a descriptor of a float parameter.
+	 * 
+	 * @param name         name of the parameter
+	 * @param defaultValue default value of the parameter
+	 * @param min          min valid value of the parameter, <code>null</code> if unbounded
+	 * @param max          max valid value of the parameter, <code>null</code> if unbounded
+	 * @param description  short description of the parameter
+	 * @return the descriptor of the float parameter
+	 */
+	public static ParameterDescriptor< Float > ofFloat( final String name, final float defaultValue, final Float min, final Float max, final String description ) {
+		return new ParameterDescriptor< Float >( name, Float.class, defaultValue, min, max, description ) {
+			@Override
+			protected Float parseValue( final String value ) {
+				final Float floatValue = Float.valueOf( value );
+				if ( floatValue.isNaN() )
+					throw new NumberFormatException( "NaN" );
+				return floatValue;
+			}
+		};
+	}
+	
+	/**
+	 * Creates a descriptor of a boolean parameter.
+	 * 
+	 * @param name         name of the parameter
+	 * @param defaultValue default value of the parameter
+	 * @param description  short description of the parameter
+	 * @return the descriptor of the boolean parameter
+	 */
+	public static ParameterDescriptor< Boolean > ofBoolean( final String name, final boolean defaultValue, final String description ) {
+		return new ParameterDescriptor< Boolean >( name, Boolean.class, defaultValue, null, null, description ) {
+			@Override
+			protected Boolean parseValue( final String value ) {
+				if ( value.equalsIgnoreCase( "true" ) )
+					return Boolean.TRUE;
+				if ( value.equalsIgnoreCase( "false" ) )
+					return Boolean.FALSE;
+				throw new IllegalArgumentException( "Not a boolean: " + value );
+			}
+		};
+	}
+	
+	/**
+	 * Converts the string form of a value to a value, without range checking.
+	 * @param value string form of the value, trimmed
+	 * @return the value
+	 * @throws IllegalArgumentException if the string is not a valid value of the type
+	 */
+	protected abstract T parseValue( final String value ) throws IllegalArgumentException;
+	
+	/**
+	 * Returns the string form of a value, the inverse of {@link #parse(String)}.
+	 * @param value value to be formatted
+	 * @return the string form of the value
+	 */
+	public String format( final T value ) {
+		return String.valueOf( value );
+	}
+	
+	/**
+	 * Converts the string form of a value to a value, and checks if it is in the valid range.
+	 * @param value string form of the value
+	 * @return the value
+	 * @throws IllegalArgumentException if the string is not a valid value of the parameter
+	 */
+	public T parse( final String value ) throws IllegalArgumentException {
+		final T parsedValue;
+		try {
+			parsedValue = parseValue( value.trim() );
+		}
+		catch ( final IllegalArgumentException iae ) {
+			throw new IllegalArgumentException( "Invalid value of property " + name + ": " + value + " (" + type.getSimpleName().toLowerCase() + " expected)", iae );
+		}
+		
+		if ( parsedValue != null && ( min != null && parsedValue.compareTo( min ) < 0 || max != null && parsedValue.compareTo( max ) > 0 ) )
+			throw new IllegalArgumentException( "Invalid value of property " + name + ": " + value + " (valid range: " + getRange() + ")" );
+		
+		return parsedValue;
+	}
+	
+	/**
+	 * Returns the value of the parameter from properties.
+	 * @param properties properties to read the value from
+	 * @return the value of the parameter, the default value if the property is not set
+	 * @throws IllegalArgumentException if the property is not a valid value of the parameter
+	 */
+	public T get( final Properties properties ) throws IllegalArgumentException {
+		final String value = properties.getProperty( name );
+		return value == null ? defaultValue : parse( value );
+	}
+	
+	/**
+	 * Returns the name of the parameter.
+	 * @return the name of the parameter
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Returns the type of the value of the parameter.
+	 * @return the type of the value of the parameter
+	 */
+	public Class< T > getType() {
+		return type;
+	}
+	
+	/**
+	 * Returns the default value of the parameter.
+	 * @return the default value of the parameter
+	 */
+	public T getDefaultValue() {
+		return defaultValue;
+	}
+	
+	/**
+	 * Returns the min valid value of the parameter.
+	 * @return the min valid value of the parameter, <code>null</code> if unbounded
+	 */
+	public T getMin() {
+		return min;
+	}
+	
+	/**
+	 * Returns the max valid value of the parameter.
+	 * @return the max valid value of the parameter, <code>null</code> if unbounded
+	 */
+	public T getMax() {
+		return max;
+	}
+	
+	/**
+	 * Returns the short description of the parameter.
+	 * @return the short description of the parameter
+	 */
+	public String getDescription() {
+		return description;
+	}
+	
+	/**
+	 * Returns the valid range of the parameter in a human readable form.
+	 * @return the valid range of the parameter in a human readable form
+	 */
+	public String getRange() {
+		return ( min == null ? "" : format( min ) ) + ".." + ( max == null ? "" : format( max ) );
+	}
+	
+	@Override
+	public String toString() {
+		return name + " (" + type.getSimpleName().toLowerCase() + ( min == null && max == null ? "" : ", " + getRange() ) + ", default: " + format( defaultValue ) + "): " + description;
+	}
+	
+}
@@ -0,0 +1,82 @@
+package hu.belicza.andras.recursion.model;
+
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Immutable, validated values of the parameters of an algorithm, compiled from properties by the parameter descriptors.
+ * 
+ * @author Belicza Andras
+ */
+public class ParameterValues {
+	
+	/** Descriptors of the parameters.                  */
+	private final List< ParameterDescriptor< ? > > descriptors;
+	/** Values of the parameters, indexed like the descriptors. */
+	private final Object[]                         values;
+	
+	/**
+	 * Creates a new <code>ParameterValues</code>.
+	 * @param descriptors descriptors of the parameters
+	 * @param values      values of the parameters, indexed like the descriptors
+	 */
+	private ParameterValues( final List< ParameterDescriptor< ? > > descriptors, final Object[] values ) {
+		this.descriptors = descriptors;
+		this.values      = values;
+	}
+	
+	/**
+	 * Compiles the values of parameters from properties.
+	 * @param descriptors descriptors of the parameters, must not be modified afterwards
+	 * @param properties  properties to read the values from
+	 * @return the compiled values of the parameters
+	 * @throws IllegalArgumentException if a property is not a valid value of its parameter
+	 */
+	public static ParameterValues compile( final List< ParameterDescriptor< ? > > descriptors, final Properties properties ) throws IllegalArgumentException {
+		return compile( descriptors, getPropertyValues( descriptors, properties ) );
+	}
+	
+	/**
+	 * Compiles the values of parameters from the values of their properties.
+	 * @param descriptors    descriptors of the parameters, must not be modified afterwards
+	 * @param propertyValues values of the properties of the parameters indexed like the descriptors, <code>null</code> if a property is not set
+	 * @return the compiled values of the parameters
+	 * @throws IllegalArgumentException if a property is not a valid value of its parameter
+	 */
+	public static ParameterValues compile( final List< ParameterDescriptor< ? > > descriptors, final String[] propertyValues ) throws IllegalArgumentException {
+		final Object[] values = new Object[ descriptors.size() ];
+		for ( int i = 0; i < values.length; i++ )
+			values[ i ] = propertyValues[ i ] == null ? descriptors.get( i ).getDefaultValue() : descriptors.get( i ).parse( propertyValues[ i ] );
+		
+		return new ParameterValues( descriptors, values );
+	}
+	
+	/**
+	 * Returns the values of the properties of parameters.
+	 * @param descriptors descriptors of the parameters
+	 * @param properties  properties to read the values from
+	 * @return the values of the properties of the parameters indexed like the descriptors, <code>null</code> if a property is not set
+	 */
+	public static String[] getPropertyValues( final List< ParameterDescriptor< ? > > descriptors, final Properties properties ) {
+		final String[] propertyValues = new String[ descriptors.size() ];
+		for ( int i = 0; i < propertyValues.length; i++ )
+			propertyValues[ i ] = properties.getProperty( descriptors.get( i ).getName() );
+		
+		return propertyValues;
+	}
+	
+	/**
+	 * Returns the value of a parameter.
+	 * @param descriptor descriptor of the parameter
+	 * @return the value of the parameter
+	 * @throws IllegalArgumentException if the parameter is not one of the compiled parameters
+	 */
+	public < T extends Comparable< ? super T > > T get( final ParameterDescriptor< T > descriptor ) throws IllegalArgumentException {
+		for ( int i = 0; i < values.length; i++ )
+			if ( descriptors.get( i ) == descriptor )
+				return descriptor.getType().cast( values[ i ] );
+		
+		throw new IllegalArgumentException( "Unknown parameter: " + descriptor.getName() );
+	}
+	
+}
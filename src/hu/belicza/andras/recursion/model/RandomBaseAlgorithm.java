@@ -3,36 +3,73 @@ package hu.belicza.andras.recursion.model;
 import java.util.Random;
 
 /**
+ * Abstract base for random algorithms.<br>
+ * Each render gets its own random generator seeded by the random seed property, the type of the generator
+ * is selected by the random generator property (see {@link RandomGenerator}).
+ * 
+ * @param <P> type of the parameter snapshot of the algorithm
  * 
  * @author Belicza Andras
  */
-public abstract class RandomBaseAlgorithm extends BaseAlgorithm {
+public abstract class RandomBaseAlgorithm< P > extends BaseAlgorithm< P > {
+	
+	/** Name of the property of the random seed.                              */
+	public static final String PROPERTY_RANDOM_SEED         = "randomSeed";
 	
-	protected static final String PROPERTY_RANDOM_SEED = "randomSeed";
+	/** Random seed property value to use a new random seed for every paint. */
+	public static final String ALWAYS_NEW_RANDOM_SEED_VALUE = "<ALWAYS_NEW>";
 	
-	private   static final String ALWAYS_NEW_RANDOM_SEED_VALUE = "<ALWAYS_NEW>";
+	/** Name of the property of the random generator.                         */
+	public static final String PROPERTY_RANDOM_GENERATOR    = "randomGenerator";
 	
-	protected final Random random = new Random();
+	/** The random seed parameter, <code>null</code> value means a new random seed for every paint. */
+	private final ParameterDescriptor< Long >            randomSeed;
+	/** The random generator parameter.                                                              */
+	private final ParameterDescriptor< RandomGenerator > randomGenerator;
 	
 	public RandomBaseAlgorithm( final String name, final String author, final String version, final String description ) {
 		super( name, author, version, description );
 		
-		//defaultProperties.setProperty( PROPERTY_RANDOM_SEED, Long.toString( new Random().nextLong() ) );
-		defaultProperties.setProperty( PROPERTY_RANDOM_SEED, ALWAYS_NEW_RANDOM_SEED_VALUE );
+		randomSeed = addParameter( new ParameterDescriptor< Long >( PROPERTY_RANDOM_SEED, Long.class, null, null, null,
+				"seed of the random generator, " + ALWAYS_NEW_RANDOM_SEED_VALUE + " for a new seed in every paint" ) {
+			@Override
+			protected Long parseValue( final String value ) {
+				return value.equals( ALWAYS_NEW_RANDOM_SEED_VALUE ) ? null : Long.valueOf( value );
+			}
+			@Override
+			public String format( final Long value ) {
+				return value == null ? ALWAYS_NEW_RANDOM_SEED_VALUE : value.toString();
+			}
+		} );
+		randomGenerator = addParameter( new ParameterDescriptor< RandomGenerator >( PROPERTY_RANDOM_GENERATOR, RandomGenerator.class, RandomGenerator.LEGACY, null, null,
+				"random generator: " + RandomGenerator.getNames() + "; " + RandomGenerator.LEGACY.getName() + " is java.util.Random, the generator used before this property existed" ) {
+			@Override
+			protected RandomGenerator parseValue( final String value ) {
+				return RandomGenerator.forName( value );
+			}
+			@Override
+			public String format( final RandomGenerator value ) {
+				return value.getName();
+			}
+		} );
+	}
+	
+	/**
+	 * Tells if the random seed of the parameter values is fixed, so every render with them gets the same random numbers.
+	 * @param values parameter values of a render
+	 * @return true if the random seed is fixed; false if every render gets a new random seed
+	 */
+	protected boolean isRandomSeedFixed( final ParameterValues values ) {
+		return values.get( randomSeed ) != null;
 	}
 	
 	@Override
-	protected void validateProperties() throws IllegalArgumentException {
-		try {
-			final String randomSeedString = properties.getProperty( PROPERTY_RANDOM_SEED );
-			
-			// If random seed property is not set, it will be like we set a new random (we "continue" where we left)
-			if ( !randomSeedString.equals( ALWAYS_NEW_RANDOM_SEED_VALUE ) )
-				random.setSeed( Long.parseLong( randomSeedString ) );
-		}
-		catch ( final Exception e ) {
-			throw new IllegalArgumentException( e.getMessage(), e );
-		}
+	protected Random createRandom( final ParameterValues values ) {
+		final Long            seed      = values.get( randomSeed      );
+		final RandomGenerator generator = values.get( randomGenerator );
+		
+		// If random seed property is not set, every render gets a new random seed
+		return seed == null ? generator.create() : generator.create( seed );
 	}
 	
 }
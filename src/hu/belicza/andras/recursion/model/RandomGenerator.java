@@ -0,0 +1,278 @@
+package hu.belicza.andras.recursion.model;
+
+import java.util.Random;
+
+/**
+ * The random generators a render of a {@link RandomBaseAlgorithm} can use.<br>
+ * The generators are {@link Random}s, so the algorithms draw their random values the same way regardless of the generator.
+ * Except the legacy generator they are not thread-safe (a render gets its own generator), and they do not synchronize on any call:
+ * {@link Random} updates its state with a compare-and-set on every value.<br>
+ * Generators of the same type created with the same seed produce the same values, and setting the seed of a generator
+ * restarts it as if it was created with the seed.
+ * 
+ * @author Belicza Andras
+ */
+public enum RandomGenerator {
+	
+	/** {@link Random}, the generator used before the random generator property existed. */
+	LEGACY( "legacy" ) {
+		@Override
+		public Random create( final long seed ) {
+			return new Random( seed );
+		}
+		@Override
+		public Random create() {
+			return new Random();
+		}
+	},
+	
+	/** The SplitMix64 generator, the long values are the values of a {@link java.util.SplittableRandom} created with the same seed. */
+	SPLITTABLE( "splittable" ) {
+		@Override
+		public Random create( final long seed ) {
+			return new SplitMix64Random( seed );
+		}
+	},
+	
+	/** The xoshiro256** generator, its state is initialized from the seed by SplitMix64. */
+	XOSHIRO( "xoshiro" ) {
+		@Override
+		public Random create( final long seed ) {
+			return new XoshiroRandom( seed );
+		}
+	},
+	
+	/**
+	 * Counter-based generator: value <i>i</i> is the hash of the mixed seed and <i>i</i> (see {@link RandomHash#hash(long, long)}).<br>
+	 * Unlike the SplitMix64 streams (which are shifted copies of each other if their seeds differ by a multiple of the gamma),
+	 * the streams of different seeds are independent.
+	 */
+	COUNTER( "counter" ) {
+		@Override
+		public Random create( final long seed ) {
+			return new CounterRandom( seed );
+		}
+	};
+	
+	/** Generator of the seeds of the generators created without a seed. */
+	private static final Random SEED_GENERATOR = new Random();
+	
+	/** Name of the generator, the value of the property selecting it. */
+	private final String name;
+	
+	/**
+	 * Creates a new <code>RandomGenerator</code>.
+	 * @param name name of the generator, the value of the property selecting it
+	 */
+	private RandomGenerator( final String name ) {
+		this.name = name;
+	}
+	
+	/**
+	 * Creates a new generator of this type.
+	 * @param seed seed of the generator
+	 * @return the new generator
+	 */
+	public abstract Random create( final long seed );
+	
+	/**
+	 * Creates a new generator of this type with a new seed, which is very likely to be distinct from the seeds of any other generators.
+	 * @return the new generator
+	 */
+	public Random create() {
+		return create( SEED_GENERATOR.nextLong() );
+	}
+	
+	/**
+	 * Returns the name of the generator, the value of the property selecting it.
+	 * @return the name of the generator
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Returns the generator of a name.
+	 * @param name name of the generator
+	 * @return the generator of the name
+	 * @throws IllegalArgumentException if there is no generator with the name
+	 */
+	public static RandomGenerator forName( final String name ) throws IllegalArgumentException {
+		for ( final RandomGenerator generator : values() )
+			if ( generator.name.equals( name ) )
+				return generator;
+		
+		throw new IllegalArgumentException( "Invalid random generator: " + name + " (valid generators: " + getNames() + ")" );
+	}
+	
+	/**
+	 * Returns the names of the generators, separated by commas.
+	 * @return the names of the generators
+	 */
+	public static String getNames() {
+		final StringBuilder builder = new StringBuilder();
+		
+		for ( final RandomGenerator generator : values() ) {
+			if ( builder.length() > 0 )
+				builder.append( ", " );
+			builder.append( generator.name );
+		}
+		
+		return builder.toString();
+	}
+	
+	/**
+	 * Base of the 64-bit generators: all values are derived from {@link #nextLong()} without synchronization.
+	 */
+	private static abstract class LongRandom extends Random {
+		
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * Creates a new <code>LongRandom</code>.
+		 * @param seed seed of the generator (passed to {@link #setSeed(long)} by {@link Random})
+		 */
+		public LongRandom( final long seed ) {
+			super( seed );
+		}
+		
+		@Override
+		public abstract long nextLong();
+		
+		@Override
+		protected int next( final int bits ) {
+			return (int) ( nextLong() >>> 64 - bits );
+		}
+		
+		@Override
+		public int nextInt() {
+			return (int) ( nextLong() >>> 32 );
+		}
+		
+		@Override
+		public boolean nextBoolean() {
+			return nextLong() < 0;
+		}
+		
+		@Override
+		public float nextFloat() {
+			return ( nextLong() >>> 40 ) * 0x1.0p-24f;
+		}
+		
+		@Override
+		public double nextDouble() {
+			return ( nextLong() >>> 11 ) * 0x1.0p-53;
+		}
+		
+	}
+	
+	/**
+	 * The SplitMix64 generator.
+	 */
+	private static class SplitMix64Random extends LongRandom {
+		
+		private static final long serialVersionUID = 1L;
+		
+		/** State of the generator, advanced by {@link RandomHash#GOLDEN_GAMMA} for each value. */
+		private long state;
+		
+		/**
+		 * Creates a new <code>SplitMix64Random</code>.
+		 * @param seed seed of the generator
+		 */
+		public SplitMix64Random( final long seed ) {
+			super( seed );
+		}
+		
+		@Override
+		public void setSeed( final long seed ) {
+			super.setSeed( seed );
+			state = seed;
+		}
+		
+		@Override
+		public long nextLong() {
+			return RandomHash.mix( state += RandomHash.GOLDEN_GAMMA );
+		}
+		
+	}
+	
+	/**
+	 * The xoshiro256** generator of David Blackman and Sebastiano Vigna.
+	 */
+	private static class XoshiroRandom extends LongRandom {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private long s0, s1, s2, s3;
+		
+		/**
+		 * Creates a new <code>XoshiroRandom</code>.
+		 * @param seed seed of the generator
+		 */
+		public XoshiroRandom( final long seed ) {
+			super( seed );
+		}
+		
+		@Override
+		public void setSeed( final long seed ) {
+			super.setSeed( seed );
+			// SplitMix64 never produces 4 zeros in a row, the state is never all zero
+			s0 = RandomHash.mix( seed +     RandomHash.GOLDEN_GAMMA );
+			s1 = RandomHash.mix( seed + 2 * RandomHash.GOLDEN_GAMMA );
+			s2 = RandomHash.mix( seed + 3 * RandomHash.GOLDEN_GAMMA );
+			s3 = RandomHash.mix( seed + 4 * RandomHash.GOLDEN_GAMMA );
+		}
+		
+		@Override
+		public long nextLong() {
+			final long result = Long.rotateLeft( s1 * 5, 7 ) * 9;
+			final long t      = s1 << 17;
+			
+			s2 ^= s0;
+			s3 ^= s1;
+			s1 ^= s2;
+			s0 ^= s3;
+			s2 ^= t;
+			s3  = Long.rotateLeft( s3, 45 );
+			
+			return result;
+		}
+		
+	}
+	
+	/**
+	 * Counter-based generator: the values are the hashes of the mixed seed and their indices.
+	 */
+	private static class CounterRandom extends LongRandom {
+		
+		private static final long serialVersionUID = 1L;
+		
+		/** Key of the values, the mixed seed. */
+		private long key;
+		/** Index of the next value.           */
+		private long counter;
+		
+		/**
+		 * Creates a new <code>CounterRandom</code>.
+		 * @param seed seed of the generator
+		 */
+		public CounterRandom( final long seed ) {
+			super( seed );
+		}
+		
+		@Override
+		public void setSeed( final long seed ) {
+			super.setSeed( seed );
+			key     = RandomHash.mix( seed );
+			counter = 0;
+		}
+		
+		@Override
+		public long nextLong() {
+			return RandomHash.hash( key, counter++ );
+		}
+		
+	}
+	
+}
@@ -0,0 +1,77 @@
+package hu.belicza.andras.recursion.model;
+
+/**
+ * Counter-based random numbers: pseudo random values hashed from a seed and counters (node indices, coordinates)
+ * instead of drawn from a sequential generator.<br>
+ * The values do not depend on the order they are computed in, so parts of a result can be generated
+ * level by level, in parallel or on their own, and still be identical to a sequential generation.<br>
+ * The hash is the finalizer of the SplitMix64 generator (as used by {@link java.util.SplittableRandom}).
+ * 
+ * @author Belicza Andras
+ */
+public class RandomHash {
+	
+	/** The odd constant of the golden ratio to spread the counters. */
+	public static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	
+	/**
+	 * No instantiation.
+	 */
+	private RandomHash() {
+	}
+	
+	/**
+	 * Mixes the bits of a value.
+	 * @param value value to be mixed
+	 * @return the mixed value
+	 */
+	public static long mix( long value ) {
+		value = ( value ^ value >>> 30 ) * 0xbf58476d1ce4e5b9L;
+		value = ( value ^ value >>> 27 ) * 0x94d049bb133111ebL;
+		return value ^ value >>> 31;
+	}
+	
+	/**
+	 * Hashes a seed and a counter.
+	 * @param seed    the seed
+	 * @param counter the counter
+	 * @return the hash of the seed and the counter
+	 */
+	public static long hash( final long seed, final long counter ) {
+		return mix( seed + ( counter + 1 ) * GOLDEN_GAMMA );
+	}
+	
+	/**
+	 * Hashes a seed and 2 counters (for example coordinates).
+	 * @param seed     the seed
+	 * @param counter1 the first counter
+	 * @param counter2 the second counter
+	 * @return the hash of the seed and the counters
+	 */
+	public static long hash( final long seed, final long counter1, final long counter2 ) {
+		return hash( hash( seed, counter1 ), counter2 );
+	}
+	
+	/**
+	 * Returns a pseudo random int from a hash, uniformly distributed between 0 (inclusive) and a bound (exclusive).
+	 * @param hash  the hash
+	 * @param bound upper bound (exclusive), must be positive
+	 * @return the pseudo random int
+	 * @throws IllegalArgumentException if the bound is not positive
+	 */
+	public static int nextInt( final long hash, final int bound ) throws IllegalArgumentException {
+		if ( bound <= 0 )
+			throw new IllegalArgumentException( "bound must be positive" );
+		return (int) ( ( hash >>> 33 ) * bound >>> 31 );
+	}
+	
+	/**
+	 * Returns a pseudo random float from a hash, uniformly distributed between 0 (inclusive) and 1 (exclusive).
+	 * @param hash the hash
+	 * @return the pseudo random float
+	 */
+	public static float nextFloat( final long hash ) {
+		return ( hash >>> 40 ) * 0x1.0p-24f;
+	}
+	
+}
@@ -0,0 +1,31 @@
+package hu.belicza.andras.recursion.model;
+
+import java.awt.image.BufferedImage;
+import java.util.Properties;
+
+/**
+ * An {@link Algorithm} which can paint its result directly into the data buffer of an image.
+ * 
+ * @author Belicza Andras
+ */
+public interface RasterAlgorithm extends Algorithm {
+	
+	/**
+	 * Paints the result of the algorithm into an image or returns an error if the supplied properties are not valid.<br>
+	 * The size of the desired image is the size of the image.
+	 * 
+	 * @param image image to paint into
+	 * @throws IllegalArgumentException thrown if illegal property value is specified
+	 */
+	public void paint( final BufferedImage image ) throws IllegalArgumentException;
+	
+	/**
+	 * Paints the result of the algorithm with the specified properties into an image or returns an error if the properties are not valid.
+	 * 
+	 * @param image            image to paint into
+	 * @param renderProperties properties of the render, <code>null</code> means the properties of the algorithm
+	 * @throws IllegalArgumentException thrown if illegal property value is specified
+	 */
+	public void paint( final BufferedImage image, final Properties renderProperties ) throws IllegalArgumentException;
+	
+}
@@ -0,0 +1,91 @@
+package hu.belicza.andras.recursion.model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A raw raster file storing tiles.<br>
+ * The file holds the points row by row without header, 3 bytes per point in red, green, blue order
+ * (so its size is <code>width * height * 3</code> bytes). Points not covered by any tile are black.<br>
+ * The tiles are written row by row with positional writes through a reused row buffer (no memory mappings are created),
+ * so neither the heap use nor the address space use depends on the size of the raster.
+ * 
+ * @author Belicza Andras
+ */
+public class RawRasterFile implements TileSink, Closeable {
+	
+	/** Number of bytes per point. */
+	public static final int BYTES_PER_POINT = 3;
+	
+	/** Width of the raster.                              */
+	private final int              width;
+	/** Height of the raster.                             */
+	private final int              height;
+	/** The file of the raster.                           */
+	private final RandomAccessFile file;
+	/** Channel of the file.                              */
+	private final FileChannel      channel;
+	
+	/** Bytes of a tile row being written, reused between rows. */
+	private byte[]     rowBytes  = new byte[ 0 ];
+	/** Buffer wrapping the bytes of a tile row.                */
+	private ByteBuffer rowBuffer = ByteBuffer.wrap( rowBytes );
+	
+	/**
+	 * Creates a new <code>RawRasterFile</code>, creates or truncates the file and sizes it to the raster.
+	 * 
+	 * @param file   the file of the raster
+	 * @param width  width of the raster
+	 * @param height height of the raster
+	 * @throws IOException if the file cannot be created
+	 */
+	public RawRasterFile( final File file, final int width, final int height ) throws IOException {
+		this.width  = width;
+		this.height = height;
+		
+		this.file = new RandomAccessFile( file, "rw" );
+		this.file.setLength( 0 );
+		this.file.setLength( (long) width * height * BYTES_PER_POINT );
+		channel   = this.file.getChannel();
+	}
+	
+	@Override
+	public synchronized void tilePainted( final int x, final int y, final int width, final int height, final int[] pixels, final int offset, final int scanlineStride ) throws IOException {
+		if ( x < 0 || y < 0 || x + width > this.width || y + height > this.height )
+			throw new IllegalArgumentException( "The tile is out of the raster!" );
+		
+		final long stride       = (long) this.width * BYTES_PER_POINT;
+		final int  tileRowBytes = width * BYTES_PER_POINT;
+		if ( rowBytes.length < tileRowBytes ) {
+			rowBytes  = new byte[ tileRowBytes ];
+			rowBuffer = ByteBuffer.wrap( rowBytes );
+		}
+		
+		for ( int row = 0; row < height; row++ ) {
+			for ( int j = 0, pixelIndex = offset + row * scanlineStride, k = 0; j < width; j++, pixelIndex++ ) {
+				final int rgb = pixels[ pixelIndex ];
+				rowBytes[ k++ ] = (byte) ( rgb >> 16 );
+				rowBytes[ k++ ] = (byte) ( rgb >> 8  );
+				rowBytes[ k++ ] = (byte)   rgb;
+			}
+			
+			rowBuffer.clear().limit( tileRowBytes );
+			for ( long position = ( y + row ) * stride + (long) x * BYTES_PER_POINT; rowBuffer.hasRemaining(); )
+				position += channel.write( rowBuffer, position );
+		}
+	}
+	
+	/**
+	 * Closes the file.
+	 * @throws IOException if the file cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+	
+}
@@ -0,0 +1,220 @@
+package hu.belicza.andras.recursion.model;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Stack-safe executor of divide-and-conquer recursions.<br>
+ * Instead of the call stack of the JVM, pending frames are stored in an explicit, heap allocated worklist of primitive frames
+ * (4 <code>int</code>s each), so the depth of the recursion is only limited by the heap.<br>
+ * The worklist is a stack: the subframes of a step are processed in the reverse order they are passed to {@link #recurse(int, int, int, int)},
+ * each one completely before the next one. So a step schedules its subframes starting with the last one, and then frames are processed
+ * in the same order as a recursive implementation would process them: algorithms consuming random numbers produce the same result
+ * as their recursive counterparts. Nothing is reordered between the steps, a frame costs a push and a pop.<br>
+ * An execution is cancelled (a {@link CancellationException} is thrown) if the executing thread gets interrupted,
+ * or if the {@link Cancellation} of the engine gets cancelled.<br>
+ * If the engine has render metrics, the processed frames are counted as calls, and the depth of the frames is tracked
+ * in a parallel array (engines without metrics do not track depth).<br>
+ * Frames may also carry a 64 bit seed (see {@link #run(RecursionStep, int, int, int, int, long)}), so steps can derive their random numbers
+ * from their own frame (see {@link RandomHash}) instead of a shared generator, independently of the processing order.<br>
+ * An engine can be reused for subsequent executions, but it is not thread-safe.
+ * 
+ * @author Belicza Andras
+ */
+public class RecursionEngine {
+	
+	/** Number of ints in a frame. */
+	private static final int FRAME_SIZE = 4;
+	/** Number of frames to be processed between checking cancellation, must be a power of 2. */
+	private static final int CANCELLATION_CHECK_PERIOD = 1 << 12;
+	
+	/** Cancellation of the executions, <code>null</code> means the interruption of the executing thread. */
+	private final Cancellation  cancellation;
+	/** Metrics of the render to update, <code>null</code> if the render is not measured.                 */
+	private final RenderMetrics metrics;
+	/** Depth of the starting frames.                                                                      */
+	private final int           firstDepth;
+	
+	/** The worklist: a stack of pending frames. */
+	private int[] frames = new int[ FRAME_SIZE * 64 ];
+	/** Number of used ints in the worklist.      */
+	private int   size;
+	/** Depths of the pending frames (indexed by frame), <code>null</code> if not measured. */
+	private int[] depths;
+	/** Depth of the frame being processed.       */
+	private int   depth;
+	/** Seeds of the pending frames (indexed by frame), <code>null</code> if no seeded frame was scheduled. */
+	private long[] seeds;
+	/** Seed of the frame being processed.        */
+	private long   seed;
+	
+	/**
+	 * Creates a new <code>RecursionEngine</code> whose executions are cancelled by interrupting the executing thread.
+	 */
+	public RecursionEngine() {
+		this( null );
+	}
+	
+	/**
+	 * Creates a new <code>RecursionEngine</code>.
+	 * @param cancellation cancellation of the executions (for example if the engine is used by a fork/join task),
+	 *                     <code>null</code> means the interruption of the executing thread
+	 */
+	public RecursionEngine( final Cancellation cancellation ) {
+		this( cancellation, null, 1 );
+	}
+	
+	/**
+	 * Creates a new <code>RecursionEngine</code> which updates the metrics of a render.
+	 * @param cancellation cancellation of the executions, <code>null</code> means the interruption of the executing thread
+	 * @param metrics      metrics of the render to update, <code>null</code> if the render is not measured
+	 * @param firstDepth   depth of the starting frames (greater than 1 if the engine continues a recursion)
+	 */
+	public RecursionEngine( final Cancellation cancellation, final RenderMetrics metrics, final int firstDepth ) {
+		this.cancellation = cancellation;
+		this.metrics      = metrics;
+		this.firstDepth   = firstDepth;
+		if ( metrics != null )
+			depths = new int[ frames.length / FRAME_SIZE ];
+	}
+	
+	/**
+	 * Executes a recursion starting with the specified frame.
+	 * 
+	 * @param step step of the recursion
+	 * @param x1   x coordinate of the first point of the starting frame
+	 * @param y1   y coordinate of the first point of the starting frame
+	 * @param x2   x coordinate of the second point of the starting frame
+	 * @param y2   y coordinate of the second point of the starting frame
+	 * @throws CancellationException if the execution is cancelled
+	 */
+	public void run( final RecursionStep step, final int x1, final int y1, final int x2, final int y2 ) throws CancellationException {
+		size  = 0;
+		depth = firstDepth - 1;
+		seed  = 0;
+		recurse( x1, y1, x2, y2 );
+		
+		run( step );
+	}
+	
+	/**
+	 * Executes a recursion starting with the specified seeded frame.<br>
+	 * The seed of the frame being processed is available through {@link #getSeed()}, subframes can be seeded with
+	 * {@link #recurse(int, int, int, int, long)}.
+	 * 
+	 * @param step step of the recursion
+	 * @param x1   x coordinate of the first point of the starting frame
+	 * @param y1   y coordinate of the first point of the starting frame
+	 * @param x2   x coordinate of the second point of the starting frame
+	 * @param y2   y coordinate of the second point of the starting frame
+	 * @param seed seed of the starting frame
+	 * @throws CancellationException if the execution is cancelled
+	 */
+	public void run( final RecursionStep step, final int x1, final int y1, final int x2, final int y2, final long seed ) throws CancellationException {
+		size  = 0;
+		depth = firstDepth - 1;
+		recurse( x1, y1, x2, y2, seed );
+		
+		run( step );
+	}
+	
+	/**
+	 * Processes the scheduled frames.
+	 * @param step step of the recursion
+	 * @throws CancellationException if the execution is cancelled
+	 */
+	private void run( final RecursionStep step ) throws CancellationException {
+		int frameCounter = 1;
+		int maxDepth     = 0;
+		try {
+			for ( ; size > 0; frameCounter++ ) {
+				if ( ( frameCounter & CANCELLATION_CHECK_PERIOD - 1 ) == 0
+						&& ( cancellation == null ? Thread.currentThread().isInterrupted() : cancellation.isCancelled() ) ) {
+					size = 0;
+					throw new CancellationException( "The recursion was cancelled." );
+				}
+				
+				size -= FRAME_SIZE;
+				final int base = size;
+				
+				if ( depths != null && ( depth = depths[ base / FRAME_SIZE ] ) > maxDepth )
+					maxDepth = depth;
+				seed = seeds == null ? 0 : seeds[ base / FRAME_SIZE ];
+				
+				step.execute( frames[ base ], frames[ base + 1 ], frames[ base + 2 ], frames[ base + 3 ], this );
+			}
+		}
+		finally {
+			if ( metrics != null ) {
+				metrics.addCalls( frameCounter - 1 );
+				metrics.updateMaxDepth( maxDepth );
+			}
+		}
+	}
+	
+	/**
+	 * Schedules the recursion into a subframe. To be called by {@link RecursionStep}s only.<br>
+	 * The subframe is processed before the subframes scheduled earlier by the same step.
+	 * 
+	 * @param x1 x coordinate of the first point of the subframe
+	 * @param y1 y coordinate of the first point of the subframe
+	 * @param x2 x coordinate of the second point of the subframe
+	 * @param y2 y coordinate of the second point of the subframe
+	 */
+	public void recurse( final int x1, final int y1, final int x2, final int y2 ) {
+		push( x1, y1, x2, y2, 0 );
+	}
+	
+	/**
+	 * Schedules the recursion into a seeded subframe. To be called by {@link RecursionStep}s only.<br>
+	 * The subframe is processed before the subframes scheduled earlier by the same step.
+	 * 
+	 * @param x1   x coordinate of the first point of the subframe
+	 * @param y1   y coordinate of the first point of the subframe
+	 * @param x2   x coordinate of the second point of the subframe
+	 * @param y2   y coordinate of the second point of the subframe
+	 * @param seed seed of the subframe
+	 */
+	public void recurse( final int x1, final int y1, final int x2, final int y2, final long seed ) {
+		if ( seeds == null )
+			seeds = new long[ frames.length / FRAME_SIZE ];
+		push( x1, y1, x2, y2, seed );
+	}
+	
+	/**
+	 * Returns the seed of the frame being processed. To be called by {@link RecursionStep}s only.
+	 * @return the seed of the frame being processed, 0 if the frame is not seeded
+	 */
+	public long getSeed() {
+		return seed;
+	}
+	
+	/**
+	 * Pushes a frame to the worklist.
+	 * 
+	 * @param x1   x coordinate of the first point of the frame
+	 * @param y1   y coordinate of the first point of the frame
+	 * @param x2   x coordinate of the second point of the frame
+	 * @param y2   y coordinate of the second point of the frame
+	 * @param seed seed of the frame, only stored if seeded frames were scheduled
+	 */
+	private void push( final int x1, final int y1, final int x2, final int y2, final long seed ) {
+		if ( size + FRAME_SIZE > frames.length ) {
+			frames = Arrays.copyOf( frames, frames.length * 2 );
+			if ( depths != null )
+				depths = Arrays.copyOf( depths, frames.length / FRAME_SIZE );
+			if ( seeds != null )
+				seeds = Arrays.copyOf( seeds, frames.length / FRAME_SIZE );
+		}
+		
+		if ( depths != null )
+			depths[ size / FRAME_SIZE ] = depth + 1;
+		if ( seeds != null )
+			seeds[ size / FRAME_SIZE ] = seed;
+		frames[ size++ ] = x1;
+		frames[ size++ ] = y1;
+		frames[ size++ ] = x2;
+		frames[ size++ ] = y2;
+	}
+	
+}
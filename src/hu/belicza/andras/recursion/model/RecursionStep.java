@@ -0,0 +1,24 @@
+package hu.belicza.andras.recursion.model;
+
+/**
+ * A step of a divide-and-conquer recursion executed by a {@link RecursionEngine}.<br>
+ * A step processes a frame (a region or a line segment given by 2 points) and optionally divides it
+ * by calling {@link RecursionEngine#recurse(int, int, int, int)} for the subframes instead of calling itself.<br>
+ * Subframes are processed in the reverse order they are scheduled, so a step schedules the subframe to be processed last first.
+ * 
+ * @author Belicza Andras
+ */
+public interface RecursionStep {
+	
+	/**
+	 * Executes the step on a frame.
+	 * 
+	 * @param x1     x coordinate of the first point of the frame
+	 * @param y1     y coordinate of the first point of the frame
+	 * @param x2     x coordinate of the second point of the frame
+	 * @param y2     y coordinate of the second point of the frame
+	 * @param engine engine executing the recursion, to be used to recurse into subframes
+	 */
+	public void execute( final int x1, final int y1, final int x2, final int y2, final RecursionEngine engine );
+	
+}
@@ -0,0 +1,107 @@
+package hu.belicza.andras.recursion.model;
+
+import java.awt.Graphics;
+import java.util.Random;
+
+/**
+ * Context of a single render (paint call) of an algorithm.<br>
+ * Holds everything a render may change or depend on: the targets to paint to, the random generator
+ * the immutable snapshot of the parameters and the metrics of the render. Since a context is confined to its render,
+ * an algorithm instance holding no render state can serve concurrent renders.
+ * 
+ * @param <P> type of the parameter snapshot
+ * 
+ * @author Belicza Andras
+ */
+public class RenderContext< P > {
+	
+	/** Graphics context to paint with, <code>null</code> if the render paints to a draw target or an image. */
+	private final Graphics      graphics;
+	/** Target to draw to, <code>null</code> if the render does not draw primitives.                            */
+	private final DrawTarget    target;
+	/** Random generator of the render, <code>null</code> if the algorithm is not random.                       */
+	private final Random        random;
+	/** Immutable snapshot of the parameters of the render.                                                      */
+	private final P             parameters;
+	/** Metrics of the render, <code>null</code> if the render is not measured.                                   */
+	private final RenderMetrics metrics;
+	
+	/**
+	 * Creates a new <code>RenderContext</code> of a render which is not measured.
+	 * 
+	 * @param graphics   graphics context to paint with, <code>null</code> if the render paints to a draw target or an image
+	 * @param target     target to draw to, <code>null</code> if the render does not draw primitives
+	 * @param random     random generator of the render, <code>null</code> if the algorithm is not random
+	 * @param parameters immutable snapshot of the parameters of the render
+	 */
+	public RenderContext( final Graphics graphics, final DrawTarget target, final Random random, final P parameters ) {
+		this( graphics, target, random, parameters, null );
+	}
+	
+	/**
+	 * Creates a new <code>RenderContext</code>.
+	 * 
+	 * @param graphics   graphics context to paint with, <code>null</code> if the render paints to a draw target or an image
+	 * @param target     target to draw to, <code>null</code> if the render does not draw primitives
+	 * @param random     random generator of the render, <code>null</code> if the algorithm is not random
+	 * @param parameters immutable snapshot of the parameters of the render
+	 * @param metrics    metrics of the render, <code>null</code> if the render is not measured
+	 */
+	public RenderContext( final Graphics graphics, final DrawTarget target, final Random random, final P parameters, final RenderMetrics metrics ) {
+		this.graphics   = graphics;
+		this.target     = target;
+		this.random     = random;
+		this.parameters = parameters;
+		this.metrics    = metrics;
+	}
+	
+	/**
+	 * Returns the graphics context to paint with.
+	 * @return the graphics context to paint with, <code>null</code> if the render paints to a draw target or an image
+	 */
+	public Graphics getGraphics() {
+		return graphics;
+	}
+	
+	/**
+	 * Returns the target to draw to.
+	 * @return the target to draw to, <code>null</code> if the render does not draw primitives
+	 */
+	public DrawTarget getTarget() {
+		return target;
+	}
+	
+	/**
+	 * Returns the random generator of the render.
+	 * @return the random generator of the render, <code>null</code> if the algorithm is not random
+	 */
+	public Random getRandom() {
+		return random;
+	}
+	
+	/**
+	 * Returns the immutable snapshot of the parameters of the render.
+	 * @return the immutable snapshot of the parameters of the render
+	 */
+	public P getParameters() {
+		return parameters;
+	}
+	
+	/**
+	 * Returns the metrics of the render.
+	 * @return the metrics of the render, <code>null</code> if the render is not measured
+	 */
+	public RenderMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Finishes the render: publishes its metrics if it is measured.
+	 * @param completed tells if the render completed; false if it was cancelled or it failed
+	 */
+	public void finish( final boolean completed ) {
+		if ( metrics != null )
+			metrics.finish( completed );
+	}
+	
+}
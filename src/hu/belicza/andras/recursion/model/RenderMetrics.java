@@ -0,0 +1,220 @@
+package hu.belicza.andras.recursion.model;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of a single render of an algorithm.<br>
+ * Counters may be updated from the worker threads of a parallel render. Phase times recorded by the workers
+ * are summed over the threads, so they may exceed the latency of a parallel render.<br>
+ * Renders are only measured if the metrics are enabled (see {@link AlgorithmMetrics#setEnabled(boolean)}),
+ * else the render context holds no metrics and the algorithms skip the instrumentation.
+ * 
+ * @author Belicza Andras
+ */
+public class RenderMetrics {
+	
+	/** Thread MX bean to query the allocated bytes of threads, <code>null</code> if not supported. */
+	private static final com.sun.management.ThreadMXBean ALLOCATION_MX_BEAN = getAllocationMXBean();
+	
+	/** Metrics of the algorithm to publish the render to. */
+	private final AlgorithmMetrics algorithmMetrics;
+	/** Thread starting the render.                         */
+	private final Thread           thread;
+	/** Start of the render, in nanoseconds.                */
+	private final long             startNanos;
+	/** Bytes allocated by the thread at the start of the render, -1 if not supported. */
+	private final long             startAllocatedBytes;
+	
+	private final LongAdder     calls              = new LongAdder();
+	private final AtomicInteger maxDepth           = new AtomicInteger();
+	private final LongAdder     drawCalls          = new LongAdder();
+	private final LongAdder     generationNanos    = new LongAdder();
+	private final LongAdder     rasterizationNanos = new LongAdder();
+	private volatile long       validationNanos;
+	
+	/** Latency of the render in nanoseconds, set when the render is finished.                       */
+	private volatile long       latencyNanos;
+	/** Bytes allocated by the thread during the render, set when the render is finished, -1 if not supported. */
+	private volatile long       allocatedBytes = -1;
+	
+	/**
+	 * Creates a new <code>RenderMetrics</code>, and starts measuring the render in the current thread.
+	 * @param algorithmMetrics metrics of the algorithm to publish the render to
+	 */
+	public RenderMetrics( final AlgorithmMetrics algorithmMetrics ) {
+		this.algorithmMetrics = algorithmMetrics;
+		thread                = Thread.currentThread();
+		startAllocatedBytes   = getThreadAllocatedBytes( thread );
+		startNanos            = System.nanoTime();
+	}
+	
+	/**
+	 * Returns the thread MX bean to query the allocated bytes of threads.
+	 * @return the thread MX bean to query the allocated bytes of threads, <code>null</code> if not supported
+	 */
+	private static com.sun.management.ThreadMXBean getAllocationMXBean() {
+		try {
+			final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+			if ( threadMXBean instanceof com.sun.management.ThreadMXBean && ( (com.sun.management.ThreadMXBean) threadMXBean ).isThreadAllocatedMemorySupported() ) {
+				( (com.sun.management.ThreadMXBean) threadMXBean ).setThreadAllocatedMemoryEnabled( true );
+				return (com.sun.management.ThreadMXBean) threadMXBean;
+			}
+		}
+		catch ( final LinkageError le ) {
+			// Not a HotSpot based JVM
+		}
+		catch ( final UnsupportedOperationException uoe ) {
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the bytes allocated by a thread so far.
+	 * @param thread thread whose allocated bytes to be returned
+	 * @return the bytes allocated by the thread, -1 if not supported
+	 */
+	public static long getThreadAllocatedBytes( final Thread thread ) {
+		return ALLOCATION_MX_BEAN == null ? -1 : ALLOCATION_MX_BEAN.getThreadAllocatedBytes( thread.getId() );
+	}
+	
+	/**
+	 * Finishes measuring the render, and publishes it to the metrics of the algorithm.<br>
+	 * Must be called by the thread which started the render.
+	 * @param completed tells if the render completed; false if it was cancelled or it failed
+	 */
+	public void finish( final boolean completed ) {
+		latencyNanos = System.nanoTime() - startNanos;
+		if ( startAllocatedBytes >= 0 )
+			allocatedBytes = getThreadAllocatedBytes( thread ) - startAllocatedBytes;
+		
+		algorithmMetrics.record( this, completed );
+	}
+	
+	/**
+	 * Adds recursive calls.
+	 * @param count number of calls to be added
+	 */
+	public void addCalls( final long count ) {
+		calls.add( count );
+	}
+	
+	/**
+	 * Updates the max recursion depth reached.
+	 * @param depth a recursion depth reached
+	 */
+	public void updateMaxDepth( final int depth ) {
+		int max;
+		while ( depth > ( max = maxDepth.get() ) && !maxDepth.compareAndSet( max, depth ) )
+			;
+	}
+	
+	/**
+	 * Adds draw calls (primitives for vector algorithms, blocks of points for raster algorithms).
+	 * @param count number of draw calls to be added
+	 */
+	public void addDrawCalls( final long count ) {
+		drawCalls.add( count );
+	}
+	
+	/**
+	 * Adds time spent on generation.
+	 * @param nanos nanoseconds to be added
+	 */
+	public void addGenerationNanos( final long nanos ) {
+		generationNanos.add( nanos );
+	}
+	
+	/**
+	 * Adds time spent on rasterization (drawing).
+	 * @param nanos nanoseconds to be added
+	 */
+	public void addRasterizationNanos( final long nanos ) {
+		rasterizationNanos.add( nanos );
+	}
+	
+	/**
+	 * Sets the time spent on the validation of the parameters.
+	 * @param nanos nanoseconds spent on the validation of the parameters
+	 */
+	public void setValidationNanos( final long nanos ) {
+		validationNanos = nanos;
+	}
+	
+	/**
+	 * Returns the start of the render.
+	 * @return the start of the render, in nanoseconds (see {@link System#nanoTime()})
+	 */
+	public long getStartNanos() {
+		return startNanos;
+	}
+	
+	/**
+	 * Returns the number of recursive calls.
+	 * @return the number of recursive calls
+	 */
+	public long getCalls() {
+		return calls.sum();
+	}
+	
+	/**
+	 * Returns the max recursion depth reached.
+	 * @return the max recursion depth reached
+	 */
+	public int getMaxDepth() {
+		return maxDepth.get();
+	}
+	
+	/**
+	 * Returns the number of draw calls.
+	 * @return the number of draw calls
+	 */
+	public long getDrawCalls() {
+		return drawCalls.sum();
+	}
+	
+	/**
+	 * Returns the time spent on the validation of the parameters.
+	 * @return the time spent on the validation of the parameters in nanoseconds
+	 */
+	public long getValidationNanos() {
+		return validationNanos;
+	}
+	
+	/**
+	 * Returns the time spent on generation.<br>
+	 * If the algorithm does not measure generation, it is the rest of the latency besides validation and rasterization.
+	 * @return the time spent on generation in nanoseconds
+	 */
+	public long getGenerationNanos() {
+		final long generationNanos = this.generationNanos.sum();
+		return generationNanos > 0 ? generationNanos : Math.max( 0, latencyNanos - validationNanos - rasterizationNanos.sum() );
+	}
+	
+	/**
+	 * Returns the time spent on rasterization (drawing).
+	 * @return the time spent on rasterization in nanoseconds
+	 */
+	public long getRasterizationNanos() {
+		return rasterizationNanos.sum();
+	}
+	
+	/**
+	 * Returns the latency of the render.
+	 * @return the latency of the render in nanoseconds, 0 if the render is not finished
+	 */
+	public long getLatencyNanos() {
+		return latencyNanos;
+	}
+	
+	/**
+	 * Returns the bytes allocated during the render by the thread which started it.
+	 * @return the bytes allocated during the render, -1 if not supported or the render is not finished
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+	
+}
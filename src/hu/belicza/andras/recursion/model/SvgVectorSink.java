@@ -0,0 +1,111 @@
+package hu.belicza.andras.recursion.model;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A {@link VectorSink} writing an SVG image.<br>
+ * The drawings of a color form a group, polylines are <code>polyline</code> elements. The coordinates are the centers of the pixels,
+ * and the lines have square caps, so a pixel (a polyline of a single point) covers the area of the pixel.
+ * 
+ * @author Belicza Andras
+ */
+public class SvgVectorSink extends VectorSink {
+	
+	/** Color of the background, <code>null</code> if there is no background. */
+	private final Color background;
+	
+	/** Tells if a group of a color is open.   */
+	private boolean groupOpen;
+	
+	/**
+	 * Creates a new <code>SvgVectorSink</code>.
+	 * @param channel    channel to write the image to, closed by {@link #close()}
+	 * @param width      width of the image
+	 * @param height     height of the image
+	 * @param background color of the background, <code>null</code> if there is no background
+	 */
+	public SvgVectorSink( final WritableByteChannel channel, final int width, final int height, final Color background ) {
+		super( channel, width, height );
+		this.background = background;
+	}
+	
+	@Override
+	protected void writeHeader() throws IOException {
+		writeAscii( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" );
+		writeDecimal( width );
+		writeAscii( "\" height=\"" );
+		writeDecimal( height );
+		writeAscii( "\" viewBox=\"0 0 " );
+		writeDecimal( width );
+		writeByte( ' ' );
+		writeDecimal( height );
+		writeAscii( "\">\n" );
+		if ( background != null ) {
+			writeAscii( "<rect width=\"100%\" height=\"100%\" fill=\"" );
+			writeHexColor( background );
+			writeAscii( "\"/>\n" );
+		}
+		writeAscii( "<g transform=\"translate(0.5,0.5)\" fill=\"none\" stroke-width=\"1\" stroke-linecap=\"square\" stroke-linejoin=\"miter\">\n" );
+	}
+	
+	@Override
+	protected void writeColor( final Color color ) throws IOException {
+		if ( groupOpen )
+			writeAscii( "</g>\n" );
+		writeAscii( "<g stroke=\"" );
+		writeHexColor( color );
+		if ( color.getAlpha() < 255 ) {
+			writeAscii( "\" stroke-opacity=\"" );
+			writeAscii( Float.toString( color.getAlpha() / 255.0f ) );
+		}
+		writeAscii( "\">\n" );
+		groupOpen = true;
+	}
+	
+	@Override
+	protected void writePolyline( final int[] xPoints, final int[] yPoints, final int count ) throws IOException {
+		writeAscii( "<polyline points=\"" );
+		for ( int i = 0; i < count; i++ ) {
+			if ( i > 0 )
+				writeByte( ' ' );
+			writeDecimal( xPoints[ i ] );
+			writeByte( ',' );
+			writeDecimal( yPoints[ i ] );
+		}
+		writeAscii( "\"/>\n" );
+	}
+	
+	@Override
+	protected void writePixel( final int x, final int y ) throws IOException {
+		writeAscii( "<polyline points=\"" );
+		writeDecimal( x );
+		writeByte( ',' );
+		writeDecimal( y );
+		writeByte( ' ' );
+		writeDecimal( x );
+		writeByte( ',' );
+		writeDecimal( y );
+		writeAscii( "\"/>\n" );
+	}
+	
+	@Override
+	protected void writeFooter() throws IOException {
+		if ( groupOpen )
+			writeAscii( "</g>\n" );
+		writeAscii( "</g>\n</svg>\n" );
+	}
+	
+	/**
+	 * Writes a color in the <code>#rrggbb</code> form.
+	 * @param color color to be written
+	 * @throws IOException if the output cannot be written
+	 */
+	private void writeHexColor( final Color color ) throws IOException {
+		writeByte( '#' );
+		for ( int shift = 20; shift >= 0; shift -= 4 )
+			writeByte( Character.forDigit( color.getRGB() >> shift & 0x0f, 16 ) );
+	}
+	
+}
@@ -0,0 +1,27 @@
+package hu.belicza.andras.recursion.model;
+
+import java.io.IOException;
+
+/**
+ * Receiver of the tiles painted by a {@link TiledAlgorithm}.
+ * 
+ * @author Belicza Andras
+ */
+public interface TileSink {
+	
+	/**
+	 * Called when a tile has been painted.<br>
+	 * The pixel array is reused for the next tile, so the pixels have to be consumed before returning.
+	 * 
+	 * @param x              x coordinate of the top left point of the tile on the map
+	 * @param y              y coordinate of the top left point of the tile on the map
+	 * @param width          width of the tile
+	 * @param height         height of the tile
+	 * @param pixels         pixel array holding the RGB values of the points of the tile
+	 * @param offset         index of the top left point of the tile in the pixel array
+	 * @param scanlineStride distance between the indices of vertically adjacent points in the pixel array
+	 * @throws IOException if the tile cannot be stored
+	 */
+	public void tilePainted( final int x, final int y, final int width, final int height, final int[] pixels, final int offset, final int scanlineStride ) throws IOException;
+	
+}
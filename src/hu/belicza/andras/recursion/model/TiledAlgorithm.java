@@ -0,0 +1,41 @@
+package hu.belicza.andras.recursion.model;
+
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * An {@link Algorithm} which can paint its result tile by tile, so maps much larger than the heap can be produced.
+ * 
+ * @author Belicza Andras
+ */
+public interface TiledAlgorithm extends Algorithm {
+	
+	/**
+	 * Paints the result of the algorithm tile by tile or returns an error if the supplied properties are not valid.<br>
+	 * The tiles are passed to the sink as they are painted; the result is identical to painting the whole map at once
+	 * into an image whose untouched points are black.
+	 * 
+	 * @param width    width of the desired map
+	 * @param height   height of the desired map
+	 * @param tileSize desired size of the tiles (the algorithm may adjust it)
+	 * @param sink     sink to pass the tiles to
+	 * @throws IllegalArgumentException thrown if illegal property value is specified
+	 * @throws IOException if the sink fails to store a tile
+	 */
+	public void paintTiles( final int width, final int height, final int tileSize, final TileSink sink ) throws IllegalArgumentException, IOException;
+	
+	/**
+	 * Paints the result of the algorithm with the specified properties tile by tile or returns an error if the properties are not valid.
+	 * 
+	 * @param width            width of the desired map
+	 * @param height           height of the desired map
+	 * @param tileSize         desired size of the tiles (the algorithm may adjust it)
+	 * @param sink             sink to pass the tiles to
+	 * @param renderProperties properties of the render, <code>null</code> means the properties of the algorithm
+	 * @throws IllegalArgumentException thrown if illegal property value is specified
+	 * @throws IOException if the sink fails to store a tile
+	 */
+	public void paintTiles( final int width, final int height, final int tileSize, final TileSink sink, final Properties renderProperties )
+			throws IllegalArgumentException, IOException;
+	
+}
@@ -0,0 +1,34 @@
+package hu.belicza.andras.recursion.model;
+
+import java.util.Properties;
+
+/**
+ * An {@link Algorithm} whose result consists of simple drawing primitives only,
+ * so it can be painted to any {@link DrawTarget} (for example recorded into a {@link DisplayList}, or streamed into a vector file by a {@link VectorSink}).
+ * 
+ * @author Belicza Andras
+ */
+public interface VectorAlgorithm extends Algorithm {
+	
+	/**
+	 * Paints the result of the algorithm to a draw target or returns an error if the supplied properties are not valid.
+	 * 
+	 * @param target target to draw to
+	 * @param width  width of the desired image
+	 * @param height height of the desired image
+	 * @throws IllegalArgumentException thrown if illegal property value is specified
+	 */
+	public void paint( final DrawTarget target, final int width, final int height ) throws IllegalArgumentException;
+	
+	/**
+	 * Paints the result of the algorithm with the specified properties to a draw target or returns an error if the properties are not valid.
+	 * 
+	 * @param target           target to draw to
+	 * @param width            width of the desired image
+	 * @param height           height of the desired image
+	 * @param renderProperties properties of the render, <code>null</code> means the properties of the algorithm
+	 * @throws IllegalArgumentException thrown if illegal property value is specified
+	 */
+	public void paint( final DrawTarget target, final int width, final int height, final Properties renderProperties ) throws IllegalArgumentException;
+	
+}
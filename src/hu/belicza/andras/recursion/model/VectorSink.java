@@ -0,0 +1,288 @@
+package hu.belicza.andras.recursion.model;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Base of the draw targets streaming the drawings into a vector file as they are drawn.<br>
+ * Connected line segments are merged into polylines, and a segment continuing the previous one in the same direction
+ * only moves the last point of the polyline. The output goes through a fixed size buffer into a channel, and a polyline
+ * holds at most {@link #MAX_POLYLINE_POINTS} points (a longer one is continued by a new polyline), so the memory use
+ * does not depend on the size of the output.<br>
+ * The methods of the draw target throw {@link UncheckedIOException} if the output cannot be written.
+ * The sink has to be closed to complete the file. Vector sinks are not thread-safe.
+ * 
+ * @author Belicza Andras
+ */
+public abstract class VectorSink implements DrawTarget, Closeable {
+	
+	/** Max number of points of a polyline.           */
+	public static final int MAX_POLYLINE_POINTS = 4096;
+	/** Size of the output buffer in bytes.           */
+	public static final int BUFFER_SIZE         = 1 << 16;
+	
+	/** Channel to write the file to.                 */
+	private final WritableByteChannel channel;
+	/** Output buffer of the file.                    */
+	private final ByteBuffer          buffer = ByteBuffer.allocateDirect( BUFFER_SIZE );
+	/** Width of the drawing.                         */
+	protected final int               width;
+	/** Height of the drawing.                        */
+	protected final int               height;
+	
+	/** X coordinates of the points of the polyline being merged. */
+	private final int[] xPoints = new int[ MAX_POLYLINE_POINTS ];
+	/** Y coordinates of the points of the polyline being merged. */
+	private final int[] yPoints = new int[ MAX_POLYLINE_POINTS ];
+	/** Number of points of the polyline being merged.            */
+	private int         pointCount;
+	
+	/** Color of the subsequent drawings.                         */
+	private Color   color = Color.BLACK;
+	/** Tells if the color has to be written before the next drawing. */
+	private boolean colorPending;
+	/** Tells if the header has been written.                     */
+	private boolean started;
+	
+	/**
+	 * Creates a new <code>VectorSink</code>.
+	 * @param channel channel to write the file to, closed by {@link #close()}
+	 * @param width   width of the drawing
+	 * @param height  height of the drawing
+	 */
+	protected VectorSink( final WritableByteChannel channel, final int width, final int height ) {
+		this.channel = channel;
+		this.width   = width;
+		this.height  = height;
+	}
+	
+	@Override
+	public void setColor( final Color color ) {
+		if ( color.equals( this.color ) )
+			return;
+		
+		flushPolyline();
+		this.color   = color;
+		colorPending = true;
+	}
+	
+	@Override
+	public void drawLine( final int x1, final int y1, final int x2, final int y2 ) {
+		if ( pointCount > 0 && xPoints[ pointCount - 1 ] == x1 && yPoints[ pointCount - 1 ] == y1 ) {
+			if ( pointCount > 1 ) {
+				// Continuing the last segment in the same direction only moves its end point
+				final int dx = x1 - xPoints[ pointCount - 2 ], dy = y1 - yPoints[ pointCount - 2 ];
+				final int ex = x2 - x1                       , ey = y2 - y1;
+				if ( (long) dx * ey == (long) dy * ex && (long) dx * ex + (long) dy * ey > 0 ) {
+					xPoints[ pointCount - 1 ] = x2;
+					yPoints[ pointCount - 1 ] = y2;
+					return;
+				}
+			}
+			if ( pointCount == MAX_POLYLINE_POINTS ) {
+				// Continue in a new polyline
+				flushPolyline();
+				addPoint( x1, y1 );
+			}
+			addPoint( x2, y2 );
+			return;
+		}
+		
+		flushPolyline();
+		addPoint( x1, y1 );
+		addPoint( x2, y2 );
+	}
+	
+	@Override
+	public void drawPixel( final int x, final int y ) {
+		flushPolyline();
+		try {
+			prepareDrawing();
+			writePixel( x, y );
+		}
+		catch ( final IOException ie ) {
+			throw new UncheckedIOException( ie );
+		}
+	}
+	
+	/**
+	 * Returns <code>null</code>, the whole drawing is written.
+	 */
+	@Override
+	public Rectangle getClipBounds() {
+		return null;
+	}
+	
+	/**
+	 * Adds a point to the polyline being merged.
+	 * @param x x coordinate of the point
+	 * @param y y coordinate of the point
+	 */
+	private void addPoint( final int x, final int y ) {
+		xPoints[ pointCount ] = x;
+		yPoints[ pointCount ] = y;
+		pointCount++;
+	}
+	
+	/**
+	 * Writes the polyline being merged (if any).
+	 */
+	private void flushPolyline() {
+		if ( pointCount == 0 )
+			return;
+		
+		try {
+			prepareDrawing();
+			writePolyline( xPoints, yPoints, pointCount );
+		}
+		catch ( final IOException ie ) {
+			throw new UncheckedIOException( ie );
+		}
+		pointCount = 0;
+	}
+	
+	/**
+	 * Writes the header if it has not been written yet, and the color if it changed.
+	 * @throws IOException if the output cannot be written
+	 */
+	private void prepareDrawing() throws IOException {
+		if ( !started ) {
+			started = true;
+			writeHeader();
+			colorPending = true;
+		}
+		if ( colorPending ) {
+			colorPending = false;
+			writeColor( color );
+		}
+	}
+	
+	/**
+	 * Completes the file: writes the merged polyline and the footer, flushes the buffer and closes the channel.
+	 * @throws IOException if the output cannot be written or the channel cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			try {
+				flushPolyline();
+			}
+			catch ( final UncheckedIOException uie ) {
+				throw uie.getCause();
+			}
+			if ( !started ) {
+				started = true;
+				writeHeader();
+			}
+			writeFooter();
+			flushBuffer();
+		}
+		finally {
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Writes the header of the file.
+	 * @throws IOException if the output cannot be written
+	 */
+	protected abstract void writeHeader() throws IOException;
+	
+	/**
+	 * Writes a color change.
+	 * @param color color of the subsequent drawings
+	 * @throws IOException if the output cannot be written
+	 */
+	protected abstract void writeColor( final Color color ) throws IOException;
+	
+	/**
+	 * Writes a polyline.
+	 * @param xPoints x coordinates of the points
+	 * @param yPoints y coordinates of the points
+	 * @param count   number of points, at least 2
+	 * @throws IOException if the output cannot be written
+	 */
+	protected abstract void writePolyline( final int[] xPoints, final int[] yPoints, final int count ) throws IOException;
+	
+	/**
+	 * Writes a pixel.
+	 * @param x x coordinate of the pixel
+	 * @param y y coordinate of the pixel
+	 * @throws IOException if the output cannot be written
+	 */
+	protected abstract void writePixel( final int x, final int y ) throws IOException;
+	
+	/**
+	 * Writes the footer of the file.
+	 * @throws IOException if the output cannot be written
+	 */
+	protected abstract void writeFooter() throws IOException;
+	
+	/**
+	 * Returns the output buffer with at least the specified number of bytes remaining, flushes it if needed.
+	 * @param bytes number of bytes to be put, at most {@link #BUFFER_SIZE}
+	 * @return the output buffer
+	 * @throws IOException if the output cannot be written
+	 */
+	protected ByteBuffer reserve( final int bytes ) throws IOException {
+		if ( buffer.remaining() < bytes )
+			flushBuffer();
+		return buffer;
+	}
+	
+	/**
+	 * Writes a byte.
+	 * @param value the byte to be written
+	 * @throws IOException if the output cannot be written
+	 */
+	protected void writeByte( final int value ) throws IOException {
+		reserve( 1 ).put( (byte) value );
+	}
+	
+	/**
+	 * Writes the characters of an ASCII string.
+	 * @param text text to be written, must contain ASCII characters only
+	 * @throws IOException if the output cannot be written
+	 */
+	protected void writeAscii( final String text ) throws IOException {
+		for ( int i = 0; i < text.length(); i++ )
+			writeByte( text.charAt( i ) );
+	}
+	
+	/**
+	 * Writes the decimal form of an int as ASCII characters (without allocating a string).
+	 * @param value value to be written
+	 * @throws IOException if the output cannot be written
+	 */
+	protected void writeDecimal( final int value ) throws IOException {
+		final ByteBuffer buffer = reserve( 11 );
+		
+		long magnitude = value;
+		if ( magnitude < 0 ) {
+			buffer.put( (byte) '-' );
+			magnitude = -magnitude;
+		}
+		long divisor = 1;
+		while ( divisor * 10 <= magnitude )
+			divisor *= 10;
+		for ( ; divisor > 0; divisor /= 10 )
+			buffer.put( (byte) ( '0' + magnitude / divisor % 10 ) );
+	}
+	
+	/**
+	 * Writes the content of the output buffer to the channel.
+	 * @throws IOException if the output cannot be written
+	 */
+	private void flushBuffer() throws IOException {
+		buffer.flip();
+		while ( buffer.hasRemaining() )
+			channel.write( buffer );
+		buffer.clear();
+	}
+	
+}
@@ -1,6 +1,13 @@
 package hu.belicza.andras.recursion.view;
 
 import hu.belicza.andras.recursion.model.Algorithm;
+import hu.belicza.andras.recursion.model.AlgorithmMetrics;
+import hu.belicza.andras.recursion.model.DisplayList;
+import hu.belicza.andras.recursion.model.GraphicsDrawTarget;
+import hu.belicza.andras.recursion.model.ParameterDescriptor;
+import hu.belicza.andras.recursion.model.RasterAlgorithm;
+import hu.belicza.andras.recursion.model.RenderMetrics;
+import hu.belicza.andras.recursion.model.VectorAlgorithm;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
@@ -8,6 +15,9 @@ import java.awt.Container;
 import java.awt.Graphics;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.image.BufferedImage;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -17,9 +27,15 @@ import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.Box;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JComponent;
 import javax.swing.JFrame;
@@ -27,6 +43,8 @@ import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.xml.parsers.DocumentBuilderFactory;
 
 import org.w3c.dom.Document;
@@ -49,10 +67,49 @@ public class AlgorithmVisualizer extends JFrame {
 	public static final String ALGORITHM_ELEMENT_NAME   = "algorithm";
 	public static final String CLASS_ATTRIBUTE          = "class";
 	
+	/** Default byte budget of the render cache in megabytes. */
+	public static final int    DEFAULT_CACHE_SIZE_MB    = 256;
+	
+	/** Background color of the canvas.                                  */
+	static final Color         CANVAS_BACKGROUND_COLOR  = new Color( 50, 50, 50 );
+	/** Delay between displaying the partial results of a render in ms. */
+	private static final int   PROGRESS_DISPLAY_DELAY   = 40;
+	
 	/** Combo box to display and select available algorithms.                */
 	private final JComboBox algorithmComboBox;
 	/** Text area to view and edit the properties of the selected algorithm. */
 	private final JTextArea propertiesTextArea = new JTextArea();
+	/** Check box to measure the renders and display their metrics.          */
+	private final JCheckBox metricsCheckBox    = new JCheckBox( "Show metrics", AlgorithmMetrics.isEnabled() );
+	
+	/** Cache of the rendered results.                                        */
+	private final RenderCache renderCache;
+	
+	/** Component displaying the rendered results.                           */
+	private JComponent        canvasComponent;
+	
+	/** Executor rendering the results in the background, one at a time.    */
+	private final ExecutorService renderExecutor = Executors.newSingleThreadExecutor( new ThreadFactory() {
+		@Override
+		public Thread newThread( final Runnable runnable ) {
+			final Thread thread = new Thread( runnable, APPLICATION_NAME + " renderer" );
+			thread.setDaemon( true );
+			return thread;
+		}
+	} );
+	/** Timer to display the partial results of the render in progress.     */
+	private final Timer       progressTimer  = new Timer( PROGRESS_DISPLAY_DELAY, new ActionListener() {
+		@Override
+		public void actionPerformed( final ActionEvent ae ) {
+			canvasComponent.repaint();
+		}
+	} );
+	/** Image of the current render (in progress or finished).              */
+	private BufferedImage     renderedImage;
+	/** Future of the render in progress, <code>null</code> if there is none. */
+	private Future< ? >       renderFuture;
+	/** Error message lines of the current render, <code>null</code> if there is no error. */
+	private String[]          renderErrorLines;
 	
 	/**
 	 * Entry point of the program.<br>
@@ -65,10 +122,13 @@ public class AlgorithmVisualizer extends JFrame {
 	 *                  		prints the program usage, the available command line parameters and exits
 	 *                  	<li><code>-file algorithms_xml_file</code><br>
 	 *                  		defines the input algorithms XML file
+	 *                  	<li><code>-cacheSize megabytes</code><br>
+	 *                  		defines the byte budget of the render cache in megabytes
 	 *                  </ul>
 	 */
 	public static void main( final String[] arguments ) {
 		String algorithmXMLFileName = null;
+		int    cacheSizeMB          = DEFAULT_CACHE_SIZE_MB;
 		
 		if ( arguments.length > 0 )
 			if ( arguments[ 0 ].equals( "-help" ) || arguments[ 0 ].equals( "--help" ) || arguments[ 0 ].equals( "-?" ) || arguments[ 0 ].equals( "/?" ) ) {
@@ -79,15 +139,19 @@ public class AlgorithmVisualizer extends JFrame {
 				System.out.println( "\t\tprints the program usage, the available command line parameters and exits" );
 				System.out.println( "\t-file algorithms_xml_file" );
 				System.out.println( "\t\tdefines the input algorithms XML file" );
+				System.out.println( "\t-cacheSize megabytes" );
+				System.out.println( "\t\tdefines the byte budget of the render cache in megabytes (default: " + DEFAULT_CACHE_SIZE_MB + ")" );
 				return;
 			}
 		
-		if ( arguments.length > 1 ) {
-			if ( arguments[ 0 ].equals( "-file" ) )
-				algorithmXMLFileName = arguments[ 1 ];
+		for ( int i = 0; i < arguments.length - 1; i += 2 ) {
+			if ( arguments[ i ].equals( "-file" ) )
+				algorithmXMLFileName = arguments[ i + 1 ];
+			else if ( arguments[ i ].equals( "-cacheSize" ) )
+				cacheSizeMB = Integer.parseInt( arguments[ i + 1 ] );
 		}
 		
-		new AlgorithmVisualizer( loadAlgorithms( algorithmXMLFileName ) );
+		new AlgorithmVisualizer( loadAlgorithms( algorithmXMLFileName ), new RenderCache( cacheSizeMB * 1024L * 1024L ) );
 	}
 	
 	/**
@@ -95,8 +159,19 @@ public class AlgorithmVisualizer extends JFrame {
 	 * @param algorithms the array of algorithms
 	 */
 	public AlgorithmVisualizer( final Algorithm[] algorithms ) {
+		this( algorithms, new RenderCache( DEFAULT_CACHE_SIZE_MB * 1024L * 1024L ) );
+	}
+	
+	/**
+	 * Creates a new <code>AlgorithmVisualizer</code>.
+	 * @param algorithms  the array of algorithms
+	 * @param renderCache cache of the rendered results
+	 */
+	public AlgorithmVisualizer( final Algorithm[] algorithms, final RenderCache renderCache ) {
 		super( APPLICATION_NAME + " version " + APPLICATION_VERSION + " by " + APPLICATION_AUTHOR );
 		
+		this.renderCache = renderCache;
+		
 		setDefaultCloseOperation( EXIT_ON_CLOSE );
 		
 		algorithmComboBox = new JComboBox( algorithms );	
@@ -111,9 +186,30 @@ public class AlgorithmVisualizer extends JFrame {
 	 * @param algorihtmsXMLFileName name of the XML file listing the algorithms
 	 * @return an array of instances of the found algorithm classes
 	 */
-	@SuppressWarnings("unchecked")
 	private static Algorithm[] loadAlgorithms( final String algorihtmsXMLFileName ) {
-		List< Algorithm > algorithmList = null;
+		final List< Class< ? extends Algorithm > > algorithmClassList = loadAlgorithmClasses( algorihtmsXMLFileName );
+		final List< Algorithm > algorithmList = new ArrayList< Algorithm >( algorithmClassList.size() );
+		
+		for ( final Class< ? extends Algorithm > algorithmClass : algorithmClassList ) {
+			try {
+				algorithmList.add( algorithmClass.newInstance() );
+			}
+			catch ( final Exception e ) {
+				logMessage( e.getMessage() );
+			}
+		}
+		
+		return algorithmList.toArray( new Algorithm[ algorithmList.size() ] );
+	}
+	
+	/**
+	 * Loads the available algorithm classes from an XML file.
+	 * @param algorihtmsXMLFileName name of the XML file listing the algorithms, <code>null</code> means the default list
+	 * @return the list of the found algorithm classes
+	 */
+	@SuppressWarnings("unchecked")
+	static List< Class< ? extends Algorithm > > loadAlgorithmClasses( final String algorihtmsXMLFileName ) {
+		final List< Class< ? extends Algorithm > > algorithmClassList = new ArrayList< Class< ? extends Algorithm > >();
 		
 		try {
 			final InputStream xmlInputStream = algorihtmsXMLFileName == null ? AlgorithmVisualizer.class.getResourceAsStream( ALGORITHMS_XML_FILE_NAME )
@@ -123,14 +219,10 @@ public class AlgorithmVisualizer extends JFrame {
 			
 			final NodeList algorithmNodeList = document.getElementsByTagName( ALGORITHM_ELEMENT_NAME );
 			
-			algorithmList = new ArrayList< Algorithm >( algorithmNodeList.getLength() );
-			
 			for ( int i = 0; i < algorithmNodeList.getLength(); i++ ) {
 				try {
 					final String className = algorithmNodeList.item( i ).getAttributes().getNamedItem( CLASS_ATTRIBUTE ).getNodeValue();
-					final Class< ? extends Algorithm > algorithmClass = (Class< ? extends Algorithm >) Class.forName( className );
-					
-					algorithmList.add( algorithmClass.newInstance() );
+					algorithmClassList.add( (Class< ? extends Algorithm >) Class.forName( className ) );
 				}
 				catch ( final Exception e ) {
 					logMessage( e.getMessage() );
@@ -141,7 +233,7 @@ public class AlgorithmVisualizer extends JFrame {
 			logMessage( e.getMessage() );
 		}
 		
-		return algorithmList == null ? new Algorithm[ 0 ] : algorithmList.toArray( new Algorithm[ algorithmList.size() ] );
+		return algorithmClassList;
 	}
 	
 	/**
@@ -151,29 +243,41 @@ public class AlgorithmVisualizer extends JFrame {
 		final Container contentPane = getContentPane();
 		
 		
-		final JComponent canvasComponent = new JComponent() {
+		canvasComponent = new JComponent() {
 			@Override
 			public void paintComponent( final Graphics graphics ) {
-				graphics.setColor( new Color( 50, 50, 50 ) );
+				graphics.setColor( CANVAS_BACKGROUND_COLOR );
 				graphics.fillRect( 0, 0, getWidth(), getHeight() );
-				graphics.setColor( Color.WHITE );
 				
-				final Algorithm selectedAlgorithm = (Algorithm) algorithmComboBox.getSelectedItem();
-				try {
-					selectedAlgorithm.paint( graphics, getWidth(), getHeight() );
-				}
-				catch ( final IllegalArgumentException ie ) {
-					ie.printStackTrace();
+				// Only the (partial) result is displayed here, rendering is done in the background
+				if ( renderedImage != null )
+					graphics.drawImage( renderedImage, 0, 0, null );
+				
+				if ( renderErrorLines != null ) {
 					graphics.setColor( new Color( 255, 200, 200 ) );
-					graphics.drawString( "Illegal properties were specified:", 5, 20 );
-					graphics.drawString( ie.getMessage(), 5, 40 );
+					for ( int i = 0; i < renderErrorLines.length; i++ )
+						graphics.drawString( renderErrorLines[ i ], 5, 20 + i * 20 );
 				}
-				catch ( final StackOverflowError soe ) {
-					graphics.setColor( new Color( 255, 200, 200 ) );
-					graphics.drawString( "STACK OVERFLOW, the recursion algorithm could not complete!", 5, 20 );
+				
+				if ( metricsCheckBox.isSelected() && algorithmComboBox.getSelectedItem() != null ) {
+					final String[] metricsLines = getMetricsLines( AlgorithmMetrics.of( (Algorithm) algorithmComboBox.getSelectedItem() ) );
+					int overlayWidth = 0;
+					for ( final String metricsLine : metricsLines )
+						overlayWidth = Math.max( overlayWidth, graphics.getFontMetrics().stringWidth( metricsLine ) + 10 );
+					graphics.setColor( new Color( 0, 0, 0, 160 ) );
+					graphics.fillRect( 0, getHeight() - 10 - metricsLines.length * 16, overlayWidth, 10 + metricsLines.length * 16 );
+					graphics.setColor( new Color( 200, 255, 200 ) );
+					for ( int i = 0; i < metricsLines.length; i++ )
+						graphics.drawString( metricsLines[ i ], 5, getHeight() - 8 - ( metricsLines.length - 1 - i ) * 16 );
 				}
 			}
 		};
+		canvasComponent.addComponentListener( new ComponentAdapter() {
+			@Override
+			public void componentResized( final ComponentEvent ce ) {
+				startRender();
+			}
+		} );
 		contentPane.add( canvasComponent, BorderLayout.CENTER );
 		
 		final Box controlBox = Box.createVerticalBox();
@@ -197,7 +301,7 @@ public class AlgorithmVisualizer extends JFrame {
 				final Algorithm selectedAlgorithm = (Algorithm) algorithmComboBox.getSelectedItem();
 				descriptionTextArea.setText( selectedAlgorithm.getDescription() );
 				updatePropertiesTextArea();
-				canvasComponent.repaint();
+				startRender();
 			}
 		} );
 		algorithmComboBox.setSelectedIndex( 0 );
@@ -217,12 +321,15 @@ public class AlgorithmVisualizer extends JFrame {
 					// This will never be thrown
 				}
 				final Properties algorithmProperties = selectedAlgorithm.getProperties();
-				for ( final String propertyName : modifiedProperties.stringPropertyNames() )
-					if ( !propertyName.startsWith( "--" ) ) // ignore comments
-						algorithmProperties.setProperty( propertyName, modifiedProperties.getProperty( propertyName ) );
+				for ( final String propertyName : modifiedProperties.stringPropertyNames() ) {
+					final String value = modifiedProperties.getProperty( propertyName );
+					// Ignore comments, and only set changed values so the compiled parameters of the algorithm can be reused
+					if ( !propertyName.startsWith( "--" ) && !value.equals( algorithmProperties.getProperty( propertyName ) ) )
+						algorithmProperties.setProperty( propertyName, value );
+				}
 				
-				// And then initiate a repaint
-				canvasComponent.repaint();
+				// And then render the new result
+				startRender();
 			}
 		} );
 		buttonsPanel.add( drawButton );
@@ -239,11 +346,195 @@ public class AlgorithmVisualizer extends JFrame {
 		
 		controlBox.add( buttonsPanel );
 		
+		metricsCheckBox.setAlignmentX( CENTER_ALIGNMENT );
+		metricsCheckBox.addActionListener( new ActionListener() {
+			@Override
+			public void actionPerformed( final ActionEvent ae ) {
+				AlgorithmMetrics.setEnabled( metricsCheckBox.isSelected() );
+				canvasComponent.repaint();
+			}
+		} );
+		controlBox.add( metricsCheckBox );
+		
 		final JPanel wrapperPanel = new JPanel();
 		wrapperPanel.add( controlBox );
 		contentPane.add( wrapperPanel, BorderLayout.EAST );
 	}
 	
+	/**
+	 * Starts rendering the result of the selected algorithm in the background.<br>
+	 * The render in progress (if any) is cancelled. Cached results are displayed without rendering.
+	 */
+	private void startRender() {
+		if ( renderFuture != null ) {
+			renderFuture.cancel( true );
+			renderFuture = null;
+		}
+		renderErrorLines = null;
+		
+		final Algorithm selectedAlgorithm = (Algorithm) algorithmComboBox.getSelectedItem();
+		final int       width             = canvasComponent.getWidth ();
+		final int       height            = canvasComponent.getHeight();
+		if ( selectedAlgorithm == null || width <= 0 || height <= 0 ) {
+			renderedImage = null;
+			progressTimer.stop();
+			canvasComponent.repaint();
+			return;
+		}
+		
+		final RenderCache.Key renderKey         = RenderCache.Key.of( selectedAlgorithm, width, height );
+		final BufferedImage   cachedImage       = renderKey == null ? null : renderCache.get( renderKey );
+		final DisplayList     cachedDisplayList = renderKey == null || cachedImage != null ? null : renderCache.getDisplayList( renderKey );
+		if ( cachedImage != null ) {
+			renderedImage = cachedImage;
+			progressTimer.stop();
+		}
+		else {
+			final BufferedImage image    = new BufferedImage( width, height, BufferedImage.TYPE_INT_RGB );
+			final Graphics      graphics = image.createGraphics();
+			graphics.setColor( CANVAS_BACKGROUND_COLOR );
+			graphics.fillRect( 0, 0, width, height );
+			if ( cachedDisplayList != null ) {
+				// Replaying the recorded result is far cheaper than rendering it again
+				graphics.setColor( Color.WHITE );
+				cachedDisplayList.replay( graphics );
+			}
+			graphics.dispose();
+			
+			renderedImage = image;
+			if ( cachedDisplayList != null )
+				progressTimer.stop();
+			else {
+				renderFuture = renderExecutor.submit( new RenderJob( selectedAlgorithm, image, renderKey ) );
+				progressTimer.start();
+			}
+		}
+		
+		canvasComponent.repaint();
+	}
+	
+	/**
+	 * Finishes a render. Must be called on the event dispatch thread.
+	 * 
+	 * @param image       image of the finished render
+	 * @param displayList recording of the finished render, <code>null</code> if it was not recorded
+	 * @param renderKey   key of the rendered result, <code>null</code> if it is not cacheable
+	 * @param errorLines  error message lines of the render, <code>null</code> if it was successful
+	 */
+	private void finishRender( final BufferedImage image, final DisplayList displayList, final RenderCache.Key renderKey, final String[] errorLines ) {
+		if ( image != renderedImage )
+			return; // A stale render which completed before its cancellation took effect
+		
+		renderFuture = null;
+		progressTimer.stop();
+		
+		if ( errorLines == null ) {
+			if ( renderKey != null )
+				renderCache.put( renderKey, image, displayList );
+		}
+		else
+			renderErrorLines = errorLines;
+		
+		canvasComponent.repaint();
+	}
+	
+	/**
+	 * Job to render the result of an algorithm into an image in the background.<br>
+	 * Cacheable results of vector algorithms are also recorded into a display list (the render cache keeps the smaller one).
+	 */
+	private class RenderJob implements Runnable {
+		
+		private final Algorithm       algorithm;
+		private final BufferedImage   image;
+		private final RenderCache.Key renderKey;
+		
+		/**
+		 * Creates a new <code>RenderJob</code>.
+		 * 
+		 * @param algorithm algorithm to be rendered
+		 * @param image     image to render into, its size is the size of the result
+		 * @param renderKey key of the result, <code>null</code> if it is not cacheable
+		 */
+		public RenderJob( final Algorithm algorithm, final BufferedImage image, final RenderCache.Key renderKey ) {
+			this.algorithm = algorithm;
+			this.image     = image;
+			this.renderKey = renderKey;
+		}
+		
+		@Override
+		public void run() {
+			String[]    errorLines  = null;
+			DisplayList displayList = null;
+			
+			try {
+				if ( algorithm instanceof RasterAlgorithm )
+					( (RasterAlgorithm) algorithm ).paint( image );
+				else {
+					final Graphics graphics = image.createGraphics();
+					try {
+						graphics.setColor( Color.WHITE );
+						if ( algorithm instanceof VectorAlgorithm && renderKey != null ) {
+							// Drawn to the image while recorded, so the partial results are still displayed
+							displayList = new DisplayList( new GraphicsDrawTarget( graphics ) );
+							( (VectorAlgorithm) algorithm ).paint( displayList, image.getWidth(), image.getHeight() );
+						}
+						else
+							algorithm.paint( graphics, image.getWidth(), image.getHeight() );
+					}
+					finally {
+						graphics.dispose();
+					}
+				}
+			}
+			catch ( final CancellationException ce ) {
+				return;
+			}
+			catch ( final IllegalArgumentException ie ) {
+				ie.printStackTrace();
+				errorLines = new String[] { "Illegal properties were specified:", String.valueOf( ie.getMessage() ) };
+			}
+			catch ( final StackOverflowError soe ) {
+				errorLines = new String[] { "STACK OVERFLOW, the recursion algorithm could not complete!" };
+			}
+			catch ( final Throwable t ) {
+				// Anything else (e.g. running out of memory or a bug of the algorithm) would be lost in the unread future of the job
+				t.printStackTrace();
+				errorLines = new String[] { "The render failed:", String.valueOf( t ) };
+			}
+			
+			final String[]    errorLines_  = errorLines;
+			final DisplayList displayList_ = displayList;
+			SwingUtilities.invokeLater( new Runnable() {
+				@Override
+				public void run() {
+					finishRender( image, displayList_, renderKey, errorLines_ );
+				}
+			} );
+		}
+		
+	}
+	
+	/**
+	 * Returns the lines of the metrics overlay: the metrics of the last measured render and the latency of the completed renders.
+	 * @param algorithmMetrics metrics of the algorithm
+	 * @return the lines of the metrics overlay
+	 */
+	private static String[] getMetricsLines( final AlgorithmMetrics algorithmMetrics ) {
+		final RenderMetrics lastRender = algorithmMetrics.getLastRender();
+		if ( lastRender == null )
+			return new String[] { "No measured render yet." };
+		
+		return new String[] {
+			String.format( "Last measured render: %.2f ms (validation: %.2f, generation: %.2f, rasterization: %.2f)",
+					lastRender.getLatencyNanos() / 1e6, lastRender.getValidationNanos() / 1e6, lastRender.getGenerationNanos() / 1e6, lastRender.getRasterizationNanos() / 1e6 ),
+			String.format( "Calls: %,d, max depth: %d, draw calls: %,d", lastRender.getCalls(), lastRender.getMaxDepth(), lastRender.getDrawCalls() ),
+			lastRender.getAllocatedBytes() < 0 ? "Allocated: n/a" : String.format( "Allocated: %,d KB", lastRender.getAllocatedBytes() >> 10 ),
+			String.format( "Renders: %d (aborted: %d), latency mean: %.2f ms, median: %.2f ms, p99: %.2f ms",
+					algorithmMetrics.getRenderCount(), algorithmMetrics.getAbortedRenderCount(), algorithmMetrics.getMeanLatencyMillis(),
+					algorithmMetrics.getMedianLatencyMillis(), algorithmMetrics.getP99LatencyMillis() )
+		};
+	}
+	
 	/**
 	 * Creates and returns a label with the specified text to be used in a {@link javax.swing.Box}.<br>
 	 * The returned label is center-aligned.
@@ -266,6 +557,12 @@ public class AlgorithmVisualizer extends JFrame {
 		selectedAlgorithm.getProperties().list( new PrintWriter( propertiesStringWriter ) );
 		
 		propertiesTextArea.setText( propertiesStringWriter.toString() );
+		
+		// Describe the parameters in the tool tip
+		final StringBuilder toolTipBuilder = new StringBuilder( "<html>" );
+		for ( final ParameterDescriptor< ? > descriptor : selectedAlgorithm.getParameterDescriptors() )
+			toolTipBuilder.append( descriptor.toString().replace( "&", "&amp;" ).replace( "<", "&lt;" ).replace( ">", "&gt;" ) ).append( "<br>" );
+		propertiesTextArea.setToolTipText( toolTipBuilder.append( "</html>" ).toString() );
 	}
 	
 	/**
@@ -0,0 +1,469 @@
+package hu.belicza.andras.recursion.view;
+
+import hu.belicza.andras.recursion.model.Algorithm;
+import hu.belicza.andras.recursion.model.AnimatedAlgorithm;
+import hu.belicza.andras.recursion.model.AnimationFrame;
+import hu.belicza.andras.recursion.model.FrameRenderer;
+import hu.belicza.andras.recursion.model.RenderMetrics;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Streams the frames of an animated algorithm (see {@link AnimatedAlgorithm}) at a target frame rate.<br>
+ * Frames are double-buffered: the next frame is rendered into the back frame while the front frame is presented,
+ * then the 2 frames are swapped. The frames and the scratch buffers of the frame renderer are reused, so the steady state
+ * does not allocate (the allocated bytes of the frames are reported in the statistics).<br>
+ * The animation runs on its own thread, paced to the slots of the frame rate. If a frame is late, the frames whose slots passed
+ * in the meantime are dropped (skipped), so the animation keeps up with the wall clock. The render times of the frames and the
+ * dropped frames are collected in the {@link Statistics}.
+ * 
+ * @author Belicza Andras
+ */
+public class Animator {
+	
+	public static final String APPLICATION_NAME = "Animator";
+	
+	/** Default frame rate of the animations.  */
+	public static final double DEFAULT_FRAME_RATE = 60.0;
+	
+	/** Number of the last frames whose render times are kept for the percentiles. */
+	private static final int   RENDER_TIME_WINDOW = 256;
+	
+	/**
+	 * Listener of the presented frames.
+	 */
+	public interface FrameListener {
+		
+		/**
+		 * Called by the animation thread when a frame is presented (it became the front frame).<br>
+		 * The frame is reused for a later frame: readers on other threads must synchronize on the frame while reading it,
+		 * the animation thread holds the lock of a frame while rendering into it.
+		 * 
+		 * @param frame the presented frame
+		 * @param index index of the presented frame
+		 */
+		public void framePresented( final AnimationFrame frame, final long index );
+		
+	}
+	
+	/**
+	 * Immutable snapshot of the statistics of an animation.
+	 */
+	public static class Statistics {
+		
+		private final long   frameCount;
+		private final long   droppedFrameCount;
+		private final double frameRate;
+		private final double lastRenderMillis;
+		private final double meanRenderMillis;
+		private final double medianRenderMillis;
+		private final double p99RenderMillis;
+		private final double maxRenderMillis;
+		private final long   allocatedBytesPerFrame;
+		
+		/**
+		 * Creates a new <code>Statistics</code>.
+		 * 
+		 * @param frameCount             number of rendered frames
+		 * @param droppedFrameCount      number of dropped frames
+		 * @param frameRate              measured frame rate (rendered frames per second)
+		 * @param lastRenderMillis       render time of the last frame in milliseconds
+		 * @param meanRenderMillis       mean render time of the frames in milliseconds
+		 * @param medianRenderMillis     median render time of the last frames in milliseconds
+		 * @param p99RenderMillis        99th percentile of the render time of the last frames in milliseconds
+		 * @param maxRenderMillis        max render time of the frames in milliseconds
+		 * @param allocatedBytesPerFrame bytes allocated by rendering the last frame, -1 if not supported
+		 */
+		public Statistics( final long frameCount, final long droppedFrameCount, final double frameRate, final double lastRenderMillis, final double meanRenderMillis,
+				final double medianRenderMillis, final double p99RenderMillis, final double maxRenderMillis, final long allocatedBytesPerFrame ) {
+			this.frameCount             = frameCount;
+			this.droppedFrameCount      = droppedFrameCount;
+			this.frameRate              = frameRate;
+			this.lastRenderMillis       = lastRenderMillis;
+			this.meanRenderMillis       = meanRenderMillis;
+			this.medianRenderMillis     = medianRenderMillis;
+			this.p99RenderMillis        = p99RenderMillis;
+			this.maxRenderMillis        = maxRenderMillis;
+			this.allocatedBytesPerFrame = allocatedBytesPerFrame;
+		}
+		
+		/**
+		 * Returns the number of rendered frames.
+		 * @return the number of rendered frames
+		 */
+		public long getFrameCount() {
+			return frameCount;
+		}
+		
+		/**
+		 * Returns the number of dropped frames.
+		 * @return the number of dropped frames
+		 */
+		public long getDroppedFrameCount() {
+			return droppedFrameCount;
+		}
+		
+		/**
+		 * Returns the measured frame rate.
+		 * @return the measured frame rate (rendered frames per second)
+		 */
+		public double getFrameRate() {
+			return frameRate;
+		}
+		
+		/**
+		 * Returns the render time of the last frame.
+		 * @return the render time of the last frame in milliseconds
+		 */
+		public double getLastRenderMillis() {
+			return lastRenderMillis;
+		}
+		
+		/**
+		 * Returns the mean render time of the frames.
+		 * @return the mean render time of the frames in milliseconds
+		 */
+		public double getMeanRenderMillis() {
+			return meanRenderMillis;
+		}
+		
+		/**
+		 * Returns the median render time of the last frames.
+		 * @return the median render time of the last frames in milliseconds
+		 */
+		public double getMedianRenderMillis() {
+			return medianRenderMillis;
+		}
+		
+		/**
+		 * Returns the 99th percentile of the render time of the last frames.
+		 * @return the 99th percentile of the render time of the last frames in milliseconds
+		 */
+		public double getP99RenderMillis() {
+			return p99RenderMillis;
+		}
+		
+		/**
+		 * Returns the max render time of the frames.
+		 * @return the max render time of the frames in milliseconds
+		 */
+		public double getMaxRenderMillis() {
+			return maxRenderMillis;
+		}
+		
+		/**
+		 * Returns the bytes allocated by rendering the last frame.
+		 * @return the bytes allocated by rendering the last frame, -1 if not supported
+		 */
+		public long getAllocatedBytesPerFrame() {
+			return allocatedBytesPerFrame;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format( "Frames: %,d, dropped: %,d, %.1f fps; render time: last %.2f ms, mean %.2f ms, median %.2f ms, p99 %.2f ms, max %.2f ms; allocated: %s",
+					frameCount, droppedFrameCount, frameRate, lastRenderMillis, meanRenderMillis, medianRenderMillis, p99RenderMillis, maxRenderMillis,
+					allocatedBytesPerFrame < 0 ? "n/a" : String.format( "%,d bytes/frame", allocatedBytesPerFrame ) );
+		}
+		
+	}
+	
+	/** Renderer of the frames.                                     */
+	private final FrameRenderer frameRenderer;
+	/** The 2 frames: the front frame and the back frame.          */
+	private final AnimationFrame[]       frames;
+	/** Length of the slot of a frame in nanoseconds.              */
+	private final long          periodNanos;
+	/** RGB value of the background color of the frames.           */
+	private final int           backgroundRGB = AlgorithmVisualizer.CANVAS_BACKGROUND_COLOR.getRGB();
+	
+	/** Index of the back frame in {@link #frames}.                */
+	private int                 backFrameIndex;
+	/** The animation thread, <code>null</code> if not running.    */
+	private volatile Thread     thread;
+	
+	// Statistics, guarded by this
+	private long                frameCount;
+	private long                droppedFrameCount;
+	private long                totalRenderNanos;
+	private long                maxRenderNanos;
+	private long                lastRenderNanos;
+	private long                lastAllocatedBytes = -1;
+	/** Render times of the last frames, a ring buffer indexed by the frame count. */
+	private final long[]        renderNanosWindow  = new long[ RENDER_TIME_WINDOW ];
+	/** Start of the statistics in nanoseconds.                    */
+	private long                statisticsStartNanos = System.nanoTime();
+	
+	/**
+	 * Creates a new <code>Animator</code>.
+	 * 
+	 * @param algorithm        algorithm to animate
+	 * @param width            width of the frames
+	 * @param height           height of the frames
+	 * @param renderProperties properties of the animation, <code>null</code> means the properties of the algorithm
+	 * @param frameRate        target frame rate (frames per second)
+	 * @throws IllegalArgumentException thrown if illegal property value is specified, or the frame size or the frame rate is invalid
+	 */
+	public Animator( final AnimatedAlgorithm algorithm, final int width, final int height, final Properties renderProperties, final double frameRate ) throws IllegalArgumentException {
+		if ( !( frameRate > 0.0 ) )
+			throw new IllegalArgumentException( "Invalid frame rate: " + frameRate + " (must be positive)" );
+		
+		frameRenderer = algorithm.createFrameRenderer( width, height, renderProperties );
+		frames        = new AnimationFrame[] { new AnimationFrame( width, height ), new AnimationFrame( width, height ) };
+		periodNanos   = Math.max( 1, (long) ( 1e9 / frameRate ) );
+	}
+	
+	/**
+	 * Starts the animation on a new thread.
+	 * @param listener listener of the presented frames
+	 * @throws IllegalStateException if the animation is already running
+	 */
+	public synchronized void start( final FrameListener listener ) throws IllegalStateException {
+		if ( thread != null )
+			throw new IllegalStateException( "The animation is already running!" );
+		
+		thread = new Thread( APPLICATION_NAME ) {
+			@Override
+			public void run() {
+				animate( listener );
+			}
+		};
+		thread.setDaemon( true );
+		thread.start();
+	}
+	
+	/**
+	 * Stops the animation, and waits for the animation thread to finish.<br>
+	 * Does nothing if the animation is not running.
+	 * @throws InterruptedException if the current thread is interrupted while waiting
+	 */
+	public void stop() throws InterruptedException {
+		final Thread thread;
+		synchronized ( this ) {
+			thread = this.thread;
+			this.thread = null;
+		}
+		if ( thread != null ) {
+			thread.interrupt();
+			thread.join();
+		}
+	}
+	
+	/**
+	 * Tells if the animation is running.
+	 * @return true if the animation is running; false otherwise
+	 */
+	public boolean isRunning() {
+		return thread != null;
+	}
+	
+	/**
+	 * Renders and presents frames paced to the slots of the frame rate until the animation thread is interrupted.<br>
+	 * The slot of frame <i>i</i> starts <i>i</i> periods after the start of the animation.
+	 * @param listener listener of the presented frames
+	 */
+	private void animate( final FrameListener listener ) {
+		final long startNanos = System.nanoTime();
+		
+		try {
+			for ( long index = 0; !Thread.currentThread().isInterrupted(); ) {
+				listener.framePresented( renderFrame( index ), index );
+				
+				// If a slot after the slot of the next frame has started, the frames of the passed slots are dropped
+				final long slot = ( System.nanoTime() - startNanos ) / periodNanos;
+				if ( slot > ++index ) {
+					synchronized ( this ) {
+						droppedFrameCount += slot - index;
+					}
+					index = slot;
+				}
+				
+				long waitNanos;
+				while ( ( waitNanos = startNanos + index * periodNanos - System.nanoTime() ) > 0 && !Thread.currentThread().isInterrupted() )
+					LockSupport.parkNanos( this, waitNanos );
+			}
+		}
+		catch ( final CancellationException ce ) {
+			// The animation was stopped while rendering a frame
+		}
+	}
+	
+	/**
+	 * Renders a frame into the back frame, and swaps the frames.<br>
+	 * Can be used to render frames without the animation thread (for example to render them as fast as possible),
+	 * but not while the animation is running.
+	 * 
+	 * @param index index of the frame
+	 * @return the rendered frame, the new front frame
+	 * @throws CancellationException if the rendering is cancelled (the current thread gets interrupted)
+	 */
+	public AnimationFrame renderFrame( final long index ) throws CancellationException {
+		final AnimationFrame  frame  = frames[ backFrameIndex ];
+		final Thread thread = Thread.currentThread();
+		
+		final long startAllocatedBytes = RenderMetrics.getThreadAllocatedBytes( thread );
+		final long startNanos          = System.nanoTime();
+		synchronized ( frame ) {
+			frame.clear( backgroundRGB );
+			frame.getGraphics().setColor( Color.WHITE );
+			frameRenderer.renderFrame( frame, index );
+		}
+		final long renderNanos    = System.nanoTime() - startNanos;
+		final long allocatedBytes = startAllocatedBytes < 0 ? -1 : RenderMetrics.getThreadAllocatedBytes( thread ) - startAllocatedBytes;
+		
+		backFrameIndex ^= 1;
+		
+		synchronized ( this ) {
+			renderNanosWindow[ (int) ( frameCount++ % RENDER_TIME_WINDOW ) ] = renderNanos;
+			totalRenderNanos  += renderNanos;
+			lastRenderNanos    = renderNanos;
+			lastAllocatedBytes = allocatedBytes;
+			if ( renderNanos > maxRenderNanos )
+				maxRenderNanos = renderNanos;
+		}
+		
+		return frame;
+	}
+	
+	/**
+	 * Returns the front frame (the last rendered frame).
+	 * @return the front frame
+	 */
+	public AnimationFrame getFrontFrame() {
+		return frames[ backFrameIndex ^ 1 ];
+	}
+	
+	/**
+	 * Returns a snapshot of the statistics of the animation.
+	 * @return a snapshot of the statistics of the animation
+	 */
+	public synchronized Statistics getStatistics() {
+		final long[] window = Arrays.copyOf( renderNanosWindow, (int) Math.min( frameCount, RENDER_TIME_WINDOW ) );
+		Arrays.sort( window );
+		
+		final long elapsedNanos = System.nanoTime() - statisticsStartNanos;
+		return new Statistics( frameCount, droppedFrameCount, elapsedNanos > 0 ? frameCount * 1e9 / elapsedNanos : 0.0,
+				lastRenderNanos / 1e6, frameCount == 0 ? 0.0 : totalRenderNanos / 1e6 / frameCount,
+				getPercentileMillis( window, 50 ), getPercentileMillis( window, 99 ), maxRenderNanos / 1e6, lastAllocatedBytes );
+	}
+	
+	/**
+	 * Returns a percentile of sorted render times.
+	 * @param sortedNanos sorted render times in nanoseconds
+	 * @param percentile  percentile to be returned
+	 * @return the percentile in milliseconds, 0 if there are no render times
+	 */
+	private static double getPercentileMillis( final long[] sortedNanos, final double percentile ) {
+		if ( sortedNanos.length == 0 )
+			return 0.0;
+		return sortedNanos[ Math.max( 0, (int) Math.ceil( percentile / 100.0 * sortedNanos.length ) - 1 ) ] / 1e6;
+	}
+	
+	/**
+	 * Resets the statistics of the animation.
+	 */
+	public synchronized void resetStatistics() {
+		frameCount           = 0;
+		droppedFrameCount    = 0;
+		totalRenderNanos     = 0;
+		maxRenderNanos       = 0;
+		lastRenderNanos      = 0;
+		lastAllocatedBytes   = -1;
+		statisticsStartNanos = System.nanoTime();
+	}
+	
+	/**
+	 * Releases the frames of the animation. The animation must not be running.
+	 */
+	public void dispose() {
+		for ( final AnimationFrame frame : frames )
+			frame.dispose();
+	}
+	
+	/**
+	 * Entry point of the program.<br>
+	 * Runs an animation headlessly for a while, and prints its statistics every second.
+	 * 
+	 * @param arguments used to take arguments from the running environment<br>
+	 *                  Possible values:
+	 *                  <ul>
+	 *                  	<li><code>-algorithm class_name</code><br>
+	 *                  		animates the algorithm with the specified (simple or fully qualified) class name (required)
+	 *                  	<li><code>-file algorithms_xml_file</code><br>
+	 *                  		defines the input algorithms XML file to look up the algorithm in
+	 *                  	<li><code>-property name=value</code><br>
+	 *                  		overrides a property of the algorithm, can be specified multiple times
+	 *                  	<li><code>-width pixels</code> and <code>-height pixels</code><br>
+	 *                  		define the size of the frames
+	 *                  	<li><code>-frameRate fps</code> and <code>-seconds seconds</code><br>
+	 *                  		define the target frame rate and the duration of the animation
+	 *                  </ul>
+	 * @throws Exception if the algorithm cannot be instantiated or the animation is interrupted
+	 */
+	public static void main( final String[] arguments ) throws Exception {
+		if ( System.getProperty( "java.awt.headless" ) == null )
+			System.setProperty( "java.awt.headless", "true" );
+		
+		String           algorithmXMLFileName = null;
+		String           algorithmName        = null;
+		final Properties propertyOverrides    = new Properties();
+		int              width                = BatchRenderer.DEFAULT_WIDTH;
+		int              height               = BatchRenderer.DEFAULT_HEIGHT;
+		double           frameRate            = DEFAULT_FRAME_RATE;
+		int              seconds              = 10;
+		
+		for ( int i = 0; i < arguments.length - 1; i += 2 ) {
+			final String value = arguments[ i + 1 ];
+			if ( arguments[ i ].equals( "-file" ) )
+				algorithmXMLFileName = value;
+			else if ( arguments[ i ].equals( "-algorithm" ) )
+				algorithmName = value;
+			else if ( arguments[ i ].equals( "-property" ) ) {
+				final int equalsIndex = value.indexOf( '=' );
+				if ( equalsIndex < 0 )
+					throw new IllegalArgumentException( "Invalid property override (name=value expected): " + value );
+				propertyOverrides.setProperty( value.substring( 0, equalsIndex ).trim(), value.substring( equalsIndex + 1 ).trim() );
+			}
+			else if ( arguments[ i ].equals( "-width" ) )
+				width = Integer.parseInt( value );
+			else if ( arguments[ i ].equals( "-height" ) )
+				height = Integer.parseInt( value );
+			else if ( arguments[ i ].equals( "-frameRate" ) )
+				frameRate = Double.parseDouble( value );
+			else if ( arguments[ i ].equals( "-seconds" ) )
+				seconds = Integer.parseInt( value );
+		}
+		
+		AnimatedAlgorithm algorithm = null;
+		for ( final Class< ? extends Algorithm > algorithmClass : AlgorithmVisualizer.loadAlgorithmClasses( algorithmXMLFileName ) )
+			if ( AnimatedAlgorithm.class.isAssignableFrom( algorithmClass )
+					&& ( algorithmClass.getName().equals( algorithmName ) || algorithmClass.getSimpleName().equals( algorithmName ) ) )
+				algorithm = (AnimatedAlgorithm) algorithmClass.newInstance();
+		if ( algorithm == null ) {
+			System.out.println( "No animated algorithm named: " + algorithmName );
+			System.exit( 1 );
+		}
+		
+		final Properties renderProperties = new Properties( algorithm.getProperties() );
+		renderProperties.putAll( propertyOverrides );
+		
+		final Animator animator = new Animator( algorithm, width, height, renderProperties, frameRate );
+		animator.start( new FrameListener() {
+			@Override
+			public void framePresented( final AnimationFrame frame, final long index ) {
+				// Headless, the frames are not displayed
+			}
+		} );
+		for ( int i = 0; i < seconds; i++ ) {
+			Thread.sleep( 1000 );
+			System.out.println( animator.getStatistics() );
+		}
+		animator.stop();
+		animator.dispose();
+	}
+	
+}
@@ -0,0 +1,534 @@
+package hu.belicza.andras.recursion.view;
+
+import hu.belicza.andras.recursion.model.Algorithm;
+import hu.belicza.andras.recursion.model.BaseAlgorithm;
+import hu.belicza.andras.recursion.model.BinaryVectorReader;
+import hu.belicza.andras.recursion.model.BinaryVectorSink;
+import hu.belicza.andras.recursion.model.GraphicsDrawTarget;
+import hu.belicza.andras.recursion.model.RandomBaseAlgorithm;
+import hu.belicza.andras.recursion.model.RasterAlgorithm;
+import hu.belicza.andras.recursion.model.RawRasterFile;
+import hu.belicza.andras.recursion.model.SvgVectorSink;
+import hu.belicza.andras.recursion.model.TiledAlgorithm;
+import hu.belicza.andras.recursion.model.VectorAlgorithm;
+import hu.belicza.andras.recursion.model.VectorSink;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Headless batch renderer of algorithms implementing the {@link Algorithm} interface.<br>
+ * Renders the algorithms listed in an algorithms XML file with a range of random seeds, and writes the results
+ * into an output directory as image files named <code>AlgorithmClass_seed.format</code>.<br>
+ * The images are rendered in parallel by worker threads. The workers share one instance per algorithm, the seed of a job
+ * is passed to the algorithm in per-render properties (algorithms not derived from {@link BaseAlgorithm} are painted by one worker at a time).
+ * Each worker owns a single image which it reuses, so the number of images in flight (and the memory used) is bounded by the number of workers.<br>
+ * In tiled mode the algorithms paint tile by tile into raw raster files (see {@link RawRasterFile}), so the maps can be much larger than the heap.<br>
+ * In the vector formats ({@value #SVG_FORMAT} and {@value #SEGMENT_FORMAT}) vector algorithms stream their drawings into the files
+ * (see {@link VectorSink}) without images, so the memory used does not depend on the size of the drawings either.
+ * Binary segment files can be rasterized later into images (see {@link BinaryVectorReader}).
+ * 
+ * @author Belicza Andras
+ */
+public class BatchRenderer {
+	
+	public static final String APPLICATION_NAME = "BatchRenderer";
+	
+	/** Default width of the rendered images.   */
+	public static final int    DEFAULT_WIDTH     = 900;
+	/** Default height of the rendered images.  */
+	public static final int    DEFAULT_HEIGHT    = 650;
+	/** Default number of images per algorithm. */
+	public static final int    DEFAULT_COUNT     = 100;
+	/** Default format of the written images.   */
+	public static final String DEFAULT_FORMAT    = "png";
+	/** Extension of the raw raster files.      */
+	public static final String RAW_EXTENSION     = "rgb";
+	/** Format of the SVG vector files.         */
+	public static final String SVG_FORMAT        = "svg";
+	/** Format of the binary segment files (see {@link BinaryVectorSink}). */
+	public static final String SEGMENT_FORMAT    = "seg";
+	
+	/** Algorithm classes to be rendered.                         */
+	private final List< Class< ? extends Algorithm > > algorithmClassList;
+	/** Property overrides applied to every algorithm instance. */
+	private final Properties propertyOverrides;
+	/** Width of the rendered images.                             */
+	private final int        width;
+	/** Height of the rendered images.                            */
+	private final int        height;
+	/** The first random seed.                                    */
+	private final long       firstSeed;
+	/** Number of images per algorithm (number of seeds).        */
+	private final int        count;
+	/** Directory to write the images to.                         */
+	private final File       outputDirectory;
+	/** Format of the written images (an image I/O format name). */
+	private final String     format;
+	/** Size of the tiles in tiled mode, 0 if not tiled.         */
+	private final int        tileSize;
+	
+	/** Shared algorithm instances, indexed like the algorithm classes, created on first use. */
+	private final Algorithm[]   algorithms;
+	
+	/** Index of the next job to be taken by a worker.              */
+	private final AtomicInteger nextJob = new AtomicInteger();
+	/** Render latencies of the jobs in nanoseconds, indexed by job. */
+	private final long[]        latencies;
+	/** The first failure of the batch, <code>null</code> if there is none. */
+	private volatile Throwable  failure;
+	
+	/**
+	 * Entry point of the program.<br>
+	 * Renders a batch and prints the throughput and the latency percentiles.
+	 * 
+	 * @param arguments used to take arguments from the running environment<br>
+	 *                  Possible values:
+	 *                  <ul>
+	 *                  	<li><code>-help</code> or <code>--help</code> or <code>-?</code> or <code>/?</code><br>
+	 *                  		prints the program usage, the available command line parameters and exits
+	 *                  	<li><code>-file algorithms_xml_file</code><br>
+	 *                  		defines the input algorithms XML file
+	 *                  	<li><code>-algorithm class_name</code><br>
+	 *                  		renders only the algorithm with the specified (simple or fully qualified) class name
+	 *                  	<li><code>-property name=value</code><br>
+	 *                  		overrides a property of the algorithms, can be specified multiple times
+	 *                  	<li><code>-width pixels</code> and <code>-height pixels</code><br>
+	 *                  		define the size of the images
+	 *                  	<li><code>-firstSeed seed</code> and <code>-count number</code><br>
+	 *                  		define the range of the random seeds
+	 *                  	<li><code>-threads number</code><br>
+	 *                  		defines the number of worker threads (the max number of images in flight)
+	 *                  	<li><code>-outputDir directory</code> and <code>-format format_name</code><br>
+	 *                  		define where and in what format the images are written (an image I/O format or a vector format: svg or seg)
+	 *                  	<li><code>-tileSize pixels</code><br>
+	 *                  		paints tiled algorithms tile by tile into raw raster files (the format is ignored)
+	 *                  	<li><code>-replay segment_file</code><br>
+	 *                  		rasterizes a binary segment file into an image of the format in the output directory instead of rendering algorithms
+	 *                  </ul>
+	 */
+	public static void main( final String[] arguments ) {
+		if ( System.getProperty( "java.awt.headless" ) == null )
+			System.setProperty( "java.awt.headless", "true" );
+		
+		String           algorithmXMLFileName = null;
+		String           algorithmName        = null;
+		final Properties propertyOverrides    = new Properties();
+		int              width                = DEFAULT_WIDTH;
+		int              height               = DEFAULT_HEIGHT;
+		long             firstSeed            = 0;
+		int              count                = DEFAULT_COUNT;
+		int              threads              = Runtime.getRuntime().availableProcessors();
+		String           outputDirName        = ".";
+		String           format               = DEFAULT_FORMAT;
+		int              tileSize             = 0;
+		String           replayFileName       = null;
+		
+		if ( arguments.length > 0 )
+			if ( arguments[ 0 ].equals( "-help" ) || arguments[ 0 ].equals( "--help" ) || arguments[ 0 ].equals( "-?" ) || arguments[ 0 ].equals( "/?" ) ) {
+				System.out.println( APPLICATION_NAME + " version " + AlgorithmVisualizer.APPLICATION_VERSION + " by " + AlgorithmVisualizer.APPLICATION_AUTHOR );
+				System.out.println( "Program usage:" );
+				System.out.println( "\t-help or --help or -? or /?" );
+				System.out.println( "\t\tprints the program usage, the available command line parameters and exits" );
+				System.out.println( "\t-file algorithms_xml_file" );
+				System.out.println( "\t\tdefines the input algorithms XML file" );
+				System.out.println( "\t-algorithm class_name" );
+				System.out.println( "\t\trenders only the algorithm with the specified (simple or fully qualified) class name" );
+				System.out.println( "\t-property name=value" );
+				System.out.println( "\t\toverrides a property of the algorithms, can be specified multiple times" );
+				System.out.println( "\t-width pixels" );
+				System.out.println( "\t\tdefines the width of the images (default: " + DEFAULT_WIDTH + ")" );
+				System.out.println( "\t-height pixels" );
+				System.out.println( "\t\tdefines the height of the images (default: " + DEFAULT_HEIGHT + ")" );
+				System.out.println( "\t-firstSeed seed" );
+				System.out.println( "\t\tdefines the first random seed (default: 0)" );
+				System.out.println( "\t-count number" );
+				System.out.println( "\t\tdefines the number of images (seeds) per algorithm (default: " + DEFAULT_COUNT + ")" );
+				System.out.println( "\t-threads number" );
+				System.out.println( "\t\tdefines the number of worker threads, the max number of images in flight (default: number of processors)" );
+				System.out.println( "\t-outputDir directory" );
+				System.out.println( "\t\tdefines the directory to write the images to (default: current directory)" );
+				System.out.println( "\t-format format_name" );
+				System.out.println( "\t\tdefines the format of the images (default: " + DEFAULT_FORMAT + "), " + SVG_FORMAT + " and " + SEGMENT_FORMAT
+						+ " stream the drawings of vector algorithms into SVG and binary segment files" );
+				System.out.println( "\t-tileSize pixels" );
+				System.out.println( "\t\tpaints tiled algorithms tile by tile into raw raster files (." + RAW_EXTENSION + ", 3 bytes per point), the format is ignored" );
+				System.out.println( "\t-replay segment_file" );
+				System.out.println( "\t\trasterizes a binary segment file (." + SEGMENT_FORMAT + ") into an image of the format in the output directory, nothing is rendered" );
+				return;
+			}
+		
+		try {
+			for ( int i = 0; i < arguments.length - 1; i += 2 ) {
+				final String value = arguments[ i + 1 ];
+				if ( arguments[ i ].equals( "-file" ) )
+					algorithmXMLFileName = value;
+				else if ( arguments[ i ].equals( "-algorithm" ) )
+					algorithmName = value;
+				else if ( arguments[ i ].equals( "-property" ) ) {
+					final int equalsIndex = value.indexOf( '=' );
+					if ( equalsIndex < 0 )
+						throw new IllegalArgumentException( "Invalid property override (name=value expected): " + value );
+					propertyOverrides.setProperty( value.substring( 0, equalsIndex ).trim(), value.substring( equalsIndex + 1 ).trim() );
+				}
+				else if ( arguments[ i ].equals( "-width" ) )
+					width = Integer.parseInt( value );
+				else if ( arguments[ i ].equals( "-height" ) )
+					height = Integer.parseInt( value );
+				else if ( arguments[ i ].equals( "-firstSeed" ) )
+					firstSeed = Long.parseLong( value );
+				else if ( arguments[ i ].equals( "-count" ) )
+					count = Integer.parseInt( value );
+				else if ( arguments[ i ].equals( "-threads" ) )
+					threads = Integer.parseInt( value );
+				else if ( arguments[ i ].equals( "-outputDir" ) )
+					outputDirName = value;
+				else if ( arguments[ i ].equals( "-format" ) )
+					format = value;
+				else if ( arguments[ i ].equals( "-tileSize" ) )
+					tileSize = Integer.parseInt( value );
+				else if ( arguments[ i ].equals( "-replay" ) )
+					replayFileName = value;
+			}
+			
+			if ( width <= 0 || height <= 0 || count < 0 || threads <= 0 || tileSize < 0 )
+				throw new IllegalArgumentException( "Width, height and threads must be positive, count and tile size must not be negative!" );
+			if ( tileSize == 0 && !isVectorFormat( format ) && !ImageIO.getImageWritersByFormatName( format ).hasNext() )
+				throw new IllegalArgumentException( "Unsupported image format: " + format );
+			if ( replayFileName != null && !ImageIO.getImageWritersByFormatName( format ).hasNext() )
+				throw new IllegalArgumentException( "Segment files can only be replayed into image formats: " + format );
+		}
+		catch ( final IllegalArgumentException ie ) {
+			System.out.println( ie.getMessage() );
+			System.exit( 1 );
+		}
+		
+		if ( replayFileName != null ) {
+			try {
+				replay( new File( replayFileName ), new File( outputDirName ), format );
+			}
+			catch ( final IOException ie ) {
+				System.out.println( "Could not replay the segment file: " + ie.getMessage() );
+				System.exit( 1 );
+			}
+			return;
+		}
+		
+		final List< Class< ? extends Algorithm > > algorithmClassList = new ArrayList< Class< ? extends Algorithm > >();
+		for ( final Class< ? extends Algorithm > algorithmClass : AlgorithmVisualizer.loadAlgorithmClasses( algorithmXMLFileName ) )
+			if ( algorithmName == null || algorithmName.equals( algorithmClass.getName() ) || algorithmName.equals( algorithmClass.getSimpleName() ) )
+				algorithmClassList.add( algorithmClass );
+		if ( algorithmClassList.isEmpty() ) {
+			System.out.println( "No algorithms to render!" );
+			System.exit( 1 );
+		}
+		
+		final File outputDirectory = new File( outputDirName );
+		if ( !outputDirectory.isDirectory() && !outputDirectory.mkdirs() ) {
+			System.out.println( "Could not create the output directory: " + outputDirectory );
+			System.exit( 1 );
+		}
+		
+		final BatchRenderer batchRenderer = new BatchRenderer( algorithmClassList, propertyOverrides, width, height, firstSeed, count, outputDirectory, format, tileSize );
+		if ( !batchRenderer.render( threads ) )
+			System.exit( 1 );
+	}
+	
+	/**
+	 * Creates a new <code>BatchRenderer</code>.
+	 * 
+	 * @param algorithmClassList algorithm classes to be rendered
+	 * @param propertyOverrides  property overrides applied to every algorithm instance
+	 * @param width              width of the rendered images
+	 * @param height             height of the rendered images
+	 * @param firstSeed          the first random seed
+	 * @param count              number of images per algorithm (number of seeds)
+	 * @param outputDirectory    directory to write the images to
+	 * @param format             format of the written images (an image I/O format name)
+	 * @param tileSize           size of the tiles in tiled mode, 0 if not tiled
+	 */
+	public BatchRenderer( final List< Class< ? extends Algorithm > > algorithmClassList, final Properties propertyOverrides, final int width, final int height,
+			final long firstSeed, final int count, final File outputDirectory, final String format, final int tileSize ) {
+		this.algorithmClassList = algorithmClassList;
+		this.propertyOverrides  = propertyOverrides;
+		this.width              = width;
+		this.height             = height;
+		this.firstSeed          = firstSeed;
+		this.count              = count;
+		this.outputDirectory    = outputDirectory;
+		this.format             = format;
+		this.tileSize           = tileSize;
+		
+		algorithms = new Algorithm[ algorithmClassList.size() ];
+		latencies  = new long[ algorithmClassList.size() * count ];
+	}
+	
+	/**
+	 * Renders the batch, and prints the throughput and the latency percentiles.<br>
+	 * The batch is aborted at the first failure.
+	 * 
+	 * @param threads number of worker threads
+	 * @return true if the whole batch was rendered; false if it was aborted
+	 */
+	public boolean render( final int threads ) {
+		final long startNanos = System.nanoTime();
+		
+		final Thread[] workers = new Thread[ threads ];
+		for ( int i = 0; i < workers.length; i++ ) {
+			workers[ i ] = new Thread( new Worker(), APPLICATION_NAME + " worker " + i );
+			workers[ i ].start();
+		}
+		try {
+			for ( final Thread worker : workers )
+				worker.join();
+		}
+		catch ( final InterruptedException ie ) {
+			failure = ie;
+			for ( final Thread worker : workers )
+				worker.interrupt();
+		}
+		
+		final long elapsedNanos = System.nanoTime() - startNanos;
+		
+		if ( failure != null ) {
+			System.out.println( "The batch was aborted: " + failure );
+			return false;
+		}
+		
+		printStatistics( elapsedNanos );
+		return true;
+	}
+	
+	/**
+	 * Prints the throughput and the latency percentiles of the rendered batch.
+	 * @param elapsedNanos wall-clock time of the batch in nanoseconds
+	 */
+	private void printStatistics( final long elapsedNanos ) {
+		System.out.println( "Rendered " + latencies.length + " images of " + width + "x" + height + " in " + elapsedNanos / 1000000 + " ms" );
+		if ( latencies.length == 0 )
+			return;
+		
+		System.out.printf( "Throughput: %.2f images/sec%n", latencies.length * 1e9 / elapsedNanos );
+		
+		final long[] sortedLatencies = latencies.clone();
+		Arrays.sort( sortedLatencies );
+		System.out.printf( "Latency (ms): p50=%.2f p90=%.2f p99=%.2f max=%.2f%n", getPercentile( sortedLatencies, 50 ) / 1e6,
+				getPercentile( sortedLatencies, 90 ) / 1e6, getPercentile( sortedLatencies, 99 ) / 1e6, sortedLatencies[ sortedLatencies.length - 1 ] / 1e6 );
+	}
+	
+	/**
+	 * Returns a percentile of sorted values (nearest-rank method).
+	 * @param sortedValues sorted values, must not be empty
+	 * @param percentile   percentile to be returned
+	 * @return the percentile of the sorted values
+	 */
+	private static long getPercentile( final long[] sortedValues, final int percentile ) {
+		final int rank = (int) Math.ceil( percentile / 100.0 * sortedValues.length );
+		return sortedValues[ Math.max( rank, 1 ) - 1 ];
+	}
+	
+	/**
+	 * Tells if a format is a vector format.
+	 * @param format format to be tested
+	 * @return true if the format is a vector format; false otherwise
+	 */
+	private static boolean isVectorFormat( final String format ) {
+		return format.equals( SVG_FORMAT ) || format.equals( SEGMENT_FORMAT );
+	}
+	
+	/**
+	 * Rasterizes a binary segment file into an image named after the segment file.<br>
+	 * The drawings are replayed onto the canvas background the same way algorithms paint onto it,
+	 * so the image is identical to the one painted directly by the algorithm.
+	 * 
+	 * @param segmentFile     binary segment file to replay
+	 * @param outputDirectory directory to write the image to
+	 * @param format          format of the image (an image I/O format name)
+	 * @throws IOException if the segment file cannot be read or the image cannot be written
+	 */
+	private static void replay( final File segmentFile, final File outputDirectory, final String format ) throws IOException {
+		final long startNanos = System.nanoTime();
+		
+		final BinaryVectorReader reader = new BinaryVectorReader( FileChannel.open( segmentFile.toPath(), StandardOpenOption.READ ) );
+		final BufferedImage      image;
+		try {
+			image = new BufferedImage( reader.getWidth(), reader.getHeight(), BufferedImage.TYPE_INT_RGB );
+			final Graphics graphics = image.createGraphics();
+			try {
+				graphics.setColor( AlgorithmVisualizer.CANVAS_BACKGROUND_COLOR );
+				graphics.fillRect( 0, 0, image.getWidth(), image.getHeight() );
+				graphics.setColor( Color.WHITE );
+				reader.replay( new GraphicsDrawTarget( graphics ) );
+			}
+			finally {
+				graphics.dispose();
+			}
+		}
+		finally {
+			reader.close();
+		}
+		
+		if ( !outputDirectory.isDirectory() && !outputDirectory.mkdirs() )
+			throw new IOException( "Could not create the output directory: " + outputDirectory );
+		final String segmentFileName = segmentFile.getName();
+		final int    dotIndex        = segmentFileName.lastIndexOf( '.' );
+		final File   outputFile      = new File( outputDirectory, ( dotIndex < 0 ? segmentFileName : segmentFileName.substring( 0, dotIndex ) ) + '.' + format );
+		if ( !ImageIO.write( image, format, outputFile ) )
+			throw new IOException( "No image writer for format: " + format );
+		
+		System.out.println( "Replayed " + segmentFile + " (" + image.getWidth() + "x" + image.getHeight() + ") into " + outputFile + " in "
+				+ ( System.nanoTime() - startNanos ) / 1000000 + " ms" );
+	}
+	
+	/**
+	 * Returns the shared instance of an algorithm, creates it on first use.
+	 * @param algorithmIndex index of the algorithm
+	 * @return the shared instance of the algorithm
+	 * @throws Exception if the algorithm cannot be instantiated
+	 */
+	private synchronized Algorithm getAlgorithm( final int algorithmIndex ) throws Exception {
+		Algorithm algorithm = algorithms[ algorithmIndex ];
+		if ( algorithm == null ) {
+			algorithm = algorithms[ algorithmIndex ] = algorithmClassList.get( algorithmIndex ).newInstance();
+			algorithm.getProperties().putAll( propertyOverrides );
+		}
+		return algorithm;
+	}
+	
+	/**
+	 * Worker rendering jobs until there are no more jobs or the batch is aborted.<br>
+	 * A job is an algorithm and a seed; the latency of a job covers the painting and the writing of its image.
+	 */
+	private class Worker implements Runnable {
+		
+		/** The reused image of the worker, created on first use. */
+		private BufferedImage image;
+		
+		@Override
+		public void run() {
+			try {
+				int job;
+				while ( failure == null && ( job = nextJob.getAndIncrement() ) < latencies.length ) {
+					final long startNanos = System.nanoTime();
+					renderJob( job / count, firstSeed + job % count );
+					latencies[ job ] = System.nanoTime() - startNanos;
+				}
+			}
+			catch ( final Throwable t ) {
+				if ( failure == null )
+					failure = t;
+			}
+		}
+		
+		/**
+		 * Renders a job, and writes its image.
+		 * @param algorithmIndex index of the algorithm to be rendered
+		 * @param seed           random seed to be used
+		 * @throws Exception if the algorithm cannot be instantiated or painted, or the image cannot be written
+		 */
+		private void renderJob( final int algorithmIndex, final long seed ) throws Exception {
+			final Algorithm algorithm = getAlgorithm( algorithmIndex );
+			
+			if ( algorithm instanceof BaseAlgorithm )
+				renderJob( algorithm, seed );
+			else
+				synchronized ( algorithm ) {
+					renderJob( algorithm, seed );
+				}
+		}
+		
+		/**
+		 * Renders a job with an algorithm instance, and writes its image.<br>
+		 * The seed is passed in per-render properties to {@link BaseAlgorithm}s, and set in the properties of other algorithms.
+		 * 
+		 * @param algorithm algorithm to be rendered
+		 * @param seed      random seed to be used
+		 * @throws Exception if the algorithm cannot be painted, or the image cannot be written
+		 */
+		private void renderJob( final Algorithm algorithm, final long seed ) throws Exception {
+			final Properties renderProperties;
+			if ( algorithm instanceof BaseAlgorithm ) {
+				renderProperties = new Properties( algorithm.getProperties() );
+				renderProperties.setProperty( RandomBaseAlgorithm.PROPERTY_RANDOM_SEED, Long.toString( seed ) );
+			}
+			else {
+				renderProperties = null;
+				algorithm.getProperties().setProperty( RandomBaseAlgorithm.PROPERTY_RANDOM_SEED, Long.toString( seed ) );
+			}
+			
+			final String outputFileName = algorithm.getClass().getSimpleName() + '_' + seed + '.';
+			
+			if ( tileSize > 0 ) {
+				if ( !( algorithm instanceof TiledAlgorithm ) )
+					throw new IllegalArgumentException( algorithm.getClass().getSimpleName() + " cannot paint tiles!" );
+				final RawRasterFile rawRasterFile = new RawRasterFile( new File( outputDirectory, outputFileName + RAW_EXTENSION ), width, height );
+				try {
+					( (TiledAlgorithm) algorithm ).paintTiles( width, height, tileSize, rawRasterFile, renderProperties );
+				}
+				finally {
+					rawRasterFile.close();
+				}
+				return;
+			}
+			
+			if ( isVectorFormat( format ) ) {
+				if ( !( algorithm instanceof VectorAlgorithm ) )
+					throw new IllegalArgumentException( algorithm.getClass().getSimpleName() + " cannot paint vectors!" );
+				final FileChannel channel    = FileChannel.open( new File( outputDirectory, outputFileName + format ).toPath(),
+						StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE );
+				final VectorSink  vectorSink = format.equals( SVG_FORMAT ) ? new SvgVectorSink( channel, width, height, AlgorithmVisualizer.CANVAS_BACKGROUND_COLOR )
+						: new BinaryVectorSink( channel, width, height );
+				try {
+					vectorSink.setColor( Color.WHITE );
+					if ( renderProperties == null )
+						( (VectorAlgorithm) algorithm ).paint( vectorSink, width, height );
+					else
+						( (VectorAlgorithm) algorithm ).paint( vectorSink, width, height, renderProperties );
+				}
+				finally {
+					vectorSink.close();
+				}
+				return;
+			}
+			
+			if ( image == null )
+				image = new BufferedImage( width, height, BufferedImage.TYPE_INT_RGB );
+			
+			final Graphics graphics = image.createGraphics();
+			try {
+				graphics.setColor( AlgorithmVisualizer.CANVAS_BACKGROUND_COLOR );
+				graphics.fillRect( 0, 0, width, height );
+				if ( algorithm instanceof RasterAlgorithm )
+					( (RasterAlgorithm) algorithm ).paint( image, renderProperties );
+				else {
+					graphics.setColor( Color.WHITE );
+					if ( algorithm instanceof BaseAlgorithm )
+						( (BaseAlgorithm< ? >) algorithm ).paint( graphics, width, height, renderProperties );
+					else
+						algorithm.paint( graphics, width, height );
+				}
+			}
+			finally {
+				graphics.dispose();
+			}
+			
+			final File outputFile = new File( outputDirectory, outputFileName + format );
+			if ( !ImageIO.write( image, format, outputFile ) )
+				throw new IOException( "No image writer for format: " + format );
+		}
+		
+	}
+	
+}
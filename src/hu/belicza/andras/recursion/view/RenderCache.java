@@ -0,0 +1,230 @@
+package hu.belicza.andras.recursion.view;
+
+import hu.belicza.andras.recursion.model.Algorithm;
+import hu.belicza.andras.recursion.model.BaseAlgorithm;
+import hu.belicza.andras.recursion.model.DisplayList;
+import hu.belicza.andras.recursion.model.ParameterDescriptor;
+import hu.belicza.andras.recursion.model.RandomBaseAlgorithm;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A bounded cache of rendered algorithm results.<br>
+ * Results are keyed by the algorithm class, a normalized snapshot of the algorithm properties, the random seed
+ * and the size of the image. The properties of algorithms derived from {@link BaseAlgorithm} are normalized by their parameter descriptors
+ * (parsed and formatted), so equal values written differently (like <code>20</code>, <code>020</code> and <code>20.0</code> of a float)
+ * share a cached image. The least recently used images are evicted when the total size of the cached images would exceed the byte budget.<br>
+ * A result recorded into a {@link DisplayList} is cached as its recording instead of its image if the recording is smaller
+ * (the recording of a vector algorithm typically takes a few bytes per segment), and it is replayed when needed.<br>
+ * Results of algorithms using a new random seed for every paint are not cacheable.
+ * 
+ * @author Belicza Andras
+ */
+public class RenderCache {
+	
+	/** Max number of bytes the cached results may occupy. */
+	private final long maxBytes;
+	/** Number of bytes the cached results occupy.          */
+	private long       bytes;
+	
+	/** The cached results (images or display lists) in least recently used order. */
+	private final LinkedHashMap< Key, Object > results = new LinkedHashMap< Key, Object >( 16, 0.75f, true );
+	
+	/**
+	 * Creates a new <code>RenderCache</code>.
+	 * @param maxBytes max number of bytes the cached images may occupy
+	 */
+	public RenderCache( final long maxBytes ) {
+		this.maxBytes = maxBytes;
+	}
+	
+	/**
+	 * Returns the cached image of a key.
+	 * @param key key of the image
+	 * @return the cached image of the key; or <code>null</code> if it is not cached (or it is cached as a display list)
+	 */
+	public synchronized BufferedImage get( final Key key ) {
+		final Object result = results.get( key );
+		return result instanceof BufferedImage ? (BufferedImage) result : null;
+	}
+	
+	/**
+	 * Returns the cached display list of a key.
+	 * @param key key of the result
+	 * @return the cached display list of the key; or <code>null</code> if it is not cached (or it is cached as an image)
+	 */
+	public synchronized DisplayList getDisplayList( final Key key ) {
+		final Object result = results.get( key );
+		return result instanceof DisplayList ? (DisplayList) result : null;
+	}
+	
+	/**
+	 * Caches an image, evicting the least recently used results if needed to fit into the byte budget.<br>
+	 * Images bigger than the byte budget are not cached.
+	 * 
+	 * @param key   key of the image
+	 * @param image image to be cached
+	 */
+	public void put( final Key key, final BufferedImage image ) {
+		put( key, image, null );
+	}
+	
+	/**
+	 * Caches a result, evicting the least recently used results if needed to fit into the byte budget.<br>
+	 * The result is cached as its display list if that is smaller than its image. Results bigger than the byte budget are not cached.
+	 * 
+	 * @param key         key of the result
+	 * @param image       image of the result
+	 * @param displayList recording of the image, <code>null</code> if the result was not recorded
+	 */
+	public synchronized void put( final Key key, final BufferedImage image, final DisplayList displayList ) {
+		final Object result = displayList != null && displayList.getRecordedBytes() < getBytes( image ) ? displayList : image;
+		
+		final long resultBytes = getBytes( result );
+		if ( resultBytes > maxBytes )
+			return;
+		
+		final Object replacedResult = results.put( key, result );
+		if ( replacedResult != null )
+			bytes -= getBytes( replacedResult );
+		bytes += resultBytes;
+		
+		for ( final Iterator< Object > iterator = results.values().iterator(); bytes > maxBytes && iterator.hasNext(); ) {
+			bytes -= getBytes( iterator.next() );
+			iterator.remove();
+		}
+	}
+	
+	/**
+	 * Removes all cached results.
+	 */
+	public synchronized void clear() {
+		results.clear();
+		bytes = 0;
+	}
+	
+	/**
+	 * Returns the number of bytes a cached result occupies.
+	 * @param result cached result (an image or a display list) whose size to be returned
+	 * @return the number of bytes the result occupies
+	 */
+	private static long getBytes( final Object result ) {
+		if ( result instanceof DisplayList )
+			return ( (DisplayList) result ).getRecordedBytes();
+		
+		final DataBuffer dataBuffer = ( (BufferedImage) result ).getRaster().getDataBuffer();
+		return (long) dataBuffer.getSize() * dataBuffer.getNumBanks() * ( DataBuffer.getDataTypeSize( dataBuffer.getDataType() ) >> 3 );
+	}
+	
+	/**
+	 * Key of a rendered result.
+	 */
+	public static class Key {
+		
+		private final Class< ? extends Algorithm > algorithmClass;
+		private final SortedMap< String, String >  properties;
+		private final long                         randomSeed;
+		private final int                          width;
+		private final int                          height;
+		
+		/**
+		 * Creates a new <code>Key</code>.
+		 * 
+		 * @param algorithmClass class of the algorithm
+		 * @param properties     normalized snapshot of the algorithm properties (without the random seed)
+		 * @param randomSeed     random seed of the algorithm
+		 * @param width          width of the image
+		 * @param height         height of the image
+		 */
+		private Key( final Class< ? extends Algorithm > algorithmClass, final SortedMap< String, String > properties, final long randomSeed, final int width, final int height ) {
+			this.algorithmClass = algorithmClass;
+			this.properties     = properties;
+			this.randomSeed     = randomSeed;
+			this.width          = width;
+			this.height         = height;
+		}
+		
+		/**
+		 * Creates the key of the current result of an algorithm.
+		 * 
+		 * @param algorithm algorithm whose result to be keyed
+		 * @param width     width of the image
+		 * @param height    height of the image
+		 * @return the key of the current result of the algorithm; or <code>null</code> if the result is not cacheable
+		 */
+		public static Key of( final Algorithm algorithm, final int width, final int height ) {
+			final Properties                  algorithmProperties = algorithm.getProperties();
+			final SortedMap< String, String > properties          = new TreeMap< String, String >();
+			if ( algorithm instanceof BaseAlgorithm ) {
+				// Only the parameters affect the result
+				try {
+					for ( final ParameterDescriptor< ? > descriptor : algorithm.getParameterDescriptors() )
+						properties.put( descriptor.getName(), normalize( descriptor, algorithmProperties ) );
+				}
+				catch ( final IllegalArgumentException ie ) {
+					return null; // Painting will fail anyway
+				}
+			}
+			else
+				for ( final String name : algorithmProperties.stringPropertyNames() )
+					properties.put( name.trim(), algorithmProperties.getProperty( name ).trim() );
+			
+			long randomSeed = 0;
+			final String randomSeedString = properties.remove( RandomBaseAlgorithm.PROPERTY_RANDOM_SEED );
+			if ( randomSeedString != null ) {
+				if ( randomSeedString.equals( RandomBaseAlgorithm.ALWAYS_NEW_RANDOM_SEED_VALUE ) )
+					return null;
+				try {
+					randomSeed = Long.parseLong( randomSeedString );
+				}
+				catch ( final NumberFormatException nfe ) {
+					return null; // Painting will fail anyway
+				}
+			}
+			
+			return new Key( algorithm.getClass(), properties, randomSeed, width, height );
+		}
+		
+		/**
+		 * Returns the normalized value of a parameter: its value in properties parsed and formatted.
+		 * @param descriptor descriptor of the parameter
+		 * @param properties properties holding the value of the parameter
+		 * @return the normalized value of the parameter
+		 * @throws IllegalArgumentException if the property is not a valid value of the parameter
+		 */
+		private static < T extends Comparable< ? super T > > String normalize( final ParameterDescriptor< T > descriptor, final Properties properties )
+				throws IllegalArgumentException {
+			return descriptor.format( descriptor.get( properties ) );
+		}
+		
+		@Override
+		public boolean equals( final Object object ) {
+			if ( this == object )
+				return true;
+			if ( !( object instanceof Key ) )
+				return false;
+			
+			final Key key = (Key) object;
+			return algorithmClass == key.algorithmClass && randomSeed == key.randomSeed && width == key.width && height == key.height
+				&& properties.equals( key.properties );
+		}
+		
+		@Override
+		public int hashCode() {
+			int hashCode = algorithmClass.hashCode();
+			hashCode = 31 * hashCode + properties.hashCode();
+			hashCode = 31 * hashCode + (int) ( randomSeed ^ randomSeed >>> 32 );
+			hashCode = 31 * hashCode + width;
+			hashCode = 31 * hashCode + height;
+			return hashCode;
+		}
+		
+	}
+	
+}
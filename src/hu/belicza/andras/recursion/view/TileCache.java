@@ -0,0 +1,216 @@
+package hu.belicza.andras.recursion.view;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A bounded cache of encoded tiles with single-flight rendering.<br>
+ * The least recently used tiles are evicted when the total size of the cached tiles would exceed the byte budget.
+ * Concurrent requests of the same missing tile are de-duplicated: the first one renders the tile, the others wait for its result.
+ * Failed renders are not cached, their failure is passed to all the requests waiting for them.
+ * 
+ * @author Belicza Andras
+ */
+public class TileCache {
+	
+	/**
+	 * Source of a tile returned by the cache.
+	 */
+	public enum Source {
+		/** The tile was cached.                                     */
+		CACHE,
+		/** The tile was being rendered by another request, which was waited for. */
+		IN_FLIGHT,
+		/** The tile was rendered by the request.                    */
+		RENDER
+	}
+	
+	/**
+	 * A tile returned by the cache.
+	 */
+	public static class Tile {
+		
+		private final byte[] bytes;
+		private final Source source;
+		
+		/**
+		 * Creates a new <code>Tile</code>.
+		 * @param bytes  the encoded tile
+		 * @param source source of the tile
+		 */
+		private Tile( final byte[] bytes, final Source source ) {
+			this.bytes  = bytes;
+			this.source = source;
+		}
+		
+		/**
+		 * Returns the encoded tile.
+		 * @return the encoded tile
+		 */
+		public byte[] getBytes() {
+			return bytes;
+		}
+		
+		/**
+		 * Returns the source of the tile.
+		 * @return the source of the tile
+		 */
+		public Source getSource() {
+			return source;
+		}
+		
+	}
+	
+	/** Max number of bytes the cached tiles may occupy. */
+	private final long maxBytes;
+	/** Number of bytes the cached tiles occupy.          */
+	private long       bytes;
+	/** Number of evicted tiles.                          */
+	private long       evictions;
+	
+	/** The cached tiles in least recently used order. */
+	private final LinkedHashMap< String, byte[] > tiles = new LinkedHashMap< String, byte[] >( 16, 0.75f, true );
+	/** Renders in progress mapped from the keys of their tiles. */
+	private final ConcurrentMap< String, FutureTask< byte[] > > renders = new ConcurrentHashMap< String, FutureTask< byte[] > >();
+	
+	/**
+	 * Creates a new <code>TileCache</code>.
+	 * @param maxBytes max number of bytes the cached tiles may occupy
+	 */
+	public TileCache( final long maxBytes ) {
+		this.maxBytes = maxBytes;
+	}
+	
+	/**
+	 * Returns a tile: the cached tile, the result of the render of the tile in progress, or the tile rendered by the renderer in the current thread.
+	 * 
+	 * @param key      key of the tile
+	 * @param renderer renderer of the tile, called if the tile is neither cached nor being rendered
+	 * @return the tile
+	 * @throws Exception if the render of the tile failed (in the current thread or in the request rendering it)
+	 */
+	public Tile get( final String key, final Callable< byte[] > renderer ) throws Exception {
+		final byte[] cachedBytes = peek( key );
+		if ( cachedBytes != null )
+			return new Tile( cachedBytes, Source.CACHE );
+		
+		final FutureTask< byte[] > render = new FutureTask< byte[] >( new Callable< byte[] >() {
+			@Override
+			public byte[] call() throws Exception {
+				// The tile might have been cached by a render finished since the lookup
+				final byte[] cachedBytes = peek( key );
+				return cachedBytes != null ? cachedBytes : renderer.call();
+			}
+		} );
+		
+		final FutureTask< byte[] > renderInProgress = renders.putIfAbsent( key, render );
+		if ( renderInProgress != null )
+			return new Tile( getResult( renderInProgress ), Source.IN_FLIGHT );
+		
+		try {
+			render.run();
+			final byte[] renderedBytes = getResult( render );
+			put( key, renderedBytes );
+			return new Tile( renderedBytes, Source.RENDER );
+		}
+		finally {
+			// Removed after caching the tile, so a request arriving in between finds either the render or the tile
+			renders.remove( key, render );
+		}
+	}
+	
+	/**
+	 * Returns the cached tile of a key.
+	 * @param key key of the tile
+	 * @return the cached tile of the key; or <code>null</code> if it is not cached
+	 */
+	private synchronized byte[] peek( final String key ) {
+		return tiles.get( key );
+	}
+	
+	/**
+	 * Caches a tile, evicting the least recently used tiles if needed to fit into the byte budget.<br>
+	 * Tiles bigger than the byte budget are not cached.
+	 * 
+	 * @param key       key of the tile
+	 * @param tileBytes the encoded tile
+	 */
+	private synchronized void put( final String key, final byte[] tileBytes ) {
+		if ( tileBytes.length > maxBytes )
+			return;
+		
+		final byte[] replacedBytes = tiles.put( key, tileBytes );
+		if ( replacedBytes != null )
+			bytes -= replacedBytes.length;
+		bytes += tileBytes.length;
+		
+		for ( final Iterator< byte[] > iterator = tiles.values().iterator(); bytes > maxBytes && iterator.hasNext(); ) {
+			bytes -= iterator.next().length;
+			iterator.remove();
+			evictions++;
+		}
+	}
+	
+	/**
+	 * Waits for the result of a render.
+	 * @param render render whose result to be returned
+	 * @return the result of the render
+	 * @throws Exception the exception the render failed with, or {@link InterruptedException} if the current thread was interrupted while waiting
+	 */
+	private static byte[] getResult( final FutureTask< byte[] > render ) throws Exception {
+		try {
+			return render.get();
+		}
+		catch ( final ExecutionException ee ) {
+			if ( ee.getCause() instanceof Error )
+				throw (Error) ee.getCause();
+			throw (Exception) ee.getCause();
+		}
+	}
+	
+	/**
+	 * Returns the number of cached tiles.
+	 * @return the number of cached tiles
+	 */
+	public synchronized int getSize() {
+		return tiles.size();
+	}
+	
+	/**
+	 * Returns the number of bytes the cached tiles occupy.
+	 * @return the number of bytes the cached tiles occupy
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+	
+	/**
+	 * Returns the max number of bytes the cached tiles may occupy.
+	 * @return the max number of bytes the cached tiles may occupy
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+	
+	/**
+	 * Returns the number of evicted tiles.
+	 * @return the number of evicted tiles
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+	
+	/**
+	 * Returns the number of tiles being rendered.
+	 * @return the number of tiles being rendered
+	 */
+	public int getRenderCount() {
+		return renders.size();
+	}
+	
+}
@@ -0,0 +1,633 @@
+package hu.belicza.andras.recursion.view;
+
+import hu.belicza.andras.recursion.model.Algorithm;
+import hu.belicza.andras.recursion.model.BaseAlgorithm;
+import hu.belicza.andras.recursion.model.RandomBaseAlgorithm;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.imageio.ImageIO;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HTTP server of map tiles of algorithms implementing the {@link Algorithm} interface.<br>
+ * Tiles are requested by the path <code>/{algorithm}/{seed}/{z}/{x}/{y}.png</code>, where <code>algorithm</code> is the simple class name
+ * of an algorithm listed in the algorithms XML file. The map of zoom level <code>z</code> is the result of the algorithm painted with the random seed
+ * onto a square canvas of <code>tileSize * 2^z</code> pixels, its tile (<code>x</code>, <code>y</code>) is the area of the canvas
+ * starting at (<code>x * tileSize</code>, <code>y * tileSize</code>). The tile is painted through a graphics context clipped to the tile,
+ * so algorithms skipping the parts outside the clip paint a tile of a huge map at the cost of the tile.<br>
+ * Tiles are always rendered with the {@value #PROPERTY_PARALLEL} property set to true: the serial generation of the labyrinth draws
+ * from a single random generator, so it cannot skip anything and would generate (and store) the whole map for every tile,
+ * while its parallel generation only generates the cells of the tile.
+ * Other properties of the algorithm can be overridden in the query string (for example <code>?dispersion=10&amp;sectorSize=100</code>).<br>
+ * The encoded tiles are cached in a bounded {@link TileCache}, concurrent requests of the same tile are served by a single render.
+ * Requests are handled on virtual threads when the JVM supports them (Java 21 or newer), on a pool of platform threads otherwise;
+ * the number of concurrent renders is limited to the number of processors. Per-endpoint latency and cache hit-rate statistics are
+ * served at {@value #STATS_PATH}.
+ * 
+ * @author Belicza Andras
+ */
+public class TileServer {
+	
+	public static final String APPLICATION_NAME = "TileServer";
+	
+	/** Default port of the server.                    */
+	public static final int    DEFAULT_PORT          = 8080;
+	/** Default size of the tiles.                     */
+	public static final int    DEFAULT_TILE_SIZE     = 256;
+	/** Default max zoom level.                        */
+	public static final int    DEFAULT_MAX_ZOOM      = 8;
+	/** Default byte budget of the tile cache in megabytes. */
+	public static final int    DEFAULT_CACHE_SIZE_MB = 64;
+	/** Path of the statistics.                        */
+	public static final String STATS_PATH            = "/stats";
+	/** Format (and extension) of the tiles.           */
+	public static final String TILE_FORMAT           = "png";
+	/** Name of the property set to true for every tile, the generation of the algorithms having it is pruned to the tile. */
+	public static final String PROPERTY_PARALLEL     = "parallel";
+	
+	/** Number of buckets of the latency histograms.   */
+	private static final int   HISTOGRAM_BUCKETS     = 32;
+	
+	/** Algorithm classes served, mapped from their simple names.   */
+	private final Map< String, Class< ? extends Algorithm > > algorithmClassMap = new LinkedHashMap< String, Class< ? extends Algorithm > >();
+	/** Shared algorithm instances mapped from their simple names, created on first use. */
+	private final Map< String, Algorithm >                    algorithmMap      = new LinkedHashMap< String, Algorithm >();
+	/** Statistics of the endpoints mapped from their names.    */
+	private final Map< String, EndpointStats >                endpointStatsMap  = new LinkedHashMap< String, EndpointStats >();
+	/** Property overrides applied to every algorithm instance. */
+	private final Properties   propertyOverrides;
+	/** Size of the tiles.                                      */
+	private final int          tileSize;
+	/** Max zoom level.                                         */
+	private final int          maxZoom;
+	/** Cache of the encoded tiles.                             */
+	private final TileCache    tileCache;
+	/** Permits of the concurrent renders.                      */
+	private final Semaphore    renderPermits = new Semaphore( Runtime.getRuntime().availableProcessors() );
+	
+	/** The HTTP server, <code>null</code> if not started.      */
+	private HttpServer         httpServer;
+	/** Executor handling the requests, <code>null</code> if not started. */
+	private ExecutorService    executor;
+	
+	/**
+	 * Entry point of the program.<br>
+	 * Starts the server, and serves tiles until the JVM is stopped.
+	 * 
+	 * @param arguments used to take arguments from the running environment<br>
+	 *                  Possible values:
+	 *                  <ul>
+	 *                  	<li><code>-help</code> or <code>--help</code> or <code>-?</code> or <code>/?</code><br>
+	 *                  		prints the program usage, the available command line parameters and exits
+	 *                  	<li><code>-file algorithms_xml_file</code><br>
+	 *                  		defines the input algorithms XML file
+	 *                  	<li><code>-property name=value</code><br>
+	 *                  		overrides a property of the algorithms, can be specified multiple times
+	 *                  	<li><code>-port port</code><br>
+	 *                  		defines the port of the server
+	 *                  	<li><code>-tileSize pixels</code> and <code>-maxZoom level</code><br>
+	 *                  		define the size of the tiles and the max zoom level
+	 *                  	<li><code>-cacheSize megabytes</code><br>
+	 *                  		defines the byte budget of the tile cache in megabytes
+	 *                  </ul>
+	 */
+	public static void main( final String[] arguments ) {
+		if ( System.getProperty( "java.awt.headless" ) == null )
+			System.setProperty( "java.awt.headless", "true" );
+		
+		String           algorithmXMLFileName = null;
+		final Properties propertyOverrides    = new Properties();
+		int              port                 = DEFAULT_PORT;
+		int              tileSize             = DEFAULT_TILE_SIZE;
+		int              maxZoom              = DEFAULT_MAX_ZOOM;
+		int              cacheSizeMB          = DEFAULT_CACHE_SIZE_MB;
+		
+		if ( arguments.length > 0 )
+			if ( arguments[ 0 ].equals( "-help" ) || arguments[ 0 ].equals( "--help" ) || arguments[ 0 ].equals( "-?" ) || arguments[ 0 ].equals( "/?" ) ) {
+				System.out.println( APPLICATION_NAME + " version " + AlgorithmVisualizer.APPLICATION_VERSION + " by " + AlgorithmVisualizer.APPLICATION_AUTHOR );
+				System.out.println( "Program usage:" );
+				System.out.println( "\t-help or --help or -? or /?" );
+				System.out.println( "\t\tprints the program usage, the available command line parameters and exits" );
+				System.out.println( "\t-file algorithms_xml_file" );
+				System.out.println( "\t\tdefines the input algorithms XML file" );
+				System.out.println( "\t-property name=value" );
+				System.out.println( "\t\toverrides a property of the algorithms, can be specified multiple times" );
+				System.out.println( "\t-port port" );
+				System.out.println( "\t\tdefines the port of the server (default: " + DEFAULT_PORT + ")" );
+				System.out.println( "\t-tileSize pixels" );
+				System.out.println( "\t\tdefines the size of the tiles (default: " + DEFAULT_TILE_SIZE + ")" );
+				System.out.println( "\t-maxZoom level" );
+				System.out.println( "\t\tdefines the max zoom level, the map of zoom level z is tileSize * 2^z pixels wide (default: " + DEFAULT_MAX_ZOOM + ")" );
+				System.out.println( "\t-cacheSize megabytes" );
+				System.out.println( "\t\tdefines the byte budget of the tile cache in megabytes (default: " + DEFAULT_CACHE_SIZE_MB + ")" );
+				return;
+			}
+		
+		final TileServer tileServer;
+		try {
+			for ( int i = 0; i < arguments.length - 1; i += 2 ) {
+				final String value = arguments[ i + 1 ];
+				if ( arguments[ i ].equals( "-file" ) )
+					algorithmXMLFileName = value;
+				else if ( arguments[ i ].equals( "-property" ) ) {
+					final int equalsIndex = value.indexOf( '=' );
+					if ( equalsIndex < 0 )
+						throw new IllegalArgumentException( "Invalid property override (name=value expected): " + value );
+					propertyOverrides.setProperty( value.substring( 0, equalsIndex ).trim(), value.substring( equalsIndex + 1 ).trim() );
+				}
+				else if ( arguments[ i ].equals( "-port" ) )
+					port = Integer.parseInt( value );
+				else if ( arguments[ i ].equals( "-tileSize" ) )
+					tileSize = Integer.parseInt( value );
+				else if ( arguments[ i ].equals( "-maxZoom" ) )
+					maxZoom = Integer.parseInt( value );
+				else if ( arguments[ i ].equals( "-cacheSize" ) )
+					cacheSizeMB = Integer.parseInt( value );
+			}
+			
+			if ( cacheSizeMB < 0 )
+				throw new IllegalArgumentException( "Cache size must not be negative!" );
+			tileServer = new TileServer( AlgorithmVisualizer.loadAlgorithmClasses( algorithmXMLFileName ), propertyOverrides, tileSize, maxZoom, cacheSizeMB * 1024L * 1024L );
+		}
+		catch ( final IllegalArgumentException ie ) {
+			System.out.println( ie.getMessage() );
+			System.exit( 1 );
+			return;
+		}
+		
+		try {
+			tileServer.start( port );
+		}
+		catch ( final IOException ie ) {
+			System.out.println( "Could not start the server: " + ie.getMessage() );
+			System.exit( 1 );
+		}
+		System.out.println( APPLICATION_NAME + " listening on port " + port + ", algorithms: " + tileServer.algorithmClassMap.keySet() );
+	}
+	
+	/**
+	 * Creates a new <code>TileServer</code>.
+	 * 
+	 * @param algorithmClassList algorithm classes to be served
+	 * @param propertyOverrides  property overrides applied to every algorithm instance
+	 * @param tileSize           size of the tiles
+	 * @param maxZoom            max zoom level
+	 * @param cacheBytes         byte budget of the tile cache
+	 * @throws IllegalArgumentException if the tile size or the max zoom level is invalid, or there are no algorithms to be served
+	 */
+	public TileServer( final List< Class< ? extends Algorithm > > algorithmClassList, final Properties propertyOverrides, final int tileSize, final int maxZoom,
+			final long cacheBytes ) throws IllegalArgumentException {
+		if ( tileSize <= 0 || maxZoom < 0 || ( (long) tileSize << maxZoom ) > Integer.MAX_VALUE )
+			throw new IllegalArgumentException( "Invalid tile size or max zoom level: " + tileSize + ", " + maxZoom + " (the map of the max zoom level must fit into an int)" );
+		
+		for ( final Class< ? extends Algorithm > algorithmClass : algorithmClassList ) {
+			algorithmClassMap.put( algorithmClass.getSimpleName(), algorithmClass );
+			endpointStatsMap.put( algorithmClass.getSimpleName(), new EndpointStats() );
+		}
+		if ( algorithmClassMap.isEmpty() )
+			throw new IllegalArgumentException( "No algorithms to serve!" );
+		endpointStatsMap.put( STATS_PATH.substring( 1 ), new EndpointStats() );
+		
+		this.propertyOverrides = propertyOverrides;
+		this.tileSize          = tileSize;
+		this.maxZoom           = maxZoom;
+		tileCache              = new TileCache( cacheBytes );
+	}
+	
+	/**
+	 * Starts the server.
+	 * @param port port to listen on, 0 means an ephemeral port
+	 * @return the port the server listens on
+	 * @throws IOException if the server cannot be started
+	 */
+	public synchronized int start( final int port ) throws IOException {
+		if ( httpServer != null )
+			throw new IllegalStateException( "The server is already started!" );
+		
+		httpServer = HttpServer.create( new InetSocketAddress( port ), 0 );
+		httpServer.createContext( "/", new TileHandler() );
+		httpServer.createContext( STATS_PATH, new StatsHandler() );
+		executor = createExecutor();
+		httpServer.setExecutor( executor );
+		httpServer.start();
+		
+		return httpServer.getAddress().getPort();
+	}
+	
+	/**
+	 * Stops the server, and waits for the requests in progress to be completed (at most for a second).
+	 */
+	public synchronized void stop() {
+		if ( httpServer == null )
+			return;
+		
+		httpServer.stop( 1 );
+		executor.shutdown();
+		try {
+			executor.awaitTermination( 1, TimeUnit.SECONDS );
+		}
+		catch ( final InterruptedException ie ) {
+			Thread.currentThread().interrupt();
+		}
+		httpServer = null;
+		executor   = null;
+	}
+	
+	/**
+	 * Creates the executor handling the requests: a virtual thread per request if the JVM supports virtual threads,
+	 * else a pool of daemon platform threads.<br>
+	 * Virtual threads are created through reflection, so the server also runs on JVMs without them.
+	 * @return the executor handling the requests
+	 */
+	private static ExecutorService createExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" ).invoke( null );
+		}
+		catch ( final Exception e ) {
+			return Executors.newCachedThreadPool( new ThreadFactory() {
+				@Override
+				public Thread newThread( final Runnable runnable ) {
+					final Thread thread = new Thread( runnable, APPLICATION_NAME + " handler" );
+					thread.setDaemon( true );
+					return thread;
+				}
+			} );
+		}
+	}
+	
+	/**
+	 * Returns the shared instance of an algorithm, creates it on first use.
+	 * @param name simple class name of the algorithm
+	 * @return the shared instance of the algorithm
+	 * @throws Exception if the algorithm cannot be instantiated
+	 */
+	private synchronized Algorithm getAlgorithm( final String name ) throws Exception {
+		Algorithm algorithm = algorithmMap.get( name );
+		if ( algorithm == null ) {
+			algorithm = algorithmClassMap.get( name ).newInstance();
+			algorithm.getProperties().putAll( propertyOverrides );
+			algorithmMap.put( name, algorithm );
+		}
+		return algorithm;
+	}
+	
+	/**
+	 * Renders a tile, and encodes it.<br>
+	 * The seed, the property overrides and the {@value #PROPERTY_PARALLEL} property are passed to the algorithm in per-render properties if it is derived from {@link BaseAlgorithm},
+	 * else they are set in the properties of the algorithm (restored after the render) and the algorithm paints one tile at a time.
+	 * 
+	 * @param algorithm         algorithm to be rendered
+	 * @param seed              random seed of the map
+	 * @param propertyOverrides property overrides of the request
+	 * @param zoom              zoom level of the map
+	 * @param x                 x coordinate of the tile
+	 * @param y                 y coordinate of the tile
+	 * @return the encoded tile
+	 * @throws IOException if the tile cannot be encoded
+	 */
+	private byte[] renderTile( final Algorithm algorithm, final long seed, final Map< String, String > propertyOverrides, final int zoom, final int x, final int y )
+			throws IOException {
+		final int           mapSize = tileSize << zoom;
+		final BufferedImage image   = new BufferedImage( tileSize, tileSize, BufferedImage.TYPE_INT_RGB );
+		
+		final Graphics graphics = image.createGraphics();
+		try {
+			graphics.setColor( AlgorithmVisualizer.CANVAS_BACKGROUND_COLOR );
+			graphics.fillRect( 0, 0, tileSize, tileSize );
+			graphics.translate( -x * tileSize, -y * tileSize );
+			graphics.setClip( x * tileSize, y * tileSize, tileSize, tileSize );
+			graphics.setColor( Color.WHITE );
+			
+			if ( algorithm instanceof BaseAlgorithm ) {
+				final Properties renderProperties = new Properties( algorithm.getProperties() );
+				renderProperties.putAll( propertyOverrides );
+				renderProperties.setProperty( RandomBaseAlgorithm.PROPERTY_RANDOM_SEED, Long.toString( seed ) );
+				renderProperties.setProperty( PROPERTY_PARALLEL, "true" );
+				( (BaseAlgorithm< ? >) algorithm ).paint( graphics, mapSize, mapSize, renderProperties );
+			}
+			else
+				synchronized ( algorithm ) {
+					final Properties properties = (Properties) algorithm.getProperties().clone();
+					try {
+						algorithm.getProperties().putAll( propertyOverrides );
+						algorithm.getProperties().setProperty( RandomBaseAlgorithm.PROPERTY_RANDOM_SEED, Long.toString( seed ) );
+						algorithm.getProperties().setProperty( PROPERTY_PARALLEL, "true" );
+						algorithm.paint( graphics, mapSize, mapSize );
+					}
+					finally {
+						algorithm.getProperties().clear();
+						algorithm.getProperties().putAll( properties );
+					}
+				}
+		}
+		finally {
+			graphics.dispose();
+		}
+		
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		if ( !ImageIO.write( image, TILE_FORMAT, output ) )
+			throw new IOException( "No image writer for format: " + TILE_FORMAT );
+		return output.toByteArray();
+	}
+	
+	/**
+	 * Parses the property overrides of a query string.
+	 * @param rawQuery raw (not decoded) query string, <code>null</code> if there is none
+	 * @return the property overrides sorted by name, without the random seed and the {@value #PROPERTY_PARALLEL} property
+	 * @throws IllegalArgumentException if a parameter of the query string is not a property override
+	 */
+	private static SortedMap< String, String > parseQuery( final String rawQuery ) throws IllegalArgumentException {
+		final SortedMap< String, String > propertyOverrides = new TreeMap< String, String >();
+		if ( rawQuery == null || rawQuery.isEmpty() )
+			return propertyOverrides;
+		
+		try {
+			for ( final String parameter : rawQuery.split( "&" ) ) {
+				if ( parameter.isEmpty() )
+					continue;
+				final int equalsIndex = parameter.indexOf( '=' );
+				if ( equalsIndex < 0 )
+					throw new IllegalArgumentException( "Invalid property override (name=value expected): " + parameter );
+				propertyOverrides.put( URLDecoder.decode( parameter.substring( 0, equalsIndex ), "UTF-8" ).trim(),
+						URLDecoder.decode( parameter.substring( equalsIndex + 1 ), "UTF-8" ).trim() );
+			}
+		}
+		catch ( final UnsupportedEncodingException uee ) {
+			throw new IllegalStateException( uee ); // UTF-8 is always supported
+		}
+		
+		// The seed is specified by the path, tiles are always rendered in parallel
+		propertyOverrides.remove( RandomBaseAlgorithm.PROPERTY_RANDOM_SEED );
+		propertyOverrides.remove( PROPERTY_PARALLEL );
+		
+		return propertyOverrides;
+	}
+	
+	/**
+	 * Sends a response.
+	 * @param exchange    the exchange of the request
+	 * @param status      status code of the response
+	 * @param contentType content type of the response
+	 * @param body        body of the response
+	 * @throws IOException if the response cannot be sent
+	 */
+	private static void sendResponse( final HttpExchange exchange, final int status, final String contentType, final byte[] body ) throws IOException {
+		final boolean head = exchange.getRequestMethod().equals( "HEAD" );
+		
+		exchange.getResponseHeaders().set( "Content-Type", contentType );
+		exchange.sendResponseHeaders( status, head ? -1 : body.length );
+		if ( !head ) {
+			final OutputStream output = exchange.getResponseBody();
+			output.write( body );
+			output.close();
+		}
+	}
+	
+	/**
+	 * Sends a plain text response.
+	 * @param exchange the exchange of the request
+	 * @param status   status code of the response
+	 * @param text     text of the response
+	 * @throws IOException if the response cannot be sent
+	 */
+	private static void sendText( final HttpExchange exchange, final int status, final String text ) throws IOException {
+		sendResponse( exchange, status, "text/plain; charset=UTF-8", text.getBytes( "UTF-8" ) );
+	}
+	
+	/**
+	 * Returns the statistics of the endpoints and the tile cache as plain text, a line per endpoint.
+	 * @return the statistics of the endpoints and the tile cache
+	 */
+	public String getStatistics() {
+		final StringBuilder builder = new StringBuilder();
+		
+		for ( final Map.Entry< String, EndpointStats > entry : endpointStatsMap.entrySet() )
+			builder.append( entry.getKey() ).append( ": " ).append( entry.getValue() ).append( '\n' );
+		builder.append( String.format( "cache: tiles=%d bytes=%d maxBytes=%d evictions=%d rendering=%d%n", tileCache.getSize(), tileCache.getBytes(),
+				tileCache.getMaxBytes(), tileCache.getEvictions(), tileCache.getRenderCount() ) );
+		
+		return builder.toString();
+	}
+	
+	/**
+	 * Handler of the tile requests.
+	 */
+	private class TileHandler implements HttpHandler {
+		
+		@Override
+		public void handle( final HttpExchange exchange ) throws IOException {
+			final long startNanos = System.nanoTime();
+			
+			EndpointStats stats  = null;
+			boolean       failed = true;
+			try {
+				if ( !exchange.getRequestMethod().equals( "GET" ) && !exchange.getRequestMethod().equals( "HEAD" ) ) {
+					sendText( exchange, 405, "Method not allowed: " + exchange.getRequestMethod() );
+					return;
+				}
+				
+				// Path: /{algorithm}/{seed}/{z}/{x}/{y}.png
+				final String[] segments = exchange.getRequestURI().getPath().split( "/" );
+				if ( segments.length != 6 || !segments[ 0 ].isEmpty() || !segments[ 5 ].endsWith( '.' + TILE_FORMAT ) || !algorithmClassMap.containsKey( segments[ 1 ] ) ) {
+					sendText( exchange, 404, "Not found (/{algorithm}/{seed}/{z}/{x}/{y}." + TILE_FORMAT + " expected, algorithms: " + algorithmClassMap.keySet() + ")" );
+					return;
+				}
+				stats = endpointStatsMap.get( segments[ 1 ] );
+				
+				final long seed;
+				final int  zoom, x, y;
+				try {
+					seed = Long.parseLong( segments[ 2 ] );
+					zoom = Integer.parseInt( segments[ 3 ] );
+					x    = Integer.parseInt( segments[ 4 ] );
+					y    = Integer.parseInt( segments[ 5 ].substring( 0, segments[ 5 ].length() - TILE_FORMAT.length() - 1 ) );
+				}
+				catch ( final NumberFormatException nfe ) {
+					sendText( exchange, 400, "Invalid tile coordinates: " + exchange.getRequestURI().getPath() );
+					return;
+				}
+				if ( zoom < 0 || zoom > maxZoom || x < 0 || y < 0 || x >= 1 << zoom || y >= 1 << zoom ) {
+					sendText( exchange, 404, "No such tile: " + zoom + '/' + x + '/' + y + " (max zoom level: " + maxZoom + ")" );
+					return;
+				}
+				
+				final SortedMap< String, String > propertyOverrides = parseQuery( exchange.getRequestURI().getRawQuery() );
+				final Algorithm                   algorithm         = getAlgorithm( segments[ 1 ] );
+				final StringBuilder keyBuilder = new StringBuilder().append( segments[ 1 ] ).append( '/' ).append( seed ).append( '/' ).append( zoom )
+						.append( '/' ).append( x ).append( '/' ).append( y );
+				for ( final Map.Entry< String, String > entry : propertyOverrides.entrySet() )
+					keyBuilder.append( '&' ).append( URLEncoder.encode( entry.getKey(), "UTF-8" ) ).append( '=' ).append( URLEncoder.encode( entry.getValue(), "UTF-8" ) );
+				final String key = keyBuilder.toString();
+				
+				final TileCache.Tile tile = tileCache.get( key, new Callable< byte[] >() {
+					@Override
+					public byte[] call() throws Exception {
+						renderPermits.acquire();
+						try {
+							return renderTile( algorithm, seed, propertyOverrides, zoom, x, y );
+						}
+						finally {
+							renderPermits.release();
+						}
+					}
+				} );
+				stats.addLookup( tile.getSource() );
+				
+				// Tiles only depend on the request, they can be cached by the clients too
+				exchange.getResponseHeaders().set( "Cache-Control", "public, max-age=86400" );
+				sendResponse( exchange, 200, "image/" + TILE_FORMAT, tile.getBytes() );
+				failed = false;
+			}
+			catch ( final IllegalArgumentException iae ) {
+				sendText( exchange, 400, String.valueOf( iae.getMessage() ) );
+			}
+			catch ( final IOException ie ) {
+				throw ie;
+			}
+			catch ( final Exception e ) {
+				sendText( exchange, 500, "Could not render the tile: " + e );
+			}
+			finally {
+				exchange.close();
+				if ( stats != null )
+					stats.addRequest( System.nanoTime() - startNanos, failed );
+			}
+		}
+		
+	}
+	
+	/**
+	 * Handler of the statistics requests.
+	 */
+	private class StatsHandler implements HttpHandler {
+		
+		@Override
+		public void handle( final HttpExchange exchange ) throws IOException {
+			final long startNanos = System.nanoTime();
+			
+			boolean failed = true;
+			try {
+				sendText( exchange, 200, getStatistics() );
+				failed = false;
+			}
+			finally {
+				exchange.close();
+				endpointStatsMap.get( STATS_PATH.substring( 1 ) ).addRequest( System.nanoTime() - startNanos, failed );
+			}
+		}
+		
+	}
+	
+	/**
+	 * Statistics of an endpoint: the number of requests and failures, the tile cache lookups by their sources, and a latency histogram.<br>
+	 * The buckets of the histogram are powers of 2 microseconds, the latency percentiles are the upper bounds of the buckets holding them.
+	 */
+	private static class EndpointStats {
+		
+		private final LongAdder       requestCount     = new LongAdder();
+		private final LongAdder       failureCount     = new LongAdder();
+		private final LongAdder       cacheHitCount    = new LongAdder();
+		private final LongAdder       inFlightHitCount = new LongAdder();
+		private final LongAdder       renderCount      = new LongAdder();
+		private final LongAdder       latencyNanos     = new LongAdder();
+		private final AtomicLong      maxLatencyNanos  = new AtomicLong();
+		private final AtomicLongArray latencyHistogram = new AtomicLongArray( HISTOGRAM_BUCKETS );
+		
+		/**
+		 * Adds a completed request.
+		 * @param latency latency of the request in nanoseconds
+		 * @param failed  tells if the request failed
+		 */
+		public void addRequest( final long latency, final boolean failed ) {
+			requestCount.increment();
+			if ( failed )
+				failureCount.increment();
+			
+			latencyNanos.add( latency );
+			long maxLatency;
+			while ( latency > ( maxLatency = maxLatencyNanos.get() ) && !maxLatencyNanos.compareAndSet( maxLatency, latency ) )
+				;
+			latencyHistogram.incrementAndGet( Math.min( HISTOGRAM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros( latency / 1000 ) ) );
+		}
+		
+		/**
+		 * Adds a tile cache lookup.
+		 * @param source source of the returned tile
+		 */
+		public void addLookup( final TileCache.Source source ) {
+			switch ( source ) {
+			case CACHE     : cacheHitCount   .increment(); break;
+			case IN_FLIGHT : inFlightHitCount.increment(); break;
+			case RENDER    : renderCount     .increment(); break;
+			}
+		}
+		
+		/**
+		 * Returns a percentile of the latency of the requests.
+		 * @param percentile percentile to be returned
+		 * @return the percentile of the latency in milliseconds, 0 if there are no requests
+		 */
+		public double getLatencyPercentileMillis( final double percentile ) {
+			long total = 0;
+			for ( int i = 0; i < HISTOGRAM_BUCKETS; i++ )
+				total += latencyHistogram.get( i );
+			if ( total == 0 )
+				return 0;
+			
+			final double maxLatencyMillis = maxLatencyNanos.get() / 1e6;
+			final long   rank             = (long) Math.ceil( percentile / 100.0 * total );
+			long         sum              = 0;
+			for ( int i = 0; i < HISTOGRAM_BUCKETS - 1; i++ )
+				if ( ( sum += latencyHistogram.get( i ) ) >= rank )
+					return Math.min( ( 1L << i ) / 1e3, maxLatencyMillis );
+			
+			return maxLatencyMillis;
+		}
+		
+		/**
+		 * Returns the statistics in a line.<br>
+		 * The hit rate is the ratio of the lookups served without rendering (from the cache or by a render in progress).
+		 */
+		@Override
+		public String toString() {
+			final long requests = requestCount.sum();
+			final long hits     = cacheHitCount.sum() + inFlightHitCount.sum();
+			final long lookups  = hits + renderCount.sum();
+			
+			return String.format( "requests=%d failures=%d cacheHits=%d inFlightHits=%d renders=%d hitRate=%.1f%% latency(ms): mean=%.2f p50=%.2f p90=%.2f p99=%.2f max=%.2f",
+					requests, failureCount.sum(), cacheHitCount.sum(), inFlightHitCount.sum(), renderCount.sum(), lookups == 0 ? 0.0 : hits * 100.0 / lookups,
+					requests == 0 ? 0.0 : latencyNanos.sum() / 1e6 / requests, getLatencyPercentileMillis( 50 ), getLatencyPercentileMillis( 90 ),
+					getLatencyPercentileMillis( 99 ), maxLatencyNanos.get() / 1e6 );
+		}
+		
+	}
+	
+}